@@ -0,0 +1,467 @@
+package org.apache.ofbiz.planning.assignedrefs;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningTransactions;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice en memoria de las referencias asignadas a los grupos de planificación, en los tres
+ * sentidos: referencia → grupo, grupo → referencias y facility → referencias.
+ *
+ * Se carga una vez por delegator en el primer uso y se mantiene con las ECAs de
+ * ProductCategoryMember, ProductCategory y ProductCategoryAttribute (FACILITY_ID): al
+ * confirmarse la transacción del cambio (si se deshace, el índice no se toca) se apunta la
+ * referencia o el grupo afectados, y la siguiente consulta del índice los vuelve a leer antes
+ * de responder. Las membresías con fromDate o thruDate
+ * futuros no generan ningún evento al entrar en vigor o caducar, así que se guarda el instante
+ * del próximo cambio y al llegar a él la siguiente consulta recarga el índice.
+ *
+ * Una referencia se planifica en un único grupo; si los datos tienen varias membresías
+ * vigentes en grupos de planificación se queda la de fromDate más reciente.
+ */
+public final class AssignedRefsIndex {
+
+    public static final String module = AssignedRefsIndex.class.getName();
+
+    private static final Map<String, AssignedRefsIndex> indexes = new ConcurrentHashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, String> refGroup = new HashMap<>();
+    private final Map<String, Timestamp> refFromDate = new HashMap<>();
+    private final Map<String, Set<String>> groupRefs = new HashMap<>();
+    private final Map<String, Set<String>> facilityRefs = new HashMap<>();
+    // Facility (atributo FACILITY_ID) y proyecto (primaryParentCategoryId) de cada grupo de planificación
+    private final Map<String, String> groupFacility = new HashMap<>();
+    private final Map<String, String> groupProject = new HashMap<>();
+    // Referencias y grupos cambiados pendientes de volver a leer
+    private final Set<String> dirtyRefs = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirtyGroups = ConcurrentHashMap.newKeySet();
+    private volatile long nextChangeMillis = Long.MAX_VALUE;
+    private volatile boolean loaded;
+
+    private AssignedRefsIndex() {
+    }
+
+    /**
+     * Índice del delegator, cargado y al día respecto a las fechas de vigencia.
+     */
+    public static AssignedRefsIndex getIndex(Delegator delegator) throws GenericEntityException {
+        AssignedRefsIndex index = indexes.computeIfAbsent(delegator.getDelegatorName(), name -> new AssignedRefsIndex());
+        index.ensureLoaded(delegator);
+        return index;
+    }
+
+    /**
+     * Índice del delegator si ya está cargado, o null sin cargarlo.
+     */
+    public static AssignedRefsIndex getLoadedIndex(Delegator delegator) {
+        AssignedRefsIndex index = indexes.get(delegator.getDelegatorName());
+        return index != null && index.loaded ? index : null;
+    }
+
+    /**
+     * Descarta todos los índices; se recargan en la siguiente consulta.
+     */
+    public static void clear() {
+        indexes.clear();
+    }
+
+    /**
+     * Apunta la referencia para {@link #refreshRef} al confirmarse la transacción en curso, si
+     * el índice está cargado y la categoría es un grupo de planificación. En afterCompletion la
+     * transacción terminada sigue asociada al hilo, así que la lectura se hace en la siguiente
+     * consulta del índice.
+     */
+    public static void refreshRefAfterCommit(final Delegator delegator, final String productCategoryId,
+                                             final String productId) {
+        PlanningTransactions.afterCommit(() -> {
+            AssignedRefsIndex index = getLoadedIndex(delegator);
+            if (index != null && index.isPlanningGroup(productCategoryId)) {
+                index.dirtyRefs.add(productId);
+            }
+        });
+    }
+
+    /**
+     * Apunta el grupo para {@link #refreshGroup} al confirmarse la transacción en curso, si el
+     * índice está cargado.
+     */
+    public static void refreshGroupAfterCommit(final Delegator delegator, final String productCategoryId) {
+        PlanningTransactions.afterCommit(() -> {
+            AssignedRefsIndex index = getLoadedIndex(delegator);
+            if (index != null) {
+                index.dirtyGroups.add(productCategoryId);
+            }
+        });
+    }
+
+    /**
+     * {@link #removeGroups} al confirmarse la transacción en curso, si el índice está cargado.
+     */
+    public static void removeGroupsAfterCommit(final Delegator delegator, Collection<String> productCategoryIds) {
+        final List<String> ids = new ArrayList<>(productCategoryIds);
+        PlanningTransactions.afterCommit(() -> {
+            AssignedRefsIndex index = getLoadedIndex(delegator);
+            if (index != null) {
+                index.removeGroups(ids);
+            }
+        });
+    }
+
+    /**
+     * Grupo de planificación que planifica la referencia, o null.
+     */
+    public String getGroupOf(String productId) {
+        lock.readLock().lock();
+        try {
+            return refGroup.get(productId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Facility en la que se planifica la referencia (la de su grupo), o null.
+     */
+    public String getFacilityOf(String productId) {
+        lock.readLock().lock();
+        try {
+            String productCategoryId = refGroup.get(productId);
+            return productCategoryId != null ? groupFacility.get(productCategoryId) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isPlanningGroup(String productCategoryId) {
+        lock.readLock().lock();
+        try {
+            return groupFacility.containsKey(productCategoryId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getGroupFacility(String productCategoryId) {
+        lock.readLock().lock();
+        try {
+            return groupFacility.get(productCategoryId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getGroupProject(String productCategoryId) {
+        lock.readLock().lock();
+        try {
+            return groupProject.get(productCategoryId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Referencias del grupo (copia ordenada por orden de alta en el índice).
+     */
+    public List<String> getGroupRefs(String productCategoryId) {
+        return copyOf(groupRefs, productCategoryId);
+    }
+
+    /**
+     * Referencias planificadas en la facility, de todos sus grupos.
+     */
+    public List<String> getFacilityRefs(String facilityId) {
+        return copyOf(facilityRefs, facilityId);
+    }
+
+    public int getGroupRefCount(String productCategoryId) {
+        lock.readLock().lock();
+        try {
+            Set<String> refs = groupRefs.get(productCategoryId);
+            return refs != null ? refs.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getRefCount() {
+        lock.readLock().lock();
+        try {
+            return refGroup.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Vuelve a leer las membresías de una referencia en grupos de planificación (ECA de
+     * ProductCategoryMember). Una sola consulta por la clave de la referencia.
+     */
+    public void refreshRef(Delegator delegator, String productId) throws GenericEntityException {
+        List<GenericValue> members = EntityQuery.use(delegator)
+                .select("productCategoryId", "productId", "fromDate", "thruDate")
+                .from("PlanningGroupMember")
+                .where(EntityCondition.makeCondition(
+                        EntityCondition.makeCondition("productId", EntityOperator.EQUALS, productId),
+                        EntityOperator.AND,
+                        EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP")))
+                .queryList();
+        long now = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            unassign(productId);
+            for (GenericValue member : members) {
+                addMember(member, now);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Vuelve a leer un grupo: tipo, proyecto, facility y membresías (ECAs de ProductCategory
+     * y ProductCategoryAttribute). Si ya no es un grupo de planificación se quita del índice.
+     */
+    public void refreshGroup(Delegator delegator, String productCategoryId) throws GenericEntityException {
+        GenericValue planningGroup = EntityQuery.use(delegator)
+                .from("ProductCategory")
+                .where("productCategoryId", productCategoryId)
+                .queryOne();
+        if (planningGroup == null || !"PLANNING_GROUP".equals(planningGroup.getString("productCategoryTypeId"))) {
+            removeGroups(Collections.singletonList(productCategoryId));
+            return;
+        }
+        GenericValue facilityAttr = EntityQuery.use(delegator)
+                .from("ProductCategoryAttribute")
+                .where("productCategoryId", productCategoryId, "attrName", "FACILITY_ID")
+                .queryOne();
+        List<GenericValue> members = EntityQuery.use(delegator)
+                .select("productCategoryId", "productId", "fromDate", "thruDate")
+                .from("ProductCategoryMember")
+                .where("productCategoryId", productCategoryId)
+                .queryList();
+        long now = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            removeGroup(productCategoryId);
+            groupFacility.put(productCategoryId, facilityAttr != null ? facilityAttr.getString("attrValue") : null);
+            groupProject.put(productCategoryId, planningGroup.getString("primaryParentCategoryId"));
+            for (GenericValue member : members) {
+                addMember(member, now);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quita grupos y sus referencias. Para los borrados masivos con removeByCondition, que no
+     * ejecutan las ECAs de cada valor.
+     */
+    public void removeGroups(Collection<String> productCategoryIds) {
+        lock.writeLock().lock();
+        try {
+            for (String productCategoryId : productCategoryIds) {
+                removeGroup(productCategoryId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded(Delegator delegator) throws GenericEntityException {
+        if (loaded && System.currentTimeMillis() < nextChangeMillis && dirtyRefs.isEmpty() && dirtyGroups.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded || System.currentTimeMillis() >= nextChangeMillis) {
+                // La carga completa ya incluye los cambios apuntados hasta ahora
+                dirtyRefs.clear();
+                dirtyGroups.clear();
+                load(delegator);
+                loaded = true;
+                return;
+            }
+            refreshDirty(delegator);
+        }
+    }
+
+    // Grupos antes que referencias: un grupo nuevo tiene que estar para asignarle referencias
+    private void refreshDirty(Delegator delegator) throws GenericEntityException {
+        for (String productCategoryId : new ArrayList<>(dirtyGroups)) {
+            dirtyGroups.remove(productCategoryId);
+            try {
+                refreshGroup(delegator, productCategoryId);
+            } catch (GenericEntityException | RuntimeException e) {
+                dirtyGroups.add(productCategoryId);
+                throw e;
+            }
+        }
+        for (String productId : new ArrayList<>(dirtyRefs)) {
+            dirtyRefs.remove(productId);
+            try {
+                refreshRef(delegator, productId);
+            } catch (GenericEntityException | RuntimeException e) {
+                dirtyRefs.add(productId);
+                throw e;
+            }
+        }
+    }
+
+    private void load(Delegator delegator) throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        Map<String, String> facilities = new HashMap<>();
+        Map<String, String> projects = new HashMap<>();
+        try (EntityListIterator groups = EntityQuery.use(delegator)
+                .select("productCategoryId", "primaryParentCategoryId", "facilityAttrValue")
+                .from("PlanningGroupAndFacility")
+                .where("productCategoryTypeId", "PLANNING_GROUP")
+                .queryIterator()) {
+            GenericValue group;
+            while ((group = groups.next()) != null) {
+                facilities.put(group.getString("productCategoryId"), group.getString("facilityAttrValue"));
+                projects.put(group.getString("productCategoryId"), group.getString("primaryParentCategoryId"));
+            }
+        }
+
+        // Se leen también las membresías futuras para conocer el próximo cambio de vigencia
+        Timestamp now = new Timestamp(startTime);
+        int refCount;
+        lock.writeLock().lock();
+        try {
+            refGroup.clear();
+            refFromDate.clear();
+            groupRefs.clear();
+            facilityRefs.clear();
+            groupFacility.clear();
+            groupFacility.putAll(facilities);
+            groupProject.clear();
+            groupProject.putAll(projects);
+            nextChangeMillis = Long.MAX_VALUE;
+            try (EntityListIterator members = EntityQuery.use(delegator)
+                    .select("productCategoryId", "productId", "fromDate", "thruDate")
+                    .from("PlanningGroupMember")
+                    .where(EntityCondition.makeCondition(
+                            EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP"),
+                            EntityOperator.AND,
+                            EntityCondition.makeCondition(
+                                    EntityCondition.makeCondition("thruDate", EntityOperator.EQUALS, null),
+                                    EntityOperator.OR,
+                                    EntityCondition.makeCondition("thruDate", EntityOperator.GREATER_THAN, now))))
+                    .queryIterator()) {
+                GenericValue member;
+                while ((member = members.next()) != null) {
+                    addMember(member, startTime);
+                }
+            }
+            refCount = refGroup.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Debug.logInfo("Assigned references index loaded for " + delegator.getDelegatorName() + ": "
+                + refCount + " refs in " + facilities.size() + " planning groups in "
+                + (System.currentTimeMillis() - startTime) + " ms", module);
+    }
+
+    // Con el bloqueo de escritura: añade la membresía si está vigente y anota su próximo cambio
+    private void addMember(GenericValue member, long now) {
+        String productCategoryId = member.getString("productCategoryId");
+        if (!groupFacility.containsKey(productCategoryId)) {
+            return;
+        }
+        Timestamp fromDate = member.getTimestamp("fromDate");
+        Timestamp thruDate = member.getTimestamp("thruDate");
+        if (thruDate != null && thruDate.getTime() <= now) {
+            return;
+        }
+        if (fromDate != null && fromDate.getTime() > now) {
+            nextChangeMillis = Math.min(nextChangeMillis, fromDate.getTime());
+            return;
+        }
+        if (thruDate != null) {
+            nextChangeMillis = Math.min(nextChangeMillis, thruDate.getTime());
+        }
+        String productId = member.getString("productId");
+        Timestamp currentFromDate = refFromDate.get(productId);
+        if (refGroup.containsKey(productId)) {
+            if (currentFromDate != null && (fromDate == null || !fromDate.after(currentFromDate))) {
+                return;
+            }
+            Debug.logWarning("Product " + productId + " is a member of planning groups " + refGroup.get(productId)
+                    + " and " + productCategoryId + "; using the most recent", module);
+            unassign(productId);
+        }
+        refGroup.put(productId, productCategoryId);
+        refFromDate.put(productId, fromDate);
+        groupRefs.computeIfAbsent(productCategoryId, key -> new LinkedHashSet<>()).add(productId);
+        String facilityId = groupFacility.get(productCategoryId);
+        if (facilityId != null) {
+            facilityRefs.computeIfAbsent(facilityId, key -> new LinkedHashSet<>()).add(productId);
+        }
+    }
+
+    // Con el bloqueo de escritura
+    private void unassign(String productId) {
+        String productCategoryId = refGroup.remove(productId);
+        refFromDate.remove(productId);
+        if (productCategoryId == null) {
+            return;
+        }
+        removeFrom(groupRefs, productCategoryId, productId);
+        String facilityId = groupFacility.get(productCategoryId);
+        if (facilityId != null) {
+            removeFrom(facilityRefs, facilityId, productId);
+        }
+    }
+
+    // Con el bloqueo de escritura
+    private void removeGroup(String productCategoryId) {
+        Set<String> refs = groupRefs.get(productCategoryId);
+        if (refs != null) {
+            for (String productId : new ArrayList<>(refs)) {
+                unassign(productId);
+            }
+        }
+        groupFacility.remove(productCategoryId);
+        groupProject.remove(productCategoryId);
+    }
+
+    private static void removeFrom(Map<String, Set<String>> index, String key, String productId) {
+        Set<String> refs = index.get(key);
+        if (refs != null) {
+            refs.remove(productId);
+            if (refs.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private List<String> copyOf(Map<String, Set<String>> index, String key) {
+        lock.readLock().lock();
+        try {
+            Set<String> refs = index.get(key);
+            return refs != null ? new ArrayList<>(refs) : new ArrayList<String>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.apache.ofbiz.planning.assignedrefs;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Asignación de referencias (productos) a grupos de planificación sobre ProductCategoryMember,
+ * y consultas servidas desde {@link AssignedRefsIndex} sin acceso a base de datos.
+ */
+public class AssignedRefsServices {
+
+    public static final String module = AssignedRefsServices.class.getName();
+
+    private static final int DEFAULT_VIEW_SIZE = 500;
+
+    /**
+     * Referencias asignadas por grupo, facility o referencia, desde el índice en memoria.
+     *
+     * IN:
+     *  - productId         (String, opcional): referencia; devuelve solo su asignación
+     *  - productCategoryId (String, opcional): grupo de planificación
+     *  - facilityId        (String, opcional): facility
+     *  - viewSize          (Integer, opcional): máximo de filas (por defecto 500)
+     *
+     * OUT:
+     *  - assignedRefs  (List<Map<String,Object>>): productId, productCategoryId, projectCategoryId, facilityId
+     *  - refCount      (Integer): referencias que cumplen el filtro (sin límite de filas)
+     *  - totalRefCount (Integer): referencias asignadas en total
+     */
+    public static Map<String, Object> getAssignedRefs(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String productId = (String) context.get("productId");
+        String productCategoryId = (String) context.get("productCategoryId");
+        String facilityId = (String) context.get("facilityId");
+        Integer viewSize = (Integer) context.get("viewSize");
+
+        AssignedRefsIndex index;
+        try {
+            index = AssignedRefsIndex.getIndex(dctx.getDelegator());
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error loading assigned references index: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error loading assigned references index: " + e.getMessage());
+        }
+
+        List<String> productIds;
+        if (UtilValidate.isNotEmpty(productId)) {
+            productIds = index.getGroupOf(productId) != null ? Collections.singletonList(productId) : Collections.<String>emptyList();
+        } else if (UtilValidate.isNotEmpty(productCategoryId)) {
+            productIds = index.getGroupRefs(productCategoryId);
+        } else if (UtilValidate.isNotEmpty(facilityId)) {
+            productIds = index.getFacilityRefs(facilityId);
+        } else {
+            productIds = Collections.emptyList();
+        }
+
+        productIds = new ArrayList<>(productIds);
+        Collections.sort(productIds);
+
+        // Los filtros que no han elegido la lista se aplican sobre ella
+        List<Map<String, Object>> assignedRefs = new ArrayList<>();
+        int refCount = 0;
+        int maxRows = viewSize != null && viewSize > 0 ? viewSize : DEFAULT_VIEW_SIZE;
+        for (String refId : productIds) {
+            String groupId = index.getGroupOf(refId);
+            String groupFacilityId = groupId != null ? index.getGroupFacility(groupId) : null;
+            if (groupId == null
+                    || (UtilValidate.isNotEmpty(productCategoryId) && !productCategoryId.equals(groupId))
+                    || (UtilValidate.isNotEmpty(facilityId) && !facilityId.equals(groupFacilityId))) {
+                continue;
+            }
+            refCount++;
+            if (assignedRefs.size() < maxRows) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("productId", refId);
+                row.put("productCategoryId", groupId);
+                row.put("projectCategoryId", index.getGroupProject(groupId));
+                row.put("facilityId", groupFacilityId);
+                assignedRefs.add(row);
+            }
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("assignedRefs", assignedRefs);
+        result.put("refCount", refCount);
+        result.put("totalRefCount", index.getRefCount());
+        return result;
+    }
+
+    /**
+     * Asignar una referencia a un grupo de planificación. Si ya estaba en otro grupo su
+     * membresía se cierra en el mismo instante, así que la referencia pasa de grupo.
+     *
+     * IN:
+     *  - productId         (String): referencia (requerido)
+     *  - productCategoryId (String): grupo de planificación (requerido)
+     *
+     * OUT:
+     *  - previousProductCategoryId (String): grupo anterior, si lo había
+     */
+    public static Map<String, Object> assignRefToPlanningGroup(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productId = (String) context.get("productId");
+        String productCategoryId = (String) context.get("productCategoryId");
+        String previousProductCategoryId = null;
+
+        try {
+            if (EntityQuery.use(delegator).from("Product").where("productId", productId).queryOne() == null) {
+                return ServiceUtil.returnError("Product not found: " + productId);
+            }
+            GenericValue planningGroup = EntityQuery.use(delegator)
+                    .from("ProductCategory")
+                    .where("productCategoryId", productCategoryId)
+                    .queryOne();
+            if (planningGroup == null || !"PLANNING_GROUP".equals(planningGroup.getString("productCategoryTypeId"))) {
+                return ServiceUtil.returnError("Planning Group not found: " + productCategoryId);
+            }
+
+            Timestamp now = UtilDateTime.nowTimestamp();
+            for (GenericValue member : activePlanningMembers(delegator, productId, null)) {
+                if (productCategoryId.equals(member.getString("productCategoryId"))) {
+                    return ServiceUtil.returnError("Product " + productId + " is already assigned to planning group " + productCategoryId);
+                }
+                previousProductCategoryId = member.getString("productCategoryId");
+                member.set("thruDate", now);
+                member.store();
+            }
+
+            GenericValue member = delegator.makeValue("ProductCategoryMember");
+            member.set("productCategoryId", productCategoryId);
+            member.set("productId", productId);
+            member.set("fromDate", now);
+            member.create();
+            Debug.logInfo("Assigned product " + productId + " to planning group " + productCategoryId
+                    + (previousProductCategoryId != null ? " (was " + previousProductCategoryId + ")" : ""), module);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error assigning product to planning group: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error assigning product to planning group: " + e.getMessage());
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess("Product assigned successfully");
+        result.put("previousProductCategoryId", previousProductCategoryId);
+        return result;
+    }
+
+    /**
+     * Quitar una referencia de un grupo de planificación cerrando su membresía vigente.
+     *
+     * IN:
+     *  - productId         (String): referencia (requerido)
+     *  - productCategoryId (String): grupo de planificación (requerido)
+     */
+    public static Map<String, Object> unassignRefFromPlanningGroup(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productId = (String) context.get("productId");
+        String productCategoryId = (String) context.get("productCategoryId");
+
+        try {
+            List<GenericValue> members = activePlanningMembers(delegator, productId, productCategoryId);
+            if (members.isEmpty()) {
+                return ServiceUtil.returnError("Product " + productId + " is not assigned to planning group " + productCategoryId);
+            }
+            Timestamp now = UtilDateTime.nowTimestamp();
+            for (GenericValue member : members) {
+                member.set("thruDate", now);
+                member.store();
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error unassigning product from planning group: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error unassigning product from planning group: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess("Product unassigned successfully");
+    }
+
+    /**
+     * Actualiza en el índice la asignación de una referencia (llamado desde ECA de
+     * ProductCategoryMember) al confirmarse la transacción. Los cambios en categorías que no
+     * son grupos de planificación se ignoran sin consultar, y si el índice aún no está cargado
+     * no se hace nada: la carga ya leerá el cambio.
+     */
+    public static Map<String, Object> refreshAssignedRefsMember(DispatchContext dctx, Map<String, ? extends Object> context) {
+        AssignedRefsIndex.refreshRefAfterCommit(dctx.getDelegator(), (String) context.get("productCategoryId"),
+                (String) context.get("productId"));
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Actualiza en el índice un grupo de planificación: alta, baja, proyecto o facility
+     * (llamado desde ECA de ProductCategory y ProductCategoryAttribute) al confirmarse la
+     * transacción.
+     */
+    public static Map<String, Object> refreshAssignedRefsGroup(DispatchContext dctx, Map<String, ? extends Object> context) {
+        AssignedRefsIndex.refreshGroupAfterCommit(dctx.getDelegator(), (String) context.get("productCategoryId"));
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Descarta y vuelve a cargar el índice de referencias asignadas.
+     *
+     * OUT:
+     *  - refCount (Integer): referencias asignadas
+     */
+    public static Map<String, Object> rebuildAssignedRefsIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        AssignedRefsIndex.clear();
+        try {
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("refCount", AssignedRefsIndex.getIndex(dctx.getDelegator()).getRefCount());
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error loading assigned references index: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error loading assigned references index: " + e.getMessage());
+        }
+    }
+
+    // Membresías vigentes de la referencia en grupos de planificación (en uno concreto si se indica)
+    private static List<GenericValue> activePlanningMembers(Delegator delegator, String productId, String productCategoryId)
+            throws GenericEntityException {
+        List<String> groupIds = new ArrayList<>();
+        if (productCategoryId != null) {
+            groupIds.add(productCategoryId);
+        } else {
+            groupIds.addAll(EntityQuery.use(delegator)
+                    .select("productCategoryId")
+                    .from("PlanningGroupMember")
+                    .where(EntityCondition.makeCondition(
+                            EntityCondition.makeCondition("productId", EntityOperator.EQUALS, productId),
+                            EntityOperator.AND,
+                            EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP")))
+                    .filterByDate()
+                    .distinct()
+                    .<String>getFieldList("productCategoryId"));
+            if (groupIds.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+        return EntityQuery.use(delegator)
+                .from("ProductCategoryMember")
+                .where(EntityCondition.makeCondition(
+                        EntityCondition.makeCondition("productId", EntityOperator.EQUALS, productId),
+                        EntityOperator.AND,
+                        EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, groupIds)))
+                .filterByDate()
+                .queryList();
+    }
+}
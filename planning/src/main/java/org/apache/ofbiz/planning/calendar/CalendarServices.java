@@ -1,13 +1,28 @@
 package org.apache.ofbiz.planning.calendar;
 
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.planning.common.PlanningExecutors;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.common.PlanningTransactions;
+import org.apache.ofbiz.planning.daily.DailyScheduler;
+import org.apache.ofbiz.planning.occupancy.MachineOccupancyIndex;
+import org.apache.ofbiz.planning.shift.ShiftTimelineEngine;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.util.EntityQuery;
 
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 public class CalendarServices {
+
+    public static final String module = CalendarServices.class.getName();
     
     public static Map<String, Object> getCalendarYearData(DispatchContext dctx, Map<String, ? extends Object> context) {
         String calendarId = (String) context.get("calendarId");
@@ -25,18 +40,14 @@ public class CalendarServices {
             year = (Integer) yearObj;
         }
         
-        System.out.println("=== DEBUG CalendarServices ===");
-        System.out.println("calendarId recibido: " + calendarId);
-        System.out.println("year recibido: " + yearObj + " (tipo: " + (yearObj != null ? yearObj.getClass().getSimpleName() : "null") + ")");
-        System.out.println("year convertido: " + year);
-        
+        PlanningMetrics.Timer timer = PlanningMetrics.start("getCalendarYearData");
         try {
             // Obtener lista de calendarios disponibles
             List<GenericValue> calendarList = EntityQuery.use(dctx.getDelegator())
                     .from("TechDataCalendar")
+                    .cache()
                     .queryList();
-            
-            System.out.println("Calendarios encontrados: " + (calendarList != null ? calendarList.size() : "null"));
+            timer.query();
             
             Map<String, Object> result = ServiceUtil.returnSuccess();
             
@@ -45,32 +56,31 @@ public class CalendarServices {
             
             // Procesar parámetros del formulario - asegurarse de devolver siempre los valores
             if (calendarId != null && !calendarId.isEmpty() && year != null) {
+                WorkingCalendarYear calendarYear = WorkingCalendarEngine.getYear(dctx.getDelegator(), calendarId, year);
+                if (calendarYear == null) {
+                    timer.error();
+                    return ServiceUtil.returnError("Calendar not found: " + calendarId);
+                }
                 result.put("selectedCalendarId", calendarId);
                 result.put("selectedYear", year);
-                result.put("yearCalendar", new HashMap<String, Object>());
-                
-                System.out.println("Parámetros procesados: calendarId=" + calendarId + ", year=" + year);
+                result.put("yearCalendar", calendarYear.toMap());
+                timer.rows(calendarYear.getDayCount());
             } else {
                 // VALORES POR DEFECTO - IMPORTANTE: siempre devolver todos los parámetros OUT
                 result.put("selectedCalendarId", calendarId != null ? calendarId : "");
                 result.put("selectedYear", year != null ? year : 0); // Usar 0 como valor por defecto para Integer
                 result.put("yearCalendar", new HashMap<String, Object>());
-                
-                System.out.println("Usando valores por defecto");
             }
             
-            System.out.println("Resultado devuelto:");
-            System.out.println(" - calendarList: " + result.get("calendarList"));
-            System.out.println(" - selectedCalendarId: " + result.get("selectedCalendarId"));
-            System.out.println(" - selectedYear: " + result.get("selectedYear"));
-            System.out.println(" - yearCalendar: " + result.get("yearCalendar"));
-            System.out.println("=== FIN DEBUG ===");
-            
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("getCalendarYearData - calendarId: " + calendarId + ", year: " + year
+                        + ", calendars: " + (calendarList != null ? calendarList.size() : 0), module);
+            }
             return result;
             
-        } catch (Exception e) {
-            System.out.println("ERROR: " + e.getMessage());
-            e.printStackTrace();
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error loading calendar data: " + e.getMessage(), module);
             
             // Incluso en error, devolver la estructura esperada
             Map<String, Object> errorResult = ServiceUtil.returnError("Error loading calendar data: " + e.getMessage());
@@ -80,6 +90,148 @@ public class CalendarServices {
             errorResult.put("yearCalendar", new HashMap<String, Object>());
             
             return errorResult;
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Días laborables y capacidad de un calendario en [fromDate, thruDate).
+     *
+     * IN:
+     *  - calendarId (String)
+     *  - fromDate   (java.sql.Date): inclusive
+     *  - thruDate   (java.sql.Date): exclusive
+     *
+     * OUT:
+     *  - workingDays (Integer)
+     */
+    public static Map<String, Object> countWorkingDays(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String calendarId = (String) context.get("calendarId");
+        Date fromDate = (Date) context.get("fromDate");
+        Date thruDate = (Date) context.get("thruDate");
+
+        try {
+            int workingDays = WorkingCalendarEngine.workingDaysBetween(dctx.getDelegator(), calendarId,
+                    fromDate.toLocalDate(), thruDate.toLocalDate());
+            if (workingDays < 0) {
+                return ServiceUtil.returnError("Calendar not found: " + calendarId);
+            }
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("workingDays", workingDays);
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error counting working days: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error counting working days: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fecha resultante de sumar N días laborables a una fecha.
+     *
+     * IN:
+     *  - calendarId (String)
+     *  - fromDate   (java.sql.Date): fecha de partida (no cuenta)
+     *  - days       (Integer): días laborables a sumar (>= 0)
+     *
+     * OUT:
+     *  - resultDate (java.sql.Date)
+     */
+    public static Map<String, Object> addWorkingDays(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String calendarId = (String) context.get("calendarId");
+        Date fromDate = (Date) context.get("fromDate");
+        Integer days = (Integer) context.get("days");
+
+        if (days < 0) {
+            return ServiceUtil.returnError("Working days to add must not be negative: " + days);
         }
+        try {
+            LocalDate resultDate = WorkingCalendarEngine.addWorkingDays(dctx.getDelegator(), calendarId, fromDate.toLocalDate(), days);
+            if (resultDate == null) {
+                return ServiceUtil.returnError("Calendar not found or without working days: " + calendarId);
+            }
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("resultDate", Date.valueOf(resultDate));
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error adding working days: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error adding working days: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Capacidad diaria de varios calendarios en [fromDate, thruDate) en una sola llamada.
+     * Los calendarios se calculan en paralelo en el pool de PlanningExecutors.
+     *
+     * IN:
+     *  - calendarIds (List): calendarios a consultar (los repetidos se calculan una vez)
+     *  - fromDate    (java.sql.Date): inclusive
+     *  - thruDate    (java.sql.Date): exclusive
+     *
+     * OUT:
+     *  - capacityByCalendar (Map): calendarId -> int[] con la capacidad en segundos de cada
+     *                              día (índice 0 = fromDate)
+     *  - dayCount           (Integer): longitud de los arrays
+     *  - unknownCalendarIds (List): calendarios que no existen
+     */
+    public static Map<String, Object> getCalendarCapacityBatch(DispatchContext dctx, Map<String, ? extends Object> context) {
+        final Delegator delegator = dctx.getDelegator();
+        @SuppressWarnings("unchecked")
+        List<String> calendarIds = (List<String>) context.get("calendarIds");
+        Date fromDate = (Date) context.get("fromDate");
+        Date thruDate = (Date) context.get("thruDate");
+
+        if (thruDate.before(fromDate)) {
+            return ServiceUtil.returnError("thruDate must not be before fromDate");
+        }
+        final LocalDate from = fromDate.toLocalDate();
+        final LocalDate thru = thruDate.toLocalDate();
+
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(calendarIds));
+        List<Callable<int[]>> tasks = new ArrayList<>(distinctIds.size());
+        for (final String calendarId : distinctIds) {
+            tasks.add(() -> WorkingCalendarEngine.dailyCapacitySeconds(delegator, calendarId, from, thru));
+        }
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("getCalendarCapacityBatch");
+        try {
+            List<int[]> capacities = PlanningExecutors.invokeAll(tasks);
+            Map<String, int[]> capacityByCalendar = new HashMap<>();
+            List<String> unknownCalendarIds = new ArrayList<>();
+            for (int i = 0; i < distinctIds.size(); i++) {
+                if (capacities.get(i) != null) {
+                    capacityByCalendar.put(distinctIds.get(i), capacities.get(i));
+                } else {
+                    unknownCalendarIds.add(distinctIds.get(i));
+                }
+            }
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("capacityByCalendar", capacityByCalendar);
+            result.put("dayCount", (int) ChronoUnit.DAYS.between(from, thru));
+            result.put("unknownCalendarIds", unknownCalendarIds);
+            timer.rows(capacityByCalendar.size());
+            return result;
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error loading calendar capacities: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error loading calendar capacities: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Vacía la caché de años de calendario (llamado desde las ECAs de entidad), y con ella los
+     * turnos compilados y los programas diarios, que salen de los calendarios. Se vacían al
+     * confirmarse la transacción del cambio.
+     */
+    public static Map<String, Object> clearWorkingCalendarCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+        PlanningTransactions.afterCommit(() -> {
+            WorkingCalendarEngine.clear();
+            ShiftTimelineEngine.clear();
+            DailyScheduler.clear();
+            MachineOccupancyIndex.clear();
+        });
+        return ServiceUtil.returnSuccess();
     }
-}
\ No newline at end of file
+}
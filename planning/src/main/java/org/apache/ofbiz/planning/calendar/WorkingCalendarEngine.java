@@ -0,0 +1,217 @@
+package org.apache.ofbiz.planning.calendar;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Motor de calendario laboral: expande un TechDataCalendar (semana tipo y días de excepción)
+ * en un {@link WorkingCalendarYear} por año y responde consultas de días laborables.
+ *
+ * Los años calculados se guardan en el UtilCache "planning.WorkingCalendar" por
+ * (calendarId, año); las ECAs sobre TechDataCalendar, TechDataCalendarWeek y
+ * TechDataCalendarExcDay lo vacían al confirmarse la transacción. Un año calculado mientras se
+ * vaciaba no se guarda, porque puede venir de las filas anteriores al cambio. Las capacidades de TechData están en milisegundos y aquí
+ * se guardan en segundos.
+ */
+public final class WorkingCalendarEngine {
+
+    public static final String module = WorkingCalendarEngine.class.getName();
+
+    public static final String CACHE_NAME = "planning.WorkingCalendar";
+
+    // Años sin ningún día laborable que se recorren antes de dar por imposible addWorkingDays
+    private static final int MAX_EMPTY_YEARS = 10;
+
+    private static final UtilCache<String, WorkingCalendarYear> yearCache =
+            UtilCache.createUtilCache(CACHE_NAME, 1000, 0L);
+
+    // Se incrementa en cada clear(); los años calculados antes no se guardan
+    private static final AtomicLong generation = new AtomicLong();
+
+    private WorkingCalendarEngine() {
+    }
+
+    /**
+     * Año de calendario calculado, o null si el calendario no existe.
+     */
+    public static WorkingCalendarYear getYear(Delegator delegator, String calendarId, int year) throws GenericEntityException {
+        String cacheKey = delegator.getDelegatorName() + "::" + calendarId + "::" + year;
+        WorkingCalendarYear calendarYear = yearCache.get(cacheKey);
+        if (calendarYear == null) {
+            long loadGeneration = generation.get();
+            calendarYear = buildYear(delegator, calendarId, year);
+            if (calendarYear == null) {
+                return null;
+            }
+            calendarYear = yearCache.putIfAbsentAndGet(cacheKey, calendarYear);
+            if (generation.get() != loadGeneration) {
+                yearCache.remove(cacheKey);
+            }
+        }
+        return calendarYear;
+    }
+
+    /**
+     * Días laborables en [fromDate, thruDate). Devuelve -1 si el calendario no existe.
+     */
+    public static int workingDaysBetween(Delegator delegator, String calendarId, LocalDate fromDate, LocalDate thruDate)
+            throws GenericEntityException {
+        int total = 0;
+        LocalDate cursor = fromDate;
+        while (cursor.isBefore(thruDate)) {
+            WorkingCalendarYear calendarYear = getYear(delegator, calendarId, cursor.getYear());
+            if (calendarYear == null) {
+                return -1;
+            }
+            int from = calendarYear.dayIndex(cursor);
+            int to = thruDate.getYear() == cursor.getYear() ? calendarYear.dayIndex(thruDate) : calendarYear.getDayCount();
+            total += calendarYear.workingDaysBetween(from, to);
+            cursor = LocalDate.of(cursor.getYear() + 1, 1, 1);
+        }
+        return total;
+    }
+
+    /**
+     * Fecha del n-ésimo día laborable posterior a fromDate (fromDate no cuenta); con n = 0
+     * devuelve fromDate. Devuelve null si el calendario no existe o no tiene días laborables.
+     */
+    public static LocalDate addWorkingDays(Delegator delegator, String calendarId, LocalDate fromDate, int days)
+            throws GenericEntityException {
+        if (days < 0) {
+            throw new IllegalArgumentException("Working days to add must not be negative: " + days);
+        }
+        if (days == 0) {
+            return fromDate;
+        }
+        int remaining = days;
+        LocalDate cursor = fromDate.plusDays(1);
+        int emptyYears = 0;
+        while (emptyYears < MAX_EMPTY_YEARS) {
+            WorkingCalendarYear calendarYear = getYear(delegator, calendarId, cursor.getYear());
+            if (calendarYear == null) {
+                return null;
+            }
+            int from = calendarYear.dayIndex(cursor);
+            int available = calendarYear.workingDaysBetween(from, calendarYear.getDayCount());
+            if (remaining <= available) {
+                return calendarYear.dateOf(calendarYear.nthWorkingDayFrom(from, remaining));
+            }
+            remaining -= available;
+            emptyYears = available == 0 ? emptyYears + 1 : 0;
+            cursor = LocalDate.of(cursor.getYear() + 1, 1, 1);
+        }
+        Debug.logWarning("Calendar " + calendarId + " has no working days in " + MAX_EMPTY_YEARS + " consecutive years", module);
+        return null;
+    }
+
+    /**
+     * Capacidad en segundos de cada día de [fromDate, thruDate); el índice 0 es fromDate.
+     * Devuelve null si el calendario no existe.
+     */
+    public static int[] dailyCapacitySeconds(Delegator delegator, String calendarId, LocalDate fromDate, LocalDate thruDate)
+            throws GenericEntityException {
+        int dayCount = (int) Math.max(0L, ChronoUnit.DAYS.between(fromDate, thruDate));
+        int[] capacity = new int[dayCount];
+        int offset = 0;
+        LocalDate cursor = fromDate;
+        while (offset < dayCount) {
+            WorkingCalendarYear calendarYear = getYear(delegator, calendarId, cursor.getYear());
+            if (calendarYear == null) {
+                return null;
+            }
+            int from = calendarYear.dayIndex(cursor);
+            int length = Math.min(calendarYear.getDayCount() - from, dayCount - offset);
+            calendarYear.copyCapacitySeconds(from, capacity, offset, length);
+            offset += length;
+            cursor = LocalDate.of(cursor.getYear() + 1, 1, 1);
+        }
+        return capacity;
+    }
+
+    public static void clear() {
+        generation.incrementAndGet();
+        yearCache.clear();
+    }
+
+    private static WorkingCalendarYear buildYear(Delegator delegator, String calendarId, int year) throws GenericEntityException {
+        GenericValue calendar = EntityQuery.use(delegator)
+                .from("TechDataCalendar")
+                .where("calendarId", calendarId)
+                .cache()
+                .queryOne();
+        if (calendar == null) {
+            return null;
+        }
+        GenericValue calendarWeek = null;
+        if (calendar.get("calendarWeekId") != null) {
+            calendarWeek = EntityQuery.use(delegator)
+                    .from("TechDataCalendarWeek")
+                    .where("calendarWeekId", calendar.getString("calendarWeekId"))
+                    .cache()
+                    .queryOne();
+        }
+
+        LocalDate firstDay = LocalDate.of(year, 1, 1);
+        int dayCount = firstDay.lengthOfYear();
+        int[] capacitySeconds = new int[dayCount];
+        int[] startSeconds = new int[dayCount];
+
+        // 1. Semana tipo: capacidad e inicio por día de la semana
+        if (calendarWeek != null) {
+            int[] weekCapacity = new int[7];
+            int[] weekStart = new int[7];
+            for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+                String prefix = dayOfWeek.name().toLowerCase();
+                Double capacity = calendarWeek.getDouble(prefix + "Capacity");
+                Time startTime = calendarWeek.getTime(prefix + "StartTime");
+                weekCapacity[dayOfWeek.ordinal()] = capacity != null ? (int) (capacity.longValue() / 1000L) : 0;
+                weekStart[dayOfWeek.ordinal()] = startTime != null ? startTime.toLocalTime().toSecondOfDay() : 0;
+            }
+            LocalDate day = firstDay;
+            for (int i = 0; i < dayCount; i++, day = day.plusDays(1)) {
+                int weekDay = day.getDayOfWeek().ordinal();
+                capacitySeconds[i] = weekCapacity[weekDay];
+                startSeconds[i] = weekStart[weekDay];
+            }
+        }
+
+        // 2. Días de excepción del año: sustituyen la capacidad y el inicio de la semana tipo
+        List<GenericValue> exceptionDays = EntityQuery.use(delegator)
+                .select("exceptionDateStartTime", "exceptionCapacity")
+                .from("TechDataCalendarExcDay")
+                .where(EntityCondition.makeCondition("calendarId", EntityOperator.EQUALS, calendarId),
+                       EntityCondition.makeCondition("exceptionDateStartTime", EntityOperator.GREATER_THAN_EQUAL_TO,
+                               Timestamp.valueOf(firstDay.atStartOfDay())),
+                       EntityCondition.makeCondition("exceptionDateStartTime", EntityOperator.LESS_THAN,
+                               Timestamp.valueOf(firstDay.plusYears(1).atStartOfDay())))
+                .queryList();
+        for (GenericValue exceptionDay : exceptionDays) {
+            LocalDateTime exceptionStart = exceptionDay.getTimestamp("exceptionDateStartTime").toLocalDateTime();
+            Double capacity = exceptionDay.getDouble("exceptionCapacity");
+            int i = exceptionStart.getDayOfYear() - 1;
+            capacitySeconds[i] = capacity != null ? (int) (capacity.longValue() / 1000L) : 0;
+            startSeconds[i] = exceptionStart.toLocalTime().toSecondOfDay();
+        }
+
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Built working calendar " + calendarId + " for " + year + " with "
+                    + exceptionDays.size() + " exception days", module);
+        }
+        return new WorkingCalendarYear(calendarId, year, capacitySeconds, startSeconds);
+    }
+}
@@ -0,0 +1,187 @@
+package org.apache.ofbiz.planning.calendar;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Representación compacta e inmutable de un año de un TechDataCalendar.
+ *
+ * Cada día del año (índice 0 = 1 de enero) tiene un bit de día laborable, la capacidad en
+ * segundos y la hora de inicio en segundos desde medianoche. Un array de acumulados permite
+ * contar días laborables entre dos fechas en O(1) y avanzar N días laborables en O(log n).
+ */
+public final class WorkingCalendarYear {
+
+    private final String calendarId;
+    private final int year;
+    private final LocalDate firstDay;
+    private final int dayCount;
+    private final long[] workingBitmap;
+    private final int[] capacitySeconds;
+    private final int[] startSeconds;
+    // workingDaysBefore[i] = días laborables en [0, i); longitud dayCount + 1
+    private final int[] workingDaysBefore;
+    private final long totalCapacitySeconds;
+
+    WorkingCalendarYear(String calendarId, int year, int[] capacitySeconds, int[] startSeconds) {
+        this.calendarId = calendarId;
+        this.year = year;
+        this.firstDay = LocalDate.of(year, 1, 1);
+        this.dayCount = capacitySeconds.length;
+        this.capacitySeconds = capacitySeconds;
+        this.startSeconds = startSeconds;
+        this.workingBitmap = new long[(dayCount + 63) >>> 6];
+        this.workingDaysBefore = new int[dayCount + 1];
+
+        long total = 0;
+        for (int day = 0; day < dayCount; day++) {
+            boolean working = capacitySeconds[day] > 0;
+            if (working) {
+                workingBitmap[day >>> 6] |= 1L << (day & 63);
+                total += capacitySeconds[day];
+            }
+            workingDaysBefore[day + 1] = workingDaysBefore[day] + (working ? 1 : 0);
+        }
+        this.totalCapacitySeconds = total;
+    }
+
+    public String getCalendarId() {
+        return calendarId;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    public int getWorkingDayCount() {
+        return workingDaysBefore[dayCount];
+    }
+
+    public long getTotalCapacitySeconds() {
+        return totalCapacitySeconds;
+    }
+
+    /**
+     * Índice del día dentro del año (0 = 1 de enero).
+     */
+    public int dayIndex(LocalDate date) {
+        return date.getDayOfYear() - 1;
+    }
+
+    public LocalDate dateOf(int dayIndex) {
+        return firstDay.plusDays(dayIndex);
+    }
+
+    public boolean isWorkingDay(int dayIndex) {
+        return (workingBitmap[dayIndex >>> 6] & (1L << (dayIndex & 63))) != 0;
+    }
+
+    public int getCapacitySeconds(int dayIndex) {
+        return capacitySeconds[dayIndex];
+    }
+
+    public int getStartSeconds(int dayIndex) {
+        return startSeconds[dayIndex];
+    }
+
+    /**
+     * Días laborables en [fromIndex, toIndex). O(1).
+     */
+    public int workingDaysBetween(int fromIndex, int toIndex) {
+        if (toIndex <= fromIndex) {
+            return 0;
+        }
+        return workingDaysBefore[toIndex] - workingDaysBefore[fromIndex];
+    }
+
+    /**
+     * Capacidad en segundos en [fromIndex, toIndex).
+     */
+    public long capacitySecondsBetween(int fromIndex, int toIndex) {
+        long total = 0;
+        for (int day = fromIndex; day < toIndex; day++) {
+            total += capacitySeconds[day];
+        }
+        return total;
+    }
+
+    /**
+     * Índice del n-ésimo día laborable (n >= 1) a partir de fromIndex inclusive, o -1 si el
+     * año no tiene tantos días laborables desde ahí. Búsqueda binaria sobre los acumulados.
+     */
+    public int nthWorkingDayFrom(int fromIndex, int n) {
+        int target = workingDaysBefore[fromIndex] + n;
+        if (n <= 0 || target > workingDaysBefore[dayCount]) {
+            return -1;
+        }
+        // Menor i tal que workingDaysBefore[i + 1] >= target
+        int low = fromIndex;
+        int high = dayCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (workingDaysBefore[mid + 1] >= target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Copia del bitmap de días laborables (bit i = día i del año).
+     */
+    public long[] getWorkingBitmap() {
+        return workingBitmap.clone();
+    }
+
+    /**
+     * Copia de la capacidad por día en segundos.
+     */
+    public int[] getCapacitySecondsArray() {
+        return capacitySeconds.clone();
+    }
+
+    /**
+     * Copia la capacidad de [fromIndex, fromIndex + length) en target a partir de targetOffset.
+     */
+    public void copyCapacitySeconds(int fromIndex, int[] target, int targetOffset, int length) {
+        System.arraycopy(capacitySeconds, fromIndex, target, targetOffset, length);
+    }
+
+    /**
+     * Representación para el parámetro OUT yearCalendar de getCalendarYearData.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> yearCalendar = new HashMap<>();
+        yearCalendar.put("calendarId", calendarId);
+        yearCalendar.put("year", year);
+        yearCalendar.put("dayCount", dayCount);
+        yearCalendar.put("workingDayCount", getWorkingDayCount());
+        yearCalendar.put("totalCapacitySeconds", totalCapacitySeconds);
+        yearCalendar.put("workingDayBitmap", getWorkingBitmap());
+        yearCalendar.put("capacitySeconds", getCapacitySecondsArray());
+
+        // Resumen mensual para las pantallas
+        List<Map<String, Object>> months = new ArrayList<>(12);
+        for (int month = 1; month <= 12; month++) {
+            LocalDate monthStart = LocalDate.of(year, month, 1);
+            int from = dayIndex(monthStart);
+            int to = from + monthStart.lengthOfMonth();
+            Map<String, Object> monthData = new HashMap<>();
+            monthData.put("month", month);
+            monthData.put("workingDays", workingDaysBetween(from, to));
+            monthData.put("capacitySeconds", capacitySecondsBetween(from, to));
+            months.add(monthData);
+        }
+        yearCalendar.put("months", months);
+        return yearCalendar;
+    }
+}
@@ -0,0 +1,123 @@
+package org.apache.ofbiz.planning.change;
+
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.planning.weekly.WeeklyPlan;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicios del recálculo incremental ({@link PlanningChangeTracker}): los de anotar cambios se
+ * llaman desde ECA y solo apuntan el cambio, sin consultar.
+ */
+public class PlanningChangeServices {
+
+    public static final String module = PlanningChangeServices.class.getName();
+
+    /**
+     * Anota un cambio de FixedAsset (llamado desde ECA).
+     */
+    public static Map<String, Object> markPlanningMachineChange(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String fixedAssetId = (String) context.get("fixedAssetId");
+        if (UtilValidate.isNotEmpty(fixedAssetId)) {
+            PlanningChangeTracker.markMachine(dctx.getDelegator(), fixedAssetId);
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Anota un cambio de un grupo de planificación, de su facility o de sus referencias
+     * (llamado desde ECA de ProductCategory, ProductCategoryAttribute y ProductCategoryMember).
+     * Si no llega el tipo de categoría (ProductCategoryMember) se apunta la categoría tal cual y
+     * se mira si es un grupo de planificación al aplicar los cambios.
+     */
+    public static Map<String, Object> markPlanningGroupChange(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productCategoryId = (String) context.get("productCategoryId");
+        String productCategoryTypeId = (String) context.get("productCategoryTypeId");
+
+        if (UtilValidate.isEmpty(productCategoryId)) {
+            return ServiceUtil.returnSuccess();
+        }
+        if ("PLANNING_GROUP".equals(productCategoryTypeId)) {
+            PlanningChangeTracker.markPlanningGroup(delegator, productCategoryId);
+        } else if (productCategoryTypeId == null) {
+            PlanningChangeTracker.markCategory(delegator, productCategoryId);
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Anota un cambio de calendario (llamado desde ECA de TechDataCalendar,
+     * TechDataCalendarWeek y TechDataCalendarExcDay). Un día de excepción solo afecta a su
+     * semana; una semana tipo, a los calendarios que la usan.
+     */
+    public static Map<String, Object> markPlanningCalendarChange(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String calendarId = (String) context.get("calendarId");
+        String calendarWeekId = (String) context.get("calendarWeekId");
+        Timestamp exceptionDateStartTime = (Timestamp) context.get("exceptionDateStartTime");
+
+        if (UtilValidate.isNotEmpty(calendarId)) {
+            PlanningChangeTracker.markCalendar(dctx.getDelegator(), calendarId,
+                    exceptionDateStartTime != null ? exceptionDateStartTime.toLocalDateTime().toLocalDate() : null);
+        } else if (UtilValidate.isNotEmpty(calendarWeekId)) {
+            PlanningChangeTracker.markCalendarWeek(dctx.getDelegator(), calendarWeekId);
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Aplica ya los cambios pendientes, sin esperar al final de la ventana de agrupación.
+     *
+     * OUT:
+     *  - updatedPlanCount (Integer): planes semanales actualizados
+     */
+    public static Map<String, Object> flushPlanningChanges(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("updatedPlanCount", PlanningChangeTracker.flush());
+        return result;
+    }
+
+    /**
+     * Cambios pendientes y planes vigentes.
+     *
+     * OUT:
+     *  - pendingCounts        (Map<String,Integer>): fixedAssetIds, productCategoryIds, calendarIds, calendarWeekIds
+     *  - livePlans            (List<Map<String,Object>>): facilityId, horizonStart, weekCount, machineCount,
+     *                         refCount, publishedStamp, updatedStamp, updateCount
+     *  - lastFlushStamp       (Timestamp)
+     *  - lastFlushUpdatedPlans (Integer)
+     */
+    public static Map<String, Object> getPlanningChangeStatus(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+
+        List<Map<String, Object>> livePlans = new ArrayList<>();
+        for (PlanningChangeTracker.LivePlan live : PlanningChangeTracker.getLivePlans(delegator)) {
+            WeeklyPlan plan = live.getPlan();
+            Map<String, Object> row = new HashMap<>();
+            row.put("facilityId", plan.getFacilityId());
+            row.put("horizonStart", Date.valueOf(plan.getHorizonStart()));
+            row.put("weekCount", plan.getWeekCount());
+            row.put("machineCount", plan.getMachineCount());
+            row.put("refCount", plan.getRefCount());
+            row.put("publishedStamp", new Timestamp(live.getPublishedMillis()));
+            row.put("updatedStamp", new Timestamp(live.getUpdatedMillis()));
+            row.put("updateCount", live.getUpdateCount());
+            livePlans.add(row);
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("pendingCounts", PlanningChangeTracker.getPendingCounts(delegator));
+        result.put("livePlans", livePlans);
+        result.put("lastFlushStamp", PlanningChangeTracker.getLastFlushStamp());
+        result.put("lastFlushUpdatedPlans", PlanningChangeTracker.getLastFlushUpdatedPlans());
+        return result;
+    }
+}
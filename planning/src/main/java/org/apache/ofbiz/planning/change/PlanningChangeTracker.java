@@ -0,0 +1,402 @@
+package org.apache.ofbiz.planning.change;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningExecutors;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.daily.DailyScheduler;
+import org.apache.ofbiz.planning.occupancy.MachineOccupancyIndex;
+import org.apache.ofbiz.planning.weekly.WeeklyPlan;
+import org.apache.ofbiz.planning.weekly.WeeklyPlanEngine;
+import org.apache.ofbiz.planning.weekly.WeeklyPlanUpdater;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Planes vigentes en memoria y recálculo incremental tras cambios en máquinas, grupos de
+ * planificación y calendarios.
+ *
+ * El último plan semanal calculado de cada facility se publica aquí (computeWeeklyPlan, las
+ * ejecuciones en segundo plano). Las ECAs de FixedAsset, ProductCategory,
+ * ProductCategoryAttribute, ProductCategoryMember y los calendarios anotan lo que cambia en un
+ * conjunto de cambios pendientes al confirmarse su transacción; los cambios que llegan dentro de
+ * planning.change.debounce.millis se aplican juntos con {@link WeeklyPlanUpdater} a cada plan
+ * publicado, y los programas diarios cacheados de los grupos afectados se descartan.
+ *
+ * Los planes publicados reflejan los cambios de máquinas, grupos y calendarios, no los de la
+ * demanda (Requirement): para eso hay que volver a calcularlos.
+ */
+public final class PlanningChangeTracker {
+
+    public static final String module = PlanningChangeTracker.class.getName();
+
+    private static final long DEBOUNCE_MILLIS = Math.max(0,
+            UtilProperties.getPropertyAsInteger("planning", "planning.change.debounce.millis", 2000));
+
+    private static final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(
+            PlanningExecutors.newThreadFactory(new ThreadGroup("planning-change")));
+
+    private static final String ALL_FACILITIES = "_NA_";
+
+    // Máximo de valores en una condición IN
+    private static final int MAX_IN_SIZE = 1000;
+
+    // Plan vigente por delegator::facility
+    private static final Map<String, LivePlan> livePlans = new ConcurrentHashMap<>();
+    // Cambios pendientes por delegator; protegidos por el monitor de la clase
+    private static final Map<String, PendingChanges> pendingChanges = new HashMap<>();
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Un solo flush a la vez, para que dos no actualicen el mismo plan en paralelo
+    private static final Object flushLock = new Object();
+
+    private static volatile long lastFlushMillis;
+    private static volatile int lastFlushUpdatedPlans;
+
+    private PlanningChangeTracker() {
+    }
+
+    /**
+     * Plan publicado con la fecha de publicación y las actualizaciones incrementales aplicadas.
+     */
+    public static final class LivePlan {
+        private final WeeklyPlan plan;
+        private final long publishedMillis;
+        private final long updatedMillis;
+        private final int updateCount;
+
+        private LivePlan(WeeklyPlan plan, long publishedMillis, long updatedMillis, int updateCount) {
+            this.plan = plan;
+            this.publishedMillis = publishedMillis;
+            this.updatedMillis = updatedMillis;
+            this.updateCount = updateCount;
+        }
+
+        public WeeklyPlan getPlan() {
+            return plan;
+        }
+
+        public long getPublishedMillis() {
+            return publishedMillis;
+        }
+
+        public long getUpdatedMillis() {
+            return updatedMillis;
+        }
+
+        public int getUpdateCount() {
+            return updateCount;
+        }
+    }
+
+    private static final class PendingChanges {
+        private final Delegator delegator;
+        private final Set<String> fixedAssetIds = new HashSet<>();
+        private final Set<String> productCategoryIds = new HashSet<>();
+        // Categorías de un ProductCategoryMember cambiado: se ve al aplicar si son grupos de planificación
+        private final Set<String> memberCategoryIds = new HashSet<>();
+        private final Set<String> calendarWeekIds = new HashSet<>();
+        // Calendario → lunes de las semanas cambiadas; vacío = todo el calendario
+        private final Map<String, Set<LocalDate>> calendarWeeks = new HashMap<>();
+
+        private PendingChanges(Delegator delegator) {
+            this.delegator = delegator;
+        }
+
+        private void addCalendar(String calendarId, LocalDate date) {
+            Set<LocalDate> weeks = calendarWeeks.get(calendarId);
+            if (weeks == null) {
+                weeks = new HashSet<>();
+                if (date != null) {
+                    weeks.add(WeeklyPlanEngine.weekStartOf(date));
+                }
+                calendarWeeks.put(calendarId, weeks);
+            } else if (!weeks.isEmpty()) {
+                if (date != null) {
+                    weeks.add(WeeklyPlanEngine.weekStartOf(date));
+                } else {
+                    weeks.clear();
+                }
+            }
+        }
+
+        private int size() {
+            return fixedAssetIds.size() + productCategoryIds.size() + memberCategoryIds.size() + calendarWeekIds.size() + calendarWeeks.size();
+        }
+    }
+
+    /**
+     * Publica el plan como vigente para su facility, sustituyendo al anterior.
+     */
+    public static void publish(Delegator delegator, WeeklyPlan plan) {
+        long now = System.currentTimeMillis();
+        livePlans.put(planKey(delegator, plan.getFacilityId()), new LivePlan(plan, now, now, 0));
+    }
+
+    /**
+     * Plan vigente de la facility (null = toda la planta), o null si no hay.
+     */
+    public static LivePlan getLivePlan(Delegator delegator, String facilityId) {
+        return livePlans.get(planKey(delegator, facilityId));
+    }
+
+    public static List<LivePlan> getLivePlans(Delegator delegator) {
+        List<LivePlan> plans = new ArrayList<>();
+        String prefix = delegator.getDelegatorName() + "::";
+        for (Map.Entry<String, LivePlan> entry : livePlans.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                plans.add(entry.getValue());
+            }
+        }
+        return plans;
+    }
+
+    public static void markMachine(Delegator delegator, final String fixedAssetId) {
+        record(delegator, changes -> changes.fixedAssetIds.add(fixedAssetId));
+    }
+
+    public static void markPlanningGroup(Delegator delegator, final String productCategoryId) {
+        record(delegator, changes -> changes.productCategoryIds.add(productCategoryId));
+    }
+
+    /**
+     * Anota una categoría de la que no se sabe el tipo; solo cuenta si al aplicar es un grupo
+     * de planificación.
+     */
+    public static void markCategory(Delegator delegator, final String productCategoryId) {
+        record(delegator, changes -> changes.memberCategoryIds.add(productCategoryId));
+    }
+
+    /**
+     * @param date día de excepción cambiado, o null si cambia todo el calendario
+     */
+    public static void markCalendar(Delegator delegator, final String calendarId, final LocalDate date) {
+        record(delegator, changes -> changes.addCalendar(calendarId, date));
+    }
+
+    public static void markCalendarWeek(Delegator delegator, final String calendarWeekId) {
+        record(delegator, changes -> changes.calendarWeekIds.add(calendarWeekId));
+    }
+
+    /**
+     * Cambios pendientes de aplicar: fixedAssetIds, productCategoryIds, calendarIds, calendarWeekIds.
+     */
+    public static synchronized Map<String, Integer> getPendingCounts(Delegator delegator) {
+        PendingChanges changes = pendingChanges.get(delegator.getDelegatorName());
+        Map<String, Integer> counts = new HashMap<>();
+        counts.put("fixedAssetIds", changes != null ? changes.fixedAssetIds.size() : 0);
+        counts.put("productCategoryIds", changes != null ? changes.productCategoryIds.size() + changes.memberCategoryIds.size() : 0);
+        counts.put("calendarIds", changes != null ? changes.calendarWeeks.size() : 0);
+        counts.put("calendarWeekIds", changes != null ? changes.calendarWeekIds.size() : 0);
+        return counts;
+    }
+
+    public static Timestamp getLastFlushStamp() {
+        return lastFlushMillis > 0 ? new Timestamp(lastFlushMillis) : null;
+    }
+
+    public static int getLastFlushUpdatedPlans() {
+        return lastFlushUpdatedPlans;
+    }
+
+    /**
+     * Aplica ya los cambios pendientes de todos los delegators.
+     *
+     * @return planes actualizados
+     */
+    public static int flush() {
+        synchronized (flushLock) {
+            List<PendingChanges> drained;
+            synchronized (PlanningChangeTracker.class) {
+                flushScheduled.set(false);
+                drained = new ArrayList<>(pendingChanges.values());
+                pendingChanges.clear();
+            }
+            int updated = 0;
+            for (PendingChanges changes : drained) {
+                PlanningMetrics.Timer timer = PlanningMetrics.start("planningChangeFlush");
+                try {
+                    updated += apply(changes);
+                    timer.rows(changes.size());
+                } catch (GenericEntityException | RuntimeException e) {
+                    timer.error();
+                    Debug.logError(e, "Error applying planning changes of " + changes.delegator.getDelegatorName()
+                            + "; discarding its live plans and daily schedules: " + e.getMessage(), module);
+                    discard(changes.delegator);
+                } finally {
+                    timer.close();
+                }
+            }
+            lastFlushMillis = System.currentTimeMillis();
+            lastFlushUpdatedPlans = updated;
+            return updated;
+        }
+    }
+
+    // Si no se han podido aplicar los cambios, los planes vigentes ya no están al día: se quitan
+    // para que la siguiente consulta los calcule de cero, igual que los programas diarios
+    private static void discard(Delegator delegator) {
+        String prefix = delegator.getDelegatorName() + "::";
+        livePlans.keySet().removeIf(key -> key.startsWith(prefix));
+        DailyScheduler.clear();
+        MachineOccupancyIndex.clear();
+    }
+
+    // Anota el cambio al confirmarse la transacción en curso (se descarta si se deshace)
+    private static void record(final Delegator delegator, final Consumer<PendingChanges> change) {
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                TransactionUtil.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == Status.STATUS_COMMITTED) {
+                            add(delegator, change);
+                        }
+                    }
+                });
+                return;
+            }
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Could not wait for the transaction to record a planning change; recording it now", module);
+        }
+        add(delegator, change);
+    }
+
+    private static void add(Delegator delegator, Consumer<PendingChanges> change) {
+        synchronized (PlanningChangeTracker.class) {
+            change.accept(pendingChanges.computeIfAbsent(delegator.getDelegatorName(), key -> new PendingChanges(delegator)));
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            flushExecutor.schedule(PlanningChangeTracker::flush, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static int apply(PendingChanges changes) throws GenericEntityException {
+        Delegator delegator = changes.delegator;
+        List<LivePlan> plans = getLivePlans(delegator);
+        int updated = 0;
+        boolean beganTransaction = TransactionUtil.begin(600);
+        try {
+            // Categorías de miembros cambiados: solo cuentan los grupos de planificación
+            changes.productCategoryIds.addAll(fieldListByIds(delegator, "ProductCategory", "productCategoryId",
+                    "productCategoryId", changes.memberCategoryIds,
+                    EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP")));
+
+            // Semanas tipo cambiadas: cambian los calendarios que las usan
+            for (String calendarId : fieldListByIds(delegator, "TechDataCalendar", "calendarId", "calendarWeekId",
+                    changes.calendarWeekIds, null)) {
+                changes.addCalendar(calendarId, null);
+            }
+
+            for (LivePlan live : plans) {
+                WeeklyPlan plan = WeeklyPlanUpdater.update(delegator, live.plan, changes.fixedAssetIds,
+                        !changes.productCategoryIds.isEmpty(), changes.calendarWeeks);
+                // Si entretanto se ha publicado un plan nuevo, ese ya se ha calculado de cero
+                if (plan != live.plan && livePlans.replace(planKey(delegator, plan.getFacilityId()), live,
+                        new LivePlan(plan, live.publishedMillis, System.currentTimeMillis(), live.updateCount + 1))) {
+                    updated++;
+                }
+            }
+
+            int removedSchedules = DailyScheduler.removeGroups(delegator, affectedGroups(delegator, changes, plans));
+            // La ocupación sale de máquinas, turnos y programas diarios: se vuelve a calcular entera
+            MachineOccupancyIndex.clear();
+            TransactionUtil.commit(beganTransaction);
+            Debug.logInfo("Planning changes applied: " + changes.fixedAssetIds.size() + " machines, "
+                    + changes.productCategoryIds.size() + " planning groups, " + changes.calendarWeeks.size()
+                    + " calendars; " + updated + " of " + plans.size() + " weekly plans updated, "
+                    + removedSchedules + " daily schedules discarded", module);
+            return updated;
+        } catch (GenericEntityException | RuntimeException e) {
+            TransactionUtil.rollback(beganTransaction, "Error applying planning changes", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Grupos cuyos programas diarios dependen de los cambios: los cambiados y los de las
+     * facilities de las máquinas cambiadas (la de ahora y la de los planes publicados). Los
+     * cambios de calendario ya vacían todos los programas (clearWorkingCalendarCache).
+     */
+    private static Set<String> affectedGroups(Delegator delegator, PendingChanges changes, List<LivePlan> plans)
+            throws GenericEntityException {
+        Set<String> groupIds = new HashSet<>(changes.productCategoryIds);
+        if (changes.fixedAssetIds.isEmpty()) {
+            return groupIds;
+        }
+        Set<String> facilityIds = new HashSet<>();
+        for (String facilityId : fieldListByIds(delegator, "FixedAsset", "locatedAtFacilityId", "fixedAssetId",
+                changes.fixedAssetIds, null)) {
+            if (facilityId != null) {
+                facilityIds.add(facilityId);
+            }
+        }
+        for (LivePlan live : plans) {
+            for (String fixedAssetId : changes.fixedAssetIds) {
+                int machine = live.plan.machineIndex(fixedAssetId);
+                if (machine >= 0 && live.plan.getMachineFacilityId(machine) != null) {
+                    facilityIds.add(live.plan.getMachineFacilityId(machine));
+                }
+            }
+        }
+        if (!facilityIds.isEmpty()) {
+            groupIds.addAll(EntityQuery.use(delegator)
+                    .select("productCategoryId")
+                    .from("PlanningGroupAndFacility")
+                    .where(EntityCondition.makeCondition(
+                            EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP"),
+                            EntityOperator.AND,
+                            EntityCondition.makeCondition("facilityAttrValue", EntityOperator.IN, facilityIds)))
+                    .<String>getFieldList("productCategoryId"));
+        }
+        return groupIds;
+    }
+
+    // Método auxiliar: selectField de las filas cuyo idField está en ids (y que cumplen condition,
+    // si no es null), con un IN por cada bloque de MAX_IN_SIZE ids
+    private static List<String> fieldListByIds(Delegator delegator, String entityName, String selectField, String idField,
+            Collection<String> ids, EntityCondition condition) throws GenericEntityException {
+        List<String> values = new ArrayList<>();
+        List<String> idList = new ArrayList<>(ids);
+        for (int from = 0; from < idList.size(); from += MAX_IN_SIZE) {
+            EntityCondition idCondition = EntityCondition.makeCondition(idField, EntityOperator.IN,
+                    idList.subList(from, Math.min(idList.size(), from + MAX_IN_SIZE)));
+            values.addAll(EntityQuery.use(delegator)
+                    .select(selectField)
+                    .from(entityName)
+                    .where(condition != null ? EntityCondition.makeCondition(idCondition, EntityOperator.AND, condition) : idCondition)
+                    .<String>getFieldList(selectField));
+        }
+        return values;
+    }
+
+    private static String planKey(Delegator delegator, String facilityId) {
+        return delegator.getDelegatorName() + "::" + (facilityId != null ? facilityId : ALL_FACILITIES);
+    }
+}
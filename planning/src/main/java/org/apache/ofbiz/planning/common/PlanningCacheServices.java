@@ -0,0 +1,68 @@
+package org.apache.ofbiz.planning.common;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.util.Map;
+
+/**
+ * Servicios de administración de las cachés y métricas de Planning.
+ */
+public class PlanningCacheServices {
+
+    public static final String module = PlanningCacheServices.class.getName();
+
+    /**
+     * Vacía la caché de datos de referencia (llamado desde las ECAs de entidad) al confirmarse
+     * la transacción del que escribe.
+     */
+    public static Map<String, Object> clearPlanningReferenceCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+        PlanningTransactions.afterCommit(() -> {
+            PlanningReferenceCache.clear();
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Planning reference data cache cleared", module);
+            }
+        });
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Estadísticas de la caché de datos de referencia.
+     *
+     * OUT:
+     *  - cacheName, size, hitCount, missCount, expireTime
+     */
+    public static Map<String, Object> getPlanningReferenceCacheStats(DispatchContext dctx, Map<String, ? extends Object> context) {
+        UtilCache<?, ?> cache = PlanningReferenceCache.getCache();
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("cacheName", cache.getName());
+        result.put("size", cache.size());
+        result.put("hitCount", cache.getHitCount());
+        result.put("missCount", cache.getMissCountTotal());
+        result.put("expireTime", cache.getExpireTime());
+        return result;
+    }
+
+    /**
+     * Métricas de los servicios de Planning desde el arranque o el último reset.
+     *
+     * OUT:
+     *  - metrics (List<Map<String,Object>>): name, calls, errors, totalMillis, avgMillis,
+     *            maxMillis, rows, queries
+     */
+    public static Map<String, Object> getPlanningMetrics(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("metrics", PlanningMetrics.snapshot());
+        return result;
+    }
+
+    /**
+     * Pone a cero las métricas de los servicios de Planning.
+     */
+    public static Map<String, Object> resetPlanningMetrics(DispatchContext dctx, Map<String, ? extends Object> context) {
+        PlanningMetrics.reset();
+        return ServiceUtil.returnSuccess();
+    }
+}
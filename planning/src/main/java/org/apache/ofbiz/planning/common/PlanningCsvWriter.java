@@ -0,0 +1,85 @@
+package org.apache.ofbiz.planning.common;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Escritura de CSV directamente sobre la respuesta HTTP para las exportaciones de Planning.
+ *
+ * Las filas se escriben según se leen de la base de datos; flush() envía al cliente lo
+ * escrito hasta ese momento. El fichero empieza con BOM UTF-8 y usa punto y coma como
+ * separador para que Excel lo abra con acentos y columnas correctas. Los valores que empiezan
+ * por =, +, - o @ se escriben precedidos de ' para que Excel no los tome como fórmulas.
+ */
+public class PlanningCsvWriter implements AutoCloseable {
+
+    public static final String module = PlanningCsvWriter.class.getName();
+
+    private static final char SEPARATOR = ';';
+
+    private final Writer writer;
+    private long rowCount;
+
+    private PlanningCsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Prepara la respuesta como descarga de un CSV y escribe el BOM.
+     */
+    public static PlanningCsvWriter open(HttpServletResponse response, String fileName) throws IOException {
+        response.setContentType("text/csv");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        writer.write('\uFEFF');
+        return new PlanningCsvWriter(writer);
+    }
+
+    public void writeRow(String... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(SEPARATOR);
+            }
+            writeValue(values[i]);
+        }
+        writer.write("\r\n");
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeValue(String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        char first = value.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@') {
+            value = "'" + value;
+        }
+        boolean quote = value.indexOf(SEPARATOR) >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,109 @@
+package org.apache.ofbiz.planning.common;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.GenericEntityException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pools de hilos compartidos de Planning.
+ *
+ * - compute: cálculos paralelos cortos (capacidades por calendario). Tamaño
+ *   planning.compute.threads (por defecto, el número de procesadores). Las tareas lanzadas
+ *   desde un hilo del propio pool se ejecutan en el mismo hilo para no bloquear el pool con
+ *   tareas anidadas.
+ * - run: ejecuciones de planificación completas, una por facility, cada una con su propia
+ *   transacción. Tamaño planning.run.threads (por defecto, el número de procesadores). Es un
+ *   pool aparte para que las ejecuciones puedan usar el pool de cálculo sin agotarlo.
+ */
+public final class PlanningExecutors {
+
+    public static final String module = PlanningExecutors.class.getName();
+
+    private static final ThreadGroup COMPUTE_GROUP = new ThreadGroup("planning-compute");
+
+    private static final ExecutorService computeExecutor = Executors.newFixedThreadPool(
+            threads("planning.compute.threads"), newThreadFactory(COMPUTE_GROUP));
+
+    private static final ExecutorService runExecutor = Executors.newFixedThreadPool(
+            threads("planning.run.threads"), newThreadFactory(new ThreadGroup("planning-run")));
+
+    private PlanningExecutors() {
+    }
+
+    public static ExecutorService getComputeExecutor() {
+        return computeExecutor;
+    }
+
+    public static ExecutorService getRunExecutor() {
+        return runExecutor;
+    }
+
+    /**
+     * Ejecuta las tareas en el pool de cálculo y devuelve sus resultados en el mismo orden.
+     * Los errores de entidad de las tareas se relanzan como GenericEntityException.
+     */
+    public static <T> List<T> invokeAll(Collection<? extends Callable<T>> tasks) throws GenericEntityException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (isComputeThread() || tasks.size() <= 1) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+            for (Future<T> future : computeExecutor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenericEntityException("Interrupted while waiting for planning tasks", e);
+        } catch (ExecutionException e) {
+            throw asEntityException(e.getCause());
+        } catch (Exception e) {
+            throw asEntityException(e);
+        }
+    }
+
+    /**
+     * Crea una factoría de hilos daemon con nombre dentro del grupo indicado.
+     */
+    public static ThreadFactory newThreadFactory(final ThreadGroup group) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(group, runnable, group.getName() + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static boolean isComputeThread() {
+        return Thread.currentThread().getThreadGroup() == COMPUTE_GROUP;
+    }
+
+    private static GenericEntityException asEntityException(Throwable t) {
+        if (t instanceof GenericEntityException) {
+            return (GenericEntityException) t;
+        }
+        return new GenericEntityException("Error in planning task: " + t.getMessage(), t);
+    }
+
+    private static int threads(String property) {
+        int threads = UtilProperties.getPropertyAsInteger("planning", property, 0);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,127 @@
+package org.apache.ofbiz.planning.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas en memoria de los servicios de Planning: llamadas, errores, tiempo, filas
+ * devueltas y consultas por servicio.
+ *
+ * Uso:
+ * <pre>
+ * try (PlanningMetrics.Timer timer = PlanningMetrics.start("searchMachinery")) {
+ *     ...
+ *     timer.query();
+ *     timer.rows(results.size());
+ * }
+ * </pre>
+ * Los contadores son LongAdder, así que registrar una llamada no bloquea ni reserva memoria
+ * salvo el propio Timer. Se consultan con el servicio getPlanningMetrics.
+ */
+public final class PlanningMetrics {
+
+    public static final String module = PlanningMetrics.class.getName();
+
+    private static final ConcurrentMap<String, Stats> statsByName = new ConcurrentHashMap<>();
+
+    private PlanningMetrics() {
+    }
+
+    private static final class Stats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder queries = new LongAdder();
+    }
+
+    /**
+     * Medición de una llamada; se registra al cerrarla.
+     */
+    public static final class Timer implements AutoCloseable {
+        private final Stats stats;
+        private final long startNanos = System.nanoTime();
+        private long rows;
+        private long queries;
+        private boolean error;
+
+        private Timer(Stats stats) {
+            this.stats = stats;
+        }
+
+        public void rows(long count) {
+            rows += count;
+        }
+
+        public void query() {
+            queries++;
+        }
+
+        public void queries(long count) {
+            queries += count;
+        }
+
+        public void error() {
+            error = true;
+        }
+
+        @Override
+        public void close() {
+            long elapsed = System.nanoTime() - startNanos;
+            stats.calls.increment();
+            stats.totalNanos.add(elapsed);
+            stats.rows.add(rows);
+            stats.queries.add(queries);
+            if (error) {
+                stats.errors.increment();
+            }
+            long max = stats.maxNanos.get();
+            while (elapsed > max && !stats.maxNanos.compareAndSet(max, elapsed)) {
+                max = stats.maxNanos.get();
+            }
+        }
+    }
+
+    public static Timer start(String name) {
+        Stats stats = statsByName.get(name);
+        if (stats == null) {
+            stats = statsByName.computeIfAbsent(name, k -> new Stats());
+        }
+        return new Timer(stats);
+    }
+
+    /**
+     * Una fila por métrica, ordenadas por nombre.
+     */
+    public static List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        for (Map.Entry<String, Stats> entry : new TreeMap<>(statsByName).entrySet()) {
+            Stats stats = entry.getValue();
+            long calls = stats.calls.sum();
+            long totalNanos = stats.totalNanos.sum();
+            Map<String, Object> metric = new HashMap<>();
+            metric.put("name", entry.getKey());
+            metric.put("calls", calls);
+            metric.put("errors", stats.errors.sum());
+            metric.put("totalMillis", totalNanos / 1000000L);
+            metric.put("avgMillis", calls > 0 ? (double) totalNanos / calls / 1000000.0 : 0.0);
+            metric.put("maxMillis", stats.maxNanos.get() / 1000000.0);
+            metric.put("rows", stats.rows.sum());
+            metric.put("queries", stats.queries.sum());
+            metrics.add(metric);
+        }
+        return metrics;
+    }
+
+    public static void reset() {
+        statsByName.clear();
+    }
+}
@@ -0,0 +1,19 @@
+package org.apache.ofbiz.planning.common;
+
+/**
+ * Avance de un cálculo de planificación largo. El cálculo llama a {@link #phase} al empezar
+ * cada fase; la implementación puede registrar el avance y cortar el cálculo lanzando
+ * CancellationException si la ejecución se ha cancelado.
+ */
+public interface PlanningProgress {
+
+    /** Sin seguimiento: los cálculos síncronos de los servicios. */
+    PlanningProgress NONE = description -> { };
+
+    /**
+     * Empieza una fase del cálculo.
+     *
+     * @throws java.util.concurrent.CancellationException si la ejecución se ha cancelado
+     */
+    void phase(String description);
+}
@@ -0,0 +1,71 @@
+package org.apache.ofbiz.planning.common;
+
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché en memoria de los datos de referencia de las pantallas de Planning
+ * (facilities, tipos de activo, proyectos y tipos de categoría).
+ *
+ * Usa un UtilCache ("planning.ReferenceData"), por lo que el tamaño y la caducidad se pueden
+ * ajustar en cache.properties y los contadores de aciertos/fallos se ven en Webtools.
+ * Las ECAs de entitydef/eecas.xml la vacían cuando cambian las entidades de origen.
+ */
+public final class PlanningReferenceCache {
+
+    public static final String module = PlanningReferenceCache.class.getName();
+
+    public static final String CACHE_NAME = "planning.ReferenceData";
+
+    // Pocas entradas por delegator; caducidad de una hora por si algún cambio no pasa por las ECAs
+    private static final UtilCache<String, List<GenericValue>> referenceCache =
+            UtilCache.createUtilCache(CACHE_NAME, 100, 3600000L);
+
+    // Se incrementa en cada clear(); las listas cargadas antes no se guardan
+    private static final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Carga de una lista de referencia desde base de datos.
+     */
+    public interface Loader {
+        List<GenericValue> load() throws GenericEntityException;
+    }
+
+    private PlanningReferenceCache() {
+    }
+
+    /**
+     * Devuelve la lista cacheada bajo la clave indicada, cargándola si no está.
+     * La lista devuelta no es modificable.
+     */
+    public static List<GenericValue> get(Delegator delegator, String key, Loader loader) throws GenericEntityException {
+        String cacheKey = delegator.getDelegatorName() + "::" + key;
+        List<GenericValue> values = referenceCache.get(cacheKey);
+        if (values == null) {
+            long loadGeneration = generation.get();
+            List<GenericValue> loaded = loader.load();
+            values = Collections.unmodifiableList(loaded != null ? loaded : new ArrayList<GenericValue>());
+            values = referenceCache.putIfAbsentAndGet(cacheKey, values);
+            if (generation.get() != loadGeneration) {
+                referenceCache.remove(cacheKey);
+            }
+        }
+        return values;
+    }
+
+    public static void clear() {
+        generation.incrementAndGet();
+        referenceCache.clear();
+    }
+
+    public static UtilCache<String, List<GenericValue>> getCache() {
+        return referenceCache;
+    }
+}
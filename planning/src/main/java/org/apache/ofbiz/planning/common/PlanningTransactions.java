@@ -0,0 +1,56 @@
+package org.apache.ofbiz.planning.common;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+/**
+ * Acciones sobre las cachés en memoria de Planning que tienen que esperar a que se confirme
+ * la transacción en curso.
+ *
+ * Las ECAs se ejecutan dentro de la transacción del que escribe: si una caché se vaciase en
+ * ese momento, otra petición podría volver a cargar las filas antiguas antes del commit y
+ * dejarlas en la caché, y si la transacción se deshiciese la caché reflejaría cambios que no
+ * han ocurrido.
+ */
+public final class PlanningTransactions {
+
+    public static final String module = PlanningTransactions.class.getName();
+
+    private PlanningTransactions() {
+    }
+
+    /**
+     * Ejecuta la acción al confirmarse la transacción en curso (nada si se deshace), o ya si no
+     * hay transacción.
+     */
+    public static void afterCommit(final Runnable action) {
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                TransactionUtil.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == Status.STATUS_COMMITTED) {
+                            try {
+                                action.run();
+                            } catch (RuntimeException e) {
+                                Debug.logError(e, "Error running planning after-commit action: " + e.getMessage(), module);
+                            }
+                        }
+                    }
+                });
+                return;
+            }
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Could not wait for the transaction to commit; running the planning action now", module);
+        }
+        action.run();
+    }
+}
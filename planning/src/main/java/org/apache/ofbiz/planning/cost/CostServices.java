@@ -0,0 +1,272 @@
+package org.apache.ofbiz.planning.cost;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.weekly.WeeklyPlan;
+import org.apache.ofbiz.planning.weekly.WeeklyPlanEngine;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Tarifas horarias de máquina (PlanningHourlyRate) y coste del plan semanal.
+ *
+ * Las tarifas de una misma facility, tipo de máquina y turno forman un histórico sin solapes:
+ * al dar de alta una tarifa se cierra la anterior en su fromDate y, si ya hay una posterior,
+ * la nueva se cierra donde empieza esa.
+ */
+public class CostServices {
+
+    public static final String module = CostServices.class.getName();
+
+    /**
+     * Coste del plan semanal: horas de carga por la tarifa de la facility, el tipo de máquina y
+     * el turno de cada semana.
+     *
+     * IN:
+     *  - weeklyPlan (WeeklyPlan, opcional): plan ya calculado; si no se pasa se calcula con
+     *               facilityId, fromDate y weekCount
+     *  - facilityId (String, opcional): facility a planificar; vacío = toda la planta
+     *  - fromDate   (java.sql.Date, opcional): el horizonte empieza el lunes de su semana (por defecto hoy)
+     *  - weekCount  (Integer, opcional): semanas del horizonte (por defecto 52)
+     *
+     * OUT:
+     *  - planCost          (PlanCost): matriz de costes máquina x semana
+     *  - totalCost         (BigDecimal): coste total del horizonte
+     *  - unratedHours      (BigDecimal): horas de carga sin tarifa
+     *  - currencyUomId     (String): moneda de las tarifas
+     *  - costRows          (List<Map<String,Object>>): coste por máquina, de mayor a menor
+     *  - weekCostRows      (List<Map<String,Object>>): coste por semana
+     *  - costByFacility    (Map<String,BigDecimal>)
+     *  - costByMachineType (Map<String,BigDecimal>)
+     */
+    public static Map<String, Object> computeWeeklyPlanCost(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        WeeklyPlan plan = (WeeklyPlan) context.get("weeklyPlan");
+        String facilityId = (String) context.get("facilityId");
+        Date fromDate = (Date) context.get("fromDate");
+        Integer weekCount = (Integer) context.get("weekCount");
+
+        int weeks = weekCount != null ? weekCount : WeeklyPlanEngine.DEFAULT_WEEK_COUNT;
+        if (plan == null && (weeks <= 0 || weeks > 104)) {
+            return ServiceUtil.returnError("weekCount must be between 1 and 104: " + weeks);
+        }
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("computeWeeklyPlanCost");
+        try {
+            if (plan == null) {
+                plan = WeeklyPlanEngine.build(delegator, UtilValidate.isNotEmpty(facilityId) ? facilityId : null,
+                        fromDate != null ? fromDate.toLocalDate() : LocalDate.now(), weeks);
+            }
+            PlanCost planCost = PlanCostEngine.rollup(delegator, plan);
+            timer.rows(plan.getMachineCount());
+
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("planCost", planCost);
+            result.put("totalCost", PlanCost.amount(planCost.getTotalCost()));
+            result.put("unratedHours", PlanCost.amount(planCost.getUnratedHours()));
+            result.put("currencyUomId", UtilProperties.getPropertyValue("planning", "planning.cost.currencyUomId", "EUR"));
+            result.put("costRows", planCost.toMachineRows());
+            result.put("weekCostRows", planCost.toWeekRows());
+            result.put("costByFacility", planCost.costByFacility());
+            result.put("costByMachineType", planCost.costByMachineType());
+            return result;
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error computing weekly plan cost: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error computing weekly plan cost: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Dar de alta una tarifa horaria. La tarifa abierta anterior de la misma facility, tipo y
+     * turno se cierra en el fromDate de la nueva.
+     *
+     * IN:
+     *  - facilityId       (String): Facility (requerido)
+     *  - fixedAssetTypeId (String): Tipo de máquina (requerido)
+     *  - shiftCode        (String, opcional): Código de turno; vacío = cualquier turno
+     *  - fromDate         (Timestamp, opcional): Inicio de vigencia (por defecto ahora)
+     *  - thruDate         (Timestamp, opcional): Fin de vigencia
+     *  - hourlyRate       (BigDecimal): Coste por hora (requerido)
+     *
+     * OUT:
+     *  - shiftCode (String), fromDate (Timestamp): resto de la clave de la tarifa creada
+     */
+    public static Map<String, Object> createPlanningHourlyRate(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String facilityId = (String) context.get("facilityId");
+        String fixedAssetTypeId = (String) context.get("fixedAssetTypeId");
+        String shiftCode = (String) context.get("shiftCode");
+        Timestamp fromDate = (Timestamp) context.get("fromDate");
+        Timestamp thruDate = (Timestamp) context.get("thruDate");
+        BigDecimal hourlyRate = (BigDecimal) context.get("hourlyRate");
+
+        if (UtilValidate.isEmpty(shiftCode)) {
+            shiftCode = HourlyRateTable.ANY_SHIFT;
+        }
+        if (fromDate == null) {
+            fromDate = UtilDateTime.nowTimestamp();
+        }
+        String error = validateRate(hourlyRate, fromDate, thruDate);
+        if (error != null) {
+            return ServiceUtil.returnError(error);
+        }
+        try {
+            if (EntityQuery.use(delegator).from("Facility").where("facilityId", facilityId).queryOne() == null) {
+                return ServiceUtil.returnError("Facility not found: " + facilityId);
+            }
+            if (EntityQuery.use(delegator).from("FixedAssetType").where("fixedAssetTypeId", fixedAssetTypeId).queryOne() == null) {
+                return ServiceUtil.returnError("Machine type not found: " + fixedAssetTypeId);
+            }
+            if (EntityQuery.use(delegator).from("PlanningHourlyRate")
+                    .where("facilityId", facilityId, "fixedAssetTypeId", fixedAssetTypeId,
+                           "shiftCode", shiftCode, "fromDate", fromDate)
+                    .queryOne() != null) {
+                return ServiceUtil.returnError("An hourly rate already starts on " + fromDate + " for "
+                        + facilityId + " / " + fixedAssetTypeId + " / " + shiftCode);
+            }
+
+            EntityCondition sameKey = EntityCondition.makeCondition(
+                    EntityCondition.makeCondition("facilityId", EntityOperator.EQUALS, facilityId),
+                    EntityOperator.AND,
+                    EntityCondition.makeCondition(
+                            EntityCondition.makeCondition("fixedAssetTypeId", EntityOperator.EQUALS, fixedAssetTypeId),
+                            EntityOperator.AND,
+                            EntityCondition.makeCondition("shiftCode", EntityOperator.EQUALS, shiftCode)));
+
+            // 1. La tarifa anterior termina donde empieza la nueva
+            GenericValue previous = EntityQuery.use(delegator)
+                    .from("PlanningHourlyRate")
+                    .where(sameKey, EntityCondition.makeCondition("fromDate", EntityOperator.LESS_THAN, fromDate))
+                    .orderBy("-fromDate")
+                    .queryFirst();
+            if (previous != null && (previous.getTimestamp("thruDate") == null
+                    || previous.getTimestamp("thruDate").after(fromDate))) {
+                previous.set("thruDate", fromDate);
+                previous.store();
+            }
+
+            // 2. La nueva termina, como tarde, donde empieza la siguiente
+            GenericValue next = EntityQuery.use(delegator)
+                    .from("PlanningHourlyRate")
+                    .where(sameKey, EntityCondition.makeCondition("fromDate", EntityOperator.GREATER_THAN, fromDate))
+                    .orderBy("fromDate")
+                    .queryFirst();
+            if (next != null && (thruDate == null || thruDate.after(next.getTimestamp("fromDate")))) {
+                thruDate = next.getTimestamp("fromDate");
+            }
+
+            GenericValue rate = delegator.makeValue("PlanningHourlyRate");
+            rate.set("facilityId", facilityId);
+            rate.set("fixedAssetTypeId", fixedAssetTypeId);
+            rate.set("shiftCode", shiftCode);
+            rate.set("fromDate", fromDate);
+            rate.set("thruDate", thruDate);
+            rate.set("hourlyRate", hourlyRate);
+            rate.create();
+            Debug.logInfo("Created hourly rate " + hourlyRate + " for " + facilityId + " / " + fixedAssetTypeId
+                    + " / " + shiftCode + " from " + fromDate, module);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error creating hourly rate: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error creating hourly rate: " + e.getMessage());
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess("Hourly rate created successfully");
+        result.put("shiftCode", shiftCode);
+        result.put("fromDate", fromDate);
+        return result;
+    }
+
+    /**
+     * Actualizar el importe o el fin de vigencia de una tarifa horaria.
+     *
+     * IN:
+     *  - facilityId, fixedAssetTypeId, shiftCode, fromDate: clave de la tarifa (requeridos)
+     *  - hourlyRate (BigDecimal, opcional): Coste por hora
+     *  - thruDate   (Timestamp, opcional): Fin de vigencia; vacío = abierta
+     */
+    public static Map<String, Object> updatePlanningHourlyRate(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        try {
+            GenericValue rate = findRate(delegator, context);
+            if (rate == null) {
+                return ServiceUtil.returnError("Hourly rate not found: " + context.get("facilityId") + " / "
+                        + context.get("fixedAssetTypeId") + " / " + context.get("shiftCode") + " / " + context.get("fromDate"));
+            }
+            if (context.get("hourlyRate") != null) {
+                rate.set("hourlyRate", context.get("hourlyRate"));
+            }
+            if (context.containsKey("thruDate")) {
+                rate.set("thruDate", context.get("thruDate"));
+            }
+            String error = validateRate(rate.getBigDecimal("hourlyRate"), rate.getTimestamp("fromDate"),
+                    rate.getTimestamp("thruDate"));
+            if (error != null) {
+                return ServiceUtil.returnError(error);
+            }
+            rate.store();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error updating hourly rate: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error updating hourly rate: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess("Hourly rate updated successfully");
+    }
+
+    /**
+     * Borrar una tarifa horaria. No se reabre la anterior: el hueco queda sin tarifa.
+     *
+     * IN:
+     *  - facilityId, fixedAssetTypeId, shiftCode, fromDate: clave de la tarifa (requeridos)
+     */
+    public static Map<String, Object> deletePlanningHourlyRate(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        try {
+            GenericValue rate = findRate(delegator, context);
+            if (rate == null) {
+                return ServiceUtil.returnError("Hourly rate not found: " + context.get("facilityId") + " / "
+                        + context.get("fixedAssetTypeId") + " / " + context.get("shiftCode") + " / " + context.get("fromDate"));
+            }
+            rate.remove();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error deleting hourly rate: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error deleting hourly rate: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess("Hourly rate deleted successfully");
+    }
+
+    private static GenericValue findRate(Delegator delegator, Map<String, ? extends Object> context)
+            throws GenericEntityException {
+        return EntityQuery.use(delegator)
+                .from("PlanningHourlyRate")
+                .where("facilityId", context.get("facilityId"), "fixedAssetTypeId", context.get("fixedAssetTypeId"),
+                       "shiftCode", context.get("shiftCode"), "fromDate", context.get("fromDate"))
+                .queryOne();
+    }
+
+    private static String validateRate(BigDecimal hourlyRate, Timestamp fromDate, Timestamp thruDate) {
+        if (hourlyRate == null || hourlyRate.signum() < 0) {
+            return "Hourly rate must be zero or positive: " + hourlyRate;
+        }
+        if (thruDate != null && !thruDate.after(fromDate)) {
+            return "Thru date must be after from date: " + thruDate + " <= " + fromDate;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,148 @@
+package org.apache.ofbiz.planning.cost;
+
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tarifas horarias vigentes en un horizonte, agrupadas por facility, tipo de máquina y turno.
+ *
+ * Cada clave guarda sus periodos ordenados por fromDate en arrays paralelos (desde, hasta,
+ * tarifa), así que buscar la tarifa de una fecha no crea objetos. Se construye para un cálculo
+ * y no se comparte.
+ */
+public final class HourlyRateTable {
+
+    /** Código de turno de las tarifas que valen para cualquier turno. */
+    public static final String ANY_SHIFT = "_NA_";
+
+    private final Map<String, Periods> periodsByKey;
+
+    private HourlyRateTable(Map<String, Periods> periodsByKey) {
+        this.periodsByKey = periodsByKey;
+    }
+
+    /**
+     * Carga las tarifas que se solapan con [horizonStart, horizonEnd).
+     *
+     * @param facilityId facility de las tarifas, o null para todas
+     */
+    public static HourlyRateTable load(Delegator delegator, String facilityId, Timestamp horizonStart,
+                                       Timestamp horizonEnd) throws GenericEntityException {
+        List<EntityCondition> conditions = new ArrayList<>();
+        if (facilityId != null) {
+            conditions.add(EntityCondition.makeCondition("facilityId", EntityOperator.EQUALS, facilityId));
+        }
+        conditions.add(EntityCondition.makeCondition("fromDate", EntityOperator.LESS_THAN, horizonEnd));
+        conditions.add(EntityCondition.makeCondition(
+                EntityCondition.makeCondition("thruDate", EntityOperator.EQUALS, null),
+                EntityOperator.OR,
+                EntityCondition.makeCondition("thruDate", EntityOperator.GREATER_THAN, horizonStart)));
+
+        Map<String, Periods> periodsByKey = new HashMap<>();
+        // Ordenadas por clave y fecha: cada clave se rellena de una vez y ya en orden
+        try (EntityListIterator rates = EntityQuery.use(delegator)
+                .select("facilityId", "fixedAssetTypeId", "shiftCode", "fromDate", "thruDate", "hourlyRate")
+                .from("PlanningHourlyRate")
+                .where(conditions)
+                .orderBy("facilityId", "fixedAssetTypeId", "shiftCode", "fromDate")
+                .queryIterator()) {
+            GenericValue rate;
+            while ((rate = rates.next()) != null) {
+                if (rate.getBigDecimal("hourlyRate") == null) {
+                    continue;
+                }
+                String key = key(rate.getString("facilityId"), rate.getString("fixedAssetTypeId"), rate.getString("shiftCode"));
+                Periods periods = periodsByKey.get(key);
+                if (periods == null) {
+                    periods = new Periods();
+                    periodsByKey.put(key, periods);
+                }
+                Timestamp thruDate = rate.getTimestamp("thruDate");
+                periods.add(rate.getTimestamp("fromDate").getTime(),
+                        thruDate != null ? thruDate.getTime() : Long.MAX_VALUE,
+                        rate.getBigDecimal("hourlyRate").doubleValue());
+            }
+        }
+        return new HourlyRateTable(periodsByKey);
+    }
+
+    public boolean isEmpty() {
+        return periodsByKey.isEmpty();
+    }
+
+    /**
+     * Tarifa del turno vigente en el instante dado; si el turno no tiene tarifa propia se usa
+     * la de cualquier turno. NaN si no hay ninguna.
+     */
+    public double rateAt(String facilityId, String fixedAssetTypeId, String shiftCode, long millis) {
+        if (shiftCode != null && !ANY_SHIFT.equals(shiftCode)) {
+            Periods periods = periodsByKey.get(key(facilityId, fixedAssetTypeId, shiftCode));
+            if (periods != null) {
+                double rate = periods.rateAt(millis);
+                if (!Double.isNaN(rate)) {
+                    return rate;
+                }
+            }
+        }
+        Periods periods = periodsByKey.get(key(facilityId, fixedAssetTypeId, ANY_SHIFT));
+        return periods != null ? periods.rateAt(millis) : Double.NaN;
+    }
+
+    private static String key(String facilityId, String fixedAssetTypeId, String shiftCode) {
+        return facilityId + "::" + fixedAssetTypeId + "::" + shiftCode;
+    }
+
+    /**
+     * Periodos de una clave en arrays paralelos, ordenados por fecha de inicio.
+     */
+    private static final class Periods {
+        private long[] fromMillis = new long[2];
+        private long[] thruMillis = new long[2];
+        private double[] rates = new double[2];
+        private int size;
+
+        void add(long from, long thru, double rate) {
+            if (size == fromMillis.length) {
+                int capacity = size * 2;
+                fromMillis = Arrays.copyOf(fromMillis, capacity);
+                thruMillis = Arrays.copyOf(thruMillis, capacity);
+                rates = Arrays.copyOf(rates, capacity);
+            }
+            fromMillis[size] = from;
+            thruMillis[size] = thru;
+            rates[size] = rate;
+            size++;
+        }
+
+        /**
+         * Último periodo que empieza en o antes de millis, si sigue vigente.
+         */
+        double rateAt(long millis) {
+            int low = 0;
+            int high = size - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (fromMillis[mid] <= millis) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found >= 0 && millis < thruMillis[found] ? rates[found] : Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.apache.ofbiz.planning.cost;
+
+import org.apache.ofbiz.planning.weekly.WeeklyPlan;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Coste de un {@link WeeklyPlan}: matriz máquina x semana con la carga valorada a su tarifa
+ * horaria y los totales por máquina y por semana.
+ */
+public final class PlanCost {
+
+    private final WeeklyPlan plan;
+    private final double[][] machineWeekCost;
+    private final double[] machineCost;
+    private final double[] weekCost;
+    private final double[] machineUnratedHours;
+    private final double totalCost;
+    private final double unratedHours;
+
+    PlanCost(WeeklyPlan plan, double[][] machineWeekCost, double[] machineUnratedHours) {
+        this.plan = plan;
+        this.machineWeekCost = machineWeekCost;
+        this.machineUnratedHours = machineUnratedHours;
+        int weekCount = plan.getWeekCount();
+        this.machineCost = new double[machineWeekCost.length];
+        this.weekCost = new double[weekCount];
+        double total = 0;
+        double unrated = 0;
+        for (int machine = 0; machine < machineWeekCost.length; machine++) {
+            double[] cost = machineWeekCost[machine];
+            double machineTotal = 0;
+            for (int week = 0; week < weekCount; week++) {
+                machineTotal += cost[week];
+                weekCost[week] += cost[week];
+            }
+            machineCost[machine] = machineTotal;
+            total += machineTotal;
+            unrated += machineUnratedHours[machine];
+        }
+        this.totalCost = total;
+        this.unratedHours = unrated;
+    }
+
+    public WeeklyPlan getPlan() {
+        return plan;
+    }
+
+    public double getCost(int machine, int week) {
+        return machineWeekCost[machine][week];
+    }
+
+    public double getMachineCost(int machine) {
+        return machineCost[machine];
+    }
+
+    public double getWeekCost(int week) {
+        return weekCost[week];
+    }
+
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    /**
+     * Horas de carga sin coste por falta de tarifa en la facility, tipo y turno.
+     */
+    public double getUnratedHours() {
+        return unratedHours;
+    }
+
+    public double getMachineUnratedHours(int machine) {
+        return machineUnratedHours[machine];
+    }
+
+    /**
+     * Resumen por máquina para las pantallas, de mayor a menor coste.
+     */
+    public List<Map<String, Object>> toMachineRows() {
+        List<Map<String, Object>> rows = new ArrayList<>(machineCost.length);
+        for (int machine = 0; machine < machineCost.length; machine++) {
+            double load = plan.getTotalLoadHours(machine);
+            Map<String, Object> row = new HashMap<>();
+            row.put("fixedAssetId", plan.getMachineId(machine));
+            row.put("fixedAssetName", plan.getMachineName(machine));
+            row.put("facilityId", plan.getMachineFacilityId(machine));
+            row.put("fixedAssetTypeId", plan.getMachineTypeId(machine));
+            row.put("loadHours", amount(load));
+            row.put("unratedHours", amount(machineUnratedHours[machine]));
+            row.put("totalCost", amount(machineCost[machine]));
+            double ratedHours = load - machineUnratedHours[machine];
+            row.put("avgHourlyRate", ratedHours > 0 ? amount(machineCost[machine] / ratedHours) : null);
+            rows.add(row);
+        }
+        rows.sort((a, b) -> ((BigDecimal) b.get("totalCost")).compareTo((BigDecimal) a.get("totalCost")));
+        return rows;
+    }
+
+    /**
+     * Coste y carga de cada semana del horizonte.
+     */
+    public List<Map<String, Object>> toWeekRows() {
+        int weekCount = plan.getWeekCount();
+        List<Map<String, Object>> rows = new ArrayList<>(weekCount);
+        for (int week = 0; week < weekCount; week++) {
+            double load = 0;
+            for (int machine = 0; machine < machineCost.length; machine++) {
+                load += plan.getLoadHours(machine, week);
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("weekStart", java.sql.Date.valueOf(plan.getWeekStart(week)));
+            row.put("loadHours", amount(load));
+            row.put("totalCost", amount(weekCost[week]));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    public Map<String, BigDecimal> costByFacility() {
+        Map<String, Double> totals = new TreeMap<>();
+        for (int machine = 0; machine < machineCost.length; machine++) {
+            totals.merge(String.valueOf(plan.getMachineFacilityId(machine)), machineCost[machine], Double::sum);
+        }
+        return amounts(totals);
+    }
+
+    public Map<String, BigDecimal> costByMachineType() {
+        Map<String, Double> totals = new TreeMap<>();
+        for (int machine = 0; machine < machineCost.length; machine++) {
+            totals.merge(String.valueOf(plan.getMachineTypeId(machine)), machineCost[machine], Double::sum);
+        }
+        return amounts(totals);
+    }
+
+    private static Map<String, BigDecimal> amounts(Map<String, Double> totals) {
+        Map<String, BigDecimal> amounts = new TreeMap<>();
+        for (Map.Entry<String, Double> total : totals.entrySet()) {
+            amounts.put(total.getKey(), amount(total.getValue()));
+        }
+        return amounts;
+    }
+
+    static BigDecimal amount(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,160 @@
+package org.apache.ofbiz.planning.cost;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.planning.shift.ShiftTimeline;
+import org.apache.ofbiz.planning.shift.ShiftTimelineEngine;
+import org.apache.ofbiz.planning.weekly.WeeklyPlan;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coste de un plan semanal: horas de carga de cada máquina y semana por su tarifa horaria.
+ *
+ * Las máquinas con la misma facility, tipo, calendario y patrón de turnos comparten la misma
+ * tarifa semanal, así que primero se calcula un vector de tarifas por semana para cada
+ * combinación distinta y luego el coste es un producto elemento a elemento sobre las matrices
+ * del plan. La tarifa de una semana es la media de las tarifas de sus turnos ponderada por los
+ * segundos de cada turno: se supone que la carga se reparte en proporción a la capacidad.
+ */
+public final class PlanCostEngine {
+
+    public static final String module = PlanCostEngine.class.getName();
+
+    private PlanCostEngine() {
+    }
+
+    public static PlanCost rollup(Delegator delegator, WeeklyPlan plan) throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        int machineCount = plan.getMachineCount();
+        int weekCount = plan.getWeekCount();
+        LocalDate horizonStart = plan.getHorizonStart();
+        LocalDate horizonEnd = horizonStart.plusWeeks(weekCount);
+        HourlyRateTable rateTable = HourlyRateTable.load(delegator, plan.getFacilityId(),
+                Timestamp.valueOf(horizonStart.atStartOfDay()), Timestamp.valueOf(horizonEnd.atStartOfDay()));
+
+        // 1. Vector de tarifas semanales por combinación distinta de facility, tipo, calendario y patrón
+        List<double[]> keyRates = new ArrayList<>();
+        Map<String, Integer> keyIndex = new HashMap<>();
+        Map<String, ShiftTimeline> timelines = new HashMap<>();
+        int[] machineKey = new int[machineCount];
+        for (int machine = 0; machine < machineCount; machine++) {
+            String facilityId = plan.getMachineFacilityId(machine);
+            String fixedAssetTypeId = plan.getMachineTypeId(machine);
+            String calendarId = plan.getMachineCalendarId(machine);
+            String shiftPatternId = plan.getMachineShiftPatternId(machine);
+            String key = facilityId + "::" + fixedAssetTypeId + "::" + calendarId + "::" + shiftPatternId;
+            Integer index = keyIndex.get(key);
+            if (index == null) {
+                index = keyRates.size();
+                keyIndex.put(key, index);
+                keyRates.add(weeklyRates(delegator, rateTable, timelines, facilityId, fixedAssetTypeId,
+                        calendarId, shiftPatternId, horizonStart, weekCount));
+            }
+            machineKey[machine] = index;
+        }
+
+        // 2. Coste = carga x tarifa; las horas sin tarifa se cuentan aparte
+        double[][] machineWeekCost = new double[machineCount][weekCount];
+        double[] machineUnratedHours = new double[machineCount];
+        for (int machine = 0; machine < machineCount; machine++) {
+            double[] rates = keyRates.get(machineKey[machine]);
+            double[] cost = machineWeekCost[machine];
+            double unrated = 0;
+            for (int week = 0; week < weekCount; week++) {
+                double load = plan.getLoadHours(machine, week);
+                if (load == 0) {
+                    continue;
+                }
+                double rate = rates[week];
+                if (Double.isNaN(rate)) {
+                    unrated += load;
+                } else {
+                    cost[week] = load * rate;
+                }
+            }
+            machineUnratedHours[machine] = unrated;
+        }
+
+        PlanCost planCost = new PlanCost(plan, machineWeekCost, machineUnratedHours);
+        Debug.logInfo("Weekly plan cost rolled up for " + machineCount + " machines, " + keyRates.size()
+                + " rate keys, " + weekCount + " weeks in " + (System.currentTimeMillis() - startTime) + " ms", module);
+        return planCost;
+    }
+
+    /**
+     * Tarifa efectiva de cada semana (NaN si algún turno con capacidad no tiene tarifa). Las
+     * semanas sin turnos usan la tarifa de cualquier turno, por si el plan carga horas en ellas.
+     */
+    private static double[] weeklyRates(Delegator delegator, HourlyRateTable rateTable, Map<String, ShiftTimeline> timelines,
+                                        String facilityId, String fixedAssetTypeId, String calendarId,
+                                        String shiftPatternId, LocalDate horizonStart, int weekCount)
+            throws GenericEntityException {
+        double[] rates = new double[weekCount];
+        if (facilityId == null || fixedAssetTypeId == null || rateTable.isEmpty()) {
+            Arrays.fill(rates, Double.NaN);
+            return rates;
+        }
+        for (int week = 0; week < weekCount; week++) {
+            LocalDate weekStart = horizonStart.plusWeeks(week);
+            double weightedRate = 0;
+            long totalSeconds = 0;
+            boolean missingRate = false;
+            if (calendarId != null) {
+                for (int dayOfWeek = 0; dayOfWeek < 7 && !missingRate; dayOfWeek++) {
+                    LocalDate date = weekStart.plusDays(dayOfWeek);
+                    ShiftTimeline timeline = timeline(delegator, timelines, calendarId, shiftPatternId, date.getYear());
+                    if (timeline == null) {
+                        continue;
+                    }
+                    int day = timeline.dayIndex(date);
+                    int shiftCount = timeline.getShiftCount(day);
+                    if (shiftCount == 0) {
+                        continue;
+                    }
+                    long dayMillis = Timestamp.valueOf(date.atStartOfDay()).getTime();
+                    for (int shift = 0; shift < shiftCount; shift++) {
+                        int seconds = timeline.getShiftEnd(day, shift) - timeline.getShiftStart(day, shift);
+                        double rate = rateTable.rateAt(facilityId, fixedAssetTypeId, timeline.getShiftCode(day, shift), dayMillis);
+                        if (Double.isNaN(rate)) {
+                            missingRate = true;
+                            break;
+                        }
+                        weightedRate += rate * seconds;
+                        totalSeconds += seconds;
+                    }
+                }
+            }
+            if (missingRate) {
+                rates[week] = Double.NaN;
+            } else if (totalSeconds > 0) {
+                rates[week] = weightedRate / totalSeconds;
+            } else {
+                rates[week] = rateTable.rateAt(facilityId, fixedAssetTypeId, HourlyRateTable.ANY_SHIFT,
+                        Timestamp.valueOf(weekStart.atStartOfDay()).getTime());
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * Turnos del año desde la caché local del cálculo (null si el calendario no existe).
+     */
+    private static ShiftTimeline timeline(Delegator delegator, Map<String, ShiftTimeline> timelines, String calendarId,
+                                          String shiftPatternId, int year) throws GenericEntityException {
+        String key = calendarId + "::" + shiftPatternId + "::" + year;
+        ShiftTimeline timeline = timelines.get(key);
+        if (timeline == null && !timelines.containsKey(key)) {
+            timeline = ShiftTimelineEngine.getTimeline(delegator, calendarId, shiftPatternId, year);
+            timelines.put(key, timeline);
+        }
+        return timeline;
+    }
+}
@@ -0,0 +1,114 @@
+package org.apache.ofbiz.planning.daily;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.occupancy.MachineOccupancyIndex;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class DailyPlanningServices {
+
+    public static final String module = DailyPlanningServices.class.getName();
+
+    /**
+     * Programa diario a capacidad finita de un grupo de planificación.
+     *
+     * IN:
+     *  - productCategoryId (String): grupo de planificación
+     *  - scheduleDate      (java.sql.Date, opcional): día a programar (por defecto hoy)
+     *  - rebuild           (Boolean, opcional): recalcular aunque esté en caché
+     *
+     * OUT:
+     *  - operationRows      (List<Map<String,Object>>): operaciones por máquina y turno
+     *  - unschedulableOrders (List<String>): órdenes sin máquina elegible
+     *  - remainingSeconds   (Map<String,Integer>): trabajo que no cabe en el día por orden
+     */
+    public static Map<String, Object> scheduleDailyPlan(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String productCategoryId = (String) context.get("productCategoryId");
+        Date scheduleDate = (Date) context.get("scheduleDate");
+        boolean rebuild = Boolean.TRUE.equals(context.get("rebuild"));
+
+        LocalDate day = scheduleDate != null ? scheduleDate.toLocalDate() : LocalDate.now();
+        PlanningMetrics.Timer timer = PlanningMetrics.start("scheduleDailyPlan");
+        try {
+            DailySchedule schedule = DailyScheduler.getSchedule(dctx.getDelegator(), productCategoryId, day, rebuild);
+            if (schedule == null) {
+                timer.error();
+                return ServiceUtil.returnError("Planning group not found or without facility: " + productCategoryId);
+            }
+            List<Map<String, Object>> operationRows = schedule.toOperationRows(null);
+            timer.rows(operationRows.size());
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("operationRows", operationRows);
+            result.put("unschedulableOrders", schedule.getUnschedulableOrderIds());
+            result.put("remainingSeconds", schedule.getRemainingSeconds());
+            return result;
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error scheduling daily plan: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error scheduling daily plan: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Vuelve a programar una orden modificada sin recalcular el día completo: solo cambian las
+     * líneas de tiempo de su máquina anterior y de la nueva.
+     *
+     * IN:
+     *  - productCategoryId (String): grupo de planificación
+     *  - scheduleDate      (java.sql.Date, opcional): día programado (por defecto hoy)
+     *  - workEffortId      (String): orden de producción modificada
+     *
+     * OUT:
+     *  - affectedMachineIds (List<String>)
+     *  - operationRows      (List<Map<String,Object>>): operaciones de las máquinas afectadas
+     */
+    public static Map<String, Object> replanDailyOrder(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productCategoryId = (String) context.get("productCategoryId");
+        Date scheduleDate = (Date) context.get("scheduleDate");
+        String workEffortId = (String) context.get("workEffortId");
+
+        LocalDate day = scheduleDate != null ? scheduleDate.toLocalDate() : LocalDate.now();
+        try {
+            DailySchedule schedule = DailyScheduler.getSchedule(delegator, productCategoryId, day, false);
+            if (schedule == null) {
+                return ServiceUtil.returnError("Planning group not found or without facility: " + productCategoryId);
+            }
+            List<Integer> affected = DailyScheduler.replanOrder(delegator, schedule, workEffortId);
+            if (!affected.isEmpty()) {
+                MachineOccupancyIndex.removeFacility(delegator, schedule.getFacilityId());
+            }
+            List<String> affectedMachineIds = new ArrayList<>(affected.size());
+            for (int machine : affected) {
+                affectedMachineIds.add(schedule.getMachineId(machine));
+            }
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("affectedMachineIds", affectedMachineIds);
+            result.put("operationRows", schedule.toOperationRows(affected));
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error re-planning order " + workEffortId + ": " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error re-planning order " + workEffortId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Vacía la caché de programas diarios y la de ocupación de máquinas, que sale de ellos.
+     */
+    public static Map<String, Object> clearDailyScheduleCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+        DailyScheduler.clear();
+        MachineOccupancyIndex.clear();
+        return ServiceUtil.returnSuccess();
+    }
+}
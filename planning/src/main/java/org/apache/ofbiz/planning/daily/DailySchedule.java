@@ -0,0 +1,290 @@
+package org.apache.ofbiz.planning.daily;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Programa diario a capacidad finita de un grupo de planificación.
+ *
+ * Cada máquina tiene sus ventanas de trabajo del día (turnos, en segundos desde el inicio del
+ * día) y la cola de órdenes asignadas. La línea de tiempo de una máquina se obtiene
+ * secuenciando su cola por prioridad y llenando los turnos en orden; una orden puede
+ * repartirse entre turnos consecutivos y lo que no cabe en el día queda como pendiente.
+ *
+ * Las modificaciones ({@link #assign}, {@link #unassign}) solo recalculan la línea de tiempo de
+ * las máquinas afectadas. Los métodos están sincronizados porque la instancia se comparte
+ * desde la caché de {@link DailyScheduler}.
+ */
+public final class DailySchedule {
+
+    // Valor de fin para órdenes que no caben en el día: siempre mayor que cualquier hora del día
+    private static final long NOT_FITTING = 1000000L;
+
+    private final String productCategoryId;
+    private final String facilityId;
+    private final LocalDate scheduleDate;
+    private final String[] machineIds;
+    private final String[] machineNames;
+    // shiftWindows[máquina][turno] = {inicio, fin}
+    private final int[][][] shiftWindows;
+
+    private final Map<String, WorkOrder> orders = new HashMap<>();
+    private final Map<String, Integer> orderMachine = new HashMap<>();
+    private final List<TreeSet<WorkOrder>> machineQueues;
+    private final long[] machineLoadSeconds;
+    private final List<List<ScheduledOperation>> timelines;
+    private final Map<String, Integer> remainingSeconds = new HashMap<>();
+    private final TreeSet<String> unschedulable = new TreeSet<>();
+
+    DailySchedule(String productCategoryId, String facilityId, LocalDate scheduleDate,
+                  String[] machineIds, String[] machineNames, int[][][] shiftWindows) {
+        this.productCategoryId = productCategoryId;
+        this.facilityId = facilityId;
+        this.scheduleDate = scheduleDate;
+        this.machineIds = machineIds;
+        this.machineNames = machineNames;
+        this.shiftWindows = shiftWindows;
+        this.machineLoadSeconds = new long[machineIds.length];
+        this.machineQueues = new ArrayList<>(machineIds.length);
+        this.timelines = new ArrayList<>(machineIds.length);
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            machineQueues.add(new TreeSet<>(WorkOrder.SEQUENCE_ORDER));
+            timelines.add(new ArrayList<ScheduledOperation>());
+        }
+    }
+
+    public String getProductCategoryId() {
+        return productCategoryId;
+    }
+
+    public String getFacilityId() {
+        return facilityId;
+    }
+
+    public LocalDate getScheduleDate() {
+        return scheduleDate;
+    }
+
+    public int getMachineCount() {
+        return machineIds.length;
+    }
+
+    public String getMachineId(int machine) {
+        return machineIds[machine];
+    }
+
+    /**
+     * Índice de la máquina, o -1 si no pertenece al programa.
+     */
+    public int machineIndex(String fixedAssetId) {
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            if (machineIds[machine].equals(fixedAssetId)) {
+                return machine;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Ventanas de trabajo de la máquina; cada una es {inicio, fin} en segundos.
+     */
+    public int[][] getShiftWindows(int machine) {
+        return shiftWindows[machine];
+    }
+
+    /**
+     * Programa todas las órdenes: se sacan de una cola de prioridad y cada una va a la máquina
+     * elegible en la que termina antes, teniendo en cuenta lo ya asignado.
+     */
+    synchronized void scheduleAll(Collection<WorkOrder> workOrders) {
+        PriorityQueue<WorkOrder> queue = new PriorityQueue<>(Math.max(1, workOrders.size()), WorkOrder.SEQUENCE_ORDER);
+        queue.addAll(workOrders);
+        WorkOrder order;
+        while ((order = queue.poll()) != null) {
+            addOrder(order);
+        }
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            rebuildTimeline(machine);
+        }
+    }
+
+    /**
+     * Añade o reemplaza una orden y recalcula solo las máquinas afectadas.
+     *
+     * @return índices de las máquinas cuya línea de tiempo ha cambiado
+     */
+    synchronized List<Integer> assign(WorkOrder order) {
+        List<Integer> affected = new ArrayList<>(2);
+        Integer previous = removeOrder(order.workEffortId);
+        if (previous != null) {
+            affected.add(previous);
+        }
+        Integer machine = addOrder(order);
+        if (machine != null && !affected.contains(machine)) {
+            affected.add(machine);
+        }
+        for (int affectedMachine : affected) {
+            rebuildTimeline(affectedMachine);
+        }
+        return affected;
+    }
+
+    /**
+     * Quita una orden (cancelada, terminada o fuera del grupo) y recalcula su máquina.
+     *
+     * @return índices de las máquinas cuya línea de tiempo ha cambiado
+     */
+    synchronized List<Integer> unassign(String workEffortId) {
+        List<Integer> affected = new ArrayList<>(1);
+        Integer previous = removeOrder(workEffortId);
+        if (previous != null) {
+            affected.add(previous);
+            rebuildTimeline(previous);
+        }
+        return affected;
+    }
+
+    /**
+     * Operaciones programadas de una máquina, en orden de inicio.
+     */
+    public synchronized List<ScheduledOperation> getTimeline(int machine) {
+        return new ArrayList<>(timelines.get(machine));
+    }
+
+    /**
+     * Órdenes que no tienen ninguna máquina elegible en el grupo.
+     */
+    public synchronized List<String> getUnschedulableOrderIds() {
+        return new ArrayList<>(unschedulable);
+    }
+
+    /**
+     * Segundos de trabajo que no caben en el día por orden.
+     */
+    public synchronized Map<String, Integer> getRemainingSeconds() {
+        return new HashMap<>(remainingSeconds);
+    }
+
+    /**
+     * Filas de operaciones para las pantallas; solo las máquinas indicadas, o todas si es null.
+     */
+    public synchronized List<Map<String, Object>> toOperationRows(Collection<Integer> machines) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            if (machines != null && !machines.contains(machine)) {
+                continue;
+            }
+            for (ScheduledOperation operation : timelines.get(machine)) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("fixedAssetId", machineIds[machine]);
+                row.put("fixedAssetName", machineNames[machine]);
+                row.put("workEffortId", operation.getWorkEffortId());
+                row.put("productId", operation.getProductId());
+                row.put("shift", operation.getShiftIndex() + 1);
+                row.put("startTime", formatSeconds(operation.getStartSeconds()));
+                row.put("endTime", formatSeconds(operation.getEndSeconds()));
+                row.put("durationMinutes", (operation.getEndSeconds() - operation.getStartSeconds()) / 60);
+                Integer remaining = remainingSeconds.get(operation.getWorkEffortId());
+                row.put("remainingMinutes", remaining != null ? remaining / 60 : 0);
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Asigna la orden a la máquina elegible en la que termina antes. Devuelve la máquina o
+     * null si no tiene ninguna.
+     */
+    private Integer addOrder(WorkOrder order) {
+        orders.put(order.workEffortId, order);
+        int best = -1;
+        long bestEnd = Long.MAX_VALUE;
+        for (int i = 0; i < order.eligibleMachines.length; i++) {
+            int machine = order.eligibleMachines[i];
+            long end = endOfWork(machine, machineLoadSeconds[machine] + order.durationSeconds[i]);
+            if (end < bestEnd) {
+                bestEnd = end;
+                best = machine;
+            }
+        }
+        if (best < 0) {
+            unschedulable.add(order.workEffortId);
+            return null;
+        }
+        orderMachine.put(order.workEffortId, best);
+        machineQueues.get(best).add(order);
+        machineLoadSeconds[best] += order.durationOn(best);
+        return best;
+    }
+
+    private Integer removeOrder(String workEffortId) {
+        WorkOrder order = orders.remove(workEffortId);
+        unschedulable.remove(workEffortId);
+        remainingSeconds.remove(workEffortId);
+        Integer machine = orderMachine.remove(workEffortId);
+        if (order != null && machine != null) {
+            machineQueues.get(machine).remove(order);
+            machineLoadSeconds[machine] -= order.durationOn(machine);
+        }
+        return machine;
+    }
+
+    /**
+     * Hora de fin tras consumir workSeconds de tiempo de trabajo de la máquina, o
+     * NOT_FITTING más el exceso si no cabe en el día.
+     */
+    private long endOfWork(int machine, long workSeconds) {
+        long pending = workSeconds;
+        for (int[] window : shiftWindows[machine]) {
+            long length = window[1] - window[0];
+            if (pending <= length) {
+                return window[0] + pending;
+            }
+            pending -= length;
+        }
+        return NOT_FITTING + pending;
+    }
+
+    /**
+     * Secuencia la cola de la máquina por prioridad y la reparte por sus turnos.
+     */
+    private void rebuildTimeline(int machine) {
+        List<ScheduledOperation> timeline = timelines.get(machine);
+        timeline.clear();
+        int[][] windows = shiftWindows[machine];
+        int shift = 0;
+        int cursor = windows.length > 0 ? windows[0][0] : 0;
+        for (WorkOrder order : machineQueues.get(machine)) {
+            remainingSeconds.remove(order.workEffortId);
+            int pending = order.durationOn(machine);
+            while (pending > 0 && shift < windows.length) {
+                int available = windows[shift][1] - cursor;
+                if (available <= 0) {
+                    shift++;
+                    cursor = shift < windows.length ? windows[shift][0] : cursor;
+                    continue;
+                }
+                int used = Math.min(pending, available);
+                timeline.add(new ScheduledOperation(order.workEffortId, order.productId, machine, shift, cursor, cursor + used));
+                cursor += used;
+                pending -= used;
+            }
+            if (pending > 0) {
+                remainingSeconds.put(order.workEffortId, pending);
+            }
+        }
+    }
+
+    private static String formatSeconds(int seconds) {
+        int hours = seconds / 3600;
+        int minutes = (seconds % 3600) / 60;
+        return (hours < 10 ? "0" : "") + hours + ":" + (minutes < 10 ? "0" : "") + minutes;
+    }
+}
@@ -0,0 +1,307 @@
+package org.apache.ofbiz.planning.daily;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.shift.ShiftTimelineEngine;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Programador diario a capacidad finita de los grupos de planificación.
+ *
+ * Máquinas: FixedAsset INJECTION_MACHINE / PRODUCTION_MACHINERY activos de la facility del
+ * grupo. Órdenes: producciones (PROD_ORDER_HEADER) abiertas de las referencias del grupo que
+ * empiezan como tarde ese día. Rutas y rendimientos: PlanningRefMachine. Turnos: los compilados
+ * por {@link ShiftTimelineEngine} con el calendario de la máquina y el patrón de turnos del
+ * grupo o de su facility.
+ *
+ * Los programas se guardan en el UtilCache "planning.DailySchedule" por (grupo, día) y
+ * {@link #replanOrder} actualiza solo la máquina de la orden modificada.
+ */
+public final class DailyScheduler {
+
+    public static final String module = DailyScheduler.class.getName();
+
+    public static final String CACHE_NAME = "planning.DailySchedule";
+
+    private static final List<String> MACHINE_TYPES = UtilMisc.toList("INJECTION_MACHINE", "PRODUCTION_MACHINERY");
+
+    private static final List<String> OPEN_ORDER_STATUS = UtilMisc.toList("PRUN_CREATED", "PRUN_SCHEDULED",
+            "PRUN_DOC_PRINTED", "PRUN_RUNNING");
+
+    private static final UtilCache<String, DailySchedule> scheduleCache =
+            UtilCache.createUtilCache(CACHE_NAME, 200, 3600000L);
+
+    // Se incrementa en cada clear() y removeGroups(); los programas calculados antes no se guardan
+    private static final AtomicLong generation = new AtomicLong();
+
+    private DailyScheduler() {
+    }
+
+    /**
+     * Programa del grupo para el día, desde la caché salvo que se pida recalcular.
+     * Devuelve null si el grupo no existe o no tiene facility.
+     */
+    public static DailySchedule getSchedule(Delegator delegator, String productCategoryId, LocalDate scheduleDate,
+                                            boolean rebuild) throws GenericEntityException {
+        String cacheKey = cacheKey(delegator, productCategoryId, scheduleDate);
+        DailySchedule schedule = rebuild ? null : scheduleCache.get(cacheKey);
+        if (schedule == null) {
+            long buildGeneration = generation.get();
+            schedule = build(delegator, productCategoryId, scheduleDate);
+            if (schedule == null) {
+                return null;
+            }
+            scheduleCache.put(cacheKey, schedule);
+            if (generation.get() != buildGeneration) {
+                scheduleCache.remove(cacheKey);
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Programa del grupo para el día solo si ya está en la caché; nunca lo calcula.
+     */
+    public static DailySchedule getCachedSchedule(Delegator delegator, String productCategoryId, LocalDate scheduleDate) {
+        return scheduleCache.get(cacheKey(delegator, productCategoryId, scheduleDate));
+    }
+
+    /**
+     * Vuelve a programar una orden en el programa cacheado del grupo y día. Solo se recalculan
+     * la máquina en la que estaba y la máquina a la que va.
+     *
+     * @return índices de las máquinas afectadas
+     */
+    public static List<Integer> replanOrder(Delegator delegator, DailySchedule schedule, String workEffortId)
+            throws GenericEntityException {
+        List<EntityCondition> conditions = openOrderConditions(schedule.getFacilityId(), schedule.getScheduleDate());
+        conditions.add(EntityCondition.makeCondition("workEffortId", EntityOperator.EQUALS, workEffortId));
+        GenericValue orderValue = EntityQuery.use(delegator)
+                .from("PlanningWorkOrder")
+                .where(conditions)
+                .filterByDate()
+                .orderBy("-fromDate")
+                .queryFirst();
+
+        WorkOrder order = null;
+        if (orderValue != null && isGroupMember(delegator, schedule.getProductCategoryId(), orderValue.getString("productId"))) {
+            Map<String, List<GenericValue>> routings = loadRoutings(delegator,
+                    UtilMisc.toList(orderValue.getString("productId")), schedule);
+            order = createWorkOrder(orderValue, routings, schedule);
+        }
+        List<Integer> affected = order != null ? schedule.assign(order) : schedule.unassign(workEffortId);
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Re-planned order " + workEffortId + " for " + schedule.getProductCategoryId()
+                    + "; machines affected: " + affected.size(), module);
+        }
+        return affected;
+    }
+
+    public static void clear() {
+        generation.incrementAndGet();
+        scheduleCache.clear();
+    }
+
+    /**
+     * Descarta los programas cacheados de esos grupos, de cualquier día; se recalculan en la
+     * siguiente consulta.
+     *
+     * @return programas descartados
+     */
+    public static int removeGroups(Delegator delegator, Collection<String> productCategoryIds) {
+        if (productCategoryIds.isEmpty()) {
+            return 0;
+        }
+        generation.incrementAndGet();
+        int removed = 0;
+        for (String cacheKey : new ArrayList<>(scheduleCache.getCacheLineKeys())) {
+            String[] parts = cacheKey.split("::");
+            if (parts.length == 3 && parts[0].equals(delegator.getDelegatorName()) && productCategoryIds.contains(parts[1])
+                    && scheduleCache.remove(cacheKey) != null) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static String cacheKey(Delegator delegator, String productCategoryId, LocalDate scheduleDate) {
+        return delegator.getDelegatorName() + "::" + productCategoryId + "::" + scheduleDate;
+    }
+
+    private static DailySchedule build(Delegator delegator, String productCategoryId, LocalDate scheduleDate)
+            throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+
+        // 1. Facility del grupo
+        GenericValue planningGroup = EntityQuery.use(delegator)
+                .from("PlanningGroupAndFacility")
+                .where("productCategoryId", productCategoryId)
+                .queryFirst();
+        if (planningGroup == null || UtilValidate.isEmpty(planningGroup.getString("facilityAttrValue"))) {
+            return null;
+        }
+        String facilityId = planningGroup.getString("facilityAttrValue");
+
+        // 2. Máquinas de producción de la facility y sus turnos del día
+        List<GenericValue> machines = EntityQuery.use(delegator)
+                .select("fixedAssetId", "fixedAssetName", "calendarId")
+                .from("FixedAsset")
+                .where(EntityCondition.makeCondition("fixedAssetTypeId", EntityOperator.IN, MACHINE_TYPES),
+                       EntityCondition.makeCondition("locatedAtFacilityId", EntityOperator.EQUALS, facilityId),
+                       EntityCondition.makeCondition("actualEndOfLife", EntityOperator.EQUALS, null))
+                .orderBy("fixedAssetId")
+                .queryList();
+        String shiftPatternId = ShiftTimelineEngine.resolveShiftPatternId(delegator, productCategoryId, facilityId);
+        String[] machineIds = new String[machines.size()];
+        String[] machineNames = new String[machines.size()];
+        int[][][] shiftWindows = new int[machines.size()][][];
+        for (int i = 0; i < machines.size(); i++) {
+            GenericValue machine = machines.get(i);
+            machineIds[i] = machine.getString("fixedAssetId");
+            machineNames[i] = machine.getString("fixedAssetName");
+            shiftWindows[i] = loadShiftWindows(delegator, machine.getString("calendarId"), shiftPatternId, scheduleDate);
+        }
+        DailySchedule schedule = new DailySchedule(productCategoryId, facilityId, scheduleDate,
+                machineIds, machineNames, shiftWindows);
+
+        // 3. Órdenes abiertas de las referencias del grupo
+        List<String> productIds = EntityQuery.use(delegator)
+                .select("productId")
+                .from("ProductCategoryMember")
+                .where("productCategoryId", productCategoryId)
+                .filterByDate()
+                .getFieldList("productId");
+        List<WorkOrder> workOrders = new ArrayList<>();
+        if (!productIds.isEmpty() && machineIds.length > 0) {
+            Map<String, List<GenericValue>> routings = loadRoutings(delegator, productIds, schedule);
+            List<EntityCondition> conditions = openOrderConditions(facilityId, scheduleDate);
+            conditions.add(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds));
+            List<GenericValue> orderValues = EntityQuery.use(delegator)
+                    .from("PlanningWorkOrder")
+                    .where(conditions)
+                    .filterByDate()
+                    .orderBy("workEffortId", "-fromDate")
+                    .queryList();
+            // Una orden con varias filas PRUN_PROD_DELIV vigentes se programa una vez, con la más reciente
+            String lastWorkEffortId = null;
+            for (GenericValue orderValue : orderValues) {
+                String workEffortId = orderValue.getString("workEffortId");
+                if (workEffortId.equals(lastWorkEffortId)) {
+                    continue;
+                }
+                lastWorkEffortId = workEffortId;
+                WorkOrder order = createWorkOrder(orderValue, routings, schedule);
+                if (order != null) {
+                    workOrders.add(order);
+                }
+            }
+        }
+
+        // 4. Programación
+        schedule.scheduleAll(workOrders);
+        Debug.logInfo("Daily schedule built for " + productCategoryId + " on " + scheduleDate + ": "
+                + workOrders.size() + " orders on " + machineIds.length + " machines in "
+                + (System.currentTimeMillis() - startTime) + " ms", module);
+        return schedule;
+    }
+
+    /**
+     * Producciones abiertas de la facility que empiezan como tarde el día indicado.
+     */
+    private static List<EntityCondition> openOrderConditions(String facilityId, LocalDate scheduleDate) {
+        List<EntityCondition> conditions = new ArrayList<>();
+        conditions.add(EntityCondition.makeCondition("workEffortTypeId", EntityOperator.EQUALS, "PROD_ORDER_HEADER"));
+        conditions.add(EntityCondition.makeCondition("currentStatusId", EntityOperator.IN, OPEN_ORDER_STATUS));
+        conditions.add(EntityCondition.makeCondition("facilityId", EntityOperator.EQUALS, facilityId));
+        conditions.add(EntityCondition.makeCondition(
+                EntityCondition.makeCondition("estimatedStartDate", EntityOperator.EQUALS, null),
+                EntityOperator.OR,
+                EntityCondition.makeCondition("estimatedStartDate", EntityOperator.LESS_THAN,
+                        Timestamp.valueOf(scheduleDate.plusDays(1).atStartOfDay()))));
+        return conditions;
+    }
+
+    private static boolean isGroupMember(Delegator delegator, String productCategoryId, String productId)
+            throws GenericEntityException {
+        return EntityQuery.use(delegator)
+                .from("ProductCategoryMember")
+                .where("productCategoryId", productCategoryId, "productId", productId)
+                .filterByDate()
+                .queryFirst() != null;
+    }
+
+    /**
+     * Rutas de las referencias indicadas restringidas a las máquinas del programa.
+     */
+    private static Map<String, List<GenericValue>> loadRoutings(Delegator delegator, List<String> productIds,
+                                                                DailySchedule schedule) throws GenericEntityException {
+        List<GenericValue> routings = EntityQuery.use(delegator)
+                .select("productId", "fixedAssetId", "unitsPerHour")
+                .from("PlanningRefMachine")
+                .where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds))
+                .orderBy("productId", "sequenceNum")
+                .queryList();
+        Map<String, List<GenericValue>> routingsByProduct = new HashMap<>();
+        for (GenericValue routing : routings) {
+            BigDecimal unitsPerHour = routing.getBigDecimal("unitsPerHour");
+            if (schedule.machineIndex(routing.getString("fixedAssetId")) < 0
+                    || unitsPerHour == null || unitsPerHour.signum() <= 0) {
+                continue;
+            }
+            routingsByProduct.computeIfAbsent(routing.getString("productId"), k -> new ArrayList<>()).add(routing);
+        }
+        return routingsByProduct;
+    }
+
+    private static WorkOrder createWorkOrder(GenericValue orderValue, Map<String, List<GenericValue>> routingsByProduct,
+                                             DailySchedule schedule) {
+        BigDecimal quantity = orderValue.getBigDecimal("quantityToProduce");
+        if (quantity == null || quantity.signum() <= 0) {
+            return null;
+        }
+        String productId = orderValue.getString("productId");
+        List<GenericValue> routings = routingsByProduct.get(productId);
+        int routingCount = routings != null ? routings.size() : 0;
+        int[] eligibleMachines = new int[routingCount];
+        double[] unitsPerHour = new double[routingCount];
+        for (int i = 0; i < routingCount; i++) {
+            eligibleMachines[i] = schedule.machineIndex(routings.get(i).getString("fixedAssetId"));
+            unitsPerHour[i] = routings.get(i).getBigDecimal("unitsPerHour").doubleValue();
+        }
+        Long priority = orderValue.getLong("priority");
+        Timestamp due = orderValue.getTimestamp("estimatedCompletionDate");
+        return new WorkOrder(orderValue.getString("workEffortId"), productId, quantity.doubleValue(),
+                priority != null ? priority : Long.MAX_VALUE, due != null ? due.getTime() : Long.MAX_VALUE,
+                eligibleMachines, unitsPerHour);
+    }
+
+    /**
+     * Turnos del día según el calendario de la máquina (o planning.weekly.default.calendarId)
+     * y el patrón de turnos. Sin calendario no hay turnos.
+     */
+    private static int[][] loadShiftWindows(Delegator delegator, String calendarId, String shiftPatternId,
+                                            LocalDate scheduleDate) throws GenericEntityException {
+        if (UtilValidate.isEmpty(calendarId)) {
+            calendarId = UtilProperties.getPropertyValue("planning", "planning.weekly.default.calendarId");
+        }
+        return ShiftTimelineEngine.getShiftWindows(delegator, calendarId, shiftPatternId, scheduleDate);
+    }
+}
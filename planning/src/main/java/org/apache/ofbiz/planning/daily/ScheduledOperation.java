@@ -0,0 +1,48 @@
+package org.apache.ofbiz.planning.daily;
+
+/**
+ * Tramo de una orden programado en una máquina dentro de un turno. Los tiempos son segundos
+ * desde el inicio del día programado.
+ */
+public final class ScheduledOperation {
+
+    private final String workEffortId;
+    private final String productId;
+    private final int machine;
+    private final int shiftIndex;
+    private final int startSeconds;
+    private final int endSeconds;
+
+    ScheduledOperation(String workEffortId, String productId, int machine, int shiftIndex, int startSeconds, int endSeconds) {
+        this.workEffortId = workEffortId;
+        this.productId = productId;
+        this.machine = machine;
+        this.shiftIndex = shiftIndex;
+        this.startSeconds = startSeconds;
+        this.endSeconds = endSeconds;
+    }
+
+    public String getWorkEffortId() {
+        return workEffortId;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public int getMachine() {
+        return machine;
+    }
+
+    public int getShiftIndex() {
+        return shiftIndex;
+    }
+
+    public int getStartSeconds() {
+        return startSeconds;
+    }
+
+    public int getEndSeconds() {
+        return endSeconds;
+    }
+}
@@ -0,0 +1,54 @@
+package org.apache.ofbiz.planning.daily;
+
+import java.util.Comparator;
+
+/**
+ * Orden de producción a programar: cantidad pendiente, prioridad y máquinas en las que se
+ * puede fabricar con su rendimiento (índices de máquina del {@link DailySchedule}).
+ */
+final class WorkOrder {
+
+    /**
+     * Orden de secuenciación: menor prioridad primero, luego fecha de entrega y id.
+     */
+    static final Comparator<WorkOrder> SEQUENCE_ORDER = Comparator
+            .comparingLong((WorkOrder order) -> order.priority)
+            .thenComparingLong(order -> order.dueMillis)
+            .thenComparing(order -> order.workEffortId);
+
+    final String workEffortId;
+    final String productId;
+    final double quantity;
+    final long priority;
+    final long dueMillis;
+    final int[] eligibleMachines;
+    final int[] durationSeconds;
+
+    WorkOrder(String workEffortId, String productId, double quantity, long priority, long dueMillis,
+              int[] eligibleMachines, double[] unitsPerHour) {
+        this.workEffortId = workEffortId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.priority = priority;
+        this.dueMillis = dueMillis;
+        this.eligibleMachines = eligibleMachines;
+        this.durationSeconds = new int[eligibleMachines.length];
+        for (int i = 0; i < eligibleMachines.length; i++) {
+            // En long y acotada: con cantidades muy grandes o rendimientos muy bajos no cabe en un int
+            long seconds = (long) Math.ceil(quantity / unitsPerHour[i] * 3600.0);
+            durationSeconds[i] = (int) Math.min(Integer.MAX_VALUE, Math.max(0L, seconds));
+        }
+    }
+
+    /**
+     * Duración en la máquina indicada, o -1 si la orden no se puede fabricar en ella.
+     */
+    int durationOn(int machine) {
+        for (int i = 0; i < eligibleMachines.length; i++) {
+            if (eligibleMachines[i] == machine) {
+                return durationSeconds[i];
+            }
+        }
+        return -1;
+    }
+}
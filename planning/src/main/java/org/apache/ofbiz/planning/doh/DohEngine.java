@@ -0,0 +1,427 @@
+package org.apache.ofbiz.planning.doh;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cálculo incremental de la cobertura en días (days on hand, DOH) de las referencias de los
+ * grupos de planificación.
+ *
+ * Cobertura: días que duran las existencias de la facility del grupo (InventoryItem) consumiendo
+ * día a día la demanda pendiente (Requirement REQ_CREATED / REQ_APPROVED) del horizonte. Si las
+ * existencias superan la demanda del horizonte, el resto se extrapola a la demanda media diaria.
+ * La demanda vencida cuenta en el primer día.
+ *
+ * Cada ejecución solo recalcula las referencias cuyo InventoryItem, Requirement, pertenencia al
+ * grupo o PlanningDohConfig han cambiado (lastUpdatedStamp) desde la ejecución anterior, cuya
+ * marca se guarda en PlanningDohState. Se recalcula todo la primera vez, al pedirlo y cuando
+ * cambia el día (el horizonte se desplaza y se recogen borrados y pertenencias caducadas).
+ */
+public final class DohEngine {
+
+    public static final String module = DohEngine.class.getName();
+
+    public static final String STATE_ID = "DOH";
+    public static final String GROUP_CONFIG = "_NA_";
+
+    public static final String STATUS_STOCKOUT = "STOCKOUT";
+    public static final String STATUS_LOW = "LOW";
+    public static final String STATUS_OK = "OK";
+    public static final String STATUS_EXCESS = "EXCESS";
+    public static final String STATUS_NO_DEMAND = "NO_DEMAND";
+
+    private static final List<String> OPEN_REQUIREMENT_STATUS = UtilMisc.toList("REQ_CREATED", "REQ_APPROVED");
+
+    // Máximo de valores en una condición IN
+    private static final int MAX_IN_SIZE = 1000;
+
+    // Margen sobre la marca anterior para no perder cambios de transacciones que terminaron
+    // después de leerla
+    private static final long CHANGE_OVERLAP_MILLIS = 60000L;
+
+    /**
+     * Resultado de una ejecución.
+     */
+    public static final class RunResult {
+        public final boolean fullRecompute;
+        public final int recomputedCount;
+        public final int removedCount;
+
+        private RunResult(boolean fullRecompute, int recomputedCount, int removedCount) {
+            this.fullRecompute = fullRecompute;
+            this.recomputedCount = recomputedCount;
+            this.removedCount = removedCount;
+        }
+    }
+
+    /**
+     * Umbrales y horizonte de una referencia.
+     */
+    private static final class Thresholds {
+        private final double minDays;
+        private final double maxDays;
+        private final int horizonDays;
+
+        private Thresholds(double minDays, double maxDays, int horizonDays) {
+            this.minDays = minDays;
+            this.maxDays = maxDays;
+            this.horizonDays = horizonDays;
+        }
+    }
+
+    private DohEngine() {
+    }
+
+    /**
+     * Recalcula las coberturas cambiadas desde la última ejecución, o todas con fullRecompute.
+     */
+    public static RunResult run(Delegator delegator, boolean fullRecompute) throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        Timestamp runStamp = UtilDateTime.nowTimestamp();
+        LocalDate horizonStart = LocalDate.now();
+
+        GenericValue state = EntityQuery.use(delegator)
+                .from("PlanningDohState")
+                .where("stateId", STATE_ID)
+                .queryOne();
+        Timestamp lastRunStamp = state != null ? state.getTimestamp("lastRunStamp") : null;
+        Date lastHorizonStart = state != null ? state.getDate("horizonStartDate") : null;
+        boolean full = fullRecompute || lastRunStamp == null || lastHorizonStart == null
+                || !lastHorizonStart.toLocalDate().equals(horizonStart);
+
+        Map<String, GenericValue> configs = loadConfigs(delegator);
+        Thresholds defaults = new Thresholds(
+                UtilProperties.getPropertyAsInteger("planning", "planning.doh.min.days", 7),
+                UtilProperties.getPropertyAsInteger("planning", "planning.doh.max.days", 60),
+                UtilProperties.getPropertyAsInteger("planning", "planning.doh.horizon.days", 90));
+        int maxHorizonDays = defaults.horizonDays;
+        for (GenericValue config : configs.values()) {
+            Long horizonDays = config.getLong("horizonDays");
+            if (horizonDays != null && horizonDays > maxHorizonDays) {
+                maxHorizonDays = horizonDays.intValue();
+            }
+        }
+
+        Set<String> productIds;
+        if (full) {
+            productIds = new LinkedHashSet<>(EntityQuery.use(delegator)
+                    .select("productId")
+                    .from("PlanningGroupMember")
+                    .where("productCategoryTypeId", "PLANNING_GROUP")
+                    .filterByDate()
+                    .getFieldList("productId"));
+        } else {
+            productIds = changedProductIds(delegator, new Timestamp(lastRunStamp.getTime() - CHANGE_OVERLAP_MILLIS), configs);
+        }
+
+        int recomputed = 0;
+        int removed = 0;
+        List<String> ids = new ArrayList<>(productIds);
+        for (int from = 0; from < ids.size(); from += MAX_IN_SIZE) {
+            List<String> block = ids.subList(from, Math.min(ids.size(), from + MAX_IN_SIZE));
+            int stored = computeBlock(delegator, block, configs, defaults, horizonStart, maxHorizonDays, runStamp);
+            recomputed += stored;
+            removed += block.size() - stored;
+        }
+        if (full) {
+            // Referencias que ya no están en ningún grupo
+            List<String> staleIds = new ArrayList<>();
+            for (String productId : EntityQuery.use(delegator)
+                    .select("productId")
+                    .from("PlanningDohResult")
+                    .<String>getFieldList("productId")) {
+                if (!productIds.contains(productId)) {
+                    staleIds.add(productId);
+                }
+            }
+            for (int from = 0; from < staleIds.size(); from += MAX_IN_SIZE) {
+                removed += delegator.removeByCondition("PlanningDohResult", EntityCondition.makeCondition("productId",
+                        EntityOperator.IN, staleIds.subList(from, Math.min(staleIds.size(), from + MAX_IN_SIZE))));
+            }
+        }
+
+        if (state == null) {
+            state = delegator.makeValue("PlanningDohState", "stateId", STATE_ID);
+        }
+        state.set("lastRunStamp", runStamp);
+        state.set("horizonStartDate", Date.valueOf(horizonStart));
+        state.set("lastRunCount", (long) recomputed);
+        delegator.createOrStore(state);
+
+        Debug.logInfo("DOH " + (full ? "full" : "incremental") + " run: " + recomputed + " references recomputed, "
+                + removed + " removed in " + (System.currentTimeMillis() - startTime) + " ms", module);
+        return new RunResult(full, recomputed, removed);
+    }
+
+    /**
+     * Obliga a recalcular todo en la próxima ejecución (p.ej. al borrar una configuración,
+     * cambio que lastUpdatedStamp no refleja).
+     */
+    public static void resetState(Delegator delegator) throws GenericEntityException {
+        delegator.removeByAnd("PlanningDohState", "stateId", STATE_ID);
+    }
+
+    /**
+     * Cobertura en días de onHand con la demanda diaria indicada, o null si no hay demanda.
+     */
+    public static Double coverageDays(double onHand, double[] dailyDemand) {
+        double total = 0;
+        for (double demand : dailyDemand) {
+            total += demand;
+        }
+        if (total <= 0) {
+            return null;
+        }
+        double stock = onHand;
+        if (stock <= 0) {
+            return 0.0;
+        }
+        for (int day = 0; day < dailyDemand.length; day++) {
+            if (dailyDemand[day] >= stock) {
+                return day + stock / dailyDemand[day];
+            }
+            stock -= dailyDemand[day];
+        }
+        return dailyDemand.length + stock / (total / dailyDemand.length);
+    }
+
+    private static Map<String, GenericValue> loadConfigs(Delegator delegator) throws GenericEntityException {
+        Map<String, GenericValue> configs = new HashMap<>();
+        for (GenericValue config : EntityQuery.use(delegator).from("PlanningDohConfig").queryList()) {
+            configs.put(config.getString("productCategoryId") + "::" + config.getString("productId"), config);
+        }
+        return configs;
+    }
+
+    /**
+     * Referencias con existencias, demanda, pertenencia a grupo o configuración cambiadas
+     * desde la marca indicada.
+     */
+    private static Set<String> changedProductIds(Delegator delegator, Timestamp since, Map<String, GenericValue> configs)
+            throws GenericEntityException {
+        Set<String> productIds = new LinkedHashSet<>();
+        EntityCondition changed = EntityCondition.makeCondition("lastUpdatedStamp", EntityOperator.GREATER_THAN_EQUAL_TO, since);
+        productIds.addAll(EntityQuery.use(delegator)
+                .select("productId")
+                .from("InventoryItem")
+                .where(changed)
+                .getFieldList("productId"));
+        productIds.addAll(EntityQuery.use(delegator)
+                .select("productId")
+                .from("Requirement")
+                .where(EntityCondition.makeCondition(changed, EntityOperator.AND,
+                        EntityCondition.makeCondition("productId", EntityOperator.NOT_EQUAL, null)))
+                .getFieldList("productId"));
+        productIds.addAll(EntityQuery.use(delegator)
+                .select("productId")
+                .from("PlanningGroupMember")
+                .where(EntityCondition.makeCondition(
+                        EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP"),
+                        EntityOperator.AND,
+                        EntityCondition.makeCondition("memberUpdatedStamp", EntityOperator.GREATER_THAN_EQUAL_TO, since)))
+                .getFieldList("productId"));
+
+        List<String> changedGroups = new ArrayList<>();
+        for (GenericValue config : configs.values()) {
+            Timestamp stamp = config.getTimestamp("lastUpdatedStamp");
+            if (stamp == null || stamp.before(since)) {
+                continue;
+            }
+            if (GROUP_CONFIG.equals(config.getString("productId"))) {
+                changedGroups.add(config.getString("productCategoryId"));
+            } else {
+                productIds.add(config.getString("productId"));
+            }
+        }
+        if (!changedGroups.isEmpty()) {
+            productIds.addAll(EntityQuery.use(delegator)
+                    .select("productId")
+                    .from("PlanningGroupMember")
+                    .where(EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, changedGroups))
+                    .filterByDate()
+                    .getFieldList("productId"));
+        }
+        productIds.remove(null);
+        return productIds;
+    }
+
+    /**
+     * Calcula y guarda la cobertura de un bloque de referencias y borra la de las que ya no
+     * están en ningún grupo. Devuelve el número de resultados guardados.
+     */
+    private static int computeBlock(Delegator delegator, List<String> productIds, Map<String, GenericValue> configs,
+                                    Thresholds defaults, LocalDate horizonStart, int maxHorizonDays, Timestamp runStamp)
+            throws GenericEntityException {
+        EntityCondition inBlock = EntityCondition.makeCondition("productId", EntityOperator.IN, productIds);
+
+        // 1. Grupo de planificación (el primero) y facility de cada referencia
+        Map<String, GenericValue> members = new HashMap<>();
+        try (EntityListIterator memberValues = EntityQuery.use(delegator)
+                .select("productId", "productCategoryId", "facilityId")
+                .from("PlanningGroupMember")
+                .where(EntityCondition.makeCondition(inBlock, EntityOperator.AND,
+                        EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP")))
+                .filterByDate()
+                .orderBy("productId", "productCategoryId")
+                .queryIterator()) {
+            GenericValue member;
+            while ((member = memberValues.next()) != null) {
+                members.putIfAbsent(member.getString("productId"), member);
+            }
+        }
+
+        // 2. Existencias en la facility del grupo (en todas si el grupo no tiene facility)
+        Map<String, Double> onHand = new HashMap<>();
+        for (GenericValue inventory : EntityQuery.use(delegator)
+                .from("PlanningInventoryByProduct")
+                .where(inBlock)
+                .queryList()) {
+            GenericValue member = members.get(inventory.getString("productId"));
+            BigDecimal quantity = inventory.getBigDecimal("quantityOnHandTotal");
+            if (member == null || quantity == null || !sameFacility(member, inventory.getString("facilityId"))) {
+                continue;
+            }
+            onHand.merge(member.getString("productId"), quantity.doubleValue(), Double::sum);
+        }
+
+        // 3. Demanda diaria pendiente en el horizonte de cada referencia
+        Map<String, Thresholds> thresholds = new HashMap<>();
+        Map<String, double[]> demand = new HashMap<>();
+        for (GenericValue member : members.values()) {
+            Thresholds productThresholds = thresholdsOf(configs, defaults, member);
+            thresholds.put(member.getString("productId"), productThresholds);
+            demand.put(member.getString("productId"), new double[productThresholds.horizonDays]);
+        }
+        try (EntityListIterator requirements = EntityQuery.use(delegator)
+                .select("productId", "facilityId", "requiredByDate", "quantity")
+                .from("Requirement")
+                .where(EntityCondition.makeCondition(inBlock, EntityOperator.AND,
+                        EntityCondition.makeCondition(
+                                EntityCondition.makeCondition("statusId", EntityOperator.IN, OPEN_REQUIREMENT_STATUS),
+                                EntityOperator.AND,
+                                EntityCondition.makeCondition("requiredByDate", EntityOperator.LESS_THAN,
+                                        Timestamp.valueOf(horizonStart.plusDays(maxHorizonDays).atStartOfDay())))))
+                .queryIterator()) {
+            GenericValue requirement;
+            while ((requirement = requirements.next()) != null) {
+                GenericValue member = members.get(requirement.getString("productId"));
+                BigDecimal quantity = requirement.getBigDecimal("quantity");
+                Timestamp requiredBy = requirement.getTimestamp("requiredByDate");
+                if (member == null || quantity == null || requiredBy == null
+                        || !sameFacility(member, requirement.getString("facilityId"))) {
+                    continue;
+                }
+                double[] productDemand = demand.get(member.getString("productId"));
+                long day = Math.max(0L, ChronoUnit.DAYS.between(horizonStart, requiredBy.toLocalDateTime().toLocalDate()));
+                if (day < productDemand.length) {
+                    productDemand[(int) day] += quantity.doubleValue();
+                }
+            }
+        }
+
+        // 4. Resultados
+        List<GenericValue> results = new ArrayList<>(members.size());
+        List<String> removedIds = new ArrayList<>();
+        Date horizonStartDate = Date.valueOf(horizonStart);
+        for (String productId : productIds) {
+            GenericValue member = members.get(productId);
+            if (member == null) {
+                removedIds.add(productId);
+                continue;
+            }
+            Thresholds productThresholds = thresholds.get(productId);
+            double[] productDemand = demand.get(productId);
+            double quantityOnHand = onHand.getOrDefault(productId, 0.0);
+            double horizonDemand = 0;
+            for (double dayDemand : productDemand) {
+                horizonDemand += dayDemand;
+            }
+            Double dohDays = coverageDays(quantityOnHand, productDemand);
+
+            String status;
+            if (dohDays == null) {
+                status = STATUS_NO_DEMAND;
+            } else if (quantityOnHand <= 0) {
+                status = STATUS_STOCKOUT;
+            } else if (dohDays < productThresholds.minDays) {
+                status = STATUS_LOW;
+            } else if (dohDays > productThresholds.maxDays) {
+                status = STATUS_EXCESS;
+            } else {
+                status = STATUS_OK;
+            }
+
+            GenericValue result = delegator.makeValue("PlanningDohResult");
+            result.set("productId", productId);
+            result.set("productCategoryId", member.getString("productCategoryId"));
+            result.set("facilityId", member.getString("facilityId"));
+            result.set("quantityOnHand", decimal(quantityOnHand));
+            result.set("horizonDemand", decimal(horizonDemand));
+            result.set("avgDailyDemand", decimal(horizonDemand / productDemand.length));
+            result.set("dohDays", dohDays != null ? decimal(dohDays) : null);
+            result.set("stockoutDate", dohDays != null && dohDays < productDemand.length
+                    ? Date.valueOf(horizonStart.plusDays(dohDays.longValue())) : null);
+            result.set("dohStatus", status);
+            result.set("horizonStartDate", horizonStartDate);
+            result.set("computedStamp", runStamp);
+            results.add(result);
+        }
+        delegator.storeAll(results);
+        if (!removedIds.isEmpty()) {
+            delegator.removeByCondition("PlanningDohResult",
+                    EntityCondition.makeCondition("productId", EntityOperator.IN, removedIds));
+        }
+        return results.size();
+    }
+
+    /**
+     * Umbrales de la referencia: su configuración, la de su grupo o los valores por defecto.
+     */
+    private static Thresholds thresholdsOf(Map<String, GenericValue> configs, Thresholds defaults, GenericValue member) {
+        String productCategoryId = member.getString("productCategoryId");
+        GenericValue config = configs.get(productCategoryId + "::" + member.getString("productId"));
+        if (config == null) {
+            config = configs.get(productCategoryId + "::" + GROUP_CONFIG);
+        }
+        if (config == null) {
+            return defaults;
+        }
+        BigDecimal minDays = config.getBigDecimal("minDohDays");
+        BigDecimal maxDays = config.getBigDecimal("maxDohDays");
+        Long horizonDays = config.getLong("horizonDays");
+        return new Thresholds(minDays != null ? minDays.doubleValue() : defaults.minDays,
+                maxDays != null ? maxDays.doubleValue() : defaults.maxDays,
+                horizonDays != null && horizonDays > 0 ? horizonDays.intValue() : defaults.horizonDays);
+    }
+
+    private static boolean sameFacility(GenericValue member, String facilityId) {
+        String groupFacilityId = member.getString("facilityId");
+        return groupFacilityId == null || groupFacilityId.equals(facilityId);
+    }
+
+    private static BigDecimal decimal(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,115 @@
+package org.apache.ofbiz.planning.doh;
+
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pruebas de {@link DohEngine}: el cálculo de días de cobertura y la ejecución incremental,
+ * que solo recalcula las referencias cambiadas desde la marca de la ejecución anterior.
+ */
+public class DohEngineTests extends OFBizTestCase {
+
+    private static final String GROUP_ID = "PLTDOH-GRP";
+    private static final String CHANGED_ID = "PLTDOH-A";
+    private static final String UNCHANGED_ID = "PLTDOH-B";
+    private static final List<String> PRODUCT_IDS = Arrays.asList(CHANGED_ID, UNCHANGED_ID);
+
+    public DohEngineTests(String name) {
+        super(name);
+    }
+
+    public void testNoDemand() {
+        assertNull(DohEngine.coverageDays(10, new double[0]));
+        assertNull(DohEngine.coverageDays(10, new double[] {0, 0, 0}));
+    }
+
+    public void testStockout() {
+        assertEquals(0.0, DohEngine.coverageDays(0, new double[] {10, 10}), 0.0);
+        assertEquals(0.0, DohEngine.coverageDays(-5, new double[] {10, 10}), 0.0);
+    }
+
+    public void testWithinHorizon() {
+        assertEquals(1.5, DohEngine.coverageDays(15, new double[] {10, 10, 10}), 1e-9);
+        assertEquals(1.0, DohEngine.coverageDays(10, new double[] {10, 10, 10}), 1e-9);
+        // Los días sin demanda también cuentan
+        assertEquals(2.5, DohEngine.coverageDays(5, new double[] {0, 0, 10}), 1e-9);
+    }
+
+    public void testBeyondHorizon() {
+        // Lo que sobra al final se reparte a la demanda media del horizonte
+        assertEquals(4.0, DohEngine.coverageDays(40, new double[] {10, 10}), 1e-9);
+        assertEquals(6.0, DohEngine.coverageDays(30, new double[] {0, 10}), 1e-9);
+    }
+
+    public void testIncrementalRun() throws Exception {
+        removeTestData();
+        try {
+            Timestamp fromDate = new Timestamp(System.currentTimeMillis() - 86400000L);
+            delegator.create(delegator.makeValue("ProductCategory", "productCategoryId", GROUP_ID,
+                    "productCategoryTypeId", "PLANNING_GROUP", "categoryName", "DOH test group"));
+            for (String productId : PRODUCT_IDS) {
+                delegator.create(delegator.makeValue("Product", "productId", productId,
+                        "productTypeId", "FINISHED_GOOD", "internalName", productId));
+                delegator.create(delegator.makeValue("ProductCategoryMember", "productCategoryId", GROUP_ID,
+                        "productId", productId, "fromDate", fromDate));
+                delegator.create(delegator.makeValue("InventoryItem", "inventoryItemId", productId,
+                        "inventoryItemTypeId", "NON_SERIAL_INV_ITEM", "productId", productId,
+                        "quantityOnHandTotal", BigDecimal.TEN, "availableToPromiseTotal", BigDecimal.TEN));
+            }
+
+            assertTrue(DohEngine.run(delegator, true).fullRecompute);
+            Timestamp firstStamp = result(UNCHANGED_ID).getTimestamp("computedStamp");
+            assertEquals(firstStamp, result(CHANGED_ID).getTimestamp("computedStamp"));
+            assertEquals(0, BigDecimal.TEN.compareTo(result(CHANGED_ID).getBigDecimal("quantityOnHand")));
+
+            // La siguiente ejecución relee desde 60 s antes de su marca: se pone la marca de forma
+            // que los datos creados arriba queden antes y el cambio de abajo después
+            Thread.sleep(50);
+            Timestamp since = UtilDateTime.nowTimestamp();
+            GenericValue state = EntityQuery.use(delegator).from("PlanningDohState").where("stateId", DohEngine.STATE_ID).queryOne();
+            state.set("lastRunStamp", new Timestamp(since.getTime() + 60000L));
+            delegator.store(state);
+            Thread.sleep(50);
+
+            GenericValue inventory = EntityQuery.use(delegator).from("InventoryItem").where("inventoryItemId", CHANGED_ID).queryOne();
+            inventory.set("quantityOnHandTotal", new BigDecimal("25"));
+            delegator.store(inventory);
+
+            DohEngine.RunResult run = DohEngine.run(delegator, false);
+            assertFalse(run.fullRecompute);
+            GenericValue changed = result(CHANGED_ID);
+            assertTrue("Changed product recomputed", changed.getTimestamp("computedStamp").after(firstStamp));
+            assertEquals(0, new BigDecimal("25").compareTo(changed.getBigDecimal("quantityOnHand")));
+            assertEquals("Unchanged product not recomputed", firstStamp, result(UNCHANGED_ID).getTimestamp("computedStamp"));
+        } finally {
+            removeTestData();
+            // La marca de la prueba queda en el futuro: la siguiente ejecución tiene que ser completa
+            DohEngine.resetState(delegator);
+        }
+    }
+
+    private GenericValue result(String productId) throws GenericEntityException {
+        GenericValue result = EntityQuery.use(delegator).from("PlanningDohResult").where("productId", productId).queryOne();
+        assertNotNull("DOH result of " + productId, result);
+        return result;
+    }
+
+    private void removeTestData() throws GenericEntityException {
+        EntityCondition products = EntityCondition.makeCondition("productId", EntityOperator.IN, PRODUCT_IDS);
+        delegator.removeByCondition("PlanningDohResult", products);
+        delegator.removeByCondition("InventoryItem", products);
+        delegator.removeByCondition("ProductCategoryMember", products);
+        delegator.removeByCondition("Product", products);
+        delegator.removeByAnd("ProductCategory", "productCategoryId", GROUP_ID);
+    }
+}
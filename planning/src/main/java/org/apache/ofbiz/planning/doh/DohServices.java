@@ -0,0 +1,192 @@
+package org.apache.ofbiz.planning.doh;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class DohServices {
+
+    public static final String module = DohServices.class.getName();
+
+    private static final int DEFAULT_VIEW_SIZE = 200;
+
+    /**
+     * Recalcula la cobertura en días de las referencias cuyas existencias, demanda, grupo o
+     * configuración han cambiado desde la última ejecución. Pensado para ejecutarse como
+     * trabajo programado cada pocos minutos.
+     *
+     * IN:
+     *  - fullRecompute (Boolean, opcional): recalcular todas las referencias
+     *
+     * OUT:
+     *  - fullRecompute   (Boolean): si se ha recalculado todo
+     *  - recomputedCount (Integer): referencias recalculadas
+     *  - removedCount    (Integer): resultados borrados (referencias fuera de los grupos)
+     */
+    public static Map<String, Object> computePlanningDoh(DispatchContext dctx, Map<String, ? extends Object> context) {
+        PlanningMetrics.Timer timer = PlanningMetrics.start("computePlanningDoh");
+        try {
+            DohEngine.RunResult run = DohEngine.run(dctx.getDelegator(), Boolean.TRUE.equals(context.get("fullRecompute")));
+            timer.rows(run.recomputedCount);
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("fullRecompute", run.fullRecompute);
+            result.put("recomputedCount", run.recomputedCount);
+            result.put("removedCount", run.removedCount);
+            return result;
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error computing days on hand: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error computing days on hand: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Coberturas calculadas para el cuadro de mando, de menor a mayor cobertura.
+     *
+     * IN:
+     *  - productCategoryId (String, opcional): grupo de planificación
+     *  - facilityId        (String, opcional): facility
+     *  - dohStatus         (String, opcional): STOCKOUT, LOW, OK, EXCESS o NO_DEMAND
+     *  - viewSize          (Integer, opcional): máximo de filas (por defecto 200)
+     *
+     * OUT:
+     *  - dohResults   (List<GenericValue>): PlanningDohResult
+     *  - lastRunStamp (Timestamp): fecha de la última ejecución del cálculo
+     */
+    public static Map<String, Object> getPlanningDohResults(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        Integer viewSize = (Integer) context.get("viewSize");
+
+        List<EntityCondition> conditions = new ArrayList<>();
+        for (String fieldName : new String[] {"productCategoryId", "facilityId", "dohStatus"}) {
+            String value = (String) context.get(fieldName);
+            if (UtilValidate.isNotEmpty(value)) {
+                conditions.add(EntityCondition.makeCondition(fieldName, EntityOperator.EQUALS, value));
+            }
+        }
+        try {
+            List<GenericValue> dohResults = EntityQuery.use(delegator)
+                    .from("PlanningDohResult")
+                    .where(conditions)
+                    .orderBy("dohDays", "productId")
+                    .maxRows(viewSize != null && viewSize > 0 ? viewSize : DEFAULT_VIEW_SIZE)
+                    .queryList();
+            GenericValue state = EntityQuery.use(delegator)
+                    .from("PlanningDohState")
+                    .where("stateId", DohEngine.STATE_ID)
+                    .queryOne();
+
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("dohResults", dohResults);
+            result.put("lastRunStamp", state != null ? state.getTimestamp("lastRunStamp") : null);
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error loading days on hand results: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error loading days on hand results: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Crear o actualizar la configuración de cobertura de un grupo o de una referencia.
+     *
+     * IN:
+     *  - productCategoryId (String): grupo de planificación (requerido)
+     *  - productId         (String, opcional): referencia; vacío = todo el grupo
+     *  - minDohDays        (BigDecimal, opcional): cobertura mínima en días
+     *  - maxDohDays        (BigDecimal, opcional): cobertura máxima en días
+     *  - horizonDays       (Long, opcional): horizonte de demanda en días
+     */
+    public static Map<String, Object> storePlanningDohConfig(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productCategoryId = (String) context.get("productCategoryId");
+        String productId = (String) context.get("productId");
+        BigDecimal minDohDays = (BigDecimal) context.get("minDohDays");
+        BigDecimal maxDohDays = (BigDecimal) context.get("maxDohDays");
+        Long horizonDays = (Long) context.get("horizonDays");
+
+        if (UtilValidate.isEmpty(productId)) {
+            productId = DohEngine.GROUP_CONFIG;
+        }
+        if ((minDohDays != null && minDohDays.signum() < 0) || (maxDohDays != null && maxDohDays.signum() < 0)) {
+            return ServiceUtil.returnError("Days on hand thresholds must not be negative");
+        }
+        if (minDohDays != null && maxDohDays != null && minDohDays.compareTo(maxDohDays) > 0) {
+            return ServiceUtil.returnError("Minimum days on hand must not exceed maximum: " + minDohDays + " > " + maxDohDays);
+        }
+        if (horizonDays != null && (horizonDays <= 0 || horizonDays > 3660)) {
+            return ServiceUtil.returnError("Horizon days must be between 1 and 3660: " + horizonDays);
+        }
+        try {
+            GenericValue planningGroup = EntityQuery.use(delegator)
+                    .from("ProductCategory")
+                    .where("productCategoryId", productCategoryId)
+                    .queryOne();
+            if (planningGroup == null || !"PLANNING_GROUP".equals(planningGroup.getString("productCategoryTypeId"))) {
+                return ServiceUtil.returnError("Planning Group not found: " + productCategoryId);
+            }
+            if (!DohEngine.GROUP_CONFIG.equals(productId) && EntityQuery.use(delegator)
+                    .from("ProductCategoryMember")
+                    .where("productCategoryId", productCategoryId, "productId", productId)
+                    .filterByDate()
+                    .queryFirst() == null) {
+                return ServiceUtil.returnError("Product " + productId + " is not a member of planning group " + productCategoryId);
+            }
+
+            GenericValue config = delegator.makeValue("PlanningDohConfig",
+                    "productCategoryId", productCategoryId, "productId", productId);
+            config.set("minDohDays", minDohDays);
+            config.set("maxDohDays", maxDohDays);
+            config.set("horizonDays", horizonDays);
+            delegator.createOrStore(config);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error storing days on hand configuration: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error storing days on hand configuration: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess("Days on hand configuration saved successfully");
+    }
+
+    /**
+     * Borrar una configuración de cobertura. El borrado no deja marca en lastUpdatedStamp, así
+     * que la siguiente ejecución del cálculo recalcula todo.
+     *
+     * IN:
+     *  - productCategoryId (String): grupo de planificación (requerido)
+     *  - productId         (String): referencia o _NA_ (requerido)
+     */
+    public static Map<String, Object> deletePlanningDohConfig(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productCategoryId = (String) context.get("productCategoryId");
+        String productId = (String) context.get("productId");
+
+        try {
+            GenericValue config = EntityQuery.use(delegator)
+                    .from("PlanningDohConfig")
+                    .where("productCategoryId", productCategoryId, "productId", productId)
+                    .queryOne();
+            if (config == null) {
+                return ServiceUtil.returnError("Days on hand configuration not found: " + productCategoryId + " / " + productId);
+            }
+            config.remove();
+            DohEngine.resetState(delegator);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error deleting days on hand configuration: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error deleting days on hand configuration: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess("Days on hand configuration deleted successfully");
+    }
+}
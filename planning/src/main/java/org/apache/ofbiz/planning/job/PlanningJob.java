@@ -0,0 +1,183 @@
+package org.apache.ofbiz.planning.job;
+
+import org.apache.ofbiz.planning.common.PlanningProgress;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Ejecución de planificación en segundo plano: estado, avance y filas de resultado que se van
+ * publicando según avanza, para que la pantalla las recoja por partes.
+ *
+ * El estado lo modifican el hilo de la ejecución y {@link PlanningJobManager}; las consultas
+ * llegan desde los hilos de las peticiones, por eso los campos son volatile y las filas se
+ * publican en una lista sincronizada.
+ */
+public final class PlanningJob implements PlanningProgress {
+
+    public static final String WEEKLY_PLAN = "WEEKLY_PLAN";
+    public static final String DAILY_SCHEDULE = "DAILY_SCHEDULE";
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String FINISHED = "FINISHED";
+    public static final String FAILED = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+
+    private final String jobId;
+    private final String jobType;
+    private final String facilityId;
+    private final String userLoginId;
+    private final Map<String, Object> parameters;
+    private final long submittedMillis = System.currentTimeMillis();
+    private final List<Map<String, Object>> rows = Collections.synchronizedList(new ArrayList<Map<String, Object>>());
+
+    private volatile String status = QUEUED;
+    private volatile int totalSteps;
+    private volatile int completedSteps;
+    private volatile String currentPhase;
+    private volatile String errorMessage;
+    private volatile long startedMillis;
+    private volatile long finishedMillis;
+    private volatile boolean cancelRequested;
+    // Resultado completo (p. ej. el WeeklyPlan) para otros servicios; no se envía a la pantalla
+    private volatile Object result;
+
+    PlanningJob(String jobId, String jobType, String facilityId, String userLoginId, Map<String, Object> parameters) {
+        this.jobId = jobId;
+        this.jobType = jobType;
+        this.facilityId = facilityId;
+        this.userLoginId = userLoginId;
+        this.parameters = Collections.unmodifiableMap(new HashMap<>(parameters));
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getJobType() {
+        return jobType;
+    }
+
+    public String getFacilityId() {
+        return facilityId;
+    }
+
+    public Map<String, Object> getParameters() {
+        return parameters;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isDone() {
+        return FINISHED.equals(status) || FAILED.equals(status) || CANCELLED.equals(status);
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public long getFinishedMillis() {
+        return finishedMillis;
+    }
+
+    /**
+     * Empieza la siguiente fase: la anterior cuenta como completada. Corta la ejecución si se
+     * ha pedido cancelarla.
+     */
+    @Override
+    public void phase(String description) {
+        checkCancelled();
+        if (currentPhase != null && completedSteps < totalSteps - 1) {
+            completedSteps++;
+        }
+        currentPhase = description;
+    }
+
+    /**
+     * Publica filas de resultado parciales.
+     */
+    void addRows(List<Map<String, Object>> newRows) {
+        rows.addAll(newRows);
+    }
+
+    void checkCancelled() {
+        if (cancelRequested) {
+            throw new CancellationException("Planning job " + jobId + " cancelled");
+        }
+    }
+
+    void setTotalSteps(int totalSteps) {
+        this.totalSteps = totalSteps;
+    }
+
+    void started() {
+        startedMillis = System.currentTimeMillis();
+        status = RUNNING;
+    }
+
+    void finished(Object result) {
+        this.result = result;
+        completedSteps = totalSteps;
+        currentPhase = null;
+        end(FINISHED);
+    }
+
+    void failed(String errorMessage) {
+        this.errorMessage = errorMessage;
+        end(FAILED);
+    }
+
+    void cancelled() {
+        end(CANCELLED);
+    }
+
+    /**
+     * Pide la cancelación: la ejecución se corta al empezar su siguiente fase.
+     */
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    private void end(String endStatus) {
+        finishedMillis = System.currentTimeMillis();
+        status = endStatus;
+    }
+
+    /**
+     * Estado de la ejecución para la pantalla o JSON, con las filas publicadas desde fromRow.
+     *
+     * @param fromRow primera fila a devolver, o -1 para no devolver filas
+     */
+    public Map<String, Object> toStatusMap(int fromRow) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("jobId", jobId);
+        map.put("jobType", jobType);
+        map.put("facilityId", facilityId);
+        map.put("userLoginId", userLoginId);
+        map.put("status", status);
+        map.put("currentPhase", currentPhase);
+        map.put("completedSteps", completedSteps);
+        map.put("totalSteps", totalSteps);
+        map.put("progressPct", totalSteps > 0 ? completedSteps * 100 / totalSteps : (isDone() ? 100 : 0));
+        map.put("errorMessage", errorMessage);
+        map.put("submittedStamp", new Timestamp(submittedMillis));
+        map.put("startedStamp", startedMillis > 0 ? new Timestamp(startedMillis) : null);
+        map.put("finishedStamp", finishedMillis > 0 ? new Timestamp(finishedMillis) : null);
+        synchronized (rows) {
+            map.put("rowCount", rows.size());
+            if (fromRow >= 0) {
+                map.put("rows", new ArrayList<>(rows.subList(Math.min(fromRow, rows.size()), rows.size())));
+                map.put("nextRow", rows.size());
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,270 @@
+package org.apache.ofbiz.planning.job;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.change.PlanningChangeTracker;
+import org.apache.ofbiz.planning.common.PlanningExecutors;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.daily.DailySchedule;
+import org.apache.ofbiz.planning.daily.DailyScheduler;
+import org.apache.ofbiz.planning.weekly.WeeklyPlan;
+import org.apache.ofbiz.planning.weekly.WeeklyPlanEngine;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ejecuciones de planificación en segundo plano, fuera de los hilos de las peticiones HTTP.
+ *
+ * Las ejecuciones corren en un pool propio (planning.job.threads) y como mucho
+ * planning.job.facility.concurrency a la vez por facility; las demás esperan en una cola por
+ * facility sin ocupar hilos del pool. La cancelación es cooperativa: la ejecución se corta al
+ * empezar su siguiente fase, sin interrumpir una consulta en curso. Las ejecuciones terminadas
+ * se conservan en memoria planning.job.retention.minutes para consultar su resultado.
+ */
+public final class PlanningJobManager {
+
+    public static final String module = PlanningJobManager.class.getName();
+
+    private static final int FACILITY_CONCURRENCY = Math.max(1,
+            UtilProperties.getPropertyAsInteger("planning", "planning.job.facility.concurrency", 1));
+
+    private static final long RETENTION_MILLIS =
+            UtilProperties.getPropertyAsInteger("planning", "planning.job.retention.minutes", 60) * 60000L;
+
+    private static final ExecutorService jobExecutor = Executors.newFixedThreadPool(
+            Math.max(1, UtilProperties.getPropertyAsInteger("planning", "planning.job.threads", 4)),
+            PlanningExecutors.newThreadFactory(new ThreadGroup("planning-job")));
+
+    private static final Map<String, PlanningJob> jobs = new ConcurrentHashMap<>();
+    private static final AtomicLong jobSequence = new AtomicLong();
+
+    // Ejecuciones en marcha y en espera por facility; protegidas por el monitor de la clase
+    private static final Map<String, Integer> runningByFacility = new HashMap<>();
+    private static final Map<String, Deque<QueuedJob>> queuedByFacility = new HashMap<>();
+
+    private PlanningJobManager() {
+    }
+
+    /**
+     * Cálculo de una ejecución; devuelve el resultado completo que se guarda en el job.
+     */
+    private interface JobBody {
+        Object run(PlanningJob job) throws GenericEntityException;
+    }
+
+    private static final class QueuedJob {
+        private final PlanningJob job;
+        private final JobBody body;
+
+        private QueuedJob(PlanningJob job, JobBody body) {
+            this.job = job;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Plan semanal de una facility (WeeklyPlanEngine), en una transacción. Las filas
+     * publicadas son las de WeeklyPlan.toMachineRows y el resultado es el WeeklyPlan.
+     */
+    public static PlanningJob submitWeeklyPlan(final Delegator delegator, String facilityId, final LocalDate fromDate,
+                                               final int weekCount, String userLoginId) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("fromDate", fromDate);
+        parameters.put("weekCount", weekCount);
+        return submit(PlanningJob.WEEKLY_PLAN, facilityId, userLoginId, parameters, job -> {
+            job.setTotalSteps(WeeklyPlanEngine.PHASE_COUNT + 1);
+            boolean beganTransaction = TransactionUtil.begin(600);
+            try {
+                WeeklyPlan plan = WeeklyPlanEngine.build(delegator, job.getFacilityId(), fromDate, weekCount, job);
+                job.phase("Publishing results");
+                job.addRows(plan.toMachineRows());
+                TransactionUtil.commit(beganTransaction);
+                PlanningChangeTracker.publish(delegator, plan);
+                return plan;
+            } catch (GenericEntityException | RuntimeException e) {
+                TransactionUtil.rollback(beganTransaction, "Error in weekly planning job " + job.getJobId(), e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Programa diario de todos los grupos de planificación de una facility, un grupo por fase
+     * y transacción; las operaciones de cada grupo se publican al terminarlo. El resultado es
+     * el mapa grupo → DailySchedule.
+     */
+    public static PlanningJob submitDailySchedule(final Delegator delegator, String facilityId, final LocalDate scheduleDate,
+                                                  final boolean rebuild, String userLoginId) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("scheduleDate", scheduleDate);
+        parameters.put("rebuild", rebuild);
+        return submit(PlanningJob.DAILY_SCHEDULE, facilityId, userLoginId, parameters, job -> {
+            List<String> productCategoryIds = EntityQuery.use(delegator)
+                    .select("productCategoryId")
+                    .from("PlanningGroupAndFacility")
+                    .where("productCategoryTypeId", "PLANNING_GROUP", "facilityAttrValue", job.getFacilityId())
+                    .orderBy("productCategoryId")
+                    .getFieldList("productCategoryId");
+            job.setTotalSteps(productCategoryIds.size());
+            Map<String, DailySchedule> schedules = new LinkedHashMap<>();
+            for (String productCategoryId : productCategoryIds) {
+                job.phase("Scheduling " + productCategoryId);
+                boolean beganTransaction = TransactionUtil.begin(600);
+                try {
+                    DailySchedule schedule = DailyScheduler.getSchedule(delegator, productCategoryId, scheduleDate, rebuild);
+                    TransactionUtil.commit(beganTransaction);
+                    if (schedule == null) {
+                        continue;
+                    }
+                    schedules.put(productCategoryId, schedule);
+                    List<Map<String, Object>> rows = schedule.toOperationRows(null);
+                    for (Map<String, Object> row : rows) {
+                        row.put("productCategoryId", productCategoryId);
+                    }
+                    job.addRows(rows);
+                } catch (GenericEntityException | RuntimeException e) {
+                    TransactionUtil.rollback(beganTransaction, "Error in daily scheduling job " + job.getJobId(), e);
+                    throw e;
+                }
+            }
+            return schedules;
+        });
+    }
+
+    public static PlanningJob getJob(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    /**
+     * Ejecuciones conservadas, de la más reciente a la más antigua.
+     */
+    public static List<PlanningJob> getJobs() {
+        purgeFinished();
+        List<PlanningJob> list = new ArrayList<>(jobs.values());
+        list.sort((a, b) -> b.getJobId().compareTo(a.getJobId()));
+        return list;
+    }
+
+    /**
+     * Pide cancelar una ejecución. Si aún está en cola se cancela ya; si está en marcha se
+     * corta al empezar su siguiente fase.
+     *
+     * @return false si la ejecución no existe o ya ha terminado
+     */
+    public static boolean cancel(String jobId) {
+        PlanningJob job = getJob(jobId);
+        if (job == null || job.isDone()) {
+            return false;
+        }
+        synchronized (PlanningJobManager.class) {
+            Deque<QueuedJob> queue = queuedByFacility.get(job.getFacilityId());
+            if (queue != null) {
+                for (Iterator<QueuedJob> it = queue.iterator(); it.hasNext(); ) {
+                    if (it.next().job == job) {
+                        it.remove();
+                        job.cancelled();
+                        return true;
+                    }
+                }
+            }
+        }
+        job.requestCancel();
+        return true;
+    }
+
+    private static PlanningJob submit(String jobType, String facilityId, String userLoginId,
+                                      Map<String, Object> parameters, JobBody body) {
+        purgeFinished();
+        // Ids ordenables: instante de alta y secuencia
+        String jobId = String.format("%013d-%04d", System.currentTimeMillis(), jobSequence.incrementAndGet() % 10000);
+        PlanningJob job = new PlanningJob(jobId, jobType, facilityId, userLoginId, parameters);
+        jobs.put(jobId, job);
+        QueuedJob queued = new QueuedJob(job, body);
+        synchronized (PlanningJobManager.class) {
+            int running = runningByFacility.getOrDefault(facilityId, 0);
+            if (running < FACILITY_CONCURRENCY) {
+                start(queued);
+            } else {
+                queuedByFacility.computeIfAbsent(facilityId, key -> new ArrayDeque<>()).add(queued);
+            }
+        }
+        Debug.logInfo("Planning job " + jobId + " submitted: " + jobType + " for facility " + facilityId, module);
+        return job;
+    }
+
+    // Con el monitor de la clase
+    private static void start(final QueuedJob queued) {
+        final String facilityId = queued.job.getFacilityId();
+        runningByFacility.merge(facilityId, 1, Integer::sum);
+        jobExecutor.execute(() -> {
+            try {
+                execute(queued);
+            } finally {
+                next(facilityId);
+            }
+        });
+    }
+
+    private static void execute(QueuedJob queued) {
+        PlanningJob job = queued.job;
+        PlanningMetrics.Timer timer = PlanningMetrics.start("planningJob." + job.getJobType());
+        try {
+            job.checkCancelled();
+            job.started();
+            Object result = queued.body.run(job);
+            job.finished(result);
+            Debug.logInfo("Planning job " + job.getJobId() + " finished", module);
+        } catch (CancellationException e) {
+            job.cancelled();
+            Debug.logInfo("Planning job " + job.getJobId() + " cancelled", module);
+        } catch (GenericEntityException | RuntimeException e) {
+            timer.error();
+            job.failed(e.getMessage());
+            Debug.logError(e, "Error in planning job " + job.getJobId() + ": " + e.getMessage(), module);
+        } finally {
+            timer.close();
+        }
+    }
+
+    // Libera el hueco de la facility y arranca la siguiente ejecución en cola
+    private static synchronized void next(String facilityId) {
+        int running = runningByFacility.getOrDefault(facilityId, 1) - 1;
+        if (running > 0) {
+            runningByFacility.put(facilityId, running);
+        } else {
+            runningByFacility.remove(facilityId);
+        }
+        Deque<QueuedJob> queue = queuedByFacility.get(facilityId);
+        if (queue != null) {
+            QueuedJob queued = queue.poll();
+            if (queue.isEmpty()) {
+                queuedByFacility.remove(facilityId);
+            }
+            if (queued != null) {
+                start(queued);
+            }
+        }
+    }
+
+    private static void purgeFinished() {
+        long limit = System.currentTimeMillis() - RETENTION_MILLIS;
+        jobs.values().removeIf(job -> job.isDone() && job.getFinishedMillis() < limit);
+    }
+}
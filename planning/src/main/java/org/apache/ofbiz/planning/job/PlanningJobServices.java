@@ -0,0 +1,148 @@
+package org.apache.ofbiz.planning.job;
+
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.planning.weekly.WeeklyPlanEngine;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicios de las ejecuciones de planificación en segundo plano ({@link PlanningJobManager}).
+ * Todos responden en el acto: el cálculo corre en el pool de ejecuciones, no en el hilo de la
+ * petición, y la pantalla consulta el avance por su jobId.
+ */
+public class PlanningJobServices {
+
+    public static final String module = PlanningJobServices.class.getName();
+
+    /**
+     * Lanzar una ejecución de planificación de una facility.
+     *
+     * IN:
+     *  - jobType      (String): WEEKLY_PLAN o DAILY_SCHEDULE (requerido)
+     *  - facilityId   (String): facility a planificar (requerido)
+     *  - fromDate     (java.sql.Date, opcional): WEEKLY_PLAN, inicio del horizonte (por defecto hoy)
+     *  - weekCount    (Integer, opcional): WEEKLY_PLAN, semanas del horizonte (por defecto 52)
+     *  - scheduleDate (java.sql.Date, opcional): DAILY_SCHEDULE, día a programar (por defecto hoy)
+     *  - rebuild      (Boolean, opcional): DAILY_SCHEDULE, recalcular aunque esté en caché
+     *
+     * OUT:
+     *  - jobId  (String): id de la ejecución
+     *  - status (String): QUEUED o RUNNING
+     */
+    public static Map<String, Object> submitPlanningJob(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String jobType = (String) context.get("jobType");
+        String facilityId = (String) context.get("facilityId");
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        String userLoginId = userLogin != null ? userLogin.getString("userLoginId") : null;
+
+        if (UtilValidate.isEmpty(facilityId)) {
+            return ServiceUtil.returnError("Facility is required");
+        }
+        PlanningJob job;
+        if (PlanningJob.WEEKLY_PLAN.equals(jobType)) {
+            Date fromDate = (Date) context.get("fromDate");
+            Integer weekCount = (Integer) context.get("weekCount");
+            int weeks = weekCount != null ? weekCount : WeeklyPlanEngine.DEFAULT_WEEK_COUNT;
+            if (weeks <= 0 || weeks > 104) {
+                return ServiceUtil.returnError("weekCount must be between 1 and 104: " + weeks);
+            }
+            job = PlanningJobManager.submitWeeklyPlan(dctx.getDelegator(), facilityId,
+                    fromDate != null ? fromDate.toLocalDate() : LocalDate.now(), weeks, userLoginId);
+        } else if (PlanningJob.DAILY_SCHEDULE.equals(jobType)) {
+            Date scheduleDate = (Date) context.get("scheduleDate");
+            job = PlanningJobManager.submitDailySchedule(dctx.getDelegator(), facilityId,
+                    scheduleDate != null ? scheduleDate.toLocalDate() : LocalDate.now(),
+                    Boolean.TRUE.equals(context.get("rebuild")), userLoginId);
+        } else {
+            return ServiceUtil.returnError("Unknown planning job type: " + jobType);
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess("Planning job " + job.getJobId() + " submitted");
+        result.put("jobId", job.getJobId());
+        result.put("status", job.getStatus());
+        return result;
+    }
+
+    /**
+     * Estado y avance de una ejecución, con las filas de resultado publicadas desde fromRow.
+     * La pantalla pide cada vez desde el nextRow anterior para recibir solo las nuevas.
+     *
+     * IN:
+     *  - jobId   (String): id de la ejecución (requerido)
+     *  - fromRow (Integer, opcional): primera fila a devolver (por defecto 0)
+     *
+     * OUT:
+     *  - job     (Map): jobId, jobType, facilityId, status, currentPhase, progressPct, errorMessage...
+     *  - rows    (List<Map<String,Object>>): filas nuevas
+     *  - nextRow (Integer): fromRow de la siguiente consulta
+     */
+    public static Map<String, Object> getPlanningJobStatus(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String jobId = (String) context.get("jobId");
+        Integer fromRow = (Integer) context.get("fromRow");
+
+        PlanningJob job = PlanningJobManager.getJob(jobId);
+        if (job == null) {
+            return ServiceUtil.returnError("Planning job not found: " + jobId);
+        }
+        Map<String, Object> status = job.toStatusMap(fromRow != null && fromRow > 0 ? fromRow : 0);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("rows", status.remove("rows"));
+        result.put("nextRow", status.remove("nextRow"));
+        result.put("job", status);
+        return result;
+    }
+
+    /**
+     * Cancelar una ejecución en cola o en marcha.
+     *
+     * IN:
+     *  - jobId (String): id de la ejecución (requerido)
+     *
+     * OUT:
+     *  - status (String): estado tras la petición
+     */
+    public static Map<String, Object> cancelPlanningJob(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String jobId = (String) context.get("jobId");
+
+        PlanningJob job = PlanningJobManager.getJob(jobId);
+        if (job == null) {
+            return ServiceUtil.returnError("Planning job not found: " + jobId);
+        }
+        if (!PlanningJobManager.cancel(jobId)) {
+            return ServiceUtil.returnError("Planning job " + jobId + " has already ended: " + job.getStatus());
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess("Planning job " + jobId + " cancellation requested");
+        result.put("status", job.getStatus());
+        return result;
+    }
+
+    /**
+     * Ejecuciones en cola, en marcha y terminadas recientemente, sin sus filas.
+     *
+     * IN:
+     *  - facilityId (String, opcional): solo las de la facility
+     *
+     * OUT:
+     *  - jobs (List<Map<String,Object>>)
+     */
+    public static Map<String, Object> listPlanningJobs(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String facilityId = (String) context.get("facilityId");
+
+        List<Map<String, Object>> jobs = new ArrayList<>();
+        for (PlanningJob job : PlanningJobManager.getJobs()) {
+            if (UtilValidate.isEmpty(facilityId) || facilityId.equals(job.getFacilityId())) {
+                jobs.add(job.toStatusMap(-1));
+            }
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("jobs", jobs);
+        return result;
+    }
+}
@@ -0,0 +1,209 @@
+package org.apache.ofbiz.planning.loadtest;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark de los servicios de lectura de Planning sobre datos sintéticos.
+ *
+ * Para cada escala se generan los datos con {@link PlanningDataGenerator}, se llama a cada
+ * servicio warmupIterations veces sin medir (calentamiento de JIT, cachés y pool de conexiones)
+ * y después iterations veces midiendo cada llamada. Se ejecuta dentro del contenedor, con el
+ * delegator y el dispatcher reales, para medir también las ECAs, las cachés y el SQL generado.
+ * getCalendarYearData se mide sobre el primer calendario generado.
+ *
+ * Escribe los datos en la base de datos real y dispara sus ECAs (índice de texto, cachés,
+ * planes vivos), así que solo se ejecuta con planning.benchmark.enabled=true.
+ */
+public class PlanningBenchmarkServices {
+
+    public static final String module = PlanningBenchmarkServices.class.getName();
+
+    private static final String DEFAULT_SCALES = "1000,10000,100000";
+    private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+    private static final int DEFAULT_ITERATIONS = 20;
+
+    /**
+     * Caso del benchmark: servicio, nombre en el informe y parámetros de la llamada.
+     */
+    private static final class BenchmarkCase {
+        private final String name;
+        private final String serviceName;
+        private final Map<String, Object> params;
+
+        private BenchmarkCase(String name, String serviceName, Map<String, Object> params) {
+            this.name = name;
+            this.serviceName = serviceName;
+            this.params = params;
+        }
+    }
+
+    /**
+     * Benchmark de searchMachinery, searchPlanningGroups, getCalendarYearData y los servicios de
+     * datos de referencia con 1k, 10k y 100k máquinas/grupos (por defecto).
+     *
+     * IN:
+     *  - scales           (String, opcional): escalas separadas por comas (por defecto 1000,10000,100000)
+     *  - warmupIterations (Integer, opcional): llamadas de calentamiento por caso (por defecto 5)
+     *  - iterations       (Integer, opcional): llamadas medidas por caso (por defecto 20)
+     *  - keepData         (Boolean, opcional): no borrar los datos generados al terminar
+     *
+     * OUT:
+     *  - results (List<Map<String,Object>>): scale, service, iterations, minMillis, p50Millis,
+     *            p95Millis, maxMillis, avgMillis por caso
+     *  - report  (String): los mismos resultados en texto
+     */
+    public static Map<String, Object> runPlanningBenchmark(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        LocalDispatcher dispatcher = dctx.getDispatcher();
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        String scalesParam = (String) context.get("scales");
+        Integer warmupParam = (Integer) context.get("warmupIterations");
+        Integer iterationsParam = (Integer) context.get("iterations");
+        boolean keepData = Boolean.TRUE.equals(context.get("keepData"));
+
+        if (!"true".equals(UtilProperties.getPropertyValue("planning", "planning.benchmark.enabled"))) {
+            return ServiceUtil.returnError("The planning benchmark is disabled; set planning.benchmark.enabled=true "
+                    + "in planning.properties on a test instance to run it");
+        }
+
+        int warmupIterations = warmupParam != null && warmupParam >= 0 ? warmupParam : DEFAULT_WARMUP_ITERATIONS;
+        int iterations = iterationsParam != null && iterationsParam > 0 ? iterationsParam : DEFAULT_ITERATIONS;
+        int batchSize = UtilProperties.getPropertyAsInteger("planning", "planning.loadtest.batch.size", 1000);
+        int year = LocalDate.now().getYear();
+
+        List<Integer> scales = new ArrayList<>();
+        for (String scale : (UtilValidate.isEmpty(scalesParam) ? DEFAULT_SCALES : scalesParam).split(",")) {
+            try {
+                scales.add(Integer.valueOf(scale.trim()));
+            } catch (NumberFormatException e) {
+                return ServiceUtil.returnError("Invalid benchmark scale: " + scale);
+            }
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int scale : scales) {
+            if (scale <= 0) {
+                return ServiceUtil.returnError("Invalid benchmark scale: " + scale);
+            }
+            // El guion evita que el LIKE de una escala (PLBM1000-%) incluya otra (PLBM10000-)
+            PlanningDataGenerator generator = new PlanningDataGenerator(delegator, "PLBM" + scale + "-", scale, batchSize);
+            try {
+                generator.generate(Math.max(5, Math.min(200, scale / 200)), Math.max(5, Math.min(1000, scale / 100)),
+                        scale, Math.max(1, Math.min(100, scale / 1000)), year, scale);
+                for (BenchmarkCase benchmarkCase : benchmarkCases(generator, year)) {
+                    benchmarkCase.params.put("userLogin", userLogin);
+                    long[] nanos = new long[iterations];
+                    for (int i = 0; i < warmupIterations + iterations; i++) {
+                        long startNanos = System.nanoTime();
+                        Map<String, Object> serviceResult = dispatcher.runSync(benchmarkCase.serviceName, benchmarkCase.params);
+                        long elapsed = System.nanoTime() - startNanos;
+                        if (ServiceUtil.isError(serviceResult)) {
+                            return ServiceUtil.returnError("Benchmark " + benchmarkCase.name + " failed: "
+                                    + ServiceUtil.getErrorMessage(serviceResult));
+                        }
+                        if (i >= warmupIterations) {
+                            nanos[i - warmupIterations] = elapsed;
+                        }
+                    }
+                    results.add(resultRow(scale, benchmarkCase.name, nanos));
+                }
+            } catch (GenericEntityException | GenericServiceException e) {
+                Debug.logError(e, "Error running planning benchmark at scale " + scale + ": " + e.getMessage(), module);
+                return ServiceUtil.returnError("Error running planning benchmark at scale " + scale + ": " + e.getMessage());
+            } finally {
+                if (!keepData) {
+                    try {
+                        generator.remove();
+                    } catch (GenericEntityException e) {
+                        Debug.logError(e, "Error removing benchmark data " + generator.getPrefix() + ": " + e.getMessage(), module);
+                    }
+                }
+            }
+        }
+
+        String report = report(results);
+        Debug.logInfo("Planning benchmark finished:\n" + report, module);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("results", results);
+        result.put("report", report);
+        return result;
+    }
+
+    /**
+     * Casos medidos en cada escala. Los filtros de searchMachinery cubren las distintas rutas
+     * de la búsqueda: sin filtro, por texto (índice de trigramas), por facility, por tipo y por
+     * PLANT_TAG exacto.
+     */
+    private static List<BenchmarkCase> benchmarkCases(PlanningDataGenerator generator, int year) {
+        List<BenchmarkCase> cases = new ArrayList<>();
+        cases.add(new BenchmarkCase("searchMachinery[all]", "searchMachinery", UtilMisc.toMap("viewSize", 50)));
+        cases.add(new BenchmarkCase("searchMachinery[name]", "searchMachinery", UtilMisc.toMap("name", "Press", "viewSize", 50)));
+        cases.add(new BenchmarkCase("searchMachinery[facilityName]", "searchMachinery", UtilMisc.toMap("facilityName", "Malaga", "viewSize", 50)));
+        cases.add(new BenchmarkCase("searchMachinery[machineTypeId]", "searchMachinery", UtilMisc.toMap("machineTypeId", "INJECTION_MACHINE", "viewSize", 50)));
+        cases.add(new BenchmarkCase("searchMachinery[machineId]", "searchMachinery", UtilMisc.toMap("machineId", generator.getPrefix() + "CX_000001")));
+        cases.add(new BenchmarkCase("searchPlanningGroups[all]", "searchPlanningGroups", new HashMap<>()));
+        cases.add(new BenchmarkCase("searchPlanningGroups[categoryName]", "searchPlanningGroups", UtilMisc.toMap("categoryName", "Dashboard")));
+        cases.add(new BenchmarkCase("getMachineryReferenceData", "getMachineryReferenceData", new HashMap<>()));
+        cases.add(new BenchmarkCase("getPlanningGroupsReferenceData", "getPlanningGroupsReferenceData", new HashMap<>()));
+
+        cases.add(new BenchmarkCase("getCalendarYearData", "getCalendarYearData",
+                UtilMisc.toMap("calendarId", generator.id("C", 0), "year", year)));
+        return cases;
+    }
+
+    private static Map<String, Object> resultRow(int scale, String name, long[] nanos) {
+        long[] sorted = Arrays.copyOf(nanos, nanos.length);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long value : sorted) {
+            total += value;
+        }
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("scale", scale);
+        row.put("service", name);
+        row.put("iterations", sorted.length);
+        row.put("minMillis", sorted[0] / 1000000.0);
+        row.put("p50Millis", percentile(sorted, 50) / 1000000.0);
+        row.put("p95Millis", percentile(sorted, 95) / 1000000.0);
+        row.put("maxMillis", sorted[sorted.length - 1] / 1000000.0);
+        row.put("avgMillis", (double) total / sorted.length / 1000000.0);
+        return row;
+    }
+
+    /**
+     * Percentil por rango más cercano sobre un array ordenado.
+     */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static String report(List<Map<String, Object>> results) {
+        StringBuilder report = new StringBuilder(String.format("%8s %-36s %10s %10s %10s %10s %10s%n",
+                "scale", "service", "min ms", "p50 ms", "p95 ms", "max ms", "avg ms"));
+        for (Map<String, Object> row : results) {
+            report.append(String.format("%8d %-36s %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    row.get("scale"), row.get("service"), row.get("minMillis"), row.get("p50Millis"),
+                    row.get("p95Millis"), row.get("maxMillis"), row.get("avgMillis")));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,320 @@
+package org.apache.ofbiz.planning.loadtest;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.planning.assignedrefs.AssignedRefsIndex;
+import org.apache.ofbiz.planning.calendar.WorkingCalendarEngine;
+import org.apache.ofbiz.planning.common.PlanningReferenceCache;
+import org.apache.ofbiz.planning.common.PlanningTransactions;
+import org.apache.ofbiz.planning.daily.DailyScheduler;
+import org.apache.ofbiz.planning.machinery.MachineDependencyGraph;
+import org.apache.ofbiz.planning.occupancy.MachineOccupancyIndex;
+import org.apache.ofbiz.planning.shift.ShiftTimelineEngine;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Generador de datos sintéticos de Planning para pruebas de carga y benchmarks.
+ *
+ * Todos los ids empiezan por el prefijo indicado, de forma que los datos generados se pueden
+ * borrar con {@link #remove()} sin tocar el resto. El prefijo tiene que tener el formato de
+ * los del generador (PLLT-, PLBM1000-...): remove() borra con LIKE 'prefijo%' en entidades
+ * compartidas con el resto de OFBiz (Product, FixedAsset, Facility, ProductCategory...). Con la misma semilla se generan siempre los
+ * mismos datos. Los valores se guardan en bloques de batchSize, cada bloque en su transacción.
+ *
+ * Las máquinas siguen el modelo de searchMachinery: FixedAsset con su PLANT_TAG en
+ * GoodIdentification, cuyo productId es el fixedAssetId (se crea un Product ASSET_USAGE con
+ * el mismo id para la clave ajena). Cada máquina tiene uno de los calendarios generados, con su
+ * semana tipo (1, 2 o 3 turnos de lunes a viernes, a veces sábado) y días de excepción: festivos
+ * fijos sin capacidad y días sueltos con media capacidad.
+ */
+public class PlanningDataGenerator {
+
+    public static final String module = PlanningDataGenerator.class.getName();
+
+    private static final String[] CITIES = {"Kenitra", "Malaga", "Barcelona", "Pamplona", "Vigo", "Tanger",
+            "Valencia", "Sevilla", "Zaragoza", "Bilbao", "Porto", "Braga", "Leon", "Burgos", "Murcia"};
+    private static final String[] BRANDS = {"Cayenne", "Macan", "Panamera", "Audi Q7", "Audi D5", "BMW X5",
+            "BMW Serie 3", "Mercedes GLE", "Seat Leon", "Cupra Born"};
+    private static final String[] PARTS = {"Front Doors", "Rear Doors", "Dashboard", "Roof", "Trunk",
+            "Engine Harness", "Seat Harness", "Lights", "Bumper", "Console"};
+    private static final String[] MACHINE_TYPES = {"INJECTION_MACHINE", "PRODUCTION_MACHINERY",
+            "CONTROL_BANK", "COUNTERPIECE"};
+    private static final String[] MACHINE_NAMES = {"Injection Press", "Crimping Machine", "Cutting Line",
+            "Control Bank", "Counterpiece", "Taping Station", "Welding Cell"};
+    /** Festivos fijos (mes, día) de los calendarios generados */
+    private static final int[][] HOLIDAYS = {{1, 1}, {1, 6}, {5, 1}, {8, 15}, {10, 12}, {11, 1}, {12, 8}, {12, 25}};
+    private static final long SHIFT_MILLIS = 8 * 3600 * 1000L;
+    /** Prefijos válidos: PL + LT (carga) o BM (benchmark) + letras o dígitos + guion */
+    private static final Pattern PREFIX_PATTERN = Pattern.compile("PL(LT|BM)[A-Z0-9]*-");
+
+    protected final Delegator delegator;
+    protected final String prefix;
+    protected final Random random;
+    protected final int batchSize;
+
+    private final List<GenericValue> pending = new ArrayList<>();
+    private int storedCount;
+
+    public PlanningDataGenerator(Delegator delegator, String prefix, long seed, int batchSize) {
+        if (!isValidPrefix(prefix)) {
+            throw new IllegalArgumentException("Invalid generated data prefix: " + prefix);
+        }
+        this.delegator = delegator;
+        this.prefix = prefix;
+        this.random = new Random(seed);
+        this.batchSize = batchSize > 0 ? batchSize : 1000;
+    }
+
+    /**
+     * Genera facilities, proyectos, grupos de planificación (con su FACILITY_ID), calendarios
+     * con días de excepción y máquinas.
+     *
+     * @param calendarYear primer año con días de excepción (se generan ese año y el siguiente)
+     * @return número de entidades creadas por tipo
+     */
+    public Map<String, Integer> generate(int facilityCount, int projectCount, int groupCount, int calendarCount,
+            int calendarYear, int assetCount) throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        Map<String, Integer> counts = new LinkedHashMap<>();
+
+        // 1. Facilities
+        String[] facilityIds = new String[facilityCount];
+        for (int i = 0; i < facilityCount; i++) {
+            facilityIds[i] = id("F", i);
+            add(delegator.makeValue("Facility", "facilityId", facilityIds[i], "facilityTypeId", "PLANT",
+                    "facilityName", CITIES[i % CITIES.length] + " " + (i + 1),
+                    "description", "Generated plant " + (i + 1)));
+        }
+        counts.put("facilities", facilityCount);
+
+        // 2. Proyectos
+        String[] projectIds = new String[projectCount];
+        for (int i = 0; i < projectCount; i++) {
+            projectIds[i] = id("P", i);
+            String brand = BRANDS[i % BRANDS.length];
+            add(delegator.makeValue("ProductCategory", "productCategoryId", projectIds[i],
+                    "productCategoryTypeId", "PROJECT", "categoryName", brand + " Project " + (i + 1),
+                    "description", brand + " generated project"));
+        }
+        counts.put("projects", projectCount);
+
+        // 3. Grupos de planificación con su facility
+        for (int i = 0; i < groupCount; i++) {
+            String groupId = id("G", i);
+            int project = random.nextInt(projectCount);
+            String part = PARTS[random.nextInt(PARTS.length)];
+            add(delegator.makeValue("ProductCategory", "productCategoryId", groupId,
+                    "productCategoryTypeId", "PLANNING_GROUP", "primaryParentCategoryId", projectIds[project],
+                    "categoryName", BRANDS[project % BRANDS.length] + " " + part + " " + (i + 1),
+                    "description", "Planning group for " + part.toLowerCase()));
+            add(delegator.makeValue("ProductCategoryAttribute", "productCategoryId", groupId,
+                    "attrName", "FACILITY_ID", "attrValue", facilityIds[random.nextInt(facilityCount)]));
+        }
+        counts.put("planningGroups", groupCount);
+
+        // 4. Calendarios: semana tipo, calendario y días de excepción
+        String[] calendarIds = new String[calendarCount];
+        int exceptionDayCount = 0;
+        for (int i = 0; i < calendarCount; i++) {
+            calendarIds[i] = id("C", i);
+            String calendarWeekId = id("W", i);
+            int shifts = 1 + random.nextInt(3);
+            boolean saturday = random.nextInt(4) == 0;
+            GenericValue calendarWeek = delegator.makeValue("TechDataCalendarWeek", "calendarWeekId", calendarWeekId,
+                    "description", shifts + " shift(s)" + (saturday ? " + saturday" : ""));
+            for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+                boolean working = dayOfWeek.compareTo(DayOfWeek.FRIDAY) <= 0 || (saturday && dayOfWeek == DayOfWeek.SATURDAY);
+                String dayPrefix = dayOfWeek.name().toLowerCase();
+                calendarWeek.set(dayPrefix + "StartTime", Time.valueOf(shifts == 3 ? "00:00:00" : "06:00:00"));
+                calendarWeek.set(dayPrefix + "Capacity", working ? (double) (shifts * SHIFT_MILLIS) : 0.0);
+            }
+            add(calendarWeek);
+            add(delegator.makeValue("TechDataCalendar", "calendarId", calendarIds[i], "calendarWeekId", calendarWeekId,
+                    "description", "Generated calendar " + (i + 1)));
+            for (int year = calendarYear; year <= calendarYear + 1; year++) {
+                exceptionDayCount += addExceptionDays(calendarIds[i], year, shifts);
+            }
+        }
+        counts.put("calendars", calendarCount);
+        counts.put("calendarExceptionDays", exceptionDayCount);
+
+        // 5. Máquinas con PLANT_TAG; cada inyectora necesita el último banco de control y la
+        //    última contrapieza generados en su facility
+        Map<String, String> requiredAssets = new HashMap<>();
+        int dependencyCount = 0;
+        for (int i = 0; i < assetCount; i++) {
+            String fixedAssetId = id("A", i);
+            String fixedAssetTypeId = MACHINE_TYPES[random.nextInt(MACHINE_TYPES.length)];
+            String facilityId = facilityIds[random.nextInt(facilityCount)];
+            add(delegator.makeValue("Product", "productId", fixedAssetId, "productTypeId", "ASSET_USAGE",
+                    "internalName", fixedAssetId));
+            add(delegator.makeValue("FixedAsset", "fixedAssetId", fixedAssetId,
+                    "fixedAssetTypeId", fixedAssetTypeId,
+                    "fixedAssetName", MACHINE_NAMES[random.nextInt(MACHINE_NAMES.length)] + " " + (100 + random.nextInt(900)) + "T #" + (i + 1),
+                    "locatedAtFacilityId", facilityId,
+                    "instanceOfProductId", fixedAssetId,
+                    "calendarId", calendarCount > 0 ? calendarIds[random.nextInt(calendarCount)] : null));
+            add(delegator.makeValue("GoodIdentification", "goodIdentificationTypeId", "PLANT_TAG",
+                    "productId", fixedAssetId, "idValue", prefix + "CX_" + String.format("%06d", i + 1)));
+            if ("CONTROL_BANK".equals(fixedAssetTypeId) || "COUNTERPIECE".equals(fixedAssetTypeId)) {
+                requiredAssets.put(facilityId + "::" + fixedAssetTypeId, fixedAssetId);
+            } else if ("INJECTION_MACHINE".equals(fixedAssetTypeId)) {
+                for (String requiredTypeId : new String[] {"CONTROL_BANK", "COUNTERPIECE"}) {
+                    String requiredAssetId = requiredAssets.get(facilityId + "::" + requiredTypeId);
+                    if (requiredAssetId != null) {
+                        add(delegator.makeValue("PlanningMachineDependency", "fixedAssetId", fixedAssetId,
+                                "requiredAssetId", requiredAssetId));
+                        dependencyCount++;
+                    }
+                }
+            }
+        }
+        counts.put("fixedAssets", assetCount);
+        counts.put("machineDependencies", dependencyCount);
+
+        flush();
+        Debug.logInfo("Generated planning data with prefix " + prefix + ": " + counts + " (" + storedCount
+                + " values) in " + (System.currentTimeMillis() - startTime) + " ms", module);
+        return counts;
+    }
+
+    /**
+     * Borra todos los datos generados con el prefijo, incluidos sus trigramas de búsqueda.
+     *
+     * @return número de filas borradas
+     */
+    public int remove() throws GenericEntityException {
+        String pattern = prefix + "%";
+        int removed = 0;
+        boolean beganTransaction = TransactionUtil.begin(3600);
+        try {
+            removed += removeLike("GoodIdentification", "productId", pattern);
+            removed += removeLike("PlanningMachineDependency", "fixedAssetId", pattern);
+            removed += removeLike("FixedAsset", "fixedAssetId", pattern);
+            removed += removeLike("Product", "productId", pattern);
+            removed += removeLike("TechDataCalendarExcDay", "calendarId", pattern);
+            removed += removeLike("TechDataCalendar", "calendarId", pattern);
+            removed += removeLike("TechDataCalendarWeek", "calendarWeekId", pattern);
+            removed += removeLike("ProductCategoryAttribute", "productCategoryId", pattern);
+            removed += removeLike("ProductCategory", "productCategoryId", pattern);
+            removed += removeLike("Facility", "facilityId", pattern);
+            removed += removeLike("PlanningSearchToken", "searchEntityId", pattern);
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericEntityException e) {
+            TransactionUtil.rollback(beganTransaction, "Error removing generated planning data", e);
+            throw e;
+        }
+        // removeByCondition no dispara las ECAs que vacían las cachés
+        PlanningTransactions.afterCommit(PlanningDataGenerator::clearCaches);
+        Debug.logInfo("Removed " + removed + " generated planning rows with prefix " + prefix, module);
+        return removed;
+    }
+
+    /**
+     * Indica si el prefijo tiene el formato de los del generador.
+     */
+    public static boolean isValidPrefix(String prefix) {
+        return prefix != null && PREFIX_PATTERN.matcher(prefix).matches();
+    }
+
+    private static void clearCaches() {
+        PlanningReferenceCache.clear();
+        WorkingCalendarEngine.clear();
+        ShiftTimelineEngine.clear();
+        DailyScheduler.clear();
+        MachineOccupancyIndex.clear();
+        AssignedRefsIndex.clear();
+        MachineDependencyGraph.clear();
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Id generado: prefijo + tipo + número con ceros a la izquierda.
+     */
+    public String id(String type, int index) {
+        return prefix + type + String.format("%06d", index + 1);
+    }
+
+    /**
+     * Días de excepción de un calendario en un año: los festivos fijos sin capacidad y entre 0 y
+     * 5 días laborables al azar con media capacidad.
+     *
+     * @return número de días de excepción creados
+     */
+    private int addExceptionDays(String calendarId, int year, int shifts) throws GenericEntityException {
+        Set<LocalDate> days = new HashSet<>();
+        for (int[] holiday : HOLIDAYS) {
+            LocalDate day = LocalDate.of(year, holiday[0], holiday[1]);
+            days.add(day);
+            add(delegator.makeValue("TechDataCalendarExcDay", "calendarId", calendarId,
+                    "exceptionDateStartTime", Timestamp.valueOf(day.atStartOfDay()),
+                    "exceptionCapacity", 0.0, "description", "Holiday"));
+        }
+        int reducedDays = random.nextInt(6);
+        LocalDate firstDay = LocalDate.of(year, 1, 1);
+        for (int i = 0; i < reducedDays; i++) {
+            LocalDate day = firstDay.plusDays(random.nextInt(firstDay.lengthOfYear()));
+            if (day.getDayOfWeek().compareTo(DayOfWeek.FRIDAY) > 0 || !days.add(day)) {
+                continue;
+            }
+            add(delegator.makeValue("TechDataCalendarExcDay", "calendarId", calendarId,
+                    "exceptionDateStartTime", Timestamp.valueOf(day.atTime(6, 0)),
+                    "exceptionCapacity", (double) (shifts * SHIFT_MILLIS / 2), "description", "Reduced capacity"));
+        }
+        return days.size();
+    }
+
+    /**
+     * Añade un valor al bloque pendiente y lo guarda si está lleno.
+     */
+    protected void add(GenericValue value) throws GenericEntityException {
+        pending.add(value);
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Guarda el bloque pendiente en su propia transacción.
+     */
+    protected void flush() throws GenericEntityException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        boolean beganTransaction = TransactionUtil.begin(600);
+        try {
+            delegator.storeAll(pending);
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericEntityException e) {
+            TransactionUtil.rollback(beganTransaction, "Error storing generated planning data", e);
+            throw e;
+        }
+        storedCount += pending.size();
+        pending.clear();
+    }
+
+    private int removeLike(String entityName, String fieldName, String pattern) throws GenericEntityException {
+        return delegator.removeByCondition(entityName, EntityCondition.makeCondition(fieldName, EntityOperator.LIKE, pattern));
+    }
+}
@@ -0,0 +1,109 @@
+package org.apache.ofbiz.planning.loadtest;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+public class PlanningLoadDataServices {
+
+    public static final String module = PlanningLoadDataServices.class.getName();
+
+    private static final String DEFAULT_PREFIX = "PLLT-";
+
+    /** Volúmenes generados por cada unidad de scaleFactor */
+    private static final int FACILITIES_PER_SCALE = 5;
+    private static final int PROJECTS_PER_SCALE = 20;
+    private static final int GROUPS_PER_SCALE = 500;
+    private static final int CALENDARS_PER_SCALE = 10;
+    private static final int ASSETS_PER_SCALE = 1000;
+
+    /**
+     * Genera datos sintéticos de Planning a escala de producción para pruebas de carga y
+     * profiling. Por cada unidad de scaleFactor: 5 facilities, 20 proyectos, 500 grupos de
+     * planificación, 10 calendarios y 1000 máquinas. Con el mismo prefijo, scaleFactor y seed
+     * los datos generados son siempre los mismos.
+     *
+     * IN:
+     *  - scaleFactor    (Integer): multiplicador de los volúmenes
+     *  - seed           (Long, opcional): semilla del generador (por defecto 1)
+     *  - prefix         (String, opcional): prefijo de los ids generados (por defecto PLLT-);
+     *                    tiene que empezar por PLLT o PLBM y acabar en guion
+     *  - removeExisting (Boolean, opcional): borrar antes los datos con el mismo prefijo
+     *
+     * OUT:
+     *  - generatedCounts (Map<String,Integer>): entidades creadas por tipo
+     *  - elapsedMillis   (Long)
+     */
+    public static Map<String, Object> generatePlanningLoadData(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Integer scaleFactor = (Integer) context.get("scaleFactor");
+        Long seed = (Long) context.get("seed");
+        String prefix = (String) context.get("prefix");
+        boolean removeExisting = Boolean.TRUE.equals(context.get("removeExisting"));
+
+        if (scaleFactor == null || scaleFactor <= 0) {
+            return ServiceUtil.returnError("scaleFactor must be greater than 0: " + scaleFactor);
+        }
+        if (UtilValidate.isEmpty(prefix)) {
+            prefix = DEFAULT_PREFIX;
+        }
+        if (!PlanningDataGenerator.isValidPrefix(prefix)) {
+            return ServiceUtil.returnError("Invalid prefix " + prefix + ": it must look like PLLT- or PLBM1000-");
+        }
+        int batchSize = UtilProperties.getPropertyAsInteger("planning", "planning.loadtest.batch.size", 1000);
+
+        long startTime = System.currentTimeMillis();
+        PlanningDataGenerator generator = new PlanningDataGenerator(dctx.getDelegator(), prefix,
+                seed != null ? seed : 1L, batchSize);
+        try {
+            if (removeExisting) {
+                generator.remove();
+            }
+            Map<String, Integer> generatedCounts = generator.generate(FACILITIES_PER_SCALE * scaleFactor,
+                    PROJECTS_PER_SCALE * scaleFactor, GROUPS_PER_SCALE * scaleFactor, CALENDARS_PER_SCALE * scaleFactor,
+                    LocalDate.now().getYear(), ASSETS_PER_SCALE * scaleFactor);
+
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("generatedCounts", generatedCounts);
+            result.put("elapsedMillis", System.currentTimeMillis() - startTime);
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error generating planning load data: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error generating planning load data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Borra los datos generados por generatePlanningLoadData.
+     *
+     * IN:
+     *  - prefix (String, opcional): prefijo de los ids generados (por defecto PLLT-); solo se
+     *            aceptan prefijos del generador (PLLT..., PLBM...)
+     *
+     * OUT:
+     *  - removedCount (Integer): filas borradas
+     */
+    public static Map<String, Object> removePlanningLoadData(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String prefix = (String) context.get("prefix");
+        if (UtilValidate.isEmpty(prefix)) {
+            prefix = DEFAULT_PREFIX;
+        }
+        if (!PlanningDataGenerator.isValidPrefix(prefix)) {
+            return ServiceUtil.returnError("Invalid prefix " + prefix + ": it must look like PLLT- or PLBM1000-");
+        }
+        try {
+            int removedCount = new PlanningDataGenerator(dctx.getDelegator(), prefix, 1L, 0).remove();
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("removedCount", removedCount);
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error removing planning load data: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error removing planning load data: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.apache.ofbiz.planning.machinery;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Grafo de dependencias entre máquinas.
+ *
+ * Una arista u -> v significa "si u está parada, v no puede trabajar":
+ * PlanningMachineDependency(fixedAssetId = v, requiredAssetId = u), y la jerarquía de
+ * FixedAsset (parentFixedAssetId = u): los componentes de una máquina paran con ella.
+ *
+ * Los nodos tienen ids int consecutivos y las aristas se guardan en formato CSR (offsets +
+ * destinos en arrays de int) en los dos sentidos, así una consulta transitiva es un solo
+ * recorrido en anchura sobre arrays sin consultar la base de datos. Inmutable: se comparte
+ * desde el UtilCache "planning.MachineDependencyGraph", que vacían las ECAs de
+ * PlanningMachineDependency y FixedAsset al confirmarse la transacción. Un grafo cargado
+ * mientras se vaciaba no se guarda.
+ */
+public final class MachineDependencyGraph {
+
+    public static final String module = MachineDependencyGraph.class.getName();
+
+    public static final String CACHE_NAME = "planning.MachineDependencyGraph";
+
+    private static final UtilCache<String, MachineDependencyGraph> graphCache =
+            UtilCache.createUtilCache(CACHE_NAME, 10, 0L);
+
+    // Se incrementa en cada clear(); los grafos cargados antes no se guardan
+    private static final AtomicLong generation = new AtomicLong();
+
+    private final String[] assetIds;
+    private final Map<String, Integer> assetIndex;
+    // Aristas u -> v (impacto): destinos de u en impactTargets[impactOffset[u], impactOffset[u + 1])
+    private final int[] impactOffset;
+    private final int[] impactTargets;
+    // Aristas invertidas v -> u (lo que necesita v)
+    private final int[] requiresOffset;
+    private final int[] requiresTargets;
+
+    private MachineDependencyGraph(String[] assetIds, Map<String, Integer> assetIndex, int[] edgeFrom, int[] edgeTo,
+                                   int edgeCount) {
+        this.assetIds = assetIds;
+        this.assetIndex = assetIndex;
+        this.impactOffset = new int[assetIds.length + 1];
+        this.impactTargets = new int[edgeCount];
+        this.requiresOffset = new int[assetIds.length + 1];
+        this.requiresTargets = new int[edgeCount];
+        fill(edgeFrom, edgeTo, edgeCount, impactOffset, impactTargets);
+        fill(edgeTo, edgeFrom, edgeCount, requiresOffset, requiresTargets);
+    }
+
+    /**
+     * Grafo del delegator, desde la caché.
+     */
+    public static MachineDependencyGraph getGraph(Delegator delegator) throws GenericEntityException {
+        String cacheKey = delegator.getDelegatorName();
+        MachineDependencyGraph graph = graphCache.get(cacheKey);
+        if (graph == null) {
+            long loadGeneration = generation.get();
+            graph = graphCache.putIfAbsentAndGet(cacheKey, load(delegator));
+            if (generation.get() != loadGeneration) {
+                graphCache.remove(cacheKey);
+            }
+        }
+        return graph;
+    }
+
+    public static void clear() {
+        generation.incrementAndGet();
+        graphCache.clear();
+    }
+
+    public int getAssetCount() {
+        return assetIds.length;
+    }
+
+    public int getEdgeCount() {
+        return impactTargets.length;
+    }
+
+    public String getAssetId(int asset) {
+        return assetIds[asset];
+    }
+
+    /**
+     * Índice del activo, o -1 si no tiene ninguna dependencia.
+     */
+    public int assetIndex(String fixedAssetId) {
+        Integer asset = assetIndex.get(fixedAssetId);
+        return asset != null ? asset : -1;
+    }
+
+    /**
+     * Activos que dejan de poder trabajar, directa o indirectamente, si paran los indicados.
+     */
+    public Reach impactOf(Collection<String> fixedAssetIds) {
+        return traverse(fixedAssetIds, impactOffset, impactTargets);
+    }
+
+    /**
+     * Activos que necesitan, directa o indirectamente, los indicados para trabajar.
+     */
+    public Reach requirementsOf(Collection<String> fixedAssetIds) {
+        return traverse(fixedAssetIds, requiresOffset, requiresTargets);
+    }
+
+    /**
+     * Recorrido en anchura desde todos los activos de partida a la vez: cada activo alcanzado
+     * queda con su distancia mínima y el activo desde el que se llegó.
+     */
+    private Reach traverse(Collection<String> fixedAssetIds, int[] offset, int[] targets) {
+        int[] depth = new int[assetIds.length];
+        Arrays.fill(depth, -1);
+        int[] queue = new int[assetIds.length];
+        int[] via = new int[assetIds.length];
+        int head = 0;
+        int tail = 0;
+        for (String fixedAssetId : fixedAssetIds) {
+            int asset = assetIndex(fixedAssetId);
+            if (asset >= 0 && depth[asset] < 0) {
+                depth[asset] = 0;
+                via[asset] = -1;
+                queue[tail++] = asset;
+            }
+        }
+        int seedCount = tail;
+        while (head < tail) {
+            int asset = queue[head++];
+            for (int edge = offset[asset]; edge < offset[asset + 1]; edge++) {
+                int target = targets[edge];
+                if (depth[target] < 0) {
+                    depth[target] = depth[asset] + 1;
+                    via[target] = asset;
+                    queue[tail++] = target;
+                }
+            }
+        }
+        // Los activos de partida no forman parte del resultado
+        int count = tail - seedCount;
+        int[] assets = Arrays.copyOfRange(queue, seedCount, tail);
+        int[] assetDepth = new int[count];
+        int[] assetVia = new int[count];
+        for (int i = 0; i < count; i++) {
+            assetDepth[i] = depth[assets[i]];
+            assetVia[i] = via[assets[i]];
+        }
+        return new Reach(assets, assetDepth, assetVia);
+    }
+
+    /**
+     * Activos alcanzados por un recorrido, en orden de distancia.
+     */
+    public final class Reach {
+
+        private final int[] assets;
+        private final int[] depth;
+        private final int[] via;
+
+        private Reach(int[] assets, int[] depth, int[] via) {
+            this.assets = assets;
+            this.depth = depth;
+            this.via = via;
+        }
+
+        public int size() {
+            return assets.length;
+        }
+
+        public String getAssetId(int i) {
+            return assetIds[assets[i]];
+        }
+
+        /**
+         * Aristas desde el activo de partida más cercano (1 = dependencia directa).
+         */
+        public int getDepth(int i) {
+            return depth[i];
+        }
+
+        /**
+         * Activo desde el que se llega a este en el recorrido.
+         */
+        public String getViaAssetId(int i) {
+            return assetIds[via[i]];
+        }
+    }
+
+    /**
+     * Aristas en formato CSR agrupadas por origen.
+     */
+    private static void fill(int[] from, int[] to, int edgeCount, int[] offset, int[] targets) {
+        for (int edge = 0; edge < edgeCount; edge++) {
+            offset[from[edge] + 1]++;
+        }
+        for (int asset = 0; asset < offset.length - 1; asset++) {
+            offset[asset + 1] += offset[asset];
+        }
+        int[] cursor = Arrays.copyOf(offset, offset.length - 1);
+        for (int edge = 0; edge < edgeCount; edge++) {
+            targets[cursor[from[edge]]++] = to[edge];
+        }
+    }
+
+    private static MachineDependencyGraph load(Delegator delegator) throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        List<String> assetIds = new ArrayList<>();
+        Map<String, Integer> assetIndex = new HashMap<>();
+        EdgeList edges = new EdgeList();
+
+        try (EntityListIterator dependencies = EntityQuery.use(delegator)
+                .select("fixedAssetId", "requiredAssetId")
+                .from("PlanningMachineDependency")
+                .queryIterator()) {
+            GenericValue dependency;
+            while ((dependency = dependencies.next()) != null) {
+                edges.add(index(dependency.getString("requiredAssetId"), assetIds, assetIndex),
+                        index(dependency.getString("fixedAssetId"), assetIds, assetIndex));
+            }
+        }
+        try (EntityListIterator children = EntityQuery.use(delegator)
+                .select("fixedAssetId", "parentFixedAssetId")
+                .from("FixedAsset")
+                .where(EntityCondition.makeCondition("parentFixedAssetId", EntityOperator.NOT_EQUAL, null))
+                .queryIterator()) {
+            GenericValue child;
+            while ((child = children.next()) != null) {
+                edges.add(index(child.getString("parentFixedAssetId"), assetIds, assetIndex),
+                        index(child.getString("fixedAssetId"), assetIds, assetIndex));
+            }
+        }
+
+        MachineDependencyGraph graph = new MachineDependencyGraph(assetIds.toArray(new String[assetIds.size()]),
+                assetIndex, edges.from, edges.to, edges.count);
+        Debug.logInfo("Machine dependency graph loaded: " + graph.getAssetCount() + " assets, " + graph.getEdgeCount()
+                + " dependencies in " + (System.currentTimeMillis() - startTime) + " ms", module);
+        return graph;
+    }
+
+    private static int index(String fixedAssetId, List<String> assetIds, Map<String, Integer> assetIndex) {
+        Integer asset = assetIndex.get(fixedAssetId);
+        if (asset == null) {
+            asset = assetIds.size();
+            assetIds.add(fixedAssetId);
+            assetIndex.put(fixedAssetId, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * Aristas en dos arrays de int que crecen al cargar.
+     */
+    private static final class EdgeList {
+
+        private int[] from = new int[256];
+        private int[] to = new int[256];
+        private int count;
+
+        void add(int source, int target) {
+            if (count == from.length) {
+                from = Arrays.copyOf(from, count * 2);
+                to = Arrays.copyOf(to, count * 2);
+            }
+            from[count] = source;
+            to[count] = target;
+            count++;
+        }
+    }
+}
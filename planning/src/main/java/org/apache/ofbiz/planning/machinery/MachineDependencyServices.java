@@ -0,0 +1,272 @@
+package org.apache.ofbiz.planning.machinery;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.common.PlanningTransactions;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dependencias entre máquinas (PlanningMachineDependency) y consultas transitivas sobre
+ * {@link MachineDependencyGraph}.
+ */
+public class MachineDependencyServices {
+
+    public static final String module = MachineDependencyServices.class.getName();
+
+    /**
+     * Registra que una máquina no puede trabajar sin otra.
+     *
+     * IN:
+     *  - fixedAssetId    (String): máquina dependiente (p. ej. la inyectora)
+     *  - requiredAssetId (String): máquina necesaria (p. ej. su banco de control)
+     *  - comments        (String, opcional)
+     */
+    public static Map<String, Object> createMachineDependency(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String fixedAssetId = (String) context.get("fixedAssetId");
+        String requiredAssetId = (String) context.get("requiredAssetId");
+
+        if (fixedAssetId.equals(requiredAssetId)) {
+            return ServiceUtil.returnError("A machine cannot depend on itself: " + fixedAssetId);
+        }
+        try {
+            for (String assetId : new String[] {fixedAssetId, requiredAssetId}) {
+                if (EntityQuery.use(delegator).from("FixedAsset").where("fixedAssetId", assetId).queryOne() == null) {
+                    return ServiceUtil.returnError("Machine not found: " + assetId);
+                }
+            }
+            if (EntityQuery.use(delegator).from("PlanningMachineDependency")
+                    .where("fixedAssetId", fixedAssetId, "requiredAssetId", requiredAssetId).queryOne() != null) {
+                return ServiceUtil.returnError("Machine " + fixedAssetId + " already depends on " + requiredAssetId);
+            }
+            GenericValue dependency = delegator.makeValue("PlanningMachineDependency");
+            dependency.set("fixedAssetId", fixedAssetId);
+            dependency.set("requiredAssetId", requiredAssetId);
+            dependency.set("comments", context.get("comments"));
+            dependency.create();
+            return ServiceUtil.returnSuccess("Machine " + fixedAssetId + " now depends on " + requiredAssetId);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error creating machine dependency: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error creating machine dependency: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Quita una dependencia entre máquinas.
+     *
+     * IN:
+     *  - fixedAssetId    (String)
+     *  - requiredAssetId (String)
+     */
+    public static Map<String, Object> removeMachineDependency(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String fixedAssetId = (String) context.get("fixedAssetId");
+        String requiredAssetId = (String) context.get("requiredAssetId");
+
+        try {
+            GenericValue dependency = EntityQuery.use(delegator).from("PlanningMachineDependency")
+                    .where("fixedAssetId", fixedAssetId, "requiredAssetId", requiredAssetId).queryOne();
+            if (dependency != null) {
+                dependency.remove();
+            }
+            return ServiceUtil.returnSuccess();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error removing machine dependency: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error removing machine dependency: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Dependencias directas de una máquina, para su pantalla.
+     *
+     * IN:
+     *  - fixedAssetId (String)
+     *
+     * OUT:
+     *  - machine         (GenericValue): FixedAsset
+     *  - requiredRows    (List<Map<String,Object>>): máquinas que necesita (requiredAssetId, nombre, tipo, comments)
+     *  - dependentRows   (List<Map<String,Object>>): máquinas que la necesitan (fixedAssetId, nombre, tipo, comments)
+     */
+    public static Map<String, Object> getMachineDependencies(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String fixedAssetId = (String) context.get("fixedAssetId");
+
+        try {
+            GenericValue machine = EntityQuery.use(delegator).from("FixedAsset").where("fixedAssetId", fixedAssetId).queryOne();
+            if (machine == null) {
+                return ServiceUtil.returnError("Machine not found: " + fixedAssetId);
+            }
+            List<GenericValue> required = EntityQuery.use(delegator).from("PlanningMachineDependency")
+                    .where("fixedAssetId", fixedAssetId).orderBy("requiredAssetId").queryList();
+            List<GenericValue> dependents = EntityQuery.use(delegator).from("PlanningMachineDependency")
+                    .where("requiredAssetId", fixedAssetId).orderBy("fixedAssetId").queryList();
+
+            List<String> assetIds = new ArrayList<>();
+            for (GenericValue dependency : required) {
+                assetIds.add(dependency.getString("requiredAssetId"));
+            }
+            for (GenericValue dependency : dependents) {
+                assetIds.add(dependency.getString("fixedAssetId"));
+            }
+            Map<String, GenericValue> assets = loadAssets(delegator, assetIds);
+
+            List<Map<String, Object>> requiredRows = new ArrayList<>();
+            for (GenericValue dependency : required) {
+                requiredRows.add(dependencyRow(dependency, "requiredAssetId", assets));
+            }
+            List<Map<String, Object>> dependentRows = new ArrayList<>();
+            for (GenericValue dependency : dependents) {
+                dependentRows.add(dependencyRow(dependency, "fixedAssetId", assets));
+            }
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("machine", machine);
+            result.put("requiredRows", requiredRows);
+            result.put("dependentRows", dependentRows);
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error loading machine dependencies of " + fixedAssetId + ": " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error loading machine dependencies of " + fixedAssetId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Qué deja de estar disponible si paran las máquinas indicadas: un solo recorrido del grafo
+     * de dependencias (PlanningMachineDependency y jerarquía de FixedAsset).
+     *
+     * IN:
+     *  - fixedAssetId  (String, opcional): máquina parada
+     *  - fixedAssetIds (List<String>, opcional): varias máquinas paradas
+     *
+     * OUT:
+     *  - impactRows  (List<Map<String,Object>>): fixedAssetId, fixedAssetName, fixedAssetTypeId,
+     *                facilityId, depth (1 = directa), viaAssetId (máquina por la que queda parada)
+     *  - impactCount (Integer)
+     */
+    public static Map<String, Object> getMachineImpact(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return traverse(dctx, context, true);
+    }
+
+    /**
+     * Qué necesita, directa o indirectamente, una máquina para trabajar.
+     *
+     * IN:
+     *  - fixedAssetId  (String, opcional)
+     *  - fixedAssetIds (List<String>, opcional)
+     *
+     * OUT:
+     *  - requirementRows  (List<Map<String,Object>>): mismos campos que impactRows
+     *  - requirementCount (Integer)
+     */
+    public static Map<String, Object> getMachineRequirements(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return traverse(dctx, context, false);
+    }
+
+    /**
+     * Vacía el grafo cacheado (llamado desde las ECAs de PlanningMachineDependency y FixedAsset)
+     * al confirmarse la transacción del cambio.
+     */
+    public static Map<String, Object> clearMachineDependencyCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+        PlanningTransactions.afterCommit(MachineDependencyGraph::clear);
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static Map<String, Object> traverse(DispatchContext dctx, Map<String, ? extends Object> context, boolean impact) {
+        Delegator delegator = dctx.getDelegator();
+        String fixedAssetId = (String) context.get("fixedAssetId");
+        @SuppressWarnings("unchecked")
+        List<String> fixedAssetIds = (List<String>) context.get("fixedAssetIds");
+
+        List<String> seeds = new ArrayList<>();
+        if (UtilValidate.isNotEmpty(fixedAssetId)) {
+            seeds.add(fixedAssetId);
+        }
+        if (fixedAssetIds != null) {
+            seeds.addAll(fixedAssetIds);
+        }
+        if (seeds.isEmpty()) {
+            return ServiceUtil.returnError("fixedAssetId or fixedAssetIds is required");
+        }
+
+        String serviceName = impact ? "getMachineImpact" : "getMachineRequirements";
+        PlanningMetrics.Timer timer = PlanningMetrics.start(serviceName);
+        try {
+            MachineDependencyGraph graph = MachineDependencyGraph.getGraph(delegator);
+            MachineDependencyGraph.Reach reach = impact ? graph.impactOf(seeds) : graph.requirementsOf(seeds);
+
+            List<String> reachedIds = new ArrayList<>(reach.size());
+            for (int i = 0; i < reach.size(); i++) {
+                reachedIds.add(reach.getAssetId(i));
+            }
+            Map<String, GenericValue> assets = loadAssets(delegator, reachedIds);
+            List<Map<String, Object>> rows = new ArrayList<>(reach.size());
+            for (int i = 0; i < reach.size(); i++) {
+                GenericValue asset = assets.get(reach.getAssetId(i));
+                Map<String, Object> row = new HashMap<>();
+                row.put("fixedAssetId", reach.getAssetId(i));
+                row.put("fixedAssetName", asset != null ? asset.getString("fixedAssetName") : null);
+                row.put("fixedAssetTypeId", asset != null ? asset.getString("fixedAssetTypeId") : null);
+                row.put("facilityId", asset != null ? asset.getString("locatedAtFacilityId") : null);
+                row.put("depth", reach.getDepth(i));
+                row.put("viaAssetId", reach.getViaAssetId(i));
+                rows.add(row);
+            }
+            timer.rows(rows.size());
+
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put(impact ? "impactRows" : "requirementRows", rows);
+            result.put(impact ? "impactCount" : "requirementCount", rows.size());
+            return result;
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error traversing machine dependencies: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error traversing machine dependencies: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Nombre, tipo y facility de las máquinas indicadas en una sola consulta.
+     */
+    private static Map<String, GenericValue> loadAssets(Delegator delegator, List<String> assetIds)
+            throws GenericEntityException {
+        if (assetIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, GenericValue> assets = new HashMap<>();
+        for (GenericValue asset : EntityQuery.use(delegator)
+                .select("fixedAssetId", "fixedAssetName", "fixedAssetTypeId", "locatedAtFacilityId")
+                .from("FixedAsset")
+                .where(EntityCondition.makeCondition("fixedAssetId", EntityOperator.IN, assetIds))
+                .queryList()) {
+            assets.put(asset.getString("fixedAssetId"), asset);
+        }
+        return assets;
+    }
+
+    private static Map<String, Object> dependencyRow(GenericValue dependency, String assetField,
+                                                     Map<String, GenericValue> assets) {
+        GenericValue asset = assets.get(dependency.getString(assetField));
+        Map<String, Object> row = new HashMap<>();
+        row.put("fixedAssetId", dependency.getString("fixedAssetId"));
+        row.put("requiredAssetId", dependency.getString("requiredAssetId"));
+        row.put("fixedAssetName", asset != null ? asset.getString("fixedAssetName") : null);
+        row.put("fixedAssetTypeId", asset != null ? asset.getString("fixedAssetTypeId") : null);
+        row.put("comments", dependency.getString("comments"));
+        return row;
+    }
+}
@@ -0,0 +1,118 @@
+package org.apache.ofbiz.planning.machinery;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilHttp;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningCsvWriter;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.common.PlanningReferenceCache;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MachineryEvents {
+
+    public static final String module = MachineryEvents.class.getName();
+
+    // FixedAssets por bloque: se cargan sus PLANT_TAG con una consulta y se envían al cliente
+    private static final int BLOCK_SIZE = 500;
+    private static final int EXPORT_TRANSACTION_TIMEOUT = 3600;
+
+    /**
+     * Exporta a CSV toda la maquinaria que cumple los filtros de searchMachinery, sin paginar.
+     *
+     * Los FixedAsset se leen con un EntityListIterator y se escriben por bloques: en memoria
+     * solo hay un bloque de activos con sus PLANT_TAG y los nombres de las facilities (de la
+     * caché de datos de referencia), así que el consumo no depende del tamaño del registro y
+     * el cliente recibe el primer bloque en cuanto está leído.
+     */
+    public static String exportMachineryCsv(HttpServletRequest request, HttpServletResponse response) {
+        Delegator delegator = (Delegator) request.getAttribute("delegator");
+        Map<String, Object> parameters = UtilHttp.getParameterMap(request);
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("exportMachineryCsv");
+        boolean beganTransaction = false;
+        boolean streamed = false;
+        try {
+            beganTransaction = TransactionUtil.begin(EXPORT_TRANSACTION_TIMEOUT);
+            MachineryServices.SearchCondition searchCondition = MachineryServices.makeSearchCondition(delegator, parameters, timer);
+
+            Map<String, String> facilityNames = new HashMap<>();
+            for (GenericValue facility : PlanningReferenceCache.get(delegator, "facilities",
+                    () -> EntityQuery.use(delegator).from("Facility").queryList())) {
+                facilityNames.put(facility.getString("facilityId"), facility.getString("facilityName"));
+            }
+
+            streamed = true;
+            try (PlanningCsvWriter csv = PlanningCsvWriter.open(response, "machinery.csv")) {
+                csv.writeRow("Machine ID", "Asset ID", "Name", "Facility", "Machine Type");
+                if (searchCondition != null) {
+                    try (EntityListIterator fixedAssetIt = searchCondition.query(delegator)
+                            .cursorForwardOnly()
+                            .fetchSize(BLOCK_SIZE)
+                            .queryIterator()) {
+                        timer.query();
+                        List<GenericValue> block = new ArrayList<>(BLOCK_SIZE);
+                        GenericValue fixedAsset;
+                        while ((fixedAsset = fixedAssetIt.next()) != null) {
+                            block.add(fixedAsset);
+                            if (block.size() == BLOCK_SIZE) {
+                                writeBlock(delegator, searchCondition, csv, block, facilityNames, timer);
+                                block.clear();
+                            }
+                        }
+                        writeBlock(delegator, searchCondition, csv, block, facilityNames, timer);
+                    }
+                }
+                timer.rows(csv.getRowCount() - 1);
+            }
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericEntityException | IOException e) {
+            timer.error();
+            Debug.logError(e, "Error exporting machinery: " + e.getMessage(), module);
+            try {
+                TransactionUtil.rollback(beganTransaction, "Error exporting machinery", e);
+            } catch (GenericTransactionException e2) {
+                Debug.logError(e2, "Unable to rollback machinery export: " + e2.getMessage(), module);
+            }
+            if (streamed) {
+                // La respuesta ya se ha empezado a enviar (y el CSV está cerrado): no se puede mostrar una vista
+                return "success";
+            }
+            request.setAttribute("_ERROR_MESSAGE_", "Error exporting machinery: " + e.getMessage());
+            return "error";
+        } finally {
+            timer.close();
+        }
+        return "success";
+    }
+
+    // Escribe un bloque de FixedAssets con sus PLANT_TAG (como mucho una consulta por bloque) y lo envía al cliente
+    private static void writeBlock(Delegator delegator, MachineryServices.SearchCondition searchCondition,
+            PlanningCsvWriter csv, List<GenericValue> block,
+            Map<String, String> facilityNames, PlanningMetrics.Timer timer)
+            throws GenericEntityException, IOException {
+        if (block.isEmpty()) {
+            return;
+        }
+        List<String> plantTags = searchCondition.plantTags(delegator, block, timer);
+        for (int i = 0; i < block.size(); i++) {
+            GenericValue fixedAsset = block.get(i);
+            String fixedAssetId = fixedAsset.getString("fixedAssetId");
+            csv.writeRow(plantTags.get(i), fixedAssetId, fixedAsset.getString("fixedAssetName"),
+                    facilityNames.get(fixedAsset.getString("locatedAtFacilityId")), fixedAsset.getString("fixedAssetTypeId"));
+        }
+        csv.flush();
+    }
+}
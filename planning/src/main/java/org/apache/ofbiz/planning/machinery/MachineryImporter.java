@@ -0,0 +1,446 @@
+package org.apache.ofbiz.planning.machinery;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningReferenceCache;
+
+import javax.transaction.Transaction;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Alta masiva de maquinaria: FixedAsset + GoodIdentification PLANT_TAG (y SERIAL_NUMBER).
+ *
+ * Las filas se procesan en bloques de chunkSize. Por bloque se hace una sola consulta de
+ * PLANT_TAG, otra de SERIAL_NUMBER y otra de fixedAssetId existentes, y las altas se crean en
+ * una transacción por bloque, aparte de la del servicio que llama si la hay. Si la transacción
+ * de un bloque falla se reintenta fila a fila para que las filas correctas se importen
+ * igualmente. Los errores se devuelven por fila.
+ *
+ * GoodIdentification cuelga de Product, así que cada máquina tiene un Product ASSET_USAGE con
+ * su mismo id; si ya existe un Product con ese id de otro tipo, la fila se rechaza.
+ *
+ * El CSV se lee línea a línea; la primera línea es la cabecera con los nombres de columna
+ * (machineId, fixedAssetName, fixedAssetTypeId, facilityId, serialNumber, fixedAssetId,
+ * description), separados por coma o punto y coma. facilityId admite el id o el nombre.
+ */
+public class MachineryImporter {
+
+    public static final String module = MachineryImporter.class.getName();
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final String[] COLUMNS = {"machineId", "fixedAssetName", "fixedAssetTypeId", "facilityId",
+            "serialNumber", "fixedAssetId", "description"};
+
+    /**
+     * Fila a importar.
+     */
+    public static final class ImportRow {
+        private final int lineNumber;
+        private final Map<String, String> fields;
+        private String fixedAssetId;
+        private String facilityId;
+
+        public ImportRow(int lineNumber, Map<String, String> fields) {
+            this.lineNumber = lineNumber;
+            this.fields = fields;
+        }
+
+        private String get(String name) {
+            String value = fields.get(name);
+            return UtilValidate.isNotEmpty(value) ? value.trim() : null;
+        }
+    }
+
+    private final Delegator delegator;
+    private final int chunkSize;
+    private final Set<String> seenPlantTags = new HashSet<>();
+    private final Set<String> seenSerialNumbers = new HashSet<>();
+    private final Set<String> seenFixedAssetIds = new HashSet<>();
+    private final List<String> importedFixedAssetIds = new ArrayList<>();
+    private final List<Map<String, Object>> errorRows = new ArrayList<>();
+    private Set<String> fixedAssetTypeIds;
+    private Map<String, String> facilityIdsByKey;
+    private int rowCount;
+
+    public MachineryImporter(Delegator delegator, int chunkSize) {
+        this.delegator = delegator;
+        this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Importa un CSV. Solo se mantiene en memoria el bloque de filas en curso.
+     */
+    public void importCsv(ByteBuffer csvData) throws GenericEntityException {
+        ByteArrayInputStream input;
+        if (csvData.hasArray()) {
+            input = new ByteArrayInputStream(csvData.array(), csvData.arrayOffset() + csvData.position(), csvData.remaining());
+        } else {
+            byte[] bytes = new byte[csvData.remaining()];
+            csvData.duplicate().get(bytes);
+            input = new ByteArrayInputStream(bytes);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                return;
+            }
+            // BOM de los CSV guardados desde Excel
+            if (headerLine.startsWith("\uFEFF")) {
+                headerLine = headerLine.substring(1);
+            }
+            char separator = headerLine.indexOf(';') >= 0 && headerLine.indexOf(',') < 0 ? ';' : ',';
+            List<String> header = parseLine(headerLine, separator);
+            String[] columnNames = new String[header.size()];
+            for (int i = 0; i < header.size(); i++) {
+                for (String column : COLUMNS) {
+                    if (column.equalsIgnoreCase(header.get(i).trim())) {
+                        columnNames[i] = column;
+                    }
+                }
+            }
+
+            List<ImportRow> chunk = new ArrayList<>(chunkSize);
+            int lineNumber = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                List<String> values = parseLine(line, separator);
+                Map<String, String> fields = new HashMap<>();
+                for (int i = 0; i < columnNames.length && i < values.size(); i++) {
+                    if (columnNames[i] != null) {
+                        fields.put(columnNames[i], values.get(i));
+                    }
+                }
+                chunk.add(new ImportRow(lineNumber, fields));
+                if (chunk.size() >= chunkSize) {
+                    importRows(chunk);
+                    chunk.clear();
+                }
+            }
+            importRows(chunk);
+        } catch (IOException e) {
+            throw new GenericEntityException("Error reading machinery CSV: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Valida e importa un bloque de filas.
+     */
+    public void importRows(List<ImportRow> rows) throws GenericEntityException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        rowCount += rows.size();
+        loadReferenceData();
+
+        // 1. Validación de cada fila y duplicados dentro del propio fichero
+        List<ImportRow> validRows = new ArrayList<>(rows.size());
+        Set<String> plantTags = new HashSet<>();
+        Set<String> serialNumbers = new HashSet<>();
+        Set<String> fixedAssetIds = new HashSet<>();
+        for (ImportRow row : rows) {
+            String error = validate(row);
+            if (error != null) {
+                addError(row, error);
+                continue;
+            }
+            plantTags.add(row.get("machineId"));
+            if (row.get("serialNumber") != null) {
+                serialNumbers.add(row.get("serialNumber"));
+            }
+            if (row.fixedAssetId != null) {
+                fixedAssetIds.add(row.fixedAssetId);
+            }
+            validRows.add(row);
+        }
+        if (validRows.isEmpty()) {
+            return;
+        }
+
+        // 2. Duplicados en base de datos: una consulta por tipo para todo el bloque
+        Set<String> existingPlantTags = existingIdValues("PLANT_TAG", plantTags);
+        Set<String> existingSerialNumbers = existingIdValues("SERIAL_NUMBER", serialNumbers);
+        Set<String> existingFixedAssetIds = existingIds("FixedAsset", "fixedAssetId", fixedAssetIds);
+
+        List<ImportRow> candidateRows = new ArrayList<>(validRows.size());
+        for (ImportRow row : validRows) {
+            if (existingPlantTags.contains(row.get("machineId"))) {
+                addError(row, "A machine with PLANT_TAG " + row.get("machineId") + " already exists");
+            } else if (row.get("serialNumber") != null && existingSerialNumbers.contains(row.get("serialNumber"))) {
+                addError(row, "A machine with serial number " + row.get("serialNumber") + " already exists");
+            } else if (row.fixedAssetId != null && existingFixedAssetIds.contains(row.fixedAssetId)) {
+                addError(row, "Fixed asset " + row.fixedAssetId + " already exists");
+            } else {
+                if (row.fixedAssetId == null) {
+                    row.fixedAssetId = delegator.getNextSeqId("FixedAsset");
+                }
+                candidateRows.add(row);
+            }
+        }
+
+        // Un id generado también puede coincidir con un Product ajeno (ambas secuencias empiezan en 10000)
+        Set<String> candidateIds = new HashSet<>();
+        for (ImportRow row : candidateRows) {
+            candidateIds.add(row.fixedAssetId);
+        }
+        Map<String, String> existingProductTypes = existingProductTypes(candidateIds);
+        List<ImportRow> newRows = new ArrayList<>(candidateRows.size());
+        for (ImportRow row : candidateRows) {
+            String productTypeId = existingProductTypes.get(row.fixedAssetId);
+            if (productTypeId != null && !"ASSET_USAGE".equals(productTypeId)) {
+                addError(row, "Product " + row.fixedAssetId + " already exists with product type " + productTypeId);
+            } else {
+                newRows.add(row);
+            }
+        }
+
+        // 3. Altas del bloque en una transacción; si falla, fila a fila
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<GenericValue> values = new ArrayList<>(newRows.size() * 4);
+        for (ImportRow row : newRows) {
+            values.addAll(makeValues(row, !existingProductTypes.containsKey(row.fixedAssetId), now));
+        }
+        try {
+            createInTransaction(values);
+            for (ImportRow row : newRows) {
+                importedFixedAssetIds.add(row.fixedAssetId);
+            }
+        } catch (GenericEntityException e) {
+            Debug.logWarning("Machinery import chunk failed, retrying row by row: " + e.getMessage(), module);
+            for (ImportRow row : newRows) {
+                try {
+                    createInTransaction(makeValues(row, !existingProductTypes.containsKey(row.fixedAssetId), now));
+                    importedFixedAssetIds.add(row.fixedAssetId);
+                } catch (GenericEntityException rowException) {
+                    addError(row, rowException.getMessage());
+                }
+            }
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public List<String> getImportedFixedAssetIds() {
+        return importedFixedAssetIds;
+    }
+
+    /**
+     * Una fila por error: lineNumber, machineId y errorMessage.
+     */
+    public List<Map<String, Object>> getErrorRows() {
+        return errorRows;
+    }
+
+    private String validate(ImportRow row) {
+        String machineId = row.get("machineId");
+        if (machineId == null) {
+            return "Machine ID (PLANT_TAG) is required";
+        }
+        if (row.get("fixedAssetName") == null) {
+            return "Fixed asset name is required";
+        }
+        String fixedAssetTypeId = row.get("fixedAssetTypeId");
+        if (fixedAssetTypeId == null || !fixedAssetTypeIds.contains(fixedAssetTypeId)) {
+            return "Unknown fixed asset type: " + (fixedAssetTypeId != null ? fixedAssetTypeId : "");
+        }
+        String facility = row.get("facilityId");
+        if (facility != null) {
+            row.facilityId = facilityIdsByKey.get(facility.toUpperCase());
+            if (row.facilityId == null) {
+                return "Unknown facility: " + facility;
+            }
+        }
+        if (!seenPlantTags.add(machineId)) {
+            return "PLANT_TAG " + machineId + " is repeated in the import";
+        }
+        String serialNumber = row.get("serialNumber");
+        if (serialNumber != null && !seenSerialNumbers.add(serialNumber)) {
+            return "Serial number " + serialNumber + " is repeated in the import";
+        }
+        row.fixedAssetId = row.get("fixedAssetId");
+        if (row.fixedAssetId != null && !seenFixedAssetIds.add(row.fixedAssetId)) {
+            return "Fixed asset " + row.fixedAssetId + " is repeated in the import";
+        }
+        return null;
+    }
+
+    private List<GenericValue> makeValues(ImportRow row, boolean createProduct, Timestamp now) {
+        List<GenericValue> values = new ArrayList<>(4);
+        // GoodIdentification.productId tiene clave ajena a Product: producto con el mismo id
+        if (createProduct) {
+            values.add(delegator.makeValue("Product", "productId", row.fixedAssetId, "productTypeId", "ASSET_USAGE",
+                    "internalName", row.get("fixedAssetName")));
+        }
+        values.add(delegator.makeValue("FixedAsset", "fixedAssetId", row.fixedAssetId,
+                "fixedAssetTypeId", row.get("fixedAssetTypeId"), "fixedAssetName", row.get("fixedAssetName"),
+                "description", row.get("description"), "serialNumber", row.get("serialNumber"),
+                "locatedAtFacilityId", row.facilityId, "instanceOfProductId", row.fixedAssetId,
+                "dateAcquired", now));
+        values.add(delegator.makeValue("GoodIdentification", "goodIdentificationTypeId", "PLANT_TAG",
+                "productId", row.fixedAssetId, "idValue", row.get("machineId")));
+        if (row.get("serialNumber") != null) {
+            values.add(delegator.makeValue("GoodIdentification", "goodIdentificationTypeId", "SERIAL_NUMBER",
+                    "productId", row.fixedAssetId, "idValue", row.get("serialNumber")));
+        }
+        return values;
+    }
+
+    // En una transacción propia: si fallase dentro de la del servicio que llama (createMachinery),
+    // esa quedaría marcada para deshacer y el reintento fila a fila no podría guardar nada
+    private void createInTransaction(List<GenericValue> values) throws GenericEntityException {
+        Transaction parentTransaction = TransactionUtil.suspend();
+        try {
+            boolean beganTransaction = TransactionUtil.begin();
+            try {
+                for (GenericValue value : values) {
+                    delegator.create(value);
+                }
+                TransactionUtil.commit(beganTransaction);
+            } catch (GenericEntityException e) {
+                TransactionUtil.rollback(beganTransaction, "Error importing machinery", e);
+                throw e;
+            }
+        } finally {
+            if (parentTransaction != null) {
+                TransactionUtil.resume(parentTransaction);
+            }
+        }
+    }
+
+    private Set<String> existingIdValues(String goodIdentificationTypeId, Set<String> idValues) throws GenericEntityException {
+        Set<String> existing = new HashSet<>();
+        if (idValues.isEmpty()) {
+            return existing;
+        }
+        List<GenericValue> identifications = EntityQuery.use(delegator)
+                .select("idValue")
+                .from("GoodIdentification")
+                .where(EntityCondition.makeCondition("goodIdentificationTypeId", EntityOperator.EQUALS, goodIdentificationTypeId),
+                       EntityCondition.makeCondition("idValue", EntityOperator.IN, idValues))
+                .queryList();
+        for (GenericValue identification : identifications) {
+            existing.add(identification.getString("idValue"));
+        }
+        return existing;
+    }
+
+    private Map<String, String> existingProductTypes(Set<String> productIds) throws GenericEntityException {
+        Map<String, String> productTypes = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return productTypes;
+        }
+        List<GenericValue> products = EntityQuery.use(delegator)
+                .select("productId", "productTypeId")
+                .from("Product")
+                .where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds))
+                .queryList();
+        for (GenericValue product : products) {
+            productTypes.put(product.getString("productId"), product.getString("productTypeId"));
+        }
+        return productTypes;
+    }
+
+    private Set<String> existingIds(String entityName, String fieldName, Set<String> ids) throws GenericEntityException {
+        Set<String> existing = new HashSet<>();
+        if (ids.isEmpty()) {
+            return existing;
+        }
+        List<GenericValue> values = EntityQuery.use(delegator)
+                .select(fieldName)
+                .from(entityName)
+                .where(EntityCondition.makeCondition(fieldName, EntityOperator.IN, ids))
+                .queryList();
+        for (GenericValue value : values) {
+            existing.add(value.getString(fieldName));
+        }
+        return existing;
+    }
+
+    /**
+     * Tipos de activo y facilities (por id y por nombre, sin distinguir mayúsculas) desde la
+     * caché de datos de referencia; una vez por importación.
+     */
+    private void loadReferenceData() throws GenericEntityException {
+        if (fixedAssetTypeIds != null) {
+            return;
+        }
+        fixedAssetTypeIds = new HashSet<>();
+        for (GenericValue fixedAssetType : PlanningReferenceCache.get(delegator, "fixedAssetTypes",
+                () -> EntityQuery.use(delegator).from("FixedAssetType").queryList())) {
+            fixedAssetTypeIds.add(fixedAssetType.getString("fixedAssetTypeId"));
+        }
+        facilityIdsByKey = new HashMap<>();
+        for (GenericValue facility : PlanningReferenceCache.get(delegator, "facilities",
+                () -> EntityQuery.use(delegator).from("Facility").queryList())) {
+            String facilityId = facility.getString("facilityId");
+            if (facility.get("facilityName") != null) {
+                facilityIdsByKey.putIfAbsent(facility.getString("facilityName").trim().toUpperCase(), facilityId);
+            }
+            facilityIdsByKey.put(facilityId.toUpperCase(), facilityId);
+        }
+    }
+
+    private void addError(ImportRow row, String errorMessage) {
+        Map<String, Object> errorRow = new HashMap<>();
+        errorRow.put("lineNumber", row.lineNumber);
+        errorRow.put("machineId", row.get("machineId"));
+        errorRow.put("errorMessage", errorMessage);
+        errorRows.add(errorRow);
+    }
+
+    /**
+     * Separa una línea CSV; admite campos entre comillas con el separador o comillas dobladas.
+     */
+    static List<String> parseLine(String line, char separator) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
@@ -4,18 +4,33 @@ import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityFunction;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.common.PlanningReferenceCache;
+import org.apache.ofbiz.planning.search.PlanningSearchIndex;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.ServiceUtil;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 public class MachineryServices {
 
     public static final String module = MachineryServices.class.getName();
 
+    /**
+     * Búsqueda paginada de maquinaria.
+     *
+     * Solo se cargan en memoria los FixedAsset de la página solicitada (viewIndex/viewSize)
+     * y solo esos se enriquecen con Facility y PLANT_TAG. El filtro machineId (PLANT_TAG)
+     * se resuelve en base de datos, sin distinguir mayúsculas, en la misma consulta
+     * (vista PlanningFixedAssetAndPlantTag), y la fila muestra el PLANT_TAG que coincidió.
+     */
     public static Map<String, Object> searchMachinery(DispatchContext dctx, Map<String, ? extends Object> context) {
         Delegator delegator = dctx.getDelegator();
         List<Map<String, String>> results = new ArrayList<>();
@@ -26,78 +41,45 @@ public class MachineryServices {
         String name = (String) context.get("name");
         String machineTypeId = (String) context.get("machineTypeId");
 
-        try {
-        	Debug.logInfo("=== INICIANDO BÚSQUEDA DE MAQUINARIA ===", module);
-            Debug.logInfo("Parámetros recibidos - facilityName: " + facilityName + ", machineId: " + machineId + 
-                         ", fixedAssetId: " + fixedAssetId + ", name: " + name + ", machineTypeId: " + machineTypeId, module);
-            
-            // 1. Filtrar Facilities por facilityName si aplica
-            Set<String> facilityIds = new HashSet<>();
-            if (facilityName != null && !facilityName.isEmpty()) {
-                List<GenericValue> matchingFacilities = EntityQuery.use(delegator)
-                        .from("Facility")
-                        .where(EntityCondition.makeCondition("facilityName", EntityOperator.LIKE, "%" + facilityName + "%"))
-                        .queryList();
-                
-                Debug.logInfo("Facilities encontradas con filtro: " + matchingFacilities.size(), module);
+        Integer viewIndexParam = (Integer) context.get("viewIndex");
+        Integer viewSizeParam = (Integer) context.get("viewSize");
+        int viewIndex = viewIndexParam != null && viewIndexParam > 0 ? viewIndexParam : 0;
+        int viewSize = viewSizeParam != null && viewSizeParam > 0
+                ? viewSizeParam
+                : UtilProperties.getPropertyAsInteger("widget", "widget.form.defaultViewSize", 20);
+        int listSize = 0;
 
-                if (matchingFacilities.isEmpty()) {
-                    Map<String, Object> emptyResult = ServiceUtil.returnSuccess();
-                    emptyResult.put("machineryList", results);
-                    return emptyResult;
-                }
-
-                for (GenericValue facility : matchingFacilities) {
-                    facilityIds.add(facility.getString("facilityId"));
-                }
+        PlanningMetrics.Timer timer = PlanningMetrics.start("searchMachinery");
+        try {
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("searchMachinery - facilityName: " + facilityName + ", machineId: " + machineId
+                        + ", fixedAssetId: " + fixedAssetId + ", name: " + name + ", machineTypeId: " + machineTypeId
+                        + ", viewIndex: " + viewIndex + ", viewSize: " + viewSize, module);
             }
-            
-            // 2. Construir condiciones para FixedAsset
-            List<EntityCondition> fixedAssetConditions = new ArrayList<>();
 
-            // Filtro por Asset ID
-            if (fixedAssetId != null && !fixedAssetId.isEmpty()) {
-                fixedAssetConditions.add(EntityCondition.makeCondition("fixedAssetId", EntityOperator.LIKE, "%" + fixedAssetId + "%"));
-            }
-            
-            // Filtro por Name
-            if (name != null && !name.isEmpty()) {
-                fixedAssetConditions.add(EntityCondition.makeCondition("fixedAssetName", EntityOperator.LIKE, "%" + name + "%"));
-            }
-            
-            // Filtro por Machine Type
-            if (machineTypeId != null && !machineTypeId.isEmpty()) {
-                fixedAssetConditions.add(EntityCondition.makeCondition("fixedAssetTypeId", EntityOperator.EQUALS, machineTypeId));
+            // 1. Condición de FixedAsset con todos los filtros
+            SearchCondition searchCondition = makeSearchCondition(delegator, context, timer);
+            if (searchCondition == null) {
+                return createSearchResult(results, 0, viewIndex, viewSize);
             }
 
-            // Filtrar solo registros no eliminados
-            fixedAssetConditions.add(EntityCondition.makeCondition("actualEndOfLife", EntityOperator.EQUALS, null));
-            
-            // Filtrar por facilityId si aplica
-            if (!facilityIds.isEmpty()) {
-                fixedAssetConditions.add(EntityCondition.makeCondition("locatedAtFacilityId", EntityOperator.IN, facilityIds));
+            // 2. Consultar FixedAssets de la página actual mediante un EntityListIterator
+            int lowIndex = viewIndex * viewSize + 1;
+            List<GenericValue> fixedAssets;
+            try (EntityListIterator fixedAssetIt = searchCondition.query(delegator)
+                    .cursorScrollInsensitive()
+                    .queryIterator()) {
+                fixedAssets = fixedAssetIt.getPartialList(lowIndex, viewSize);
+                listSize = fixedAssetIt.getResultsSizeAfterPartialList();
             }
-            
-            EntityCondition fixedAssetCondition = null;
-            if (!fixedAssetConditions.isEmpty()) {
-                fixedAssetCondition = EntityCondition.makeCondition(fixedAssetConditions, EntityOperator.AND);
-            }
-            
-            // 3. Consultar FixedAssets
-            List<GenericValue> fixedAssets = EntityQuery.use(delegator)
-                    .from("FixedAsset")
-                    .where(fixedAssetCondition)
-                    .queryList();
-            
-            Debug.logInfo("FixedAssets encontrados: " + fixedAssets.size(), module);
+            timer.query();
 
             if (fixedAssets.isEmpty()) {
-                Map<String, Object> emptyResult = ServiceUtil.returnSuccess();
-                emptyResult.put("machineryList", results);
-                return emptyResult;
+                return createSearchResult(results, listSize, viewIndex, viewSize);
             }
+            List<String> plantTags = searchCondition.plantTags(delegator, fixedAssets, timer);
             
-            // 4. Pre-cargar todas las Facilities relacionadas para mejor performance
+            // 3. Pre-cargar las Facilities de la página
             Map<String, String> facilityNames = new HashMap<>();
             Set<String> allFacilityIds = new HashSet<>();
             for (GenericValue fixedAsset : fixedAssets) {
@@ -105,90 +87,215 @@ public class MachineryServices {
                 if (facId != null) {
                     allFacilityIds.add(facId);
                 }
-                
-                // DEBUG: Mostrar información de cada FixedAsset
-                Debug.logInfo("FixedAsset ID: " + fixedAsset.getString("fixedAssetId") + 
-                             " - Name: " + fixedAsset.getString("fixedAssetName") +
-                             " - Type: " + fixedAsset.getString("fixedAssetTypeId") +
-                             " - FacilityId: " + facId, module);
             }
             
             if (!allFacilityIds.isEmpty()) {
                 List<GenericValue> facilities = EntityQuery.use(delegator)
+                        .select("facilityId", "facilityName")
                         .from("Facility")
                         .where(EntityCondition.makeCondition("facilityId", EntityOperator.IN, allFacilityIds))
                         .queryList();
+                timer.query();
                 for (GenericValue facility : facilities) {
                     facilityNames.put(facility.getString("facilityId"), facility.getString("facilityName"));
-                    Debug.logInfo("Mapeo Facility - ID: " + facility.getString("facilityId") + " -> Name: " + facility.getString("facilityName"), module);
-                }
-            }
-            
-            // 5. Pre-cargar todos los Plant Tags (Machine IDs) para mejor performance
-            Map<String, String> plantTags = new HashMap<>();
-            Set<String> fixedAssetIds = new HashSet<>();
-            for (GenericValue fixedAsset : fixedAssets) {
-                fixedAssetIds.add(fixedAsset.getString("fixedAssetId"));
-            }
-            
-            if (!fixedAssetIds.isEmpty()) {
-                List<EntityCondition> giConditions = new ArrayList<>();
-                giConditions.add(EntityCondition.makeCondition("productId", EntityOperator.IN, fixedAssetIds));
-                giConditions.add(EntityCondition.makeCondition("goodIdentificationTypeId", EntityOperator.EQUALS, "PLANT_TAG"));
-                
-                EntityCondition giCondition = EntityCondition.makeCondition(giConditions, EntityOperator.AND);
-                
-                List<GenericValue> goodIdentifications = EntityQuery.use(delegator)
-                        .from("GoodIdentification")
-                        .where(giCondition)
-                        .queryList();
-                
-                Debug.logInfo("GoodIdentifications PLANT_TAG encontrados: " + goodIdentifications.size(), module);
-                
-                for (GenericValue gi : goodIdentifications) {
-                    if ("PLANT_TAG".equals(gi.getString("goodIdentificationTypeId"))) {
-                        plantTags.put(gi.getString("productId"), gi.getString("idValue"));
-                        Debug.logInfo("PLANT_TAG - FixedAssetId: " + gi.getString("productId") + " -> MachineId: " + gi.getString("idValue"), module);
-                    }
                 }
             }
             
-            // 6. Construir resultados finales aplicando filtro de machineId
-            for (GenericValue fixedAsset : fixedAssets) {
-                String assetId = fixedAsset.getString("fixedAssetId");
+            // 4. Construir resultados de la página
+            for (int i = 0; i < fixedAssets.size(); i++) {
+                GenericValue fixedAsset = fixedAssets.get(i);
                 String facId = fixedAsset.getString("locatedAtFacilityId");
                 String facName = facilityNames.get(facId);
-                String plantTag = plantTags.get(assetId);
-                
-                Debug.logInfo("Procesando - AssetId: " + assetId + " - Facility: " + facName + " - PlantTag: " + plantTag, module);
-
-                // Aplicar filtro por machineId (PLANT_TAG) si se especificó
-                if (machineId != null && !machineId.isEmpty()) {
-                    if (plantTag == null || !plantTag.toLowerCase().contains(machineId.toLowerCase())) {
-                    	Debug.logInfo("Filtrando - AssetId: " + assetId + " no cumple filtro machineId", module);
-                        continue;
-                    }
-                }
-                
-                Map<String, String> resultRow = createResultRow(fixedAsset, plantTag, facName);
-                results.add(resultRow);
-                //results.add(createResultRow(fixedAsset, plantTag, facName));
                 
-                Debug.logInfo("Resultado añadido: " + resultRow, module);
+                results.add(createResultRow(fixedAsset, plantTags.get(i), facName));
+            }
+            timer.rows(results.size());
+
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("searchMachinery - " + listSize + " matches, " + results.size() + " in page", module);
             }
-            
-            Debug.logInfo("=== BÚSQUEDA COMPLETADA - Total resultados: " + results.size() + " ===", module);
-            
         } catch (GenericEntityException e) {
+            timer.error();
             Debug.logError(e, "Error searching machinery: " + e.getMessage(), module);
             return ServiceUtil.returnError("Error searching machinery: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+
+        return createSearchResult(results, listSize, viewIndex, viewSize);
+    }
+
+    /**
+     * Condición de FixedAsset de searchMachinery y de la exportación de maquinaria.
+     */
+    static final class SearchCondition {
+        // FixedAsset, o PlanningFixedAssetAndPlantTag si se filtra por machineId
+        final String entityName;
+        final EntityCondition condition;
+
+        private SearchCondition(String entityName, EntityCondition condition) {
+            this.entityName = entityName;
+            this.condition = condition;
+        }
+
+        private boolean byPlantTag() {
+            return !"FixedAsset".equals(entityName);
+        }
+
+        /**
+         * Consulta de los FixedAsset que cumplen la condición, ordenados por fixedAssetId.
+         * Sobre la vista se lee también el PLANT_TAG: un activo con varios PLANT_TAG
+         * coincidentes sale una vez por cada uno.
+         */
+        EntityQuery query(Delegator delegator) {
+            EntityQuery query = EntityQuery.use(delegator)
+                    .from(entityName)
+                    .where(condition);
+            if (byPlantTag()) {
+                return query.select("fixedAssetId", "fixedAssetName", "fixedAssetTypeId", "locatedAtFacilityId", "plantTag")
+                        .distinct()
+                        .orderBy("fixedAssetId", "plantTag");
+            }
+            return query.select("fixedAssetId", "fixedAssetName", "fixedAssetTypeId", "locatedAtFacilityId")
+                    .orderBy("fixedAssetId");
+        }
+
+        /**
+         * PLANT_TAG de cada fila de query(): el que coincidió con machineId si se filtró por
+         * él, si no el de {@link #loadPlantTags} (una consulta).
+         */
+        List<String> plantTags(Delegator delegator, List<GenericValue> rows, PlanningMetrics.Timer timer)
+                throws GenericEntityException {
+            List<String> plantTags = new ArrayList<>(rows.size());
+            if (byPlantTag()) {
+                for (GenericValue row : rows) {
+                    plantTags.add(row.getString("plantTag"));
+                }
+                return plantTags;
+            }
+            Map<String, String> plantTagsByAsset = loadPlantTags(delegator, rows);
+            timer.query();
+            for (GenericValue row : rows) {
+                plantTags.add(plantTagsByAsset.get(row.getString("fixedAssetId")));
+            }
+            return plantTags;
+        }
+    }
+
+    /**
+     * Construye la condición de FixedAsset a partir de los filtros de searchMachinery
+     * (facilityName, machineId, fixedAssetId, name, machineTypeId).
+     *
+     * @return la condición, o null si ningún activo puede coincidir
+     */
+    static SearchCondition makeSearchCondition(Delegator delegator, Map<String, ? extends Object> context,
+            PlanningMetrics.Timer timer) throws GenericEntityException {
+        String facilityName = (String) context.get("facilityName");
+        String machineId = (String) context.get("machineId");
+        String fixedAssetId = (String) context.get("fixedAssetId");
+        String name = (String) context.get("name");
+        String machineTypeId = (String) context.get("machineTypeId");
+
+        // 1. Filtrar Facilities por facilityName si aplica
+        Set<String> facilityIds = new HashSet<>();
+        if (facilityName != null && !facilityName.isEmpty()) {
+            List<EntityCondition> facilityConditions = new ArrayList<>();
+            if (!PlanningSearchIndex.addContainsCondition(delegator, facilityConditions, PlanningSearchIndex.FACILITY,
+                    "facilityId", "facilityName", facilityName)) {
+                return null;
+            }
+            List<GenericValue> matchingFacilities = EntityQuery.use(delegator)
+                    .select("facilityId")
+                    .from("Facility")
+                    .where(EntityCondition.makeCondition(facilityConditions, EntityOperator.AND))
+                    .queryList();
+            timer.query();
+
+            if (matchingFacilities.isEmpty()) {
+                return null;
+            }
+
+            for (GenericValue facility : matchingFacilities) {
+                facilityIds.add(facility.getString("facilityId"));
+            }
         }
+        
+        // 2. Construir condiciones para FixedAsset
+        List<EntityCondition> fixedAssetConditions = new ArrayList<>();
 
+        // Filtro por Machine ID (PLANT_TAG): se une con GoodIdentification en la misma consulta
+        String entityName = "FixedAsset";
+        if (machineId != null && !machineId.isEmpty()) {
+            entityName = "PlanningFixedAssetAndPlantTag";
+            fixedAssetConditions.add(EntityCondition.makeCondition(EntityFunction.UPPER_FIELD("plantTag"), EntityOperator.LIKE,
+                    EntityFunction.UPPER("%" + machineId + "%")));
+        }
+
+        // Filtro por Asset ID (índice de texto + LIKE sobre los candidatos)
+        if (fixedAssetId != null && !fixedAssetId.isEmpty()) {
+            if (!PlanningSearchIndex.addContainsCondition(delegator, fixedAssetConditions, PlanningSearchIndex.FIXED_ASSET,
+                    "fixedAssetId", "fixedAssetId", fixedAssetId)) {
+                return null;
+            }
+        }
+        
+        // Filtro por Name (índice de texto + LIKE sobre los candidatos)
+        if (name != null && !name.isEmpty()) {
+            if (!PlanningSearchIndex.addContainsCondition(delegator, fixedAssetConditions, PlanningSearchIndex.FIXED_ASSET,
+                    "fixedAssetId", "fixedAssetName", name)) {
+                return null;
+            }
+        }
+        
+        // Filtro por Machine Type
+        if (machineTypeId != null && !machineTypeId.isEmpty()) {
+            fixedAssetConditions.add(EntityCondition.makeCondition("fixedAssetTypeId", EntityOperator.EQUALS, machineTypeId));
+        }
+
+        // Filtrar solo registros no eliminados
+        fixedAssetConditions.add(EntityCondition.makeCondition("actualEndOfLife", EntityOperator.EQUALS, null));
+        
+        // Filtrar por facilityId si aplica
+        if (!facilityIds.isEmpty()) {
+            fixedAssetConditions.add(EntityCondition.makeCondition("locatedAtFacilityId", EntityOperator.IN, facilityIds));
+        }
+
+        return new SearchCondition(entityName, EntityCondition.makeCondition(fixedAssetConditions, EntityOperator.AND));
+    }
+
+    // Método auxiliar para devolver siempre los mismos parámetros OUT de searchMachinery
+    private static Map<String, Object> createSearchResult(List<Map<String, String>> results, int listSize, int viewIndex, int viewSize) {
         Map<String, Object> result = ServiceUtil.returnSuccess();
         result.put("machineryList", results);
+        result.put("listSize", listSize);
+        result.put("viewIndex", viewIndex);
+        result.put("viewSize", viewSize);
         return result;
     }
 
+    // Método auxiliar: PLANT_TAG (GoodIdentification.idValue) por fixedAssetId para un bloque de FixedAssets
+    static Map<String, String> loadPlantTags(Delegator delegator, List<GenericValue> fixedAssets) throws GenericEntityException {
+        Map<String, String> plantTags = new HashMap<>();
+        if (fixedAssets.isEmpty()) {
+            return plantTags;
+        }
+        Set<String> fixedAssetIds = new HashSet<>();
+        for (GenericValue fixedAsset : fixedAssets) {
+            fixedAssetIds.add(fixedAsset.getString("fixedAssetId"));
+        }
+
+        List<GenericValue> goodIdentifications = EntityQuery.use(delegator)
+                .select("productId", "idValue")
+                .from("GoodIdentification")
+                .where(EntityCondition.makeCondition("productId", EntityOperator.IN, fixedAssetIds),
+                       EntityCondition.makeCondition("goodIdentificationTypeId", EntityOperator.EQUALS, "PLANT_TAG"))
+                .queryList();
+        for (GenericValue gi : goodIdentifications) {
+            plantTags.put(gi.getString("productId"), gi.getString("idValue"));
+        }
+        return plantTags;
+    }
+
     // Método auxiliar para crear una fila de resultado
     private static Map<String, String> createResultRow(GenericValue fixedAsset, String plantTag, String facilityName) {
         Map<String, String> row = new HashMap<>();
@@ -204,177 +311,116 @@ public class MachineryServices {
         Delegator delegator = dctx.getDelegator();
         Map<String, Object> result = new HashMap<>();
         
+        PlanningMetrics.Timer timer = PlanningMetrics.start("getMachineryReferenceData");
         try {
-            // Obtener todas las facilities
-            List<GenericValue> facilities = EntityQuery.use(delegator)
-                    .from("Facility")
-                    .queryList();
+            // Obtener todas las facilities (desde la caché de datos de referencia)
+            List<GenericValue> facilities = PlanningReferenceCache.get(delegator, "facilities",
+                    () -> EntityQuery.use(delegator)
+                            .from("Facility")
+                            .queryList());
             result.put("facilities", facilities);
             
             // Obtener todos los tipos de fixed asset
-            List<GenericValue> fixedAssetTypes = EntityQuery.use(delegator)
-                    .from("FixedAssetType")
-                    .queryList();
+            List<GenericValue> fixedAssetTypes = PlanningReferenceCache.get(delegator, "fixedAssetTypes",
+                    () -> EntityQuery.use(delegator)
+                            .from("FixedAssetType")
+                            .queryList());
             result.put("fixedAssetTypes", fixedAssetTypes);
+            timer.rows(facilities.size() + fixedAssetTypes.size());
             
         } catch (GenericEntityException e) {
+            timer.error();
             Debug.logError(e, "Error getting reference data: " + e.getMessage(), module);
+        } finally {
+            timer.close();
         }
         
         return result;
     }
-    /*
+
+    /**
+     * Alta de una máquina desde el formulario: FixedAsset + PLANT_TAG (y SERIAL_NUMBER).
+     * Usa las mismas validaciones que la importación masiva.
+     *
+     * IN:
+     *  - machineId     (String): PLANT_TAG
+     *  - name          (String): nombre del activo
+     *  - machineTypeId (String): tipo de activo
+     *  - facilityName  (String, opcional): id o nombre de la facility
+     *  - fixedAssetId  (String, opcional): id del activo; si no se indica se genera
+     *  - serialNumber  (String, opcional)
+     *
+     * OUT:
+     *  - machineryId    (String): fixedAssetId creado
+     *  - successMessage (String)
+     */
     public static Map<String, Object> createMachinery(DispatchContext dctx, Map<String, ? extends Object> context) {
-        Map<String, Object> result = new HashMap<>();
-        LocalDispatcher dispatcher = dctx.getDispatcher();
-        Delegator delegator = dctx.getDelegator();
-        GenericValue userLogin = (GenericValue) context.get("userLogin");
-        
+        Map<String, String> fields = new HashMap<>();
+        fields.put("machineId", (String) context.get("machineId"));
+        fields.put("fixedAssetName", (String) context.get("name"));
+        fields.put("fixedAssetTypeId", (String) context.get("machineTypeId"));
+        fields.put("facilityId", (String) context.get("facilityName"));
+        fields.put("fixedAssetId", (String) context.get("fixedAssetId"));
+        fields.put("serialNumber", (String) context.get("serialNumber"));
+
+        MachineryImporter importer = new MachineryImporter(dctx.getDelegator(), 1);
         try {
-            // 1. Extraer parámetros del formulario
-            String facilityId = (String) context.get("facilityId");
-            String machineId = (String) context.get("machineId"); // Este es el PLANT_TAG
-            String fixedAssetName = (String) context.get("fixedAssetName");
-            String fixedAssetTypeId = (String) context.get("fixedAssetTypeId");
-            String description = (String) context.get("description");
-            String serialNumber = (String) context.get("serialNumber");
-            
-            // 2. Validaciones básicas
-            if (UtilValidate.isEmpty(machineId)) {
-                result.put("errorMessage", "Machine ID (PLANT_TAG) es requerido");
-                return result;
-            }
-            
-            if (UtilValidate.isEmpty(fixedAssetName)) {
-                result.put("errorMessage", "Nombre del activo es requerido");
-                return result;
-            }
-            
-            // 3. Verificar si ya existe el PLANT_TAG en GoodIdentification
-            List<GenericValue> existingPlantTags = EntityQuery.use(delegator)
-                    .from("GoodIdentification")
-                    .where(EntityCondition.makeCondition(
-                        EntityCondition.makeCondition("goodIdentificationTypeId", EntityOperator.EQUALS, "PLANT_TAG"),
-                        EntityCondition.makeCondition("idValue", EntityOperator.EQUALS, machineId),
-                        EntityOperator.AND
-                    ))
-                    .queryList();
-            
-            if (!existingPlantTags.isEmpty()) {
-                result.put("errorMessage", "Ya existe una máquina con PLANT_TAG: " + machineId);
-                return result;
-            }
-            
-            // 4. CREAR FIXED ASSET (Entidad principal)
-            String fixedAssetId = delegator.getNextSeqId("FixedAsset");
-            
-            GenericValue fixedAsset = delegator.makeValue("FixedAsset");
-            fixedAsset.set("fixedAssetId", fixedAssetId);
-            fixedAsset.set("fixedAssetName", fixedAssetName);
-            fixedAsset.set("fixedAssetTypeId", fixedAssetTypeId);
-            fixedAsset.set("description", description);
-            fixedAsset.set("serialNumber", serialNumber);
-            fixedAsset.set("dateAcquired", new java.sql.Timestamp(System.currentTimeMillis()));
-            
-            // Asignar Facility si se proporcionó
-            if (UtilValidate.isNotEmpty(facilityId)) {
-                // Verificar que la Facility existe
-                GenericValue facility = EntityQuery.use(delegator)
-                        .from("Facility")
-                        .where("facilityId", facilityId)
-                        .queryOne();
-                if (facility != null) {
-                    fixedAsset.set("locatedAtFacilityId", facilityId);
-                } else {
-                    result.put("warningMessage", "La Facility especificada no existe, se creará sin ubicación");
-                }
-            }
-            
-            // Crear el FixedAsset
-            fixedAsset = delegator.create(fixedAsset);
-            
-            // 5. CREAR GOOD IDENTIFICATION (PLANT_TAG)
-            GenericValue goodIdentification = delegator.makeValue("GoodIdentification");
-            goodIdentification.set("goodIdentificationTypeId", "PLANT_TAG");
-            goodIdentification.set("productId", fixedAssetId); // Relacionar con el FixedAsset
-            goodIdentification.set("idValue", machineId); // El Machine ID del formulario
-            
-            delegator.create(goodIdentification);
-            
-            // 6. OPCIONAL: Si se necesita, crear también identificación con serial number
-            if (UtilValidate.isNotEmpty(serialNumber)) {
-                GenericValue serialIdentification = delegator.makeValue("GoodIdentification");
-                serialIdentification.set("goodIdentificationTypeId", "SERIAL_NUMBER");
-                serialIdentification.set("productId", fixedAssetId);
-                serialIdentification.set("idValue", serialNumber);
-                
-                delegator.create(serialIdentification);
-            }
-            
-            // 7. Retornar resultado exitoso
-            result.put("fixedAssetId", fixedAssetId);
-            result.put("machineId", machineId);
-            result.put("successMessage", "Máquina creada exitosamente con Asset ID: " + fixedAssetId + " y Machine ID: " + machineId);
-            
+            importer.importRows(Collections.singletonList(new MachineryImporter.ImportRow(1, fields)));
         } catch (GenericEntityException e) {
-            Debug.logError(e, "Error creando maquinaria", module);
-            result.put("errorMessage", "Error al crear la máquina: " + e.getMessage());
+            Debug.logError(e, "Error creating machinery: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error creating machinery: " + e.getMessage());
         }
-        
+        if (!importer.getErrorRows().isEmpty()) {
+            return ServiceUtil.returnError((String) importer.getErrorRows().get(0).get("errorMessage"));
+        }
+        String fixedAssetId = importer.getImportedFixedAssetIds().get(0);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("machineryId", fixedAssetId);
+        result.put("successMessage", "Machine " + fields.get("machineId") + " created with asset ID " + fixedAssetId);
         return result;
     }
-    */
-    /*
-    public static Map<String, Object> createMachinery(DispatchContext dctx, Map<String, ? extends Object> context) {
-        Map<String, Object> result = new HashMap<>();
-        LocalDispatcher dispatcher = dctx.getDispatcher();
-        Delegator delegator = dctx.getDelegator();
-        
+
+    /**
+     * Importación masiva de maquinaria desde CSV (ver MachineryImporter para el formato).
+     *
+     * IN:
+     *  - uploadedFile (java.nio.ByteBuffer): contenido del CSV
+     *  - chunkSize    (Integer, opcional): filas por bloque/transacción (por defecto 500)
+     *
+     * OUT:
+     *  - rowCount      (Integer): filas leídas
+     *  - importedCount (Integer): máquinas creadas
+     *  - errorCount    (Integer)
+     *  - errorRows     (List<Map<String,Object>>): lineNumber, machineId, errorMessage
+     */
+    public static Map<String, Object> importMachineryCsv(DispatchContext dctx, Map<String, ? extends Object> context) {
+        ByteBuffer uploadedFile = (ByteBuffer) context.get("uploadedFile");
+        Integer chunkSize = (Integer) context.get("chunkSize");
+
+        MachineryImporter importer = new MachineryImporter(dctx.getDelegator(),
+                chunkSize != null ? chunkSize : MachineryImporter.DEFAULT_CHUNK_SIZE);
+        PlanningMetrics.Timer timer = PlanningMetrics.start("importMachineryCsv");
         try {
-            // 1. Extraer parámetros del formulario
-            String facilityName = (String) context.get("facilityName");
-            String machineId = (String) context.get("machineId");
-            String fixedAssetId = (String) context.get("fixedAssetId");
-            String name = (String) context.get("name");
-            String machineTypeId = (String) context.get("machineTypeId");
-            
-            // 2. Validaciones básicas
-            if (UtilValidate.isEmpty(machineId)) {
-                result.put("errorMessage", "Machine ID es requerido");
-                return result;
-            }
-            
-            // 3. Verificar si ya existe
-            GenericValue existingMachinery = delegator.findOne("Machinery", 
-                UtilMisc.toMap("machineId", machineId), false);
-            if (existingMachinery != null) {
-                result.put("errorMessage", "Ya existe una máquina con ID: " + machineId);
-                return result;
-            }
-            
-            // 4. Crear el registro
-            GenericValue machinery = delegator.makeValue("Machinery");
-            machinery.set("facilityName", facilityName);
-            machinery.set("machineId", machineId);
-            machinery.set("fixedAssetId", fixedAssetId);
-            machinery.set("name", name);
-            machinery.set("machineTypeId", machineTypeId);
-            
-            // 5. Guardar en base de datos
-            machinery = delegator.create(machinery);
-            
-            // 6. Retornar resultado exitoso
-            result.put("machineryId", machinery.getString("machineId"));
-            result.put("successMessage", "Máquina creada exitosamente");
-            
+            importer.importCsv(uploadedFile);
+            timer.rows(importer.getRowCount());
         } catch (GenericEntityException e) {
-            Debug.logError(e, "Error creando maquinaria", module);
-            result.put("errorMessage", "Error al crear la máquina: " + e.getMessage());
+            timer.error();
+            Debug.logError(e, "Error importing machinery: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error importing machinery: " + e.getMessage());
+        } finally {
+            timer.close();
         }
-        
+        Debug.logInfo("Machinery import: " + importer.getRowCount() + " rows, " + importer.getImportedFixedAssetIds().size()
+                + " imported, " + importer.getErrorRows().size() + " errors", module);
+
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("rowCount", importer.getRowCount());
+        result.put("importedCount", importer.getImportedFixedAssetIds().size());
+        result.put("errorCount", importer.getErrorRows().size());
+        result.put("errorRows", importer.getErrorRows());
         return result;
     }
-    */
+
     public static Map<String, Object> deleteMachinery(DispatchContext dctx, Map<String, ? extends Object> context) {
         Delegator delegator = dctx.getDelegator();
         String fixedAssetId = (String) context.get("fixedAssetId");
@@ -0,0 +1,373 @@
+package org.apache.ofbiz.planning.occupancy;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ocupación de las máquinas durante una semana en franjas de slotSeconds desde el lunes a
+ * las 00:00.
+ *
+ * Cada máquina tiene dos mapas de bits de wordCount longs guardados seguidos en shiftBits y
+ * freeBits (los de la máquina m empiezan en m * wordCount): franjas dentro de un turno y
+ * franjas de turno sin ninguna operación programada. Las máquinas se agrupan por facility y
+ * fixedAssetTypeId; cada grupo guarda además el OR de las franjas libres de sus máquinas,
+ * así una ventana en la que no hay nadie libre se descarta sin mirar las máquinas.
+ *
+ * Inmutable: se comparte entre peticiones desde la caché de {@link MachineOccupancyIndex}.
+ */
+public final class MachineOccupancy {
+
+    private final String facilityId;
+    private final LocalDate weekStart;
+    private final int slotSeconds;
+    private final int slotCount;
+    private final int wordCount;
+    private final String[] machineIds;
+    private final String[] machineNames;
+    private final String[] machineFacilityIds;
+    private final String[] machineTypeIds;
+    private final long[] shiftBits;
+    private final long[] freeBits;
+    // facility::tipo -> máquinas del grupo, en orden de fixedAssetId
+    private final Map<String, int[]> groups;
+    private final Map<String, long[]> groupAnyFree;
+    // Programas diarios (grupo, día) que no se pudieron leer; sus franjas no cuentan como libres
+    private final int unknownScheduleCount;
+    private final long builtMillis;
+
+    MachineOccupancy(String facilityId, LocalDate weekStart, int slotSeconds, String[] machineIds, String[] machineNames,
+                     String[] machineFacilityIds, String[] machineTypeIds, long[] shiftBits, long[] freeBits,
+                     int unknownScheduleCount) {
+        this.facilityId = facilityId;
+        this.weekStart = weekStart;
+        this.slotSeconds = slotSeconds;
+        this.slotCount = 7 * 86400 / slotSeconds;
+        this.wordCount = wordCount(slotCount);
+        this.machineIds = machineIds;
+        this.machineNames = machineNames;
+        this.machineFacilityIds = machineFacilityIds;
+        this.machineTypeIds = machineTypeIds;
+        this.shiftBits = shiftBits;
+        this.freeBits = freeBits;
+        this.unknownScheduleCount = unknownScheduleCount;
+        this.builtMillis = System.currentTimeMillis();
+
+        Map<String, List<Integer>> members = new LinkedHashMap<>();
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            members.computeIfAbsent(groupKey(machineFacilityIds[machine], machineTypeIds[machine]), k -> new ArrayList<>())
+                    .add(machine);
+        }
+        Map<String, int[]> groups = new HashMap<>();
+        Map<String, long[]> groupAnyFree = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : members.entrySet()) {
+            int[] machines = new int[entry.getValue().size()];
+            long[] anyFree = new long[wordCount];
+            for (int i = 0; i < machines.length; i++) {
+                machines[i] = entry.getValue().get(i);
+                int base = machines[i] * wordCount;
+                for (int word = 0; word < wordCount; word++) {
+                    anyFree[word] |= freeBits[base + word];
+                }
+            }
+            groups.put(entry.getKey(), machines);
+            groupAnyFree.put(entry.getKey(), anyFree);
+        }
+        this.groups = groups;
+        this.groupAnyFree = groupAnyFree;
+    }
+
+    static int wordCount(int slotCount) {
+        return (slotCount + 63) >>> 6;
+    }
+
+    static String groupKey(String facilityId, String fixedAssetTypeId) {
+        return facilityId + "::" + fixedAssetTypeId;
+    }
+
+    /**
+     * Facility del índice, o null si es de toda la planta.
+     */
+    public String getFacilityId() {
+        return facilityId;
+    }
+
+    /**
+     * Programas diarios que faltaban al construir el índice de toda la planta; 0 si la
+     * ocupación está completa.
+     */
+    public int getUnknownScheduleCount() {
+        return unknownScheduleCount;
+    }
+
+    public LocalDate getWeekStart() {
+        return weekStart;
+    }
+
+    public int getSlotSeconds() {
+        return slotSeconds;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int getMachineCount() {
+        return machineIds.length;
+    }
+
+    public String getMachineId(int machine) {
+        return machineIds[machine];
+    }
+
+    public String getMachineName(int machine) {
+        return machineNames[machine];
+    }
+
+    public String getMachineFacilityId(int machine) {
+        return machineFacilityIds[machine];
+    }
+
+    public String getMachineTypeId(int machine) {
+        return machineTypeIds[machine];
+    }
+
+    public long getBuiltMillis() {
+        return builtMillis;
+    }
+
+    /**
+     * Franja que contiene ese momento, acotada a [0, slotCount].
+     */
+    public int slotOf(LocalDateTime dateTime) {
+        long seconds = ChronoUnit.SECONDS.between(weekStart.atStartOfDay(), dateTime);
+        return (int) Math.max(0, Math.min(slotCount, Math.floorDiv(seconds, slotSeconds)));
+    }
+
+    /**
+     * Primera franja que empieza en ese momento o después, acotada a [0, slotCount].
+     */
+    public int slotAtOrAfter(LocalDateTime dateTime) {
+        long seconds = ChronoUnit.SECONDS.between(weekStart.atStartOfDay(), dateTime);
+        return (int) Math.max(0, Math.min(slotCount, Math.floorDiv(seconds + slotSeconds - 1, slotSeconds)));
+    }
+
+    public Timestamp slotStart(int slot) {
+        return Timestamp.valueOf(weekStart.atStartOfDay().plusSeconds((long) slot * slotSeconds));
+    }
+
+    /**
+     * Máquinas libres durante todas las franjas [fromSlot, thruSlot), en orden de fixedAssetId.
+     * "Libre" es dentro de turno y sin operaciones programadas.
+     *
+     * @param facilityId       facility, o null para todas
+     * @param fixedAssetTypeId tipo de máquina, o null para todos
+     */
+    public List<Integer> freeMachines(String facilityId, String fixedAssetTypeId, int fromSlot, int thruSlot) {
+        if (fromSlot >= thruSlot) {
+            return Collections.emptyList();
+        }
+        long[] mask = new long[wordCount];
+        setRange(mask, 0, fromSlot, thruSlot);
+        int firstWord = fromSlot >>> 6;
+        int lastWord = (thruSlot - 1) >>> 6;
+
+        List<Integer> result = new ArrayList<>();
+        for (Map.Entry<String, int[]> group : groups.entrySet()) {
+            int machine0 = group.getValue()[0];
+            if (!matches(machine0, facilityId, fixedAssetTypeId)) {
+                continue;
+            }
+            // Si en alguna franja no hay ninguna máquina libre, no puede haberla en toda la ventana
+            long[] anyFree = groupAnyFree.get(group.getKey());
+            if (!covers(anyFree, 0, mask, firstWord, lastWord)) {
+                continue;
+            }
+            for (int machine : group.getValue()) {
+                if (covers(freeBits, machine * wordCount, mask, firstWord, lastWord)) {
+                    result.add(machine);
+                }
+            }
+        }
+        Collections.sort(result, (a, b) -> machineIds[a].compareTo(machineIds[b]));
+        return result;
+    }
+
+    /**
+     * Primer hueco de length franjas libres seguidas que empieza en fromSlot o después: la
+     * máquina que lo tiene antes y su franja de inicio, o null si no hay ninguno esta semana.
+     * Con el mismo inicio gana la máquina de menor fixedAssetId.
+     */
+    public int[] firstFit(String facilityId, String fixedAssetTypeId, int fromSlot, int length) {
+        if (length <= 0 || fromSlot + length > slotCount) {
+            return null;
+        }
+        int bestMachine = -1;
+        int bestStart = Integer.MAX_VALUE;
+        for (int[] machines : groups.values()) {
+            if (!matches(machines[0], facilityId, fixedAssetTypeId)) {
+                continue;
+            }
+            for (int machine : machines) {
+                // Solo interesa un hueco que empiece antes que el mejor encontrado o a la vez
+                int limit = Math.min(bestStart == Integer.MAX_VALUE ? bestStart : bestStart + 1, slotCount - length + 1);
+                int start = firstRun(freeBits, machine * wordCount, fromSlot, length, limit);
+                if (start >= 0 && (start < bestStart || (start == bestStart
+                        && machineIds[machine].compareTo(machineIds[bestMachine]) < 0))) {
+                    bestStart = start;
+                    bestMachine = machine;
+                }
+            }
+        }
+        return bestMachine >= 0 ? new int[] {bestMachine, bestStart} : null;
+    }
+
+    public int getShiftSlotCount(int machine) {
+        return bitCount(shiftBits, machine * wordCount);
+    }
+
+    public int getFreeSlotCount(int machine) {
+        return bitCount(freeBits, machine * wordCount);
+    }
+
+    /**
+     * Resumen de la semana por máquina (horas de turno, ocupadas y libres) para las
+     * pantallas; solo las máquinas indicadas, o todas si es null.
+     */
+    public List<Map<String, Object>> toMachineRows(List<Integer> machines) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            if (machines != null && !machines.contains(machine)) {
+                continue;
+            }
+            double shiftHours = getShiftSlotCount(machine) * (double) slotSeconds / 3600.0;
+            double freeHours = getFreeSlotCount(machine) * (double) slotSeconds / 3600.0;
+            Map<String, Object> row = new HashMap<>();
+            row.put("fixedAssetId", machineIds[machine]);
+            row.put("fixedAssetName", machineNames[machine]);
+            row.put("facilityId", machineFacilityIds[machine]);
+            row.put("fixedAssetTypeId", machineTypeIds[machine]);
+            row.put("shiftHours", round2(shiftHours));
+            row.put("occupiedHours", round2(shiftHours - freeHours));
+            row.put("freeHours", round2(freeHours));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private boolean matches(int machine, String facilityId, String fixedAssetTypeId) {
+        return (facilityId == null || facilityId.equals(machineFacilityIds[machine]))
+                && (fixedAssetTypeId == null || fixedAssetTypeId.equals(machineTypeIds[machine]));
+    }
+
+    private int bitCount(long[] bits, int base) {
+        int count = 0;
+        for (int word = 0; word < wordCount; word++) {
+            count += Long.bitCount(bits[base + word]);
+        }
+        return count;
+    }
+
+    /**
+     * Marca las franjas [from, to) del mapa de bits que empieza en base.
+     */
+    static void setRange(long[] bits, int base, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            bits[base + firstWord] |= firstMask & lastMask;
+            return;
+        }
+        bits[base + firstWord] |= firstMask;
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            bits[base + word] = -1L;
+        }
+        bits[base + lastWord] |= lastMask;
+    }
+
+    /**
+     * Borra las franjas [from, to) del mapa de bits que empieza en base.
+     */
+    static void clearRange(long[] bits, int base, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            bits[base + firstWord] &= ~(firstMask & lastMask);
+            return;
+        }
+        bits[base + firstWord] &= ~firstMask;
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            bits[base + word] = 0L;
+        }
+        bits[base + lastWord] &= ~lastMask;
+    }
+
+    private static boolean covers(long[] bits, int base, long[] mask, int firstWord, int lastWord) {
+        for (int word = firstWord; word <= lastWord; word++) {
+            if ((bits[base + word] & mask[word]) != mask[word]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inicio del primer tramo de length bits a 1 que empieza en [from, limit), o -1.
+     */
+    private int firstRun(long[] bits, int base, int from, int length, int limit) {
+        int start = nextBit(bits, base, from, true);
+        while (start >= 0 && start < limit) {
+            int end = nextBit(bits, base, start, false);
+            if (end < 0) {
+                end = slotCount;
+            }
+            if (end - start >= length) {
+                return start;
+            }
+            start = nextBit(bits, base, end, true);
+        }
+        return -1;
+    }
+
+    /**
+     * Primera franja desde from con el bit a value, o -1 si no hay ninguna en la semana.
+     */
+    private int nextBit(long[] bits, int base, int from, boolean value) {
+        if (from >= slotCount) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long current = (value ? bits[base + word] : ~bits[base + word]) & (-1L << from);
+        while (true) {
+            if (current != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(current);
+                return slot < slotCount ? slot : -1;
+            }
+            if (++word == wordCount) {
+                return -1;
+            }
+            current = value ? bits[base + word] : ~bits[base + word];
+        }
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,298 @@
+package org.apache.ofbiz.planning.occupancy;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.daily.DailySchedule;
+import org.apache.ofbiz.planning.daily.DailyScheduler;
+import org.apache.ofbiz.planning.daily.ScheduledOperation;
+import org.apache.ofbiz.planning.shift.ShiftTimelineEngine;
+import org.apache.ofbiz.planning.weekly.WeeklyPlanEngine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Construcción y caché de la ocupación semanal de las máquinas ({@link MachineOccupancy}).
+ *
+ * Máquinas: FixedAsset activos (sin actualEndOfLife) de la facility. Turnos: los compilados
+ * por {@link ShiftTimelineEngine} con el calendario de la máquina (o
+ * planning.weekly.default.calendarId) y el patrón de turnos de su facility, como en el plan
+ * semanal; los turnos de noche del domingo anterior entran en el lunes. Ocupación: las
+ * operaciones de los programas diarios de {@link DailyScheduler} de los grupos de
+ * planificación de la facility, día a día. Lo ya pasado no está libre.
+ *
+ * El índice de toda la planta no calcula programas diarios: usa solo los que ya están en la
+ * caché de {@link DailyScheduler}. Los días de un grupo sin programa cacheado quedan como
+ * desconocidos y las máquinas de su facility no cuentan como libres ese día; ese índice
+ * incompleto no se guarda.
+ *
+ * Los índices se guardan en el UtilCache "planning.MachineOccupancy" por (facility, semana).
+ * Caducan antes que los programas diarios porque {@link DailyScheduler#replanOrder} los
+ * modifica en su sitio; replanDailyOrder descarta además los de la facility.
+ */
+public final class MachineOccupancyIndex {
+
+    public static final String module = MachineOccupancyIndex.class.getName();
+
+    public static final String CACHE_NAME = "planning.MachineOccupancy";
+
+    private static final String ALL_FACILITIES = "_NA_";
+
+    private static final int DAY_SECONDS = 86400;
+
+    private static final UtilCache<String, MachineOccupancy> occupancyCache =
+            UtilCache.createUtilCache(CACHE_NAME, 100, 600000L);
+
+    // Se incrementa en cada clear() y removeFacility(); los índices calculados antes no se guardan
+    private static final AtomicLong generation = new AtomicLong();
+
+    private MachineOccupancyIndex() {
+    }
+
+    /**
+     * Ocupación de la semana de la fecha indicada, desde la caché salvo que se pida recalcular.
+     *
+     * @param facilityId facility, o null para toda la planta
+     */
+    public static MachineOccupancy getOccupancy(Delegator delegator, String facilityId, LocalDate date, boolean rebuild)
+            throws GenericEntityException {
+        LocalDate weekStart = WeeklyPlanEngine.weekStartOf(date);
+        String cacheKey = cacheKey(delegator, facilityId, weekStart);
+        MachineOccupancy occupancy = rebuild ? null : occupancyCache.get(cacheKey);
+        if (occupancy == null) {
+            long buildGeneration = generation.get();
+            occupancy = build(delegator, facilityId, weekStart);
+            if (occupancy.getUnknownScheduleCount() > 0) {
+                return occupancy;
+            }
+            occupancyCache.put(cacheKey, occupancy);
+            if (generation.get() != buildGeneration) {
+                occupancyCache.remove(cacheKey);
+            }
+        }
+        return occupancy;
+    }
+
+    public static void clear() {
+        generation.incrementAndGet();
+        occupancyCache.clear();
+    }
+
+    /**
+     * Descarta los índices de la facility y los de toda la planta, de cualquier semana.
+     */
+    public static void removeFacility(Delegator delegator, String facilityId) {
+        String facilityPrefix = delegator.getDelegatorName() + "::" + facilityId + "::";
+        String allPrefix = delegator.getDelegatorName() + "::" + ALL_FACILITIES + "::";
+        generation.incrementAndGet();
+        for (String cacheKey : new ArrayList<>(occupancyCache.getCacheLineKeys())) {
+            if (cacheKey.startsWith(facilityPrefix) || cacheKey.startsWith(allPrefix)) {
+                occupancyCache.remove(cacheKey);
+            }
+        }
+    }
+
+    /**
+     * Duración de una franja en segundos (planning.occupancy.slot.minutes); tiene que dividir
+     * el día, si no se usan 15 minutos.
+     */
+    public static int slotSeconds() {
+        int slotMinutes = UtilProperties.getPropertyAsInteger("planning", "planning.occupancy.slot.minutes", 15);
+        if (slotMinutes <= 0 || slotMinutes > 240 || (DAY_SECONDS / 60) % slotMinutes != 0) {
+            Debug.logWarning("Invalid planning.occupancy.slot.minutes " + slotMinutes + "; using 15", module);
+            slotMinutes = 15;
+        }
+        return slotMinutes * 60;
+    }
+
+    private static String cacheKey(Delegator delegator, String facilityId, LocalDate weekStart) {
+        return delegator.getDelegatorName() + "::" + (facilityId != null ? facilityId : ALL_FACILITIES) + "::" + weekStart;
+    }
+
+    private static MachineOccupancy build(Delegator delegator, String facilityId, LocalDate weekStart)
+            throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        int slotSeconds = slotSeconds();
+        int slotCount = 7 * DAY_SECONDS / slotSeconds;
+        int wordCount = MachineOccupancy.wordCount(slotCount);
+
+        // 1. Máquinas
+        List<EntityCondition> conditions = new ArrayList<>();
+        conditions.add(EntityCondition.makeCondition("actualEndOfLife", EntityOperator.EQUALS, null));
+        if (facilityId != null) {
+            conditions.add(EntityCondition.makeCondition("locatedAtFacilityId", EntityOperator.EQUALS, facilityId));
+        }
+        List<GenericValue> machines = EntityQuery.use(delegator)
+                .select("fixedAssetId", "fixedAssetName", "fixedAssetTypeId", "locatedAtFacilityId", "calendarId")
+                .from("FixedAsset")
+                .where(conditions)
+                .orderBy("fixedAssetId")
+                .queryList();
+        int machineCount = machines.size();
+        String[] machineIds = new String[machineCount];
+        String[] machineNames = new String[machineCount];
+        String[] machineFacilityIds = new String[machineCount];
+        String[] machineTypeIds = new String[machineCount];
+        Map<String, Integer> machineIndex = new HashMap<>(machineCount * 2);
+        Map<String, List<Integer>> facilityMachines = new HashMap<>();
+
+        // 2. Franjas de turno; cada par (calendario, patrón) distinto se calcula una vez
+        long[] shiftBits = new long[machineCount * wordCount];
+        Map<String, String> facilityPatterns = new HashMap<>();
+        Map<String, long[]> shiftsByKey = new HashMap<>();
+        String defaultCalendarId = WeeklyPlanEngine.defaultCalendarId();
+        for (int machine = 0; machine < machineCount; machine++) {
+            GenericValue value = machines.get(machine);
+            machineIds[machine] = value.getString("fixedAssetId");
+            machineNames[machine] = value.getString("fixedAssetName");
+            machineFacilityIds[machine] = value.getString("locatedAtFacilityId");
+            machineTypeIds[machine] = value.getString("fixedAssetTypeId");
+            machineIndex.put(machineIds[machine], machine);
+            facilityMachines.computeIfAbsent(machineFacilityIds[machine], k -> new ArrayList<>()).add(machine);
+
+            String calendarId = value.getString("calendarId");
+            if (UtilValidate.isEmpty(calendarId)) {
+                calendarId = defaultCalendarId;
+            }
+            if (UtilValidate.isEmpty(calendarId)) {
+                continue;
+            }
+            String machineFacilityId = machineFacilityIds[machine];
+            if (machineFacilityId != null && !facilityPatterns.containsKey(machineFacilityId)) {
+                facilityPatterns.put(machineFacilityId,
+                        ShiftTimelineEngine.resolveShiftPatternId(delegator, null, machineFacilityId));
+            }
+            String shiftPatternId = machineFacilityId != null ? facilityPatterns.get(machineFacilityId) : null;
+            String key = calendarId + "::" + shiftPatternId;
+            long[] shifts = shiftsByKey.get(key);
+            if (shifts == null) {
+                shifts = loadShiftBits(delegator, calendarId, shiftPatternId, weekStart, slotSeconds, slotCount);
+                shiftsByKey.put(key, shifts);
+            }
+            System.arraycopy(shifts, 0, shiftBits, machine * wordCount, wordCount);
+        }
+        long[] freeBits = shiftBits.clone();
+
+        // 3. Lo ya pasado
+        LocalDateTime now = LocalDateTime.now();
+        long elapsedSeconds = ChronoUnit.SECONDS.between(weekStart.atStartOfDay(), now);
+        if (elapsedSeconds > 0) {
+            int pastSlots = (int) Math.min(slotCount, (elapsedSeconds + slotSeconds - 1) / slotSeconds);
+            for (int machine = 0; machine < machineCount; machine++) {
+                MachineOccupancy.clearRange(freeBits, machine * wordCount, 0, pastSlots);
+            }
+        }
+
+        // 4. Operaciones programadas de los grupos de la facility, desde hoy; para toda la
+        // planta solo las de los programas ya cacheados
+        int operationCount = 0;
+        int unknownScheduleCount = 0;
+        if (machineCount > 0) {
+            List<EntityCondition> groupConditions = new ArrayList<>();
+            groupConditions.add(EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP"));
+            groupConditions.add(facilityId != null
+                    ? EntityCondition.makeCondition("facilityAttrValue", EntityOperator.EQUALS, facilityId)
+                    : EntityCondition.makeCondition("facilityAttrValue", EntityOperator.NOT_EQUAL, null));
+            List<GenericValue> groups = EntityQuery.use(delegator)
+                    .select("productCategoryId", "facilityAttrValue")
+                    .from("PlanningGroupAndFacility")
+                    .where(groupConditions)
+                    .distinct()
+                    .queryList();
+            LocalDate today = now.toLocalDate();
+            for (int day = 0; day < 7; day++) {
+                LocalDate date = weekStart.plusDays(day);
+                if (date.isBefore(today)) {
+                    continue;
+                }
+                int dayStart = day * DAY_SECONDS;
+                for (GenericValue group : groups) {
+                    String groupId = group.getString("productCategoryId");
+                    DailySchedule schedule;
+                    if (facilityId != null) {
+                        schedule = DailyScheduler.getSchedule(delegator, groupId, date, false);
+                    } else {
+                        List<Integer> groupMachines = facilityMachines.get(group.getString("facilityAttrValue"));
+                        if (groupMachines == null) {
+                            continue;
+                        }
+                        schedule = DailyScheduler.getCachedSchedule(delegator, groupId, date);
+                        if (schedule == null) {
+                            // Sin programa cacheado: el día de las máquinas de la facility es desconocido
+                            int dayEnd = Math.min(slotCount, (dayStart + DAY_SECONDS) / slotSeconds);
+                            for (int machine : groupMachines) {
+                                MachineOccupancy.clearRange(freeBits, machine * wordCount, dayStart / slotSeconds, dayEnd);
+                            }
+                            unknownScheduleCount++;
+                            continue;
+                        }
+                    }
+                    if (schedule == null) {
+                        continue;
+                    }
+                    for (int scheduleMachine = 0; scheduleMachine < schedule.getMachineCount(); scheduleMachine++) {
+                        Integer machine = machineIndex.get(schedule.getMachineId(scheduleMachine));
+                        if (machine == null) {
+                            continue;
+                        }
+                        for (ScheduledOperation operation : schedule.getTimeline(scheduleMachine)) {
+                            // Cualquier franja que toque la operación deja de estar libre
+                            int from = Math.max(0, dayStart + operation.getStartSeconds()) / slotSeconds;
+                            int to = Math.min(slotCount, (dayStart + operation.getEndSeconds() + slotSeconds - 1) / slotSeconds);
+                            MachineOccupancy.clearRange(freeBits, machine * wordCount, from, to);
+                            operationCount++;
+                        }
+                    }
+                }
+            }
+        }
+
+        MachineOccupancy occupancy = new MachineOccupancy(facilityId, weekStart, slotSeconds, machineIds, machineNames,
+                machineFacilityIds, machineTypeIds, shiftBits, freeBits, unknownScheduleCount);
+        Debug.logInfo("Machine occupancy built for " + (facilityId != null ? facilityId : "all facilities")
+                + ", week " + weekStart + ": " + machineCount + " machines, " + operationCount + " operations in "
+                + (System.currentTimeMillis() - startTime) + " ms", module);
+        if (unknownScheduleCount > 0) {
+            Debug.logWarning("Machine occupancy for all facilities, week " + weekStart + ": " + unknownScheduleCount
+                    + " daily schedules not cached; those machine days are not counted as free", module);
+        }
+        return occupancy;
+    }
+
+    /**
+     * Franjas de la semana cubiertas enteras por un turno del calendario y patrón indicados.
+     */
+    private static long[] loadShiftBits(Delegator delegator, String calendarId, String shiftPatternId, LocalDate weekStart,
+                                        int slotSeconds, int slotCount) throws GenericEntityException {
+        long[] bits = new long[MachineOccupancy.wordCount(slotCount)];
+        int weekSeconds = 7 * DAY_SECONDS;
+        // Desde el domingo anterior por los turnos de noche que acaban el lunes
+        for (int day = -1; day < 7; day++) {
+            int dayStart = day * DAY_SECONDS;
+            for (int[] window : ShiftTimelineEngine.getShiftWindows(delegator, calendarId, shiftPatternId,
+                    weekStart.plusDays(day))) {
+                int start = Math.max(0, dayStart + window[0]);
+                int end = Math.min(weekSeconds, dayStart + window[1]);
+                if (end <= start) {
+                    continue;
+                }
+                MachineOccupancy.setRange(bits, 0, (start + slotSeconds - 1) / slotSeconds, end / slotSeconds);
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,226 @@
+package org.apache.ofbiz.planning.occupancy;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.weekly.WeeklyPlanEngine;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consultas de disponibilidad de máquinas sobre la ocupación semanal
+ * ({@link MachineOccupancyIndex}): qué máquinas están libres en una ventana y cuál puede
+ * empezar antes un trabajo.
+ */
+public class MachineOccupancyServices {
+
+    public static final String module = MachineOccupancyServices.class.getName();
+
+    // Semanas que puede abarcar una consulta
+    private static final int MAX_WEEKS = 4;
+
+    /**
+     * Máquinas libres (en turno y sin operaciones programadas) durante toda la ventana.
+     * Las franjas que la ventana toca en parte también tienen que estar libres.
+     *
+     * IN:
+     *  - facilityId       (String, opcional): vacío = toda la planta
+     *  - fixedAssetTypeId (String, opcional): vacío = cualquier tipo
+     *  - fromDate         (Timestamp): inicio de la ventana
+     *  - thruDate         (Timestamp): fin de la ventana (como mucho 4 semanas después)
+     *  - rebuild          (Boolean, opcional): recalcular la ocupación aunque esté en caché
+     *
+     * OUT:
+     *  - machineRows  (List<Map<String,Object>>): fixedAssetId, fixedAssetName, facilityId,
+     *                 fixedAssetTypeId y horas de turno, ocupadas y libres de la semana de fromDate
+     *  - machineCount (Integer)
+     */
+    public static Map<String, Object> findFreeMachines(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String facilityId = emptyToNull((String) context.get("facilityId"));
+        String fixedAssetTypeId = emptyToNull((String) context.get("fixedAssetTypeId"));
+        Timestamp fromDate = (Timestamp) context.get("fromDate");
+        Timestamp thruDate = (Timestamp) context.get("thruDate");
+        boolean rebuild = Boolean.TRUE.equals(context.get("rebuild"));
+
+        if (!thruDate.after(fromDate)) {
+            return ServiceUtil.returnError("thruDate must be after fromDate");
+        }
+        LocalDateTime from = fromDate.toLocalDateTime();
+        LocalDateTime thru = thruDate.toLocalDateTime();
+        LocalDate firstWeek = WeeklyPlanEngine.weekStartOf(from.toLocalDate());
+        if (thru.isAfter(firstWeek.plusWeeks(MAX_WEEKS).atStartOfDay())) {
+            return ServiceUtil.returnError("The window cannot span more than " + MAX_WEEKS + " weeks");
+        }
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("findFreeMachines");
+        try {
+            // Libre en la ventana = libre en su tramo de cada semana
+            MachineOccupancy firstOccupancy = null;
+            Map<String, Integer> free = null;
+            for (LocalDate week = firstWeek; week.atStartOfDay().isBefore(thru); week = week.plusWeeks(1)) {
+                MachineOccupancy occupancy = MachineOccupancyIndex.getOccupancy(delegator, facilityId, week, rebuild);
+                int fromSlot = occupancy.slotOf(from);
+                int thruSlot = occupancy.slotAtOrAfter(thru);
+                Map<String, Integer> weekFree = new LinkedHashMap<>();
+                for (int machine : occupancy.freeMachines(facilityId, fixedAssetTypeId, fromSlot, thruSlot)) {
+                    if (free == null || free.containsKey(occupancy.getMachineId(machine))) {
+                        weekFree.put(occupancy.getMachineId(machine), machine);
+                    }
+                }
+                if (firstOccupancy == null) {
+                    firstOccupancy = occupancy;
+                    free = weekFree;
+                } else {
+                    free.keySet().retainAll(weekFree.keySet());
+                }
+                if (free.isEmpty()) {
+                    break;
+                }
+            }
+            List<Map<String, Object>> machineRows = firstOccupancy.toMachineRows(new ArrayList<>(free.values()));
+            timer.rows(machineRows.size());
+
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("machineRows", machineRows);
+            result.put("machineCount", machineRows.size());
+            return result;
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error finding free machines: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error finding free machines: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Primera máquina que puede hacer un trabajo de durationMinutes seguidos sin cortes de
+     * turno ni operaciones programadas, empezando en fromDate o después. Un hueco no pasa de
+     * una semana a la siguiente.
+     *
+     * IN:
+     *  - facilityId       (String, opcional): vacío = toda la planta
+     *  - fixedAssetTypeId (String, opcional): vacío = cualquier tipo
+     *  - fromDate         (Timestamp, opcional): inicio de la búsqueda (por defecto ahora)
+     *  - durationMinutes  (Integer): duración del trabajo
+     *  - searchWeeks      (Integer, opcional): semanas en las que buscar (por defecto 1, máximo 4)
+     *  - rebuild          (Boolean, opcional): recalcular la ocupación aunque esté en caché
+     *
+     * OUT (vacíos si no hay hueco):
+     *  - fixedAssetId   (String)
+     *  - fixedAssetName (String)
+     *  - startDate      (Timestamp)
+     *  - endDate        (Timestamp)
+     */
+    public static Map<String, Object> findFirstFitMachine(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String facilityId = emptyToNull((String) context.get("facilityId"));
+        String fixedAssetTypeId = emptyToNull((String) context.get("fixedAssetTypeId"));
+        Timestamp fromDate = (Timestamp) context.get("fromDate");
+        Integer durationMinutes = (Integer) context.get("durationMinutes");
+        Integer searchWeeks = (Integer) context.get("searchWeeks");
+        boolean rebuild = Boolean.TRUE.equals(context.get("rebuild"));
+
+        int weeks = searchWeeks != null ? searchWeeks : 1;
+        if (weeks <= 0 || weeks > MAX_WEEKS) {
+            return ServiceUtil.returnError("searchWeeks must be between 1 and " + MAX_WEEKS + ": " + weeks);
+        }
+        if (durationMinutes <= 0 || durationMinutes > 7 * 24 * 60) {
+            return ServiceUtil.returnError("durationMinutes must be between 1 and one week: " + durationMinutes);
+        }
+        LocalDateTime from = fromDate != null ? fromDate.toLocalDateTime() : LocalDateTime.now();
+        int slotSeconds = MachineOccupancyIndex.slotSeconds();
+        int length = (durationMinutes * 60 + slotSeconds - 1) / slotSeconds;
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("findFirstFitMachine");
+        try {
+            LocalDate week = WeeklyPlanEngine.weekStartOf(from.toLocalDate());
+            for (int i = 0; i < weeks; i++, week = week.plusWeeks(1)) {
+                MachineOccupancy occupancy = MachineOccupancyIndex.getOccupancy(delegator, facilityId, week, rebuild);
+                int[] fit = occupancy.firstFit(facilityId, fixedAssetTypeId, occupancy.slotAtOrAfter(from), length);
+                if (fit != null) {
+                    timer.rows(1);
+                    Map<String, Object> result = ServiceUtil.returnSuccess();
+                    result.put("fixedAssetId", occupancy.getMachineId(fit[0]));
+                    result.put("fixedAssetName", occupancy.getMachineName(fit[0]));
+                    result.put("startDate", occupancy.slotStart(fit[1]));
+                    result.put("endDate", occupancy.slotStart(fit[1] + length));
+                    return result;
+                }
+            }
+            return ServiceUtil.returnSuccess("No machine is free for " + durationMinutes + " minutes in the next "
+                    + weeks + " weeks");
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error finding first fit machine: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error finding first fit machine: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Horas de turno, ocupadas y libres por máquina en la semana de la fecha.
+     *
+     * IN:
+     *  - facilityId       (String, opcional): vacío = toda la planta
+     *  - fixedAssetTypeId (String, opcional): vacío = cualquier tipo
+     *  - weekDate         (java.sql.Date, opcional): día de la semana a consultar (por defecto hoy)
+     *  - rebuild          (Boolean, opcional): recalcular la ocupación aunque esté en caché
+     *
+     * OUT:
+     *  - machineRows          (List<Map<String,Object>>)
+     *  - weekStart            (java.sql.Date)
+     *  - unknownScheduleCount (Integer): programas diarios sin cachear en la consulta de toda la planta
+     */
+    public static Map<String, Object> getMachineOccupancy(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String facilityId = emptyToNull((String) context.get("facilityId"));
+        String fixedAssetTypeId = emptyToNull((String) context.get("fixedAssetTypeId"));
+        Date weekDate = (Date) context.get("weekDate");
+        boolean rebuild = Boolean.TRUE.equals(context.get("rebuild"));
+
+        try {
+            MachineOccupancy occupancy = MachineOccupancyIndex.getOccupancy(delegator, facilityId,
+                    weekDate != null ? weekDate.toLocalDate() : LocalDate.now(), rebuild);
+            List<Integer> machines = new ArrayList<>();
+            for (int machine = 0; machine < occupancy.getMachineCount(); machine++) {
+                if (fixedAssetTypeId == null || fixedAssetTypeId.equals(occupancy.getMachineTypeId(machine))) {
+                    machines.add(machine);
+                }
+            }
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("machineRows", occupancy.toMachineRows(machines));
+            result.put("weekStart", Date.valueOf(occupancy.getWeekStart()));
+            result.put("unknownScheduleCount", occupancy.getUnknownScheduleCount());
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error loading machine occupancy: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error loading machine occupancy: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Vacía la caché de ocupación de máquinas.
+     */
+    public static Map<String, Object> clearMachineOccupancyCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+        MachineOccupancyIndex.clear();
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static String emptyToNull(String value) {
+        return UtilValidate.isNotEmpty(value) ? value : null;
+    }
+}
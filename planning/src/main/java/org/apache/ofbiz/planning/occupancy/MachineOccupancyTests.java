@@ -0,0 +1,140 @@
+package org.apache.ofbiz.planning.occupancy;
+
+import junit.framework.TestCase;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Pruebas de los mapas de bits de {@link MachineOccupancy}: setRange/clearRange en los
+ * bordes de palabra y la búsqueda de huecos de firstFit y freeMachines.
+ */
+public class MachineOccupancyTests extends TestCase {
+
+    private static final LocalDate WEEK_START = LocalDate.of(2026, 10, 12);
+
+    public MachineOccupancyTests(String name) {
+        super(name);
+    }
+
+    public void testWordCount() {
+        assertEquals(0, MachineOccupancy.wordCount(0));
+        assertEquals(1, MachineOccupancy.wordCount(1));
+        assertEquals(1, MachineOccupancy.wordCount(64));
+        assertEquals(2, MachineOccupancy.wordCount(65));
+        assertEquals(3, MachineOccupancy.wordCount(168));
+    }
+
+    public void testSetRangeWithinWord() {
+        long[] bits = new long[1];
+        MachineOccupancy.setRange(bits, 0, 3, 7);
+        assertEquals(0x78L, bits[0]);
+
+        MachineOccupancy.setRange(bits, 0, 5, 5);
+        assertEquals("Empty range", 0x78L, bits[0]);
+
+        bits = new long[2];
+        MachineOccupancy.setRange(bits, 0, 0, 64);
+        assertEquals(-1L, bits[0]);
+        assertEquals(0L, bits[1]);
+    }
+
+    public void testSetRangeAcrossWords() {
+        // La palabra 0 es de otra máquina: no se toca
+        long[] bits = new long[4];
+        MachineOccupancy.setRange(bits, 1, 60, 130);
+        assertEquals(0L, bits[0]);
+        assertEquals(-1L << 60, bits[1]);
+        assertEquals(-1L, bits[2]);
+        assertEquals(0x3L, bits[3]);
+    }
+
+    public void testClearRange() {
+        long[] bits = new long[3];
+        Arrays.fill(bits, -1L);
+        MachineOccupancy.clearRange(bits, 0, 60, 130);
+        assertEquals((1L << 60) - 1, bits[0]);
+        assertEquals(0L, bits[1]);
+        assertEquals(~0x3L, bits[2]);
+
+        Arrays.fill(bits, -1L);
+        MachineOccupancy.clearRange(bits, 0, 3, 7);
+        assertEquals(~0x78L, bits[0]);
+        assertEquals(-1L, bits[1]);
+    }
+
+    public void testFirstFit() {
+        // M1 libre en [10,12), [40,50) y [60,75); M2 libre en [20,30)
+        MachineOccupancy occupancy = occupancy(new String[] {"M1", "M2"},
+                new int[][] {{10, 12, 40, 50, 60, 75}, {20, 30}});
+
+        assertFit(0, 10, occupancy.firstFit("F1", "T1", 0, 2));
+        assertFit(1, 20, occupancy.firstFit("F1", "T1", 0, 5));
+        // El hueco [20,30) empezado antes de fromSlot también vale desde fromSlot
+        assertFit(1, 25, occupancy.firstFit("F1", "T1", 25, 5));
+        // [60,75) cruza de la palabra 0 a la 1
+        assertFit(0, 60, occupancy.firstFit("F1", "T1", 0, 12));
+        assertNull(occupancy.firstFit("F1", "T1", 0, 20));
+        assertNull(occupancy.firstFit("F2", "T1", 0, 2));
+        assertNull(occupancy.firstFit("F1", "T1", 0, 0));
+        assertNull(occupancy.firstFit("F1", "T1", 160, 10));
+    }
+
+    public void testFirstFitTieGoesToLowestId() {
+        MachineOccupancy occupancy = occupancy(new String[] {"M2", "M1"},
+                new int[][] {{100, 110}, {100, 110}});
+        assertFit(1, 100, occupancy.firstFit(null, null, 60, 5));
+    }
+
+    public void testFreeMachines() {
+        MachineOccupancy occupancy = occupancy(new String[] {"M1", "M2"},
+                new int[][] {{10, 12, 40, 50, 60, 75}, {20, 30, 40, 45}});
+
+        assertEquals(Collections.singletonList(1), occupancy.freeMachines("F1", "T1", 20, 25));
+        assertEquals(Collections.singletonList(0), occupancy.freeMachines("F1", "T1", 10, 12));
+        assertEquals(Arrays.asList(0, 1), occupancy.freeMachines(null, null, 40, 45));
+        assertEquals(Collections.singletonList(0), occupancy.freeMachines(null, "T1", 40, 46));
+        assertEquals(Collections.emptyList(), occupancy.freeMachines("F1", "T1", 0, 168));
+        assertEquals(Collections.emptyList(), occupancy.freeMachines("F2", null, 20, 25));
+        assertEquals(Collections.emptyList(), occupancy.freeMachines("F1", "T1", 25, 25));
+        assertEquals(27, occupancy.getFreeSlotCount(0));
+        assertEquals(168, occupancy.getShiftSlotCount(0));
+    }
+
+    public void testSlots() {
+        MachineOccupancy occupancy = occupancy(new String[] {"M1"}, new int[][] {{}});
+        assertEquals(1, occupancy.slotOf(WEEK_START.atTime(1, 30)));
+        assertEquals(2, occupancy.slotAtOrAfter(WEEK_START.atTime(1, 30)));
+        assertEquals(2, occupancy.slotAtOrAfter(WEEK_START.atTime(2, 0)));
+        assertEquals(0, occupancy.slotOf(WEEK_START.minusDays(1).atStartOfDay()));
+        assertEquals(168, occupancy.slotAtOrAfter(WEEK_START.plusWeeks(1).atTime(5, 0)));
+    }
+
+    /**
+     * Ocupación de franjas de una hora con todas las máquinas en F1/T1, todo el día en turno
+     * y libres en los tramos [desde, hasta) indicados.
+     */
+    private static MachineOccupancy occupancy(String[] machineIds, int[][] freeRanges) {
+        int wordCount = MachineOccupancy.wordCount(168);
+        long[] shiftBits = new long[machineIds.length * wordCount];
+        long[] freeBits = new long[machineIds.length * wordCount];
+        String[] facilityIds = new String[machineIds.length];
+        String[] typeIds = new String[machineIds.length];
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            MachineOccupancy.setRange(shiftBits, machine * wordCount, 0, 168);
+            for (int i = 0; i < freeRanges[machine].length; i += 2) {
+                MachineOccupancy.setRange(freeBits, machine * wordCount, freeRanges[machine][i], freeRanges[machine][i + 1]);
+            }
+            facilityIds[machine] = "F1";
+            typeIds[machine] = "T1";
+        }
+        return new MachineOccupancy(null, WEEK_START, 3600, machineIds, machineIds, facilityIds, typeIds, shiftBits, freeBits, 0);
+    }
+
+    private static void assertFit(int machine, int start, int[] fit) {
+        assertNotNull("No fit found", fit);
+        assertEquals("Machine", machine, fit[0]);
+        assertEquals("Start slot", start, fit[1]);
+    }
+}
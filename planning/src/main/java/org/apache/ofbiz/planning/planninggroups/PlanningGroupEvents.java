@@ -0,0 +1,91 @@
+package org.apache.ofbiz.planning.planninggroups;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilHttp;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningCsvWriter;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+public class PlanningGroupEvents {
+
+    public static final String module = PlanningGroupEvents.class.getName();
+
+    // Filas escritas entre cada envío al cliente
+    private static final int FLUSH_ROWS = 500;
+    private static final int EXPORT_TRANSACTION_TIMEOUT = 3600;
+
+    /**
+     * Exporta a CSV los grupos de planificación que cumplen los filtros de searchPlanningGroups.
+     *
+     * Las filas de PlanningGroupAndFacility se escriben según se leen del EntityListIterator,
+     * sin construir la lista completa.
+     */
+    public static String exportPlanningGroupsCsv(HttpServletRequest request, HttpServletResponse response) {
+        Delegator delegator = (Delegator) request.getAttribute("delegator");
+        Map<String, Object> parameters = UtilHttp.getParameterMap(request);
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("exportPlanningGroupsCsv");
+        boolean beganTransaction = false;
+        boolean streamed = false;
+        try {
+            beganTransaction = TransactionUtil.begin(EXPORT_TRANSACTION_TIMEOUT);
+            EntityCondition condition = PlanningGroupServices.makeSearchCondition(delegator, parameters);
+
+            streamed = true;
+            try (PlanningCsvWriter csv = PlanningCsvWriter.open(response, "planning-groups.csv")) {
+                csv.writeRow("Planning Group ID", "Name", "Description", "Project ID", "Project", "Facility ID", "Facility");
+                if (condition != null) {
+                    try (EntityListIterator planningGroupIt = EntityQuery.use(delegator)
+                            .from("PlanningGroupAndFacility")
+                            .where(condition)
+                            .orderBy("primaryParentCategoryId", "categoryName")
+                            .cursorForwardOnly()
+                            .fetchSize(FLUSH_ROWS)
+                            .queryIterator()) {
+                        timer.query();
+                        GenericValue planningGroup;
+                        while ((planningGroup = planningGroupIt.next()) != null) {
+                            Map<String, String> row = PlanningGroupServices.createResultRow(planningGroup);
+                            csv.writeRow(row.get("productCategoryId"), row.get("categoryName"), row.get("description"),
+                                    row.get("projectCategoryId"), row.get("projectName"), row.get("facilityId"), row.get("facilityName"));
+                            if (csv.getRowCount() % FLUSH_ROWS == 0) {
+                                csv.flush();
+                            }
+                        }
+                    }
+                }
+                timer.rows(csv.getRowCount() - 1);
+            }
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericEntityException | IOException e) {
+            timer.error();
+            Debug.logError(e, "Error exporting planning groups: " + e.getMessage(), module);
+            try {
+                TransactionUtil.rollback(beganTransaction, "Error exporting planning groups", e);
+            } catch (GenericTransactionException e2) {
+                Debug.logError(e2, "Unable to rollback planning groups export: " + e2.getMessage(), module);
+            }
+            if (streamed) {
+                // La respuesta ya se ha empezado a enviar (y el CSV está cerrado): no se puede mostrar una vista
+                return "success";
+            }
+            request.setAttribute("_ERROR_MESSAGE_", "Error exporting planning groups: " + e.getMessage());
+            return "error";
+        } finally {
+            timer.close();
+        }
+        return "success";
+    }
+}
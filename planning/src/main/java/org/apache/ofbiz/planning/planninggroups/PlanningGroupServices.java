@@ -7,20 +7,35 @@ import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.planning.assignedrefs.AssignedRefsIndex;
+import org.apache.ofbiz.planning.change.PlanningChangeTracker;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.common.PlanningReferenceCache;
+import org.apache.ofbiz.planning.doh.DohEngine;
+import org.apache.ofbiz.planning.search.PlanningSearchIndex;
+import org.apache.ofbiz.planning.shift.ShiftServices;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.ServiceUtil;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class PlanningGroupServices {
 
     public static final String module = PlanningGroupServices.class.getName();
 
+    // Ids por cada IN de los servicios por lotes (límite de parámetros de algunas bases de datos)
+    private static final int MAX_IN_SIZE = 1000;
+
     /**
      * Búsqueda de grupos de planificación.
      *
@@ -38,149 +53,134 @@ public class PlanningGroupServices {
         Delegator delegator = dctx.getDelegator();
         List<Map<String, String>> results = new ArrayList<>();
 
-        String facilityId        = (String) context.get("facilityId");
-        String projectCategoryId = (String) context.get("projectCategoryId");
-        String planningGroupId   = (String) context.get("planningGroupId");
-        String categoryName      = (String) context.get("categoryName");
-        String description       = (String) context.get("description");
-
+        PlanningMetrics.Timer timer = PlanningMetrics.start("searchPlanningGroups");
         try {
-            // Construir condiciones dinámicamente
-            List<EntityCondition> conditions = new ArrayList<>();
-
-            // Siempre filtramos por tipo PLANNING_GROUP
-            conditions.add(EntityCondition.makeCondition(
-                    "productCategoryTypeId",
-                    EntityOperator.EQUALS,
-                    "PLANNING_GROUP"
-            ));
-
-            // Filtro por proyecto padre (jerarquía Proyecto -> Grupo de planificación)
-            if (UtilValidate.isNotEmpty(projectCategoryId)) {
-                conditions.add(EntityCondition.makeCondition(
-                        "primaryParentCategoryId",
-                        EntityOperator.EQUALS,
-                        projectCategoryId
-                ));
-            }
-
-            // Filtro por ID de grupo (búsqueda parcial sobre productCategoryId)
-            if (UtilValidate.isNotEmpty(planningGroupId)) {
-                conditions.add(EntityCondition.makeCondition(
-                        "productCategoryId",
-                        EntityOperator.LIKE,
-                        "%" + planningGroupId + "%"
-                ));
-            }
-
-            // Filtro por nombre (búsqueda parcial)
-            if (UtilValidate.isNotEmpty(categoryName)) {
-                conditions.add(EntityCondition.makeCondition(
-                        "categoryName",
-                        EntityOperator.LIKE,
-                        "%" + categoryName + "%"
-                ));
-            }
-
-            // Filtro por descripción (búsqueda parcial)
-            if (UtilValidate.isNotEmpty(description)) {
-                conditions.add(EntityCondition.makeCondition(
-                        "description",
-                        EntityOperator.LIKE,
-                        "%" + description + "%"
-                ));
+            // Una única consulta: grupo + proyecto padre + atributo FACILITY_ID + facility
+            EntityCondition condition = makeSearchCondition(delegator, context);
+            if (condition == null) {
+                return createSearchResult(results);
             }
 
-            // Ejecutar consulta base en ProductCategory
-            EntityCondition condition = conditions.isEmpty()
-                    ? null
-                    : EntityCondition.makeCondition(conditions, EntityOperator.AND);
-
             List<GenericValue> planningGroups = EntityQuery.use(delegator)
-                    .from("ProductCategory")
+                    .from("PlanningGroupAndFacility")
                     .where(condition)
                     .orderBy("primaryParentCategoryId", "categoryName")
                     .queryList();
+            timer.query();
 
-            // Procesar resultados: enriquecemos con datos del proyecto padre y facility
-            for (GenericValue category : planningGroups) {
-                String parentId = category.getString("primaryParentCategoryId");
-                GenericValue parentProject = null;
-                GenericValue facility = null;
-
-                // Obtener proyecto padre
-                if (UtilValidate.isNotEmpty(parentId)) {
-                    parentProject = EntityQuery.use(delegator)
-                            .from("ProductCategory")
-                            .where("productCategoryId", parentId)
-                            .cache()
-                            .queryOne();
-                }
-
-                // Obtener facility asociada al grupo (a través de ProductCategoryAttribute)
-                GenericValue facilityAttr = EntityQuery.use(delegator)
-                        .from("ProductCategoryAttribute")
-                        .where("productCategoryId", category.getString("productCategoryId"),
-                               "attrName", "FACILITY_ID")
-                        .cache()
-                        .queryFirst();
-
-                if (facilityAttr != null) {
-                    String categoryFacilityId = facilityAttr.getString("attrValue");
-                    
-                    // Aplicar filtro de facility si se especificó
-                    if (UtilValidate.isNotEmpty(facilityId) && !facilityId.equals(categoryFacilityId)) {
-                        continue; // Saltar este registro si no coincide con el filtro de facility
-                    }
-                    
-                    if (UtilValidate.isNotEmpty(categoryFacilityId)) {
-                        facility = EntityQuery.use(delegator)
-                                .from("Facility")
-                                .where("facilityId", categoryFacilityId)
-                                .cache()
-                                .queryOne();
-                    }
-                }
-
-                results.add(createResultRow(category, parentProject, facility));
+            for (GenericValue planningGroup : planningGroups) {
+                results.add(createResultRow(planningGroup));
             }
+            timer.rows(results.size());
 
         } catch (GenericEntityException e) {
+            timer.error();
             Debug.logError(e, "Error searching planning groups: " + e.getMessage(), module);
             return ServiceUtil.returnError("Error searching planning groups: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+
+        return createSearchResult(results);
+    }
+
+    /**
+     * Construye la condición sobre PlanningGroupAndFacility a partir de los filtros de
+     * searchPlanningGroups (facilityId, projectCategoryId, planningGroupId, categoryName,
+     * description). La usan la búsqueda y la exportación de grupos.
+     *
+     * @return la condición, o null si ningún grupo puede coincidir
+     */
+    static EntityCondition makeSearchCondition(Delegator delegator, Map<String, ? extends Object> context)
+            throws GenericEntityException {
+        String facilityId        = (String) context.get("facilityId");
+        String projectCategoryId = (String) context.get("projectCategoryId");
+        String planningGroupId   = (String) context.get("planningGroupId");
+        String categoryName      = (String) context.get("categoryName");
+        String description       = (String) context.get("description");
+
+        // Construir condiciones dinámicamente
+        List<EntityCondition> conditions = new ArrayList<>();
+
+        // Siempre filtramos por tipo PLANNING_GROUP
+        conditions.add(EntityCondition.makeCondition(
+                "productCategoryTypeId",
+                EntityOperator.EQUALS,
+                "PLANNING_GROUP"
+        ));
+
+        // Filtro por proyecto padre (jerarquía Proyecto -> Grupo de planificación)
+        if (UtilValidate.isNotEmpty(projectCategoryId)) {
+            conditions.add(EntityCondition.makeCondition(
+                    "primaryParentCategoryId",
+                    EntityOperator.EQUALS,
+                    projectCategoryId
+            ));
         }
 
+        // Filtros parciales por ID de grupo, nombre y descripción: el índice de texto
+        // acota los candidatos y el LIKE se aplica solo sobre ellos
+        if (UtilValidate.isNotEmpty(planningGroupId)
+                && !PlanningSearchIndex.addContainsCondition(delegator, conditions, PlanningSearchIndex.PRODUCT_CATEGORY,
+                        "productCategoryId", "productCategoryId", planningGroupId)) {
+            return null;
+        }
+        if (UtilValidate.isNotEmpty(categoryName)
+                && !PlanningSearchIndex.addContainsCondition(delegator, conditions, PlanningSearchIndex.PRODUCT_CATEGORY,
+                        "productCategoryId", "categoryName", categoryName)) {
+            return null;
+        }
+        if (UtilValidate.isNotEmpty(description)
+                && !PlanningSearchIndex.addContainsCondition(delegator, conditions, PlanningSearchIndex.PRODUCT_CATEGORY,
+                        "productCategoryId", "description", description)) {
+            return null;
+        }
+
+        // Filtro por facility: se resuelve en SQL sobre el atributo FACILITY_ID.
+        // Los grupos sin atributo FACILITY_ID no se descartan (mismo criterio que antes).
+        if (UtilValidate.isNotEmpty(facilityId)) {
+            conditions.add(EntityCondition.makeCondition(
+                    EntityCondition.makeCondition("facilityAttrValue", EntityOperator.EQUALS, facilityId),
+                    EntityOperator.OR,
+                    EntityCondition.makeCondition("facilityAttrName", EntityOperator.EQUALS, null)
+            ));
+        }
+
+        return EntityCondition.makeCondition(conditions, EntityOperator.AND);
+    }
+
+    private static Map<String, Object> createSearchResult(List<Map<String, String>> results) {
         Map<String, Object> result = ServiceUtil.returnSuccess();
         result.put("planningGroupList", results);
         return result;
     }
 
     /**
-     * Crea una fila de resultado con datos del grupo, proyecto y facility.
+     * Crea una fila de resultado a partir de una fila de la vista PlanningGroupAndFacility.
      */
-    private static Map<String, String> createResultRow(GenericValue category, GenericValue project, GenericValue facility) {
+    static Map<String, String> createResultRow(GenericValue planningGroup) {
         Map<String, String> row = new HashMap<>();
 
         // Datos propios del grupo de planificación
-        row.put("productCategoryId",       category.getString("productCategoryId"));
-        row.put("productCategoryTypeId",   category.getString("productCategoryTypeId"));
-        row.put("primaryParentCategoryId", category.getString("primaryParentCategoryId"));
-        row.put("categoryName",            category.getString("categoryName"));
-        row.put("description",             category.getString("description"));
+        row.put("productCategoryId",       planningGroup.getString("productCategoryId"));
+        row.put("productCategoryTypeId",   planningGroup.getString("productCategoryTypeId"));
+        row.put("primaryParentCategoryId", planningGroup.getString("primaryParentCategoryId"));
+        row.put("categoryName",            planningGroup.getString("categoryName"));
+        row.put("description",             planningGroup.getString("description"));
 
         // Datos del proyecto padre (si existe)
-        if (project != null) {
-            row.put("projectCategoryId", project.getString("productCategoryId"));
-            row.put("projectName",       project.getString("categoryName"));
+        if (planningGroup.get("projectCategoryId") != null) {
+            row.put("projectCategoryId", planningGroup.getString("projectCategoryId"));
+            row.put("projectName",       planningGroup.getString("projectName"));
         } else {
             row.put("projectCategoryId", "");
             row.put("projectName",       "");
         }
 
         // Datos de facility (si existe)
-        if (facility != null) {
-            row.put("facilityId",   facility.getString("facilityId"));
-            row.put("facilityName", facility.getString("facilityName"));
+        if (planningGroup.get("facilityId") != null) {
+            row.put("facilityId",   planningGroup.getString("facilityId"));
+            row.put("facilityName", planningGroup.getString("facilityName"));
         } else {
             row.put("facilityId",   "");
             row.put("facilityName", "");
@@ -206,32 +206,37 @@ public class PlanningGroupServices {
         List<GenericValue> facilities = new ArrayList<>();
         List<GenericValue> planningGroupTypes = new ArrayList<>();
 
+        PlanningMetrics.Timer timer = PlanningMetrics.start("getPlanningGroupsReferenceData");
         try {
             // Proyectos (nivel superior) -> tipo PROJECT
-            projects = EntityQuery.use(delegator)
-                    .from("ProductCategory")
-                    .where("productCategoryTypeId", "PROJECT")
-                    .orderBy("categoryName")
-                    .queryList();
-            if (projects == null) projects = new ArrayList<>();
+            projects = PlanningReferenceCache.get(delegator, "projects",
+                    () -> EntityQuery.use(delegator)
+                            .from("ProductCategory")
+                            .where("productCategoryTypeId", "PROJECT")
+                            .orderBy("categoryName")
+                            .queryList());
             
             // Facilities
-            facilities = EntityQuery.use(delegator)
-                    .from("Facility")
-                    .orderBy("facilityName")
-                    .queryList();
-            if (facilities == null) facilities = new ArrayList<>();
+            facilities = PlanningReferenceCache.get(delegator, "facilitiesByName",
+                    () -> EntityQuery.use(delegator)
+                            .from("Facility")
+                            .orderBy("facilityName")
+                            .queryList());
             
             // Tipos de categoría para PLANNING_GROUP
-            planningGroupTypes = EntityQuery.use(delegator)
-                    .from("ProductCategoryType")
-                    .where("productCategoryTypeId", "PLANNING_GROUP")
-                    .queryList();
-            if (planningGroupTypes == null) planningGroupTypes = new ArrayList<>();
+            planningGroupTypes = PlanningReferenceCache.get(delegator, "planningGroupTypes",
+                    () -> EntityQuery.use(delegator)
+                            .from("ProductCategoryType")
+                            .where("productCategoryTypeId", "PLANNING_GROUP")
+                            .queryList());
+            timer.rows(projects.size() + facilities.size() + planningGroupTypes.size());
 
         } catch (GenericEntityException e) {
+            timer.error();
             Debug.logError(e, "Error getting planning groups reference data: " + e.getMessage(), module);
             // Las listas ya están inicializadas como vacías
+        } finally {
+            timer.close();
         }
 
         // SIEMPRE agregar los parámetros
@@ -353,7 +358,7 @@ public class PlanningGroupServices {
                     .where("productCategoryId", productCategoryId)
                     .queryOne();
 
-            if (planningGroup == null) {
+            if (planningGroup == null || !"PLANNING_GROUP".equals(planningGroup.getString("productCategoryTypeId"))) {
                 return ServiceUtil.returnError("Planning Group not found: " + productCategoryId);
             }
 
@@ -429,7 +434,7 @@ public class PlanningGroupServices {
                     .where("productCategoryId", productCategoryId)
                     .queryOne();
 
-            if (planningGroup == null) {
+            if (planningGroup == null || !"PLANNING_GROUP".equals(planningGroup.getString("productCategoryTypeId"))) {
                 return ServiceUtil.returnError("Planning Group not found: " + productCategoryId);
             }
 
@@ -443,6 +448,24 @@ public class PlanningGroupServices {
                 attr.remove();
             }
 
+            // Quitar sus referencias (una a una para que las ECAs actualicen índices y planes) y
+            // sus relaciones de jerarquía; si no, la clave ajena impide borrar el grupo
+            List<GenericValue> members = EntityQuery.use(delegator)
+                    .from("ProductCategoryMember")
+                    .where("productCategoryId", productCategoryId)
+                    .queryList();
+            for (GenericValue member : members) {
+                member.remove();
+            }
+            delegator.removeByCondition("ProductCategoryRollup", rollupCondition(UtilMisc.toList(productCategoryId)));
+            if (!members.isEmpty()) {
+                DohEngine.resetState(delegator);
+            }
+
+            // Eliminar su patrón de turnos y su configuración de cobertura si los tiene
+            ShiftServices.removeGroupShiftPatterns(delegator, UtilMisc.toList(productCategoryId));
+            delegator.removeByAnd("PlanningDohConfig", "productCategoryId", productCategoryId);
+
             // Eliminar el grupo
             planningGroup.remove();
 
@@ -458,6 +481,302 @@ public class PlanningGroupServices {
         return result;
     }
 
+    /**
+     * Alta de varios grupos de planificación en una sola transacción (la del servicio).
+     * Los ids existentes se comprueban con una consulta para todo el lote y las altas se
+     * guardan con storeAll. Si alguna fila no es válida no se crea ninguna.
+     *
+     * IN:
+     *  - planningGroups (List<Map<String,String>>): productCategoryId, categoryName, description,
+     *                   primaryParentCategoryId y facilityId de cada grupo
+     *
+     * OUT:
+     *  - productCategoryIds (List<String>): IDs de los grupos creados
+     */
+    public static Map<String, Object> createPlanningGroups(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> planningGroups = (List<Map<String, Object>>) context.get("planningGroups");
+
+        // 1. Validación de las filas y de ids repetidos en el lote
+        List<String> errors = new ArrayList<>();
+        Set<String> productCategoryIds = new LinkedHashSet<>();
+        for (Map<String, Object> group : planningGroups) {
+            String productCategoryId = (String) group.get("productCategoryId");
+            if (UtilValidate.isEmpty(productCategoryId)) {
+                errors.add("Planning Group ID is required");
+                continue;
+            }
+            if (UtilValidate.isEmpty(group.get("categoryName"))) {
+                errors.add("Planning Group Name is required: " + productCategoryId);
+            }
+            if (UtilValidate.isEmpty(group.get("primaryParentCategoryId"))) {
+                errors.add("Project is required: " + productCategoryId);
+            }
+            if (UtilValidate.isEmpty(group.get("facilityId"))) {
+                errors.add("Facility is required: " + productCategoryId);
+            }
+            if (!productCategoryIds.add(productCategoryId)) {
+                errors.add("Planning Group ID is repeated: " + productCategoryId);
+            }
+        }
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("createPlanningGroups");
+        try {
+            // 2. Ids ya existentes: una consulta para todo el lote
+            for (GenericValue existing : queryByIds(delegator, "ProductCategory", "productCategoryId", productCategoryIds, timer)) {
+                errors.add("Planning Group ID already exists: " + existing.getString("productCategoryId"));
+            }
+            if (!errors.isEmpty()) {
+                timer.error();
+                return ServiceUtil.returnError("Planning Groups not created", errors);
+            }
+
+            // 3. ProductCategory + ProductCategoryAttribute FACILITY_ID de cada grupo
+            List<GenericValue> values = new ArrayList<>(planningGroups.size() * 2);
+            for (Map<String, Object> group : planningGroups) {
+                String productCategoryId = (String) group.get("productCategoryId");
+                values.add(delegator.makeValue("ProductCategory", "productCategoryId", productCategoryId,
+                        "productCategoryTypeId", "PLANNING_GROUP", "categoryName", group.get("categoryName"),
+                        "description", group.get("description"), "primaryParentCategoryId", group.get("primaryParentCategoryId")));
+                values.add(delegator.makeValue("ProductCategoryAttribute", "productCategoryId", productCategoryId,
+                        "attrName", "FACILITY_ID", "attrValue", group.get("facilityId")));
+            }
+            delegator.storeAll(values);
+            timer.rows(productCategoryIds.size());
+            Debug.logInfo("Created " + productCategoryIds.size() + " Planning Groups", module);
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error creating planning groups: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error creating planning groups: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess("Planning Groups created successfully");
+        result.put("productCategoryIds", new ArrayList<>(productCategoryIds));
+        return result;
+    }
+
+    /**
+     * Modificación de varios grupos de planificación en una sola transacción. Los grupos y sus
+     * atributos FACILITY_ID se cargan con una consulta cada uno para todo el lote y solo se
+     * guardan los valores que cambian. Como en updatePlanningGroup, los campos vacíos no se
+     * modifican (description sí se modifica si viene informada, aunque sea vacía).
+     *
+     * IN:
+     *  - planningGroups (List<Map<String,String>>): productCategoryId y los campos a modificar
+     *
+     * OUT:
+     *  - productCategoryIds (List<String>): IDs de los grupos modificados
+     */
+    public static Map<String, Object> updatePlanningGroups(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> planningGroups = (List<Map<String, Object>>) context.get("planningGroups");
+
+        List<String> errors = new ArrayList<>();
+        Set<String> productCategoryIds = new LinkedHashSet<>();
+        for (Map<String, Object> group : planningGroups) {
+            String productCategoryId = (String) group.get("productCategoryId");
+            if (UtilValidate.isEmpty(productCategoryId)) {
+                errors.add("Planning Group ID is required");
+            } else if (!productCategoryIds.add(productCategoryId)) {
+                errors.add("Planning Group ID is repeated: " + productCategoryId);
+            }
+        }
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("updatePlanningGroups");
+        try {
+            // 1. Grupos y atributos FACILITY_ID del lote
+            Map<String, GenericValue> groupsById = new HashMap<>();
+            for (GenericValue planningGroup : queryByIds(delegator, "ProductCategory", "productCategoryId", productCategoryIds, timer)) {
+                groupsById.put(planningGroup.getString("productCategoryId"), planningGroup);
+            }
+            Map<String, GenericValue> facilityAttrsById = new HashMap<>();
+            for (GenericValue facilityAttr : queryFacilityAttributes(delegator, productCategoryIds, timer)) {
+                facilityAttrsById.put(facilityAttr.getString("productCategoryId"), facilityAttr);
+            }
+            // Como en el borrado, solo se modifican categorías de tipo PLANNING_GROUP
+            for (String productCategoryId : productCategoryIds) {
+                GenericValue planningGroup = groupsById.get(productCategoryId);
+                if (planningGroup == null || !"PLANNING_GROUP".equals(planningGroup.getString("productCategoryTypeId"))) {
+                    errors.add("Planning Group not found: " + productCategoryId);
+                }
+            }
+            if (!errors.isEmpty()) {
+                timer.error();
+                return ServiceUtil.returnError("Planning Groups not updated", errors);
+            }
+
+            // 2. Cambios sobre los valores cargados
+            List<GenericValue> values = new ArrayList<>();
+            for (Map<String, Object> group : planningGroups) {
+                String productCategoryId = (String) group.get("productCategoryId");
+                GenericValue planningGroup = groupsById.get(productCategoryId);
+                if (UtilValidate.isNotEmpty(group.get("categoryName"))) {
+                    planningGroup.set("categoryName", group.get("categoryName"));
+                }
+                if (group.containsKey("description")) {
+                    planningGroup.set("description", group.get("description"));
+                }
+                if (UtilValidate.isNotEmpty(group.get("primaryParentCategoryId"))) {
+                    planningGroup.set("primaryParentCategoryId", group.get("primaryParentCategoryId"));
+                }
+                if (planningGroup.isModified()) {
+                    values.add(planningGroup);
+                }
+
+                Object facilityId = group.get("facilityId");
+                if (UtilValidate.isNotEmpty(facilityId)) {
+                    GenericValue facilityAttr = facilityAttrsById.get(productCategoryId);
+                    if (facilityAttr == null) {
+                        values.add(delegator.makeValue("ProductCategoryAttribute", "productCategoryId", productCategoryId,
+                                "attrName", "FACILITY_ID", "attrValue", facilityId));
+                    } else if (!facilityId.equals(facilityAttr.get("attrValue"))) {
+                        facilityAttr.set("attrValue", facilityId);
+                        values.add(facilityAttr);
+                    }
+                }
+            }
+            delegator.storeAll(values);
+            timer.rows(values.size());
+            Debug.logInfo("Updated " + productCategoryIds.size() + " Planning Groups (" + values.size() + " values changed)", module);
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error updating planning groups: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error updating planning groups: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess("Planning Groups updated successfully");
+        result.put("productCategoryIds", new ArrayList<>(productCategoryIds));
+        return result;
+    }
+
+    /**
+     * Baja de varios grupos de planificación en una sola transacción, con una sentencia por
+     * entidad. Las referencias asignadas (ProductCategoryMember) y la jerarquía
+     * (ProductCategoryRollup) se borran antes que los grupos por sus claves ajenas.
+     * removeByCondition no ejecuta las ECAs de cada valor, así que los tokens del índice de
+     * búsqueda, las entradas del índice de referencias asignadas y el estado del cálculo DOH
+     * se actualizan aquí explícitamente.
+     *
+     * IN:
+     *  - productCategoryIds (List<String>): IDs de los grupos
+     *
+     * OUT:
+     *  - productCategoryIds (List<String>): IDs de los grupos eliminados
+     */
+    public static Map<String, Object> deletePlanningGroups(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        @SuppressWarnings("unchecked")
+        Set<String> productCategoryIds = new LinkedHashSet<>((List<String>) context.get("productCategoryIds"));
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("deletePlanningGroups");
+        try {
+            // 1. Solo se borran grupos de planificación existentes
+            Set<String> foundIds = new HashSet<>();
+            for (GenericValue planningGroup : queryByIds(delegator, "ProductCategory", "productCategoryId", productCategoryIds, timer)) {
+                if ("PLANNING_GROUP".equals(planningGroup.getString("productCategoryTypeId"))) {
+                    foundIds.add(planningGroup.getString("productCategoryId"));
+                }
+            }
+            List<String> errors = new ArrayList<>();
+            for (String productCategoryId : productCategoryIds) {
+                if (!foundIds.contains(productCategoryId)) {
+                    errors.add("Planning Group not found: " + productCategoryId);
+                }
+            }
+            if (!errors.isEmpty()) {
+                timer.error();
+                return ServiceUtil.returnError("Planning Groups not deleted", errors);
+            }
+
+            // 2. Referencias, jerarquía, atributos, patrones de turnos, configuración DOH, tokens de
+            //    búsqueda y grupos, por bloques de ids
+            List<String> ids = new ArrayList<>(productCategoryIds);
+            int removedMembers = 0;
+            for (int from = 0; from < ids.size(); from += MAX_IN_SIZE) {
+                List<String> block = ids.subList(from, Math.min(ids.size(), from + MAX_IN_SIZE));
+                removedMembers += delegator.removeByCondition("ProductCategoryMember",
+                        EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, block));
+                delegator.removeByCondition("ProductCategoryRollup", rollupCondition(block));
+                delegator.removeByCondition("ProductCategoryAttribute",
+                        EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, block));
+                ShiftServices.removeGroupShiftPatterns(delegator, block);
+                delegator.removeByCondition("PlanningDohConfig",
+                        EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, block));
+                PlanningSearchIndex.removeValues(delegator, PlanningSearchIndex.PRODUCT_CATEGORY, block);
+                AssignedRefsIndex.removeGroupsAfterCommit(delegator, block);
+                for (String productCategoryId : block) {
+                    PlanningChangeTracker.markPlanningGroup(delegator, productCategoryId);
+                }
+                delegator.removeByCondition("ProductCategory",
+                        EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, block));
+                timer.queries(7);
+            }
+            // Las referencias quitadas no cambian lastUpdatedStamp: el próximo cálculo DOH es completo
+            if (removedMembers > 0) {
+                DohEngine.resetState(delegator);
+            }
+            timer.rows(ids.size());
+            Debug.logInfo("Deleted " + ids.size() + " Planning Groups", module);
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error deleting planning groups: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error deleting planning groups: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess("Planning Groups deleted successfully");
+        result.put("productCategoryIds", new ArrayList<>(productCategoryIds));
+        return result;
+    }
+
+    // Método auxiliar: relaciones de jerarquía en las que los grupos son hijo o padre
+    private static EntityCondition rollupCondition(List<String> productCategoryIds) {
+        return EntityCondition.makeCondition(
+                EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, productCategoryIds),
+                EntityOperator.OR,
+                EntityCondition.makeCondition("parentProductCategoryId", EntityOperator.IN, productCategoryIds));
+    }
+
+    // Método auxiliar: valores cuyo campo está en ids, con un IN por cada bloque de MAX_IN_SIZE ids
+    private static List<GenericValue> queryByIds(Delegator delegator, String entityName, String fieldName,
+            Collection<String> ids, PlanningMetrics.Timer timer) throws GenericEntityException {
+        List<GenericValue> values = new ArrayList<>();
+        List<String> idList = new ArrayList<>(ids);
+        for (int from = 0; from < idList.size(); from += MAX_IN_SIZE) {
+            values.addAll(EntityQuery.use(delegator)
+                    .from(entityName)
+                    .where(EntityCondition.makeCondition(fieldName, EntityOperator.IN,
+                            idList.subList(from, Math.min(idList.size(), from + MAX_IN_SIZE))))
+                    .queryList());
+            timer.query();
+        }
+        return values;
+    }
+
+    // Método auxiliar: atributos FACILITY_ID de los grupos, con un IN por cada bloque de ids
+    private static List<GenericValue> queryFacilityAttributes(Delegator delegator, Collection<String> productCategoryIds,
+            PlanningMetrics.Timer timer) throws GenericEntityException {
+        List<GenericValue> values = new ArrayList<>();
+        List<String> idList = new ArrayList<>(productCategoryIds);
+        for (int from = 0; from < idList.size(); from += MAX_IN_SIZE) {
+            values.addAll(EntityQuery.use(delegator)
+                    .from("ProductCategoryAttribute")
+                    .where(EntityCondition.makeCondition("attrName", EntityOperator.EQUALS, "FACILITY_ID"),
+                           EntityCondition.makeCondition("productCategoryId", EntityOperator.IN,
+                                   idList.subList(from, Math.min(idList.size(), from + MAX_IN_SIZE))))
+                    .queryList());
+            timer.query();
+        }
+        return values;
+    }
+
     /**
      * Obtener datos de un grupo de planificación específico para edición.
      *
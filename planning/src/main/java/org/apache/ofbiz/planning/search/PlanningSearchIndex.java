@@ -0,0 +1,225 @@
+package org.apache.ofbiz.planning.search;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityFindOptions;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de texto de Planning basado en trigramas (entidad PlanningSearchToken).
+ *
+ * Los textos se normalizan (minúsculas, sin acentos, espacios colapsados) y se guardan
+ * como trigramas. Una búsqueda "contiene" sobre un campo se resuelve buscando las entidades
+ * que tienen todos los trigramas del término; el LIKE original se sigue aplicando después
+ * sobre ese conjunto reducido de candidatos para conservar exactamente el mismo resultado.
+ */
+public final class PlanningSearchIndex {
+
+    public static final String module = PlanningSearchIndex.class.getName();
+
+    public static final String FIXED_ASSET = "FixedAsset";
+    public static final String FACILITY = "Facility";
+    public static final String PRODUCT_CATEGORY = "ProductCategory";
+
+    // Longitud del token: trigramas
+    private static final int GRAM_SIZE = 3;
+
+    // Por encima de este número de candidatos no compensa un IN; se deja el LIKE solo
+    private static final int MAX_CANDIDATES = 1000;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private PlanningSearchIndex() {
+    }
+
+    /**
+     * Normaliza un texto para indexarlo o buscarlo: sin acentos, en minúsculas y con los
+     * espacios colapsados.
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+        normalized = DIACRITICS.matcher(normalized).replaceAll("");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ");
+        return normalized.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Trigramas de un texto ya normalizado. Un texto más corto que un trigrama no genera tokens.
+     */
+    public static Set<String> trigrams(String normalized) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_SIZE <= normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + GRAM_SIZE));
+        }
+        return grams;
+    }
+
+    /**
+     * Reemplaza los tokens de una entidad por los de los valores de campo indicados.
+     */
+    public static void indexValue(Delegator delegator, String entityName, String entityId, Map<String, String> fieldValues)
+            throws GenericEntityException {
+        removeValue(delegator, entityName, entityId);
+        addTokens(delegator, entityName, entityId, fieldValues);
+    }
+
+    /**
+     * Crea los tokens de una entidad sin borrar los existentes (reconstrucción completa del índice).
+     */
+    public static void addTokens(Delegator delegator, String entityName, String entityId, Map<String, String> fieldValues)
+            throws GenericEntityException {
+        for (Map.Entry<String, String> field : fieldValues.entrySet()) {
+            for (String token : trigrams(normalize(field.getValue()))) {
+                GenericValue searchToken = delegator.makeValue("PlanningSearchToken");
+                searchToken.set("searchEntityName", entityName);
+                searchToken.set("searchFieldName", field.getKey());
+                searchToken.set("token", token);
+                searchToken.set("searchEntityId", entityId);
+                delegator.create(searchToken);
+            }
+        }
+    }
+
+    /**
+     * Elimina todos los tokens del índice y las marcas de índice completo.
+     */
+    public static int removeAll(Delegator delegator) throws GenericEntityException {
+        delegator.removeByCondition("PlanningSearchIndexState",
+                EntityCondition.makeCondition("searchEntityName", EntityOperator.IN,
+                        UtilMisc.toList(FIXED_ASSET, FACILITY, PRODUCT_CATEGORY)));
+        return delegator.removeByCondition("PlanningSearchToken",
+                EntityCondition.makeCondition("searchEntityName", EntityOperator.IN,
+                        UtilMisc.toList(FIXED_ASSET, FACILITY, PRODUCT_CATEGORY)));
+    }
+
+    /**
+     * Elimina todos los tokens de una entidad.
+     */
+    public static void removeValue(Delegator delegator, String entityName, String entityId) throws GenericEntityException {
+        delegator.removeByAnd("PlanningSearchToken", UtilMisc.toMap("searchEntityName", entityName, "searchEntityId", entityId));
+    }
+
+    /**
+     * Elimina los tokens de varias entidades del mismo tipo en una sola sentencia. Para los
+     * borrados masivos con removeByCondition, que no ejecutan las ECAs de cada valor.
+     */
+    public static int removeValues(Delegator delegator, String entityName, Collection<String> entityIds) throws GenericEntityException {
+        if (entityIds.isEmpty()) {
+            return 0;
+        }
+        return delegator.removeByCondition("PlanningSearchToken", EntityCondition.makeCondition(
+                EntityCondition.makeCondition("searchEntityName", EntityOperator.EQUALS, entityName),
+                EntityOperator.AND,
+                EntityCondition.makeCondition("searchEntityId", EntityOperator.IN, entityIds)));
+    }
+
+    /**
+     * Devuelve los ids de la entidad cuyo campo puede contener el término.
+     *
+     * @return el conjunto de candidatos (vacío si ninguno puede coincidir) o null si el índice
+     *         no sirve para este término (demasiado corto o demasiado poco selectivo); en ese
+     *         caso el llamante debe aplicar solo el LIKE.
+     */
+    public static Set<String> findCandidateIds(Delegator delegator, String entityName, String fieldName, String term)
+            throws GenericEntityException {
+        // Los comodines de LIKE escritos por el usuario no se pueden resolver con trigramas
+        if (UtilValidate.isEmpty(term) || term.indexOf('%') >= 0 || term.indexOf('_') >= 0) {
+            return null;
+        }
+        Set<String> grams = trigrams(normalize(term));
+        if (grams.isEmpty() || !isIndexed(delegator, entityName)) {
+            return null;
+        }
+
+        EntityCondition where = EntityCondition.makeCondition(UtilMisc.toList(
+                EntityCondition.makeCondition("searchEntityName", EntityOperator.EQUALS, entityName),
+                EntityCondition.makeCondition("searchFieldName", EntityOperator.EQUALS, fieldName),
+                EntityCondition.makeCondition("token", EntityOperator.IN, grams)), EntityOperator.AND);
+        // Solo las entidades que contienen todos los trigramas del término
+        EntityCondition having = EntityCondition.makeCondition("matchCount", EntityOperator.EQUALS, (long) grams.size());
+
+        EntityFindOptions findOptions = new EntityFindOptions();
+        findOptions.setMaxRows(MAX_CANDIDATES + 1);
+
+        Set<String> candidateIds = new HashSet<>();
+        try (EntityListIterator matchIt = delegator.find("PlanningSearchTokenMatch", where, having,
+                UtilMisc.toSet("searchEntityId", "matchCount"), null, findOptions)) {
+            GenericValue match;
+            while ((match = matchIt.next()) != null) {
+                candidateIds.add(match.getString("searchEntityId"));
+                if (candidateIds.size() > MAX_CANDIDATES) {
+                    if (Debug.verboseOn()) {
+                        Debug.logVerbose("Search term [" + term + "] too broad for " + entityName + "." + fieldName
+                                + ", falling back to LIKE", module);
+                    }
+                    return null;
+                }
+            }
+        }
+        return candidateIds;
+    }
+
+    /**
+     * Marca el índice de la entidad como completo (al final de rebuildPlanningSearchIndex).
+     */
+    public static void markIndexed(Delegator delegator, String entityName, int indexedCount) throws GenericEntityException {
+        GenericValue state = delegator.makeValue("PlanningSearchIndexState", "searchEntityName", entityName);
+        state.set("rebuiltStamp", UtilDateTime.nowTimestamp());
+        state.set("indexedCount", (long) indexedCount);
+        delegator.createOrStore(state);
+    }
+
+    /**
+     * Indica si el índice de la entidad está completo. Los tokens que crean las ECAs no
+     * bastan: en una instalación con datos previos solo cubren lo guardado después, así que
+     * mientras no haya terminado rebuildPlanningSearchIndex las búsquedas usan solo el LIKE.
+     */
+    private static boolean isIndexed(Delegator delegator, String entityName) throws GenericEntityException {
+        return EntityQuery.use(delegator)
+                .from("PlanningSearchIndexState")
+                .where("searchEntityName", entityName)
+                .cache()
+                .queryOne() != null;
+    }
+
+    /**
+     * Añade a las condiciones el filtro "contiene" (LIKE '%term%') sobre un campo y, cuando el
+     * índice es aplicable, la restricción del id de la entidad a los candidatos del índice.
+     *
+     * @return false si el índice garantiza que ninguna entidad puede coincidir
+     */
+    public static boolean addContainsCondition(Delegator delegator, List<EntityCondition> conditions, String entityName,
+            String idFieldName, String fieldName, String term) throws GenericEntityException {
+        Set<String> candidateIds = findCandidateIds(delegator, entityName, fieldName, term);
+        if (candidateIds != null) {
+            if (candidateIds.isEmpty()) {
+                return false;
+            }
+            conditions.add(EntityCondition.makeCondition(idFieldName, EntityOperator.IN, candidateIds));
+        }
+        conditions.add(EntityCondition.makeCondition(fieldName, EntityOperator.LIKE, "%" + term + "%"));
+        return true;
+    }
+}
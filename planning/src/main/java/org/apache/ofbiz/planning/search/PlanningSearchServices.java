@@ -0,0 +1,191 @@
+package org.apache.ofbiz.planning.search;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Servicios de mantenimiento del índice de texto de Planning (PlanningSearchToken).
+ *
+ * Los servicios index* y remove* se invocan desde las ECAs de entidad (entitydef/eecas.xml)
+ * sobre FixedAsset, Facility y ProductCategory.
+ */
+public class PlanningSearchServices {
+
+    public static final String module = PlanningSearchServices.class.getName();
+
+    /**
+     * Indexa fixedAssetId y fixedAssetName de un FixedAsset.
+     */
+    public static Map<String, Object> indexPlanningSearchFixedAsset(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String fixedAssetId = (String) context.get("fixedAssetId");
+
+        try {
+            PlanningSearchIndex.indexValue(delegator, PlanningSearchIndex.FIXED_ASSET, fixedAssetId, fixedAssetFields(context));
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error indexing fixed asset " + fixedAssetId + ": " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error indexing fixed asset " + fixedAssetId + ": " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Indexa facilityName de una Facility.
+     */
+    public static Map<String, Object> indexPlanningSearchFacility(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String facilityId = (String) context.get("facilityId");
+
+        try {
+            PlanningSearchIndex.indexValue(delegator, PlanningSearchIndex.FACILITY, facilityId, facilityFields(context));
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error indexing facility " + facilityId + ": " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error indexing facility " + facilityId + ": " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Indexa productCategoryId, categoryName y description de un grupo de planificación.
+     * Las categorías de otros tipos no se indexan (y se eliminan si lo estaban).
+     */
+    public static Map<String, Object> indexPlanningSearchProductCategory(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productCategoryId = (String) context.get("productCategoryId");
+
+        try {
+            if ("PLANNING_GROUP".equals(context.get("productCategoryTypeId"))) {
+                PlanningSearchIndex.indexValue(delegator, PlanningSearchIndex.PRODUCT_CATEGORY, productCategoryId, productCategoryFields(context));
+            } else {
+                PlanningSearchIndex.removeValue(delegator, PlanningSearchIndex.PRODUCT_CATEGORY, productCategoryId);
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error indexing product category " + productCategoryId + ": " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error indexing product category " + productCategoryId + ": " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    public static Map<String, Object> removePlanningSearchFixedAsset(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return removeEntry(dctx.getDelegator(), PlanningSearchIndex.FIXED_ASSET, (String) context.get("fixedAssetId"));
+    }
+
+    public static Map<String, Object> removePlanningSearchFacility(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return removeEntry(dctx.getDelegator(), PlanningSearchIndex.FACILITY, (String) context.get("facilityId"));
+    }
+
+    public static Map<String, Object> removePlanningSearchProductCategory(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return removeEntry(dctx.getDelegator(), PlanningSearchIndex.PRODUCT_CATEGORY, (String) context.get("productCategoryId"));
+    }
+
+    /**
+     * Reconstruye el índice completo a partir de FixedAsset, Facility y los ProductCategory
+     * de tipo PLANNING_GROUP. Necesario una vez tras instalar el componente: hasta que termina,
+     * las búsquedas no usan el índice (PlanningSearchIndexState).
+     *
+     * OUT:
+     *  - indexedCount (Integer): número de entidades indexadas
+     */
+    public static Map<String, Object> rebuildPlanningSearchIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        int indexedCount = 0;
+
+        try {
+            PlanningSearchIndex.removeAll(delegator);
+
+            int entityCount = 0;
+            try (EntityListIterator fixedAssetIt = EntityQuery.use(delegator)
+                    .select("fixedAssetId", "fixedAssetName")
+                    .from("FixedAsset")
+                    .queryIterator()) {
+                GenericValue fixedAsset;
+                while ((fixedAsset = fixedAssetIt.next()) != null) {
+                    PlanningSearchIndex.addTokens(delegator, PlanningSearchIndex.FIXED_ASSET,
+                            fixedAsset.getString("fixedAssetId"), fixedAssetFields(fixedAsset));
+                    entityCount++;
+                }
+            }
+            PlanningSearchIndex.markIndexed(delegator, PlanningSearchIndex.FIXED_ASSET, entityCount);
+            indexedCount += entityCount;
+
+            entityCount = 0;
+            try (EntityListIterator facilityIt = EntityQuery.use(delegator)
+                    .select("facilityId", "facilityName")
+                    .from("Facility")
+                    .queryIterator()) {
+                GenericValue facility;
+                while ((facility = facilityIt.next()) != null) {
+                    PlanningSearchIndex.addTokens(delegator, PlanningSearchIndex.FACILITY,
+                            facility.getString("facilityId"), facilityFields(facility));
+                    entityCount++;
+                }
+            }
+            PlanningSearchIndex.markIndexed(delegator, PlanningSearchIndex.FACILITY, entityCount);
+            indexedCount += entityCount;
+
+            entityCount = 0;
+            try (EntityListIterator categoryIt = EntityQuery.use(delegator)
+                    .select("productCategoryId", "categoryName", "description")
+                    .from("ProductCategory")
+                    .where("productCategoryTypeId", "PLANNING_GROUP")
+                    .queryIterator()) {
+                GenericValue category;
+                while ((category = categoryIt.next()) != null) {
+                    PlanningSearchIndex.addTokens(delegator, PlanningSearchIndex.PRODUCT_CATEGORY,
+                            category.getString("productCategoryId"), productCategoryFields(category));
+                    entityCount++;
+                }
+            }
+            PlanningSearchIndex.markIndexed(delegator, PlanningSearchIndex.PRODUCT_CATEGORY, entityCount);
+            indexedCount += entityCount;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error rebuilding planning search index: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error rebuilding planning search index: " + e.getMessage());
+        }
+
+        Debug.logInfo("Planning search index rebuilt: " + indexedCount + " entities", module);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("indexedCount", indexedCount);
+        return result;
+    }
+
+    private static Map<String, Object> removeEntry(Delegator delegator, String entityName, String entityId) {
+        try {
+            PlanningSearchIndex.removeValue(delegator, entityName, entityId);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error removing " + entityName + " " + entityId + " from search index: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error removing " + entityName + " " + entityId + " from search index: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static Map<String, String> fixedAssetFields(Map<String, ? extends Object> fixedAsset) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("fixedAssetId", (String) fixedAsset.get("fixedAssetId"));
+        fields.put("fixedAssetName", (String) fixedAsset.get("fixedAssetName"));
+        return fields;
+    }
+
+    private static Map<String, String> facilityFields(Map<String, ? extends Object> facility) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("facilityName", (String) facility.get("facilityName"));
+        return fields;
+    }
+
+    private static Map<String, String> productCategoryFields(Map<String, ? extends Object> category) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("productCategoryId", (String) category.get("productCategoryId"));
+        fields.put("categoryName", (String) category.get("categoryName"));
+        fields.put("description", (String) category.get("description"));
+        return fields;
+    }
+}
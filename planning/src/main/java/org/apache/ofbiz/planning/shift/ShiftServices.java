@@ -0,0 +1,400 @@
+package org.apache.ofbiz.planning.shift;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningTransactions;
+import org.apache.ofbiz.planning.daily.DailyScheduler;
+import org.apache.ofbiz.planning.occupancy.MachineOccupancyIndex;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.sql.Time;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mantenimiento de los patrones de turnos (PlanningShiftPattern) y sus turnos (PlanningShift).
+ *
+ * Cada facility tiene como mucho un patrón sin grupo y cada grupo de planificación como mucho
+ * uno, para que {@link ShiftTimelineEngine#resolveShiftPatternId} sea determinista. Los turnos
+ * compilados se invalidan por ECA al guardar.
+ */
+public class ShiftServices {
+
+    public static final String module = ShiftServices.class.getName();
+
+    private static final long MAX_DURATION_MINUTES = 1440L;
+
+    /**
+     * Crear un patrón de turnos de una facility o de un grupo de planificación.
+     *
+     * IN:
+     *  - shiftPatternId    (String, opcional): ID del patrón (por defecto secuencia)
+     *  - patternName       (String): Nombre (requerido)
+     *  - description       (String, opcional): Descripción
+     *  - facilityId        (String, opcional): Facility del patrón
+     *  - productCategoryId (String, opcional): Grupo de planificación del patrón
+     *
+     * OUT:
+     *  - shiftPatternId (String): ID del patrón creado
+     */
+    public static Map<String, Object> createPlanningShiftPattern(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String shiftPatternId = (String) context.get("shiftPatternId");
+        String patternName = (String) context.get("patternName");
+        String facilityId = (String) context.get("facilityId");
+        String productCategoryId = (String) context.get("productCategoryId");
+
+        if (UtilValidate.isEmpty(patternName)) {
+            return ServiceUtil.returnError("Shift pattern name is required");
+        }
+        try {
+            if (UtilValidate.isEmpty(shiftPatternId)) {
+                shiftPatternId = delegator.getNextSeqId("PlanningShiftPattern");
+            } else if (EntityQuery.use(delegator).from("PlanningShiftPattern")
+                    .where("shiftPatternId", shiftPatternId).queryOne() != null) {
+                return ServiceUtil.returnError("Shift pattern ID already exists: " + shiftPatternId);
+            }
+            String error = validatePatternOwner(delegator, shiftPatternId, facilityId, productCategoryId);
+            if (error != null) {
+                return ServiceUtil.returnError(error);
+            }
+
+            GenericValue pattern = delegator.makeValue("PlanningShiftPattern");
+            pattern.set("shiftPatternId", shiftPatternId);
+            pattern.set("patternName", patternName);
+            pattern.set("description", context.get("description"));
+            pattern.set("facilityId", UtilValidate.isNotEmpty(facilityId) ? facilityId : null);
+            pattern.set("productCategoryId", UtilValidate.isNotEmpty(productCategoryId) ? productCategoryId : null);
+            pattern.create();
+            Debug.logInfo("Created shift pattern: " + shiftPatternId, module);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error creating shift pattern: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error creating shift pattern: " + e.getMessage());
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess("Shift pattern created successfully");
+        result.put("shiftPatternId", shiftPatternId);
+        return result;
+    }
+
+    /**
+     * Actualizar un patrón de turnos.
+     *
+     * IN:
+     *  - shiftPatternId    (String): ID del patrón (requerido)
+     *  - patternName       (String, opcional): Nombre
+     *  - description       (String, opcional): Descripción
+     *  - facilityId        (String, opcional): Facility del patrón
+     *  - productCategoryId (String, opcional): Grupo de planificación del patrón
+     *
+     * OUT:
+     *  - shiftPatternId (String): ID del patrón actualizado
+     */
+    public static Map<String, Object> updatePlanningShiftPattern(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String shiftPatternId = (String) context.get("shiftPatternId");
+        String facilityId = (String) context.get("facilityId");
+        String productCategoryId = (String) context.get("productCategoryId");
+
+        try {
+            GenericValue pattern = EntityQuery.use(delegator)
+                    .from("PlanningShiftPattern")
+                    .where("shiftPatternId", shiftPatternId)
+                    .queryOne();
+            if (pattern == null) {
+                return ServiceUtil.returnError("Shift pattern not found: " + shiftPatternId);
+            }
+            if (UtilValidate.isNotEmpty(context.get("patternName"))) {
+                pattern.set("patternName", context.get("patternName"));
+            }
+            if (context.containsKey("description")) {
+                pattern.set("description", context.get("description"));
+            }
+            if (context.containsKey("facilityId")) {
+                pattern.set("facilityId", UtilValidate.isNotEmpty(facilityId) ? facilityId : null);
+            }
+            if (context.containsKey("productCategoryId")) {
+                pattern.set("productCategoryId", UtilValidate.isNotEmpty(productCategoryId) ? productCategoryId : null);
+            }
+            String error = validatePatternOwner(delegator, shiftPatternId, pattern.getString("facilityId"),
+                    pattern.getString("productCategoryId"));
+            if (error != null) {
+                return ServiceUtil.returnError(error);
+            }
+            pattern.store();
+            Debug.logInfo("Updated shift pattern: " + shiftPatternId, module);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error updating shift pattern: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error updating shift pattern: " + e.getMessage());
+        }
+
+        Map<String, Object> result = ServiceUtil.returnSuccess("Shift pattern updated successfully");
+        result.put("shiftPatternId", shiftPatternId);
+        return result;
+    }
+
+    /**
+     * Borrar un patrón de turnos y sus turnos.
+     *
+     * IN:
+     *  - shiftPatternId (String): ID del patrón (requerido)
+     */
+    public static Map<String, Object> deletePlanningShiftPattern(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String shiftPatternId = (String) context.get("shiftPatternId");
+
+        try {
+            GenericValue pattern = EntityQuery.use(delegator)
+                    .from("PlanningShiftPattern")
+                    .where("shiftPatternId", shiftPatternId)
+                    .queryOne();
+            if (pattern == null) {
+                return ServiceUtil.returnError("Shift pattern not found: " + shiftPatternId);
+            }
+            delegator.removeByAnd("PlanningShift", "shiftPatternId", shiftPatternId);
+            pattern.remove();
+            Debug.logInfo("Deleted shift pattern: " + shiftPatternId, module);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error deleting shift pattern: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error deleting shift pattern: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess("Shift pattern deleted successfully");
+    }
+
+    /**
+     * Crear un turno en un patrón.
+     *
+     * IN:
+     *  - shiftPatternId  (String): ID del patrón (requerido)
+     *  - shiftCode       (String): Código del turno dentro del patrón (requerido)
+     *  - shiftName       (String, opcional): Nombre
+     *  - startTime       (String): Hora de inicio HH:mm (requerido)
+     *  - durationMinutes (Long): Duración en minutos, hasta 24 h (requerido)
+     *  - daysOfWeek      (String): Días ISO 1-7, p.ej. 12345 (requerido)
+     *  - sequenceNum     (Long, opcional): Orden
+     */
+    public static Map<String, Object> createPlanningShift(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String shiftPatternId = (String) context.get("shiftPatternId");
+        String shiftCode = (String) context.get("shiftCode");
+
+        if (UtilValidate.isEmpty(shiftCode)) {
+            return ServiceUtil.returnError("Shift code is required");
+        }
+        try {
+            if (EntityQuery.use(delegator).from("PlanningShiftPattern")
+                    .where("shiftPatternId", shiftPatternId).queryOne() == null) {
+                return ServiceUtil.returnError("Shift pattern not found: " + shiftPatternId);
+            }
+            if (EntityQuery.use(delegator).from("PlanningShift")
+                    .where("shiftPatternId", shiftPatternId, "shiftCode", shiftCode).queryOne() != null) {
+                return ServiceUtil.returnError("Shift " + shiftCode + " already exists in pattern " + shiftPatternId);
+            }
+            GenericValue shift = delegator.makeValue("PlanningShift");
+            shift.set("shiftPatternId", shiftPatternId);
+            shift.set("shiftCode", shiftCode);
+            String error = setShiftFields(shift, context, true);
+            if (error != null) {
+                return ServiceUtil.returnError(error);
+            }
+            shift.create();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error creating shift: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error creating shift: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess("Shift created successfully");
+    }
+
+    /**
+     * Actualizar un turno. Solo cambian los campos informados.
+     *
+     * IN: los de createPlanningShift; shiftPatternId y shiftCode identifican el turno.
+     */
+    public static Map<String, Object> updatePlanningShift(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String shiftPatternId = (String) context.get("shiftPatternId");
+        String shiftCode = (String) context.get("shiftCode");
+
+        try {
+            GenericValue shift = EntityQuery.use(delegator)
+                    .from("PlanningShift")
+                    .where("shiftPatternId", shiftPatternId, "shiftCode", shiftCode)
+                    .queryOne();
+            if (shift == null) {
+                return ServiceUtil.returnError("Shift " + shiftCode + " not found in pattern " + shiftPatternId);
+            }
+            String error = setShiftFields(shift, context, false);
+            if (error != null) {
+                return ServiceUtil.returnError(error);
+            }
+            shift.store();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error updating shift: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error updating shift: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess("Shift updated successfully");
+    }
+
+    /**
+     * Borrar un turno de un patrón.
+     *
+     * IN:
+     *  - shiftPatternId (String): ID del patrón (requerido)
+     *  - shiftCode      (String): Código del turno (requerido)
+     */
+    public static Map<String, Object> deletePlanningShift(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String shiftPatternId = (String) context.get("shiftPatternId");
+        String shiftCode = (String) context.get("shiftCode");
+
+        try {
+            GenericValue shift = EntityQuery.use(delegator)
+                    .from("PlanningShift")
+                    .where("shiftPatternId", shiftPatternId, "shiftCode", shiftCode)
+                    .queryOne();
+            if (shift == null) {
+                return ServiceUtil.returnError("Shift " + shiftCode + " not found in pattern " + shiftPatternId);
+            }
+            shift.remove();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error deleting shift: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error deleting shift: " + e.getMessage());
+        }
+        return ServiceUtil.returnSuccess("Shift deleted successfully");
+    }
+
+    /**
+     * Vacía los turnos compilados y los programas diarios que los usan (llamado desde ECA), al
+     * confirmarse la transacción del cambio.
+     */
+    public static Map<String, Object> clearShiftTimelineCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+        PlanningTransactions.afterCommit(ShiftServices::clearCaches);
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Borra los patrones de turnos (y sus turnos) de los grupos de planificación indicados, para
+     * poder borrar los grupos. removeByCondition no dispara las ECAs, así que los turnos
+     * compilados se vacían aquí, al confirmarse la transacción.
+     *
+     * @return patrones borrados
+     */
+    public static int removeGroupShiftPatterns(Delegator delegator, Collection<String> productCategoryIds)
+            throws GenericEntityException {
+        List<String> shiftPatternIds = EntityQuery.use(delegator)
+                .select("shiftPatternId")
+                .from("PlanningShiftPattern")
+                .where(EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, productCategoryIds))
+                .getFieldList("shiftPatternId");
+        if (shiftPatternIds.isEmpty()) {
+            return 0;
+        }
+        delegator.removeByCondition("PlanningShift",
+                EntityCondition.makeCondition("shiftPatternId", EntityOperator.IN, shiftPatternIds));
+        delegator.removeByCondition("PlanningShiftPattern",
+                EntityCondition.makeCondition("shiftPatternId", EntityOperator.IN, shiftPatternIds));
+        PlanningTransactions.afterCommit(ShiftServices::clearCaches);
+        return shiftPatternIds.size();
+    }
+
+    private static void clearCaches() {
+        ShiftTimelineEngine.clear();
+        DailyScheduler.clear();
+        MachineOccupancyIndex.clear();
+    }
+
+    /**
+     * Comprueba que el patrón tiene facility o grupo, que existen y que no hay otro patrón
+     * para el mismo grupo o, sin grupo, para la misma facility. Devuelve el error o null.
+     */
+    private static String validatePatternOwner(Delegator delegator, String shiftPatternId, String facilityId,
+                                               String productCategoryId) throws GenericEntityException {
+        if (UtilValidate.isEmpty(facilityId) && UtilValidate.isEmpty(productCategoryId)) {
+            return "Facility or planning group is required";
+        }
+        EntityCondition otherPattern = EntityCondition.makeCondition("shiftPatternId", EntityOperator.NOT_EQUAL, shiftPatternId);
+        if (UtilValidate.isNotEmpty(productCategoryId)) {
+            GenericValue planningGroup = EntityQuery.use(delegator)
+                    .from("ProductCategory")
+                    .where("productCategoryId", productCategoryId)
+                    .queryOne();
+            if (planningGroup == null || !"PLANNING_GROUP".equals(planningGroup.getString("productCategoryTypeId"))) {
+                return "Planning group not found: " + productCategoryId;
+            }
+            if (EntityQuery.use(delegator).from("PlanningShiftPattern")
+                    .where(EntityCondition.makeCondition(otherPattern, EntityOperator.AND,
+                            EntityCondition.makeCondition("productCategoryId", EntityOperator.EQUALS, productCategoryId)))
+                    .queryFirst() != null) {
+                return "Planning group " + productCategoryId + " already has a shift pattern";
+            }
+        }
+        if (UtilValidate.isNotEmpty(facilityId)) {
+            if (EntityQuery.use(delegator).from("Facility").where("facilityId", facilityId).cache().queryOne() == null) {
+                return "Facility not found: " + facilityId;
+            }
+            if (UtilValidate.isEmpty(productCategoryId) && EntityQuery.use(delegator).from("PlanningShiftPattern")
+                    .where(EntityCondition.makeCondition(otherPattern, EntityOperator.AND,
+                            EntityCondition.makeCondition(
+                                    EntityCondition.makeCondition("facilityId", EntityOperator.EQUALS, facilityId),
+                                    EntityOperator.AND,
+                                    EntityCondition.makeCondition("productCategoryId", EntityOperator.EQUALS, null))))
+                    .queryFirst() != null) {
+                return "Facility " + facilityId + " already has a shift pattern";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copia y valida los campos del turno desde el contexto. Con required, startTime,
+     * durationMinutes y daysOfWeek son obligatorios. Devuelve el error o null.
+     */
+    private static String setShiftFields(GenericValue shift, Map<String, ? extends Object> context, boolean required) {
+        String startTime = (String) context.get("startTime");
+        Long durationMinutes = (Long) context.get("durationMinutes");
+        String daysOfWeek = (String) context.get("daysOfWeek");
+
+        if (UtilValidate.isNotEmpty(startTime)) {
+            try {
+                shift.set("startTime", Time.valueOf(LocalTime.parse(startTime.trim())));
+            } catch (DateTimeParseException e) {
+                return "Invalid shift start time (HH:mm): " + startTime;
+            }
+        } else if (required) {
+            return "Shift start time is required";
+        }
+        if (durationMinutes != null) {
+            if (durationMinutes <= 0 || durationMinutes > MAX_DURATION_MINUTES) {
+                return "Shift duration must be between 1 and " + MAX_DURATION_MINUTES + " minutes: " + durationMinutes;
+            }
+            shift.set("durationMinutes", durationMinutes);
+        } else if (required) {
+            return "Shift duration is required";
+        }
+        if (UtilValidate.isNotEmpty(daysOfWeek)) {
+            if (ShiftTimelineEngine.parseDaysOfWeek(daysOfWeek) <= 0) {
+                return "Invalid shift days of week (digits 1-7, 1 = Monday): " + daysOfWeek;
+            }
+            shift.set("daysOfWeek", daysOfWeek.replaceAll("[, ]", ""));
+        } else if (required) {
+            return "Shift days of week are required";
+        }
+        if (context.containsKey("shiftName")) {
+            shift.set("shiftName", context.get("shiftName"));
+        }
+        if (context.get("sequenceNum") != null) {
+            shift.set("sequenceNum", context.get("sequenceNum"));
+        }
+        return null;
+    }
+}
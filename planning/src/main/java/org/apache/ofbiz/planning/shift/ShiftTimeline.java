@@ -0,0 +1,120 @@
+package org.apache.ofbiz.planning.shift;
+
+import java.time.LocalDate;
+
+/**
+ * Turnos compilados de un año para un calendario y un patrón de turnos.
+ *
+ * Los intervalos de todos los días se guardan seguidos en shiftStart/shiftEnd (segundos desde
+ * la medianoche del día, el fin puede pasar de 86400 en los turnos de noche); los del día i
+ * están en [dayOffset[i], dayOffset[i + 1]), ordenados y sin solapes. Inmutable: se comparte
+ * entre peticiones desde la caché de {@link ShiftTimelineEngine}.
+ */
+public final class ShiftTimeline {
+
+    private final String calendarId;
+    private final String shiftPatternId;
+    private final int year;
+    private final LocalDate firstDay;
+    private final int dayCount;
+    // dayOffset[i] = primer intervalo del día i; longitud dayCount + 1
+    private final int[] dayOffset;
+    private final int[] shiftStart;
+    private final int[] shiftEnd;
+    // Código de turno de cada intervalo (índice en shiftCodes)
+    private final int[] shiftCodeIndex;
+    private final String[] shiftCodes;
+    private final int[] capacitySeconds;
+
+    ShiftTimeline(String calendarId, String shiftPatternId, int year, int[] dayOffset,
+                  int[] shiftStart, int[] shiftEnd, int[] shiftCodeIndex, String[] shiftCodes) {
+        this.calendarId = calendarId;
+        this.shiftPatternId = shiftPatternId;
+        this.year = year;
+        this.firstDay = LocalDate.of(year, 1, 1);
+        this.dayCount = dayOffset.length - 1;
+        this.dayOffset = dayOffset;
+        this.shiftStart = shiftStart;
+        this.shiftEnd = shiftEnd;
+        this.shiftCodeIndex = shiftCodeIndex;
+        this.shiftCodes = shiftCodes;
+        this.capacitySeconds = new int[dayCount];
+        for (int day = 0; day < dayCount; day++) {
+            for (int shift = dayOffset[day]; shift < dayOffset[day + 1]; shift++) {
+                capacitySeconds[day] += shiftEnd[shift] - shiftStart[shift];
+            }
+        }
+    }
+
+    public String getCalendarId() {
+        return calendarId;
+    }
+
+    /**
+     * Patrón compilado, o null si los turnos salen de la jornada del calendario.
+     */
+    public String getShiftPatternId() {
+        return shiftPatternId;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    /**
+     * Índice del día dentro del año (0 = 1 de enero).
+     */
+    public int dayIndex(LocalDate date) {
+        return date.getDayOfYear() - 1;
+    }
+
+    public LocalDate dateOf(int dayIndex) {
+        return firstDay.plusDays(dayIndex);
+    }
+
+    public int getShiftCount(int dayIndex) {
+        return dayOffset[dayIndex + 1] - dayOffset[dayIndex];
+    }
+
+    public int getShiftStart(int dayIndex, int shift) {
+        return shiftStart[dayOffset[dayIndex] + shift];
+    }
+
+    public int getShiftEnd(int dayIndex, int shift) {
+        return shiftEnd[dayOffset[dayIndex] + shift];
+    }
+
+    public String getShiftCode(int dayIndex, int shift) {
+        return shiftCodes[shiftCodeIndex[dayOffset[dayIndex] + shift]];
+    }
+
+    /**
+     * Turnos del día como {inicio, fin}. Devuelve arrays nuevos que el llamador puede guardar.
+     */
+    public int[][] getShiftWindows(int dayIndex) {
+        int[][] windows = new int[getShiftCount(dayIndex)][];
+        for (int shift = 0; shift < windows.length; shift++) {
+            int index = dayOffset[dayIndex] + shift;
+            windows[shift] = new int[] {shiftStart[index], shiftEnd[index]};
+        }
+        return windows;
+    }
+
+    /**
+     * Suma de la duración de los turnos del día en segundos.
+     */
+    public int getCapacitySeconds(int dayIndex) {
+        return capacitySeconds[dayIndex];
+    }
+
+    /**
+     * Copia la capacidad de [fromIndex, fromIndex + length) en target a partir de offset.
+     */
+    public void copyCapacitySeconds(int fromIndex, int[] target, int offset, int length) {
+        System.arraycopy(capacitySeconds, fromIndex, target, offset, length);
+    }
+}
@@ -0,0 +1,327 @@
+package org.apache.ofbiz.planning.shift;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.calendar.WorkingCalendarEngine;
+import org.apache.ofbiz.planning.calendar.WorkingCalendarYear;
+
+import java.sql.Time;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compilador de turnos: combina un patrón de turnos (PlanningShiftPattern / PlanningShift)
+ * con el calendario laboral de la máquina en un {@link ShiftTimeline} por año.
+ *
+ * Reglas de compilación de cada día:
+ *  - Si el calendario no tiene capacidad ese día (festivo, fin de semana), no hay turnos.
+ *  - Con patrón, se trabajan los turnos del patrón para ese día de la semana. Si el día es
+ *    de excepción con menos capacidad que la semana tipo, los turnos se recortan en orden
+ *    hasta esa capacidad.
+ *  - Sin patrón, la jornada del calendario (inicio y capacidad) se parte en turnos de
+ *    planning.daily.shift.seconds.
+ *
+ * Los turnos compilados se guardan en el UtilCache "planning.ShiftTimeline" por (calendario,
+ * patrón, año); las ECAs sobre los patrones, los turnos y el calendario lo vacían al
+ * confirmarse la transacción. Unos turnos compilados mientras se vaciaba no se guardan.
+ */
+public final class ShiftTimelineEngine {
+
+    public static final String module = ShiftTimelineEngine.class.getName();
+
+    public static final String CACHE_NAME = "planning.ShiftTimeline";
+
+    private static final String NO_PATTERN = "_NA_";
+
+    private static final UtilCache<String, ShiftTimeline> timelineCache =
+            UtilCache.createUtilCache(CACHE_NAME, 1000, 0L);
+
+    // Se incrementa en cada clear(); los turnos compilados antes no se guardan
+    private static final AtomicLong generation = new AtomicLong();
+
+    private ShiftTimelineEngine() {
+    }
+
+    /**
+     * Turnos compilados del año, o null si el calendario no existe.
+     *
+     * @param shiftPatternId patrón de turnos, o null para partir la jornada del calendario
+     */
+    public static ShiftTimeline getTimeline(Delegator delegator, String calendarId, String shiftPatternId, int year)
+            throws GenericEntityException {
+        String cacheKey = delegator.getDelegatorName() + "::" + calendarId + "::"
+                + (shiftPatternId != null ? shiftPatternId : NO_PATTERN) + "::" + year;
+        ShiftTimeline timeline = timelineCache.get(cacheKey);
+        if (timeline == null) {
+            long loadGeneration = generation.get();
+            timeline = compile(delegator, calendarId, shiftPatternId, year);
+            if (timeline == null) {
+                return null;
+            }
+            timeline = timelineCache.putIfAbsentAndGet(cacheKey, timeline);
+            if (generation.get() != loadGeneration) {
+                timelineCache.remove(cacheKey);
+            }
+        }
+        return timeline;
+    }
+
+    /**
+     * Turnos {inicio, fin} del día. Sin calendario no hay turnos.
+     */
+    public static int[][] getShiftWindows(Delegator delegator, String calendarId, String shiftPatternId, LocalDate date)
+            throws GenericEntityException {
+        if (UtilValidate.isEmpty(calendarId)) {
+            return new int[0][];
+        }
+        ShiftTimeline timeline = getTimeline(delegator, calendarId, shiftPatternId, date.getYear());
+        if (timeline == null) {
+            return new int[0][];
+        }
+        return timeline.getShiftWindows(timeline.dayIndex(date));
+    }
+
+    /**
+     * Capacidad en segundos de cada día de [fromDate, thruDate) según los turnos; el índice 0
+     * es fromDate. Devuelve null si el calendario no existe.
+     */
+    public static int[] dailyCapacitySeconds(Delegator delegator, String calendarId, String shiftPatternId,
+                                             LocalDate fromDate, LocalDate thruDate) throws GenericEntityException {
+        if (shiftPatternId == null) {
+            // Partir la jornada en turnos no cambia su capacidad
+            return WorkingCalendarEngine.dailyCapacitySeconds(delegator, calendarId, fromDate, thruDate);
+        }
+        int dayCount = (int) Math.max(0L, ChronoUnit.DAYS.between(fromDate, thruDate));
+        int[] capacity = new int[dayCount];
+        int offset = 0;
+        LocalDate cursor = fromDate;
+        while (offset < dayCount) {
+            ShiftTimeline timeline = getTimeline(delegator, calendarId, shiftPatternId, cursor.getYear());
+            if (timeline == null) {
+                return null;
+            }
+            int from = timeline.dayIndex(cursor);
+            int length = Math.min(timeline.getDayCount() - from, dayCount - offset);
+            timeline.copyCapacitySeconds(from, capacity, offset, length);
+            offset += length;
+            cursor = LocalDate.of(cursor.getYear() + 1, 1, 1);
+        }
+        return capacity;
+    }
+
+    /**
+     * Patrón de turnos que aplica: el del grupo de planificación o, si no tiene, el de la
+     * facility (sin grupo). Devuelve null si no hay ninguno.
+     */
+    public static String resolveShiftPatternId(Delegator delegator, String productCategoryId, String facilityId)
+            throws GenericEntityException {
+        if (UtilValidate.isNotEmpty(productCategoryId)) {
+            GenericValue pattern = EntityQuery.use(delegator)
+                    .select("shiftPatternId")
+                    .from("PlanningShiftPattern")
+                    .where("productCategoryId", productCategoryId)
+                    .cache()
+                    .queryFirst();
+            if (pattern != null) {
+                return pattern.getString("shiftPatternId");
+            }
+        }
+        if (UtilValidate.isNotEmpty(facilityId)) {
+            GenericValue pattern = EntityQuery.use(delegator)
+                    .select("shiftPatternId")
+                    .from("PlanningShiftPattern")
+                    .where(EntityCondition.makeCondition("facilityId", EntityOperator.EQUALS, facilityId),
+                           EntityCondition.makeCondition("productCategoryId", EntityOperator.EQUALS, null))
+                    .cache()
+                    .queryFirst();
+            if (pattern != null) {
+                return pattern.getString("shiftPatternId");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Días de la semana de un turno (dígitos ISO 1-7, se ignoran separadores) como máscara de
+     * bits por DayOfWeek.ordinal(). Devuelve -1 si hay algún carácter no válido.
+     */
+    public static int parseDaysOfWeek(String daysOfWeek) {
+        if (UtilValidate.isEmpty(daysOfWeek)) {
+            return 0;
+        }
+        int mask = 0;
+        for (int i = 0; i < daysOfWeek.length(); i++) {
+            char c = daysOfWeek.charAt(i);
+            if (c >= '1' && c <= '7') {
+                mask |= 1 << (c - '1');
+            } else if (c != ',' && c != ' ') {
+                return -1;
+            }
+        }
+        return mask;
+    }
+
+    public static void clear() {
+        generation.incrementAndGet();
+        timelineCache.clear();
+    }
+
+    private static ShiftTimeline compile(Delegator delegator, String calendarId, String shiftPatternId, int year)
+            throws GenericEntityException {
+        WorkingCalendarYear calendarYear = WorkingCalendarEngine.getYear(delegator, calendarId, year);
+        if (calendarYear == null) {
+            return null;
+        }
+        int dayCount = calendarYear.getDayCount();
+        int[] dayOffset = new int[dayCount + 1];
+        List<int[]> intervals = new ArrayList<>();
+        Map<String, Integer> codeIndex = new LinkedHashMap<>();
+
+        if (shiftPatternId == null) {
+            // Jornada del calendario partida en turnos de longitud fija
+            int shiftSeconds = UtilProperties.getPropertyAsInteger("planning", "planning.daily.shift.seconds", 28800);
+            for (int day = 0; day < dayCount; day++) {
+                int start = calendarYear.getStartSeconds(day);
+                int end = start + calendarYear.getCapacitySeconds(day);
+                int shift = 0;
+                for (int shiftStart = start; shiftStart < end; shiftStart += shiftSeconds, shift++) {
+                    int code = codeIndex.computeIfAbsent(String.valueOf(shift + 1), k -> codeIndex.size());
+                    intervals.add(new int[] {shiftStart, Math.min(end, shiftStart + shiftSeconds), code});
+                }
+                dayOffset[day + 1] = intervals.size();
+            }
+        } else {
+            List<List<int[]>> weekShifts = loadWeekShifts(delegator, shiftPatternId, codeIndex);
+            int[] weekCapacity = loadWeekCapacitySeconds(delegator, calendarId);
+            LocalDate day = LocalDate.of(year, 1, 1);
+            for (int i = 0; i < dayCount; i++, day = day.plusDays(1)) {
+                int weekDay = day.getDayOfWeek().ordinal();
+                int capacity = calendarYear.getCapacitySeconds(i);
+                // Solo los días de excepción reducidos limitan los turnos del patrón
+                int remaining = capacity < weekCapacity[weekDay] ? capacity : Integer.MAX_VALUE;
+                if (capacity > 0) {
+                    for (int[] shift : weekShifts.get(weekDay)) {
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        int length = Math.min(shift[1] - shift[0], remaining);
+                        intervals.add(new int[] {shift[0], shift[0] + length, shift[2]});
+                        remaining -= length;
+                    }
+                }
+                dayOffset[i + 1] = intervals.size();
+            }
+        }
+
+        int[] shiftStart = new int[intervals.size()];
+        int[] shiftEnd = new int[intervals.size()];
+        int[] shiftCode = new int[intervals.size()];
+        for (int i = 0; i < intervals.size(); i++) {
+            int[] interval = intervals.get(i);
+            shiftStart[i] = interval[0];
+            shiftEnd[i] = interval[1];
+            shiftCode[i] = interval[2];
+        }
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Compiled shift timeline for calendar " + calendarId + ", pattern " + shiftPatternId
+                    + ", year " + year + ": " + intervals.size() + " shifts", module);
+        }
+        return new ShiftTimeline(calendarId, shiftPatternId, year, dayOffset, shiftStart, shiftEnd, shiftCode,
+                codeIndex.keySet().toArray(new String[codeIndex.size()]));
+    }
+
+    /**
+     * Turnos {inicio, fin, código} del patrón por DayOfWeek.ordinal(), ordenados por inicio.
+     * Si dos turnos se solapan, el posterior empieza al acabar el anterior.
+     */
+    private static List<List<int[]>> loadWeekShifts(Delegator delegator, String shiftPatternId,
+                                                     Map<String, Integer> codeIndex) throws GenericEntityException {
+        List<GenericValue> shifts = EntityQuery.use(delegator)
+                .from("PlanningShift")
+                .where("shiftPatternId", shiftPatternId)
+                .orderBy("sequenceNum", "shiftCode")
+                .cache()
+                .queryList();
+        List<List<int[]>> weekShifts = new ArrayList<>(7);
+        for (int weekDay = 0; weekDay < 7; weekDay++) {
+            weekShifts.add(new ArrayList<int[]>());
+        }
+        for (GenericValue shift : shifts) {
+            Time startTime = shift.getTime("startTime");
+            Long durationMinutes = shift.getLong("durationMinutes");
+            int days = parseDaysOfWeek(shift.getString("daysOfWeek"));
+            if (startTime == null || durationMinutes == null || durationMinutes <= 0 || days <= 0) {
+                Debug.logWarning("Ignoring incomplete shift " + shift.getString("shiftCode") + " of pattern "
+                        + shiftPatternId, module);
+                continue;
+            }
+            int start = startTime.toLocalTime().toSecondOfDay();
+            int end = start + (int) (durationMinutes * 60L);
+            int code = codeIndex.computeIfAbsent(shift.getString("shiftCode"), k -> codeIndex.size());
+            for (int weekDay = 0; weekDay < 7; weekDay++) {
+                if ((days & (1 << weekDay)) != 0) {
+                    weekShifts.get(weekDay).add(new int[] {start, end, code});
+                }
+            }
+        }
+        for (List<int[]> dayShifts : weekShifts) {
+            dayShifts.sort(Comparator.comparingInt(shift -> shift[0]));
+            int previousEnd = Integer.MIN_VALUE;
+            for (int i = 0; i < dayShifts.size(); i++) {
+                int[] shift = dayShifts.get(i);
+                if (shift[0] < previousEnd) {
+                    shift[0] = previousEnd;
+                }
+                if (shift[1] <= shift[0]) {
+                    dayShifts.remove(i--);
+                    continue;
+                }
+                previousEnd = shift[1];
+            }
+        }
+        return weekShifts;
+    }
+
+    /**
+     * Capacidad en segundos de la semana tipo del calendario por DayOfWeek.ordinal().
+     */
+    private static int[] loadWeekCapacitySeconds(Delegator delegator, String calendarId) throws GenericEntityException {
+        int[] weekCapacity = new int[7];
+        GenericValue calendar = EntityQuery.use(delegator)
+                .from("TechDataCalendar")
+                .where("calendarId", calendarId)
+                .cache()
+                .queryOne();
+        if (calendar == null || calendar.get("calendarWeekId") == null) {
+            return weekCapacity;
+        }
+        GenericValue calendarWeek = EntityQuery.use(delegator)
+                .from("TechDataCalendarWeek")
+                .where("calendarWeekId", calendar.getString("calendarWeekId"))
+                .cache()
+                .queryOne();
+        if (calendarWeek == null) {
+            return weekCapacity;
+        }
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            Double capacity = calendarWeek.getDouble(dayOfWeek.name().toLowerCase() + "Capacity");
+            weekCapacity[dayOfWeek.ordinal()] = capacity != null ? (int) (capacity.longValue() / 1000L) : 0;
+        }
+        return weekCapacity;
+    }
+}
@@ -0,0 +1,331 @@
+package org.apache.ofbiz.planning.snapshot;
+
+import org.apache.ofbiz.planning.weekly.WeeklyPlan;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Foto de un plan semanal ya reconstruida: carga y capacidad en horas por máquina y semana,
+ * redondeadas a centésimas como se guardan en PlanningSnapshotCell.
+ *
+ * Las máquinas van ordenadas por fixedAssetId y las matrices son arrays primitivos
+ * [máquina][semana]; NaN = celda sin dato. Es inmutable, así que se comparte desde la caché.
+ */
+public final class PlanSnapshot {
+
+    // Diferencias por debajo de media centésima son del redondeo, no cambios
+    private static final double EPSILON = 0.005;
+
+    public static final String ADDED = "ADDED";
+    public static final String REMOVED = "REMOVED";
+    public static final String CHANGED = "CHANGED";
+
+    private final String snapshotId;
+    private final String facilityId;
+    private final LocalDate horizonStart;
+    private final int weekCount;
+    private final String[] machineIds;
+    private final double[][] loadHours;
+    private final double[][] capacityHours;
+
+    private PlanSnapshot(String snapshotId, String facilityId, LocalDate horizonStart, int weekCount,
+                         String[] machineIds, double[][] loadHours, double[][] capacityHours) {
+        this.snapshotId = snapshotId;
+        this.facilityId = facilityId;
+        this.horizonStart = horizonStart;
+        this.weekCount = weekCount;
+        this.machineIds = machineIds;
+        this.loadHours = loadHours;
+        this.capacityHours = capacityHours;
+    }
+
+    /**
+     * Foto de un plan recién calculado.
+     */
+    public static PlanSnapshot of(String snapshotId, WeeklyPlan plan) {
+        TreeMap<String, Integer> sorted = new TreeMap<>();
+        for (int machine = 0; machine < plan.getMachineCount(); machine++) {
+            sorted.put(plan.getMachineId(machine), machine);
+        }
+        int weekCount = plan.getWeekCount();
+        String[] machineIds = new String[sorted.size()];
+        double[][] load = new double[sorted.size()][weekCount];
+        double[][] capacity = new double[sorted.size()][weekCount];
+        int row = 0;
+        for (Map.Entry<String, Integer> entry : sorted.entrySet()) {
+            machineIds[row] = entry.getKey();
+            for (int week = 0; week < weekCount; week++) {
+                load[row][week] = round(plan.getLoadHours(entry.getValue(), week));
+                capacity[row][week] = round(plan.getCapacityHours(entry.getValue(), week));
+            }
+            row++;
+        }
+        return new PlanSnapshot(snapshotId, plan.getFacilityId(), plan.getHorizonStart(), weekCount,
+                machineIds, load, capacity);
+    }
+
+    /**
+     * Reconstruye una foto a partir de la de su base y sus celdas guardadas: las celdas de la
+     * base que caen dentro del horizonte de la foto se copian y las celdas propias las
+     * sustituyen (valores null = celda quitada). Las máquinas que se quedan sin ninguna celda
+     * desaparecen.
+     *
+     * @param base  foto base ya reconstruida, o null si la foto es una línea base completa
+     * @param cells celdas de la foto: fixedAssetId, weekStart, loadHours, capacityHours
+     */
+    static PlanSnapshot rebuild(String snapshotId, String facilityId, LocalDate horizonStart, int weekCount,
+                                PlanSnapshot base, List<? extends Map<String, Object>> cells) {
+        TreeMap<String, double[][]> machines = new TreeMap<>();
+        if (base != null) {
+            int offset = (int) ChronoUnit.WEEKS.between(horizonStart, base.horizonStart);
+            for (int machine = 0; machine < base.machineIds.length; machine++) {
+                double[][] values = emptyRow(weekCount);
+                for (int week = Math.max(0, offset); week < Math.min(weekCount, offset + base.weekCount); week++) {
+                    values[0][week] = base.loadHours[machine][week - offset];
+                    values[1][week] = base.capacityHours[machine][week - offset];
+                }
+                machines.put(base.machineIds[machine], values);
+            }
+        }
+        for (Map<String, Object> cell : cells) {
+            Date weekStart = (Date) cell.get("weekStart");
+            int week = (int) ChronoUnit.WEEKS.between(horizonStart, weekStart.toLocalDate());
+            if (week < 0 || week >= weekCount) {
+                continue;
+            }
+            double[][] values = machines.computeIfAbsent((String) cell.get("fixedAssetId"), key -> emptyRow(weekCount));
+            values[0][week] = toDouble(cell.get("loadHours"));
+            values[1][week] = toDouble(cell.get("capacityHours"));
+        }
+
+        List<String> machineIds = new ArrayList<>(machines.size());
+        List<double[]> load = new ArrayList<>(machines.size());
+        List<double[]> capacity = new ArrayList<>(machines.size());
+        for (Map.Entry<String, double[][]> entry : machines.entrySet()) {
+            if (!isEmpty(entry.getValue()[0]) || !isEmpty(entry.getValue()[1])) {
+                machineIds.add(entry.getKey());
+                load.add(entry.getValue()[0]);
+                capacity.add(entry.getValue()[1]);
+            }
+        }
+        return new PlanSnapshot(snapshotId, facilityId, horizonStart, weekCount, machineIds.toArray(new String[0]),
+                load.toArray(new double[0][]), capacity.toArray(new double[0][]));
+    }
+
+    public String getSnapshotId() {
+        return snapshotId;
+    }
+
+    public String getFacilityId() {
+        return facilityId;
+    }
+
+    public LocalDate getHorizonStart() {
+        return horizonStart;
+    }
+
+    public int getWeekCount() {
+        return weekCount;
+    }
+
+    public int getMachineCount() {
+        return machineIds.length;
+    }
+
+    public String getMachineId(int machine) {
+        return machineIds[machine];
+    }
+
+    /**
+     * Índice de la máquina, o -1 si no está en la foto.
+     */
+    public int machineIndex(String fixedAssetId) {
+        int machine = Arrays.binarySearch(machineIds, fixedAssetId);
+        return machine >= 0 ? machine : -1;
+    }
+
+    public double getLoadHours(int machine, int week) {
+        return loadHours[machine][week];
+    }
+
+    public double getCapacityHours(int machine, int week) {
+        return capacityHours[machine][week];
+    }
+
+    /**
+     * Celdas con dato (carga o capacidad) de la foto.
+     */
+    public int getCellCount() {
+        int count = 0;
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            for (int week = 0; week < weekCount; week++) {
+                if (!Double.isNaN(loadHours[machine][week]) || !Double.isNaN(capacityHours[machine][week])) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Celdas que cambian de la foto from a la foto to, en orden de máquina y semana. Las
+     * semanas se casan por fecha, así que se pueden comparar fotos con horizontes distintos;
+     * solo se recorren las semanas del horizonte de to si onlyTargetHorizon.
+     *
+     * Cada fila: fixedAssetId, weekStart, changeType (ADDED, REMOVED, CHANGED),
+     * fromLoadHours, toLoadHours, fromCapacityHours, toCapacityHours (null = sin dato).
+     *
+     * @param fixedAssetId solo esa máquina, o null para todas
+     */
+    public static List<Map<String, Object>> diff(PlanSnapshot from, PlanSnapshot to, boolean onlyTargetHorizon,
+                                                 String fixedAssetId) {
+        LocalDate start = to.horizonStart;
+        LocalDate end = to.horizonStart.plusWeeks(to.weekCount);
+        if (!onlyTargetHorizon) {
+            if (from.horizonStart.isBefore(start)) {
+                start = from.horizonStart;
+            }
+            if (from.horizonStart.plusWeeks(from.weekCount).isAfter(end)) {
+                end = from.horizonStart.plusWeeks(from.weekCount);
+            }
+        }
+        int weeks = (int) ChronoUnit.WEEKS.between(start, end);
+        int fromOffset = (int) ChronoUnit.WEEKS.between(from.horizonStart, start);
+        int toOffset = (int) ChronoUnit.WEEKS.between(to.horizonStart, start);
+
+        List<Map<String, Object>> changes = new ArrayList<>();
+        // Recorrido en paralelo de las dos listas de máquinas ordenadas
+        int i = 0;
+        int j = 0;
+        while (i < from.machineIds.length || j < to.machineIds.length) {
+            int cmp = i >= from.machineIds.length ? 1
+                    : j >= to.machineIds.length ? -1
+                    : from.machineIds[i].compareTo(to.machineIds[j]);
+            int fromMachine = cmp <= 0 ? i++ : -1;
+            int toMachine = cmp >= 0 ? j++ : -1;
+            String machineId = fromMachine >= 0 ? from.machineIds[fromMachine] : to.machineIds[toMachine];
+            if (fixedAssetId != null && !fixedAssetId.equals(machineId)) {
+                continue;
+            }
+            for (int week = 0; week < weeks; week++) {
+                double fromLoad = from.cell(from.loadHours, fromMachine, week + fromOffset);
+                double fromCapacity = from.cell(from.capacityHours, fromMachine, week + fromOffset);
+                double toLoad = to.cell(to.loadHours, toMachine, week + toOffset);
+                double toCapacity = to.cell(to.capacityHours, toMachine, week + toOffset);
+                boolean fromEmpty = Double.isNaN(fromLoad) && Double.isNaN(fromCapacity);
+                boolean toEmpty = Double.isNaN(toLoad) && Double.isNaN(toCapacity);
+                String changeType;
+                if (fromEmpty && toEmpty) {
+                    continue;
+                } else if (fromEmpty) {
+                    changeType = ADDED;
+                } else if (toEmpty) {
+                    changeType = REMOVED;
+                } else if (differs(fromLoad, toLoad) || differs(fromCapacity, toCapacity)) {
+                    changeType = CHANGED;
+                } else {
+                    continue;
+                }
+                Map<String, Object> change = new HashMap<>();
+                change.put("fixedAssetId", machineId);
+                change.put("weekStart", Date.valueOf(start.plusWeeks(week)));
+                change.put("changeType", changeType);
+                change.put("fromLoadHours", amount(fromLoad));
+                change.put("toLoadHours", amount(toLoad));
+                change.put("fromCapacityHours", amount(fromCapacity));
+                change.put("toCapacityHours", amount(toCapacity));
+                changes.add(change);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Resumen por máquina para las pantallas, con las mismas columnas de carga que
+     * WeeklyPlan.toMachineRows.
+     */
+    public List<Map<String, Object>> toMachineRows() {
+        List<Map<String, Object>> rows = new ArrayList<>(machineIds.length);
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            double load = 0;
+            double capacity = 0;
+            int overloadedWeeks = 0;
+            int peakWeek = -1;
+            for (int week = 0; week < weekCount; week++) {
+                double weekLoad = zeroIfNaN(loadHours[machine][week]);
+                double weekCapacity = zeroIfNaN(capacityHours[machine][week]);
+                load += weekLoad;
+                capacity += weekCapacity;
+                if (weekLoad > weekCapacity + EPSILON) {
+                    overloadedWeeks++;
+                }
+                if (peakWeek < 0 || weekLoad > zeroIfNaN(loadHours[machine][peakWeek])) {
+                    peakWeek = week;
+                }
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("fixedAssetId", machineIds[machine]);
+            row.put("loadHours", round(load));
+            row.put("capacityHours", round(capacity));
+            row.put("utilizationPct", capacity > 0 ? round(load * 100.0 / capacity) : null);
+            row.put("overloadedWeeks", overloadedWeeks);
+            if (peakWeek >= 0) {
+                row.put("peakWeekStart", Date.valueOf(horizonStart.plusWeeks(peakWeek)));
+                row.put("peakWeekLoadHours", amount(loadHours[machine][peakWeek]));
+                row.put("peakWeekCapacityHours", amount(capacityHours[machine][peakWeek]));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private double cell(double[][] values, int machine, int week) {
+        return machine >= 0 && week >= 0 && week < weekCount ? values[machine][week] : Double.NaN;
+    }
+
+    private static boolean differs(double a, double b) {
+        return Double.isNaN(a) != Double.isNaN(b) || Math.abs(a - b) > EPSILON;
+    }
+
+    private static double[][] emptyRow(int weekCount) {
+        double[][] values = new double[2][weekCount];
+        Arrays.fill(values[0], Double.NaN);
+        Arrays.fill(values[1], Double.NaN);
+        return values;
+    }
+
+    private static boolean isEmpty(double[] values) {
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    private static double zeroIfNaN(double value) {
+        return Double.isNaN(value) ? 0 : value;
+    }
+
+    static BigDecimal amount(double value) {
+        return Double.isNaN(value) ? null : BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,178 @@
+package org.apache.ofbiz.planning.snapshot;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.planning.job.PlanningJob;
+import org.apache.ofbiz.planning.job.PlanningJobManager;
+import org.apache.ofbiz.planning.weekly.WeeklyPlan;
+import org.apache.ofbiz.planning.weekly.WeeklyPlanEngine;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fotos de planes semanales ({@link PlanSnapshotStore}): guardar, abrir y comparar.
+ * La comparación devuelve solo las celdas que cambian, no las matrices completas.
+ */
+public class PlanSnapshotServices {
+
+    public static final String module = PlanSnapshotServices.class.getName();
+
+    /**
+     * Guardar la foto de un plan semanal.
+     *
+     * IN:
+     *  - weeklyPlan  (WeeklyPlan, opcional): plan ya calculado
+     *  - jobId       (String, opcional): ejecución WEEKLY_PLAN terminada de la que tomar el plan
+     *  - facilityId  (String, opcional): si no hay plan ni ejecución, facility a planificar; vacío = toda la planta
+     *  - fromDate    (java.sql.Date, opcional): el horizonte empieza el lunes de su semana (por defecto hoy)
+     *  - weekCount   (Integer, opcional): semanas del horizonte (por defecto 52)
+     *  - description (String, opcional)
+     *
+     * OUT:
+     *  - snapshotId     (String): foto creada
+     *  - baseSnapshotId (String): foto de la que es delta; vacío = línea base
+     *  - cellCount      (Integer): celdas guardadas
+     *  - planCellCount  (Integer): celdas del plan
+     */
+    public static Map<String, Object> createPlanningSnapshot(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        WeeklyPlan plan = (WeeklyPlan) context.get("weeklyPlan");
+        String jobId = (String) context.get("jobId");
+        String facilityId = (String) context.get("facilityId");
+        Date fromDate = (Date) context.get("fromDate");
+        Integer weekCount = (Integer) context.get("weekCount");
+        String description = (String) context.get("description");
+
+        if (plan == null && UtilValidate.isNotEmpty(jobId)) {
+            PlanningJob job = PlanningJobManager.getJob(jobId);
+            if (job == null || !(job.getResult() instanceof WeeklyPlan)) {
+                return ServiceUtil.returnError("Planning job " + jobId + " is not a finished weekly planning job");
+            }
+            plan = (WeeklyPlan) job.getResult();
+        }
+        int weeks = weekCount != null ? weekCount : WeeklyPlanEngine.DEFAULT_WEEK_COUNT;
+        if (plan == null && (weeks <= 0 || weeks > 104)) {
+            return ServiceUtil.returnError("weekCount must be between 1 and 104: " + weeks);
+        }
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("createPlanningSnapshot");
+        try {
+            if (plan == null) {
+                plan = WeeklyPlanEngine.build(delegator, UtilValidate.isNotEmpty(facilityId) ? facilityId : null,
+                        fromDate != null ? fromDate.toLocalDate() : LocalDate.now(), weeks);
+            }
+            GenericValue header = PlanSnapshotStore.create(delegator, plan, description);
+            timer.rows(header.getLong("cellCount").intValue());
+
+            Map<String, Object> result = ServiceUtil.returnSuccess("Plan snapshot " + header.getString("snapshotId") + " created");
+            result.put("snapshotId", header.getString("snapshotId"));
+            result.put("baseSnapshotId", header.getString("baseSnapshotId"));
+            result.put("cellCount", header.getLong("cellCount").intValue());
+            result.put("planCellCount", header.getLong("planCellCount").intValue());
+            return result;
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error creating plan snapshot: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error creating plan snapshot: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Abrir una foto: la reconstruye desde su línea base y sus deltas (o la toma de la caché).
+     *
+     * IN:
+     *  - snapshotId (String): foto (requerido)
+     *
+     * OUT:
+     *  - snapshot     (GenericValue): cabecera PlanningSnapshot
+     *  - planSnapshot (PlanSnapshot): matrices de carga y capacidad
+     *  - machineRows  (List<Map<String,Object>>): resumen por máquina
+     */
+    public static Map<String, Object> getPlanningSnapshot(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String snapshotId = (String) context.get("snapshotId");
+
+        try {
+            GenericValue header = EntityQuery.use(delegator).from("PlanningSnapshot").where("snapshotId", snapshotId).queryOne();
+            PlanSnapshot snapshot = header != null ? PlanSnapshotStore.get(delegator, snapshotId) : null;
+            if (snapshot == null) {
+                return ServiceUtil.returnError("Plan snapshot not found: " + snapshotId);
+            }
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("snapshot", header);
+            result.put("planSnapshot", snapshot);
+            result.put("machineRows", snapshot.toMachineRows());
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error loading plan snapshot " + snapshotId + ": " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error loading plan snapshot " + snapshotId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Comparar dos fotos: solo las celdas máquina/semana que cambian. Las semanas se casan por
+     * fecha, así que se puede comparar el plan de la semana pasada con el de esta.
+     *
+     * IN:
+     *  - fromSnapshotId (String): foto de partida (requerido)
+     *  - toSnapshotId   (String): foto de llegada (requerido)
+     *  - fixedAssetId   (String, opcional): solo esa máquina
+     *
+     * OUT:
+     *  - changedCells        (List<Map<String,Object>>): fixedAssetId, weekStart, changeType
+     *                        (ADDED, REMOVED, CHANGED), from/to LoadHours y CapacityHours
+     *  - changedCellCount    (Integer)
+     *  - changedMachineCount (Integer)
+     */
+    public static Map<String, Object> comparePlanningSnapshots(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String fromSnapshotId = (String) context.get("fromSnapshotId");
+        String toSnapshotId = (String) context.get("toSnapshotId");
+        String fixedAssetId = (String) context.get("fixedAssetId");
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("comparePlanningSnapshots");
+        try {
+            PlanSnapshot from = PlanSnapshotStore.get(delegator, fromSnapshotId);
+            if (from == null) {
+                return ServiceUtil.returnError("Plan snapshot not found: " + fromSnapshotId);
+            }
+            PlanSnapshot to = PlanSnapshotStore.get(delegator, toSnapshotId);
+            if (to == null) {
+                return ServiceUtil.returnError("Plan snapshot not found: " + toSnapshotId);
+            }
+            List<Map<String, Object>> changedCells = PlanSnapshot.diff(from, to, false,
+                    UtilValidate.isNotEmpty(fixedAssetId) ? fixedAssetId : null);
+            Set<Object> changedMachines = new HashSet<>();
+            for (Map<String, Object> cell : changedCells) {
+                changedMachines.add(cell.get("fixedAssetId"));
+            }
+            timer.rows(changedCells.size());
+
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("changedCells", changedCells);
+            result.put("changedCellCount", changedCells.size());
+            result.put("changedMachineCount", changedMachines.size());
+            return result;
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error comparing plan snapshots: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error comparing plan snapshots: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+}
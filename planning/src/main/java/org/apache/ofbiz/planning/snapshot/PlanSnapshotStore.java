@@ -0,0 +1,170 @@
+package org.apache.ofbiz.planning.snapshot;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningTransactions;
+import org.apache.ofbiz.planning.weekly.WeeklyPlan;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Guardado y reconstrucción de fotos de planes semanales (PlanningSnapshot /
+ * PlanningSnapshotCell).
+ *
+ * Cada foto guarda solo las celdas máquina/semana que cambian respecto a la última foto de la
+ * misma facility (baseSnapshotId), con capacidad y carga a null para las celdas que
+ * desaparecen. Se guarda una línea base completa cuando no hay foto anterior, cuando la cadena
+ * de deltas llega a planning.snapshot.max.delta.depth o cuando cambian más del
+ * planning.snapshot.baseline.pct % de las celdas; así una foto se reconstruye como mucho con
+ * esa cantidad de lecturas.
+ *
+ * Las fotos no cambian una vez guardadas, así que las reconstruidas se guardan en el UtilCache
+ * "planning.PlanSnapshot" sin caducidad.
+ */
+public final class PlanSnapshotStore {
+
+    public static final String module = PlanSnapshotStore.class.getName();
+
+    public static final String CACHE_NAME = "planning.PlanSnapshot";
+
+    private static final int MAX_DELTA_DEPTH = Math.max(0,
+            UtilProperties.getPropertyAsInteger("planning", "planning.snapshot.max.delta.depth", 10));
+
+    private static final int BASELINE_PCT =
+            UtilProperties.getPropertyAsInteger("planning", "planning.snapshot.baseline.pct", 50);
+
+    private static final UtilCache<String, PlanSnapshot> snapshotCache =
+            UtilCache.createUtilCache(CACHE_NAME, 50, 0L);
+
+    private PlanSnapshotStore() {
+    }
+
+    /**
+     * Guarda la foto de un plan como delta de la última foto de su facility, o como línea
+     * base si toca. Devuelve la cabecera creada.
+     */
+    public static GenericValue create(Delegator delegator, WeeklyPlan plan, String description) throws GenericEntityException {
+        String facilityId = plan.getFacilityId();
+        GenericValue last = EntityQuery.use(delegator)
+                .from("PlanningSnapshot")
+                .where("facilityId", facilityId)
+                .orderBy("-snapshotDate", "-snapshotId")
+                .queryFirst();
+
+        String snapshotId = delegator.getNextSeqId("PlanningSnapshot");
+        PlanSnapshot snapshot = PlanSnapshot.of(snapshotId, plan);
+        int planCellCount = snapshot.getCellCount();
+
+        PlanSnapshot base = null;
+        List<Map<String, Object>> changes = null;
+        int deltaDepth = 0;
+        if (last != null && last.getLong("deltaDepth") < MAX_DELTA_DEPTH) {
+            base = get(delegator, last.getString("snapshotId"));
+            // La base vista con el horizonte nuevo: lo que falta o sobra son las celdas del delta
+            PlanSnapshot rebased = PlanSnapshot.rebuild(null, facilityId, snapshot.getHorizonStart(),
+                    snapshot.getWeekCount(), base, new ArrayList<Map<String, Object>>());
+            changes = PlanSnapshot.diff(rebased, snapshot, true, null);
+            if ((long) changes.size() * 100 > (long) planCellCount * BASELINE_PCT) {
+                base = null;
+            } else {
+                deltaDepth = last.getLong("deltaDepth").intValue() + 1;
+            }
+        }
+
+        List<GenericValue> values = new ArrayList<>();
+        GenericValue header = delegator.makeValue("PlanningSnapshot");
+        header.set("snapshotId", snapshotId);
+        header.set("facilityId", facilityId);
+        header.set("horizonStart", Date.valueOf(snapshot.getHorizonStart()));
+        header.set("weekCount", (long) snapshot.getWeekCount());
+        header.set("baseSnapshotId", base != null ? base.getSnapshotId() : null);
+        header.set("deltaDepth", (long) deltaDepth);
+        header.set("planCellCount", (long) planCellCount);
+        header.set("description", description);
+        header.set("snapshotDate", UtilDateTime.nowTimestamp());
+        values.add(header);
+
+        if (base != null) {
+            for (Map<String, Object> change : changes) {
+                values.add(makeCell(delegator, snapshotId, (String) change.get("fixedAssetId"), (Date) change.get("weekStart"),
+                        change.get("toLoadHours"), change.get("toCapacityHours")));
+            }
+        } else {
+            for (int machine = 0; machine < snapshot.getMachineCount(); machine++) {
+                for (int week = 0; week < snapshot.getWeekCount(); week++) {
+                    values.add(makeCell(delegator, snapshotId, snapshot.getMachineId(machine),
+                            Date.valueOf(snapshot.getHorizonStart().plusWeeks(week)),
+                            PlanSnapshot.amount(snapshot.getLoadHours(machine, week)),
+                            PlanSnapshot.amount(snapshot.getCapacityHours(machine, week))));
+                }
+            }
+        }
+        int cellCount = values.size() - 1;
+        header.set("cellCount", (long) cellCount);
+        delegator.storeAll(values);
+
+        // Solo se cachea si se confirma la transacción: si se deshace, la foto no existe
+        final String cacheKey = cacheKey(delegator, snapshotId);
+        PlanningTransactions.afterCommit(() -> snapshotCache.put(cacheKey, snapshot));
+        Debug.logInfo("Plan snapshot " + snapshotId + " stored for " + (facilityId != null ? facilityId : "all facilities")
+                + (base != null ? " as delta of " + base.getSnapshotId() : " as baseline") + ": "
+                + cellCount + " of " + planCellCount + " cells", module);
+        return header;
+    }
+
+    /**
+     * Foto reconstruida, o null si no existe.
+     */
+    public static PlanSnapshot get(Delegator delegator, String snapshotId) throws GenericEntityException {
+        String cacheKey = cacheKey(delegator, snapshotId);
+        PlanSnapshot snapshot = snapshotCache.get(cacheKey);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        GenericValue header = EntityQuery.use(delegator).from("PlanningSnapshot").where("snapshotId", snapshotId).queryOne();
+        if (header == null) {
+            return null;
+        }
+        PlanSnapshot base = null;
+        String baseSnapshotId = header.getString("baseSnapshotId");
+        if (baseSnapshotId != null) {
+            // La profundidad está limitada por planning.snapshot.max.delta.depth
+            base = get(delegator, baseSnapshotId);
+            if (base == null) {
+                throw new GenericEntityException("Base snapshot " + baseSnapshotId + " of plan snapshot " + snapshotId + " not found");
+            }
+        }
+        List<GenericValue> cells = EntityQuery.use(delegator)
+                .select("fixedAssetId", "weekStart", "loadHours", "capacityHours")
+                .from("PlanningSnapshotCell")
+                .where("snapshotId", snapshotId)
+                .queryList();
+        snapshot = PlanSnapshot.rebuild(snapshotId, header.getString("facilityId"), header.getDate("horizonStart").toLocalDate(),
+                header.getLong("weekCount").intValue(), base, cells);
+        return snapshotCache.putIfAbsentAndGet(cacheKey, snapshot);
+    }
+
+    private static GenericValue makeCell(Delegator delegator, String snapshotId, String fixedAssetId, Date weekStart,
+                                         Object loadHours, Object capacityHours) {
+        GenericValue cell = delegator.makeValue("PlanningSnapshotCell");
+        cell.set("snapshotId", snapshotId);
+        cell.set("fixedAssetId", fixedAssetId);
+        cell.set("weekStart", weekStart);
+        cell.set("loadHours", loadHours);
+        cell.set("capacityHours", capacityHours);
+        return cell;
+    }
+
+    private static String cacheKey(Delegator delegator, String snapshotId) {
+        return delegator.getDelegatorName() + "::" + snapshotId;
+    }
+}
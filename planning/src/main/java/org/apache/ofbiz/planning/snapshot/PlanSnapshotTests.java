@@ -0,0 +1,187 @@
+package org.apache.ofbiz.planning.snapshot;
+
+import junit.framework.TestCase;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pruebas de {@link PlanSnapshot#diff} y de la reconstrucción de una foto a partir de su
+ * base y su delta, como la guarda {@link PlanSnapshotStore}.
+ */
+public class PlanSnapshotTests extends TestCase {
+
+    private static final LocalDate START = LocalDate.of(2026, 10, 12);
+
+    public PlanSnapshotTests(String name) {
+        super(name);
+    }
+
+    public void testRebuildBaseline() {
+        PlanSnapshot snapshot = snapshot(START, 3,
+                cell("M2", 1, 5.0, 40.0),
+                cell("M1", 0, 8.0, 40.0),
+                cell("M1", 2, null, 40.0),
+                cell("M3", 0, null, null),
+                cell("M1", 3, 9.0, 40.0));
+
+        // Máquinas en orden de id; M3 solo tiene celdas vacías y la semana 3 cae fuera
+        assertEquals(2, snapshot.getMachineCount());
+        assertEquals("M1", snapshot.getMachineId(0));
+        assertEquals(1, snapshot.machineIndex("M2"));
+        assertEquals(-1, snapshot.machineIndex("M3"));
+        assertEquals(3, snapshot.getCellCount());
+        assertEquals(8.0, snapshot.getLoadHours(0, 0), 0.0);
+        assertTrue(Double.isNaN(snapshot.getLoadHours(0, 1)));
+        assertTrue(Double.isNaN(snapshot.getLoadHours(0, 2)));
+        assertEquals(40.0, snapshot.getCapacityHours(0, 2), 0.0);
+    }
+
+    public void testDiffChangeTypes() {
+        PlanSnapshot from = snapshot(START, 2,
+                cell("M1", 0, 8.0, 40.0),
+                cell("M1", 1, 10.0, 40.0),
+                cell("M2", 0, 5.0, 40.0));
+        PlanSnapshot to = snapshot(START, 2,
+                cell("M1", 0, 8.004, 40.0),
+                cell("M1", 1, 12.0, 40.0),
+                cell("M3", 0, 1.0, 40.0));
+
+        List<Map<String, Object>> changes = PlanSnapshot.diff(from, to, true, null);
+        assertEquals(3, changes.size());
+        assertChange(changes.get(0), "M1", 1, PlanSnapshot.CHANGED);
+        assertEquals(new BigDecimal("10.00"), changes.get(0).get("fromLoadHours"));
+        assertEquals(new BigDecimal("12.00"), changes.get(0).get("toLoadHours"));
+        assertChange(changes.get(1), "M2", 0, PlanSnapshot.REMOVED);
+        assertNull(changes.get(1).get("toLoadHours"));
+        assertNull(changes.get(1).get("toCapacityHours"));
+        assertChange(changes.get(2), "M3", 0, PlanSnapshot.ADDED);
+        assertNull(changes.get(2).get("fromLoadHours"));
+
+        changes = PlanSnapshot.diff(from, to, true, "M2");
+        assertEquals(1, changes.size());
+        assertChange(changes.get(0), "M2", 0, PlanSnapshot.REMOVED);
+
+        assertEquals(0, PlanSnapshot.diff(to, to, false, null).size());
+    }
+
+    public void testDiffHorizons() {
+        PlanSnapshot from = snapshot(START, 2,
+                cell("M1", 0, 8.0, 40.0),
+                cell("M1", 1, 10.0, 40.0));
+        PlanSnapshot to = snapshot(START.plusWeeks(1), 2,
+                cell("M1", 1, 10.0, 40.0),
+                cell("M1", 2, 6.0, 40.0));
+
+        // Las semanas se casan por fecha: la semana 1 de from es la 0 de to
+        List<Map<String, Object>> changes = PlanSnapshot.diff(from, to, true, null);
+        assertEquals(1, changes.size());
+        assertChange(changes.get(0), "M1", 2, PlanSnapshot.ADDED);
+
+        changes = PlanSnapshot.diff(from, to, false, null);
+        assertEquals(2, changes.size());
+        assertChange(changes.get(0), "M1", 0, PlanSnapshot.REMOVED);
+        assertChange(changes.get(1), "M1", 2, PlanSnapshot.ADDED);
+    }
+
+    public void testDeltaRebuild() {
+        PlanSnapshot base = snapshot(START, 3,
+                cell("M1", 0, 8.0, 40.0),
+                cell("M1", 1, 10.0, 40.0),
+                cell("M2", 0, 5.0, 40.0),
+                cell("M2", 2, 5.0, 40.0));
+        PlanSnapshot target = snapshot(START, 3,
+                cell("M1", 0, 8.0, 40.0),
+                cell("M1", 1, 14.0, 32.0),
+                cell("M1", 2, 2.0, 40.0),
+                cell("M3", 1, 1.0, 16.0));
+
+        assertSameCells(target, delta(base, target));
+    }
+
+    public void testDeltaRebuildShiftedHorizon() {
+        PlanSnapshot base = snapshot(START, 3,
+                cell("M1", 0, 8.0, 40.0),
+                cell("M1", 1, 10.0, 40.0),
+                cell("M1", 2, 12.0, 40.0),
+                cell("M2", 0, 5.0, 40.0));
+        // Una semana después: la semana 0 de la base queda fuera y entra una semana nueva
+        PlanSnapshot target = snapshot(START.plusWeeks(1), 3,
+                cell("M1", 1, 10.0, 40.0),
+                cell("M1", 2, 11.0, 40.0),
+                cell("M1", 3, 6.0, 40.0));
+
+        PlanSnapshot rebuilt = delta(base, target);
+        assertSameCells(target, rebuilt);
+        assertEquals(-1, rebuilt.machineIndex("M2"));
+
+        // Y una foto encadenada sobre el delta
+        PlanSnapshot next = snapshot(START.plusWeeks(2), 2,
+                cell("M1", 2, 11.0, 40.0),
+                cell("M2", 3, 3.0, 8.0));
+        assertSameCells(next, delta(rebuilt, next));
+    }
+
+    /**
+     * Guarda target como delta de base y la reconstruye, igual que PlanSnapshotStore.
+     */
+    private static PlanSnapshot delta(PlanSnapshot base, PlanSnapshot target) {
+        PlanSnapshot rebased = PlanSnapshot.rebuild(null, "F1", target.getHorizonStart(), target.getWeekCount(), base,
+                new ArrayList<Map<String, Object>>());
+        List<Map<String, Object>> cells = new ArrayList<>();
+        for (Map<String, Object> change : PlanSnapshot.diff(rebased, target, true, null)) {
+            Map<String, Object> cell = new HashMap<>();
+            cell.put("fixedAssetId", change.get("fixedAssetId"));
+            cell.put("weekStart", change.get("weekStart"));
+            cell.put("loadHours", change.get("toLoadHours"));
+            cell.put("capacityHours", change.get("toCapacityHours"));
+            cells.add(cell);
+        }
+        return PlanSnapshot.rebuild("DELTA", "F1", target.getHorizonStart(), target.getWeekCount(), base, cells);
+    }
+
+    @SafeVarargs
+    private static PlanSnapshot snapshot(LocalDate horizonStart, int weekCount, Map<String, Object>... cells) {
+        return PlanSnapshot.rebuild("BASE", "F1", horizonStart, weekCount, null, Arrays.asList(cells));
+    }
+
+    /**
+     * Celda de la semana week contada desde START.
+     */
+    private static Map<String, Object> cell(String fixedAssetId, int week, Double loadHours, Double capacityHours) {
+        Map<String, Object> cell = new HashMap<>();
+        cell.put("fixedAssetId", fixedAssetId);
+        cell.put("weekStart", Date.valueOf(START.plusWeeks(week)));
+        cell.put("loadHours", loadHours);
+        cell.put("capacityHours", capacityHours);
+        return cell;
+    }
+
+    private static void assertChange(Map<String, Object> change, String fixedAssetId, int week, String changeType) {
+        assertEquals(fixedAssetId, change.get("fixedAssetId"));
+        assertEquals(Date.valueOf(START.plusWeeks(week)), change.get("weekStart"));
+        assertEquals(changeType, change.get("changeType"));
+    }
+
+    private static void assertSameCells(PlanSnapshot expected, PlanSnapshot actual) {
+        assertEquals(expected.getHorizonStart(), actual.getHorizonStart());
+        assertEquals(expected.getWeekCount(), actual.getWeekCount());
+        assertEquals("Machine count", expected.getMachineCount(), actual.getMachineCount());
+        for (int machine = 0; machine < expected.getMachineCount(); machine++) {
+            assertEquals(expected.getMachineId(machine), actual.getMachineId(machine));
+            for (int week = 0; week < expected.getWeekCount(); week++) {
+                String where = expected.getMachineId(machine) + " week " + week;
+                assertEquals(where + " load", expected.getLoadHours(machine, week), actual.getLoadHours(machine, week), 0.0);
+                assertEquals(where + " capacity", expected.getCapacityHours(machine, week),
+                        actual.getCapacityHours(machine, week), 0.0);
+            }
+        }
+        assertEquals(0, PlanSnapshot.diff(expected, actual, false, null).size());
+    }
+}
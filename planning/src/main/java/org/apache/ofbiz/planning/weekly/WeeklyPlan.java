@@ -0,0 +1,289 @@
+package org.apache.ofbiz.planning.weekly;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resultado de la planificación semanal: matrices de carga y capacidad en horas por
+ * máquina y semana, y la demanda por referencia de la que sale la carga.
+ *
+ * Las máquinas y las referencias se identifican por su índice en machineIds y productIds;
+ * todas las matrices son arrays primitivos [fila][semana].
+ */
+public final class WeeklyPlan {
+
+    private final String facilityId;
+    private final LocalDate horizonStart;
+    private final int weekCount;
+
+    private final String[] machineIds;
+    private final String[] machineNames;
+    private final String[] machineFacilityIds;
+    private final String[] machineTypeIds;
+    // Calendario y patrón de turnos con los que se ha calculado la capacidad (null = ninguno)
+    private final String[] machineCalendarIds;
+    private final String[] machineShiftPatternIds;
+    private final Map<String, Integer> machineIndex;
+    private final double[][] capacityHours;
+    private final double[][] loadHours;
+
+    private final String[] productIds;
+    private final Map<String, Integer> productIndex;
+    // Máquina asignada a cada referencia (-1 = sin máquina) y su rendimiento
+    private final int[] refMachine;
+    private final double[] refUnitsPerHour;
+    private final double[][] refDemandUnits;
+
+    WeeklyPlan(String facilityId, LocalDate horizonStart, int weekCount,
+               String[] machineIds, String[] machineNames, String[] machineFacilityIds, String[] machineTypeIds,
+               String[] machineCalendarIds, String[] machineShiftPatternIds, double[][] capacityHours,
+               String[] productIds, int[] refMachine, double[] refUnitsPerHour, double[][] refDemandUnits) {
+        this(facilityId, horizonStart, weekCount, machineIds, machineNames, machineFacilityIds, machineTypeIds,
+                machineCalendarIds, machineShiftPatternIds, capacityHours,
+                productIds, refMachine, refUnitsPerHour, refDemandUnits, null);
+    }
+
+    /**
+     * Con loadHours ya calculada (recálculo parcial); si es null se calcula desde la demanda.
+     * Las filas de las matrices pueden ser compartidas con otro plan: ningún plan las modifica
+     * una vez construido.
+     */
+    WeeklyPlan(String facilityId, LocalDate horizonStart, int weekCount,
+               String[] machineIds, String[] machineNames, String[] machineFacilityIds, String[] machineTypeIds,
+               String[] machineCalendarIds, String[] machineShiftPatternIds, double[][] capacityHours,
+               String[] productIds, int[] refMachine, double[] refUnitsPerHour, double[][] refDemandUnits,
+               double[][] loadHours) {
+        this.facilityId = facilityId;
+        this.horizonStart = horizonStart;
+        this.weekCount = weekCount;
+        this.machineIds = machineIds;
+        this.machineNames = machineNames;
+        this.machineFacilityIds = machineFacilityIds;
+        this.machineTypeIds = machineTypeIds;
+        this.machineCalendarIds = machineCalendarIds;
+        this.machineShiftPatternIds = machineShiftPatternIds;
+        this.machineIndex = indexOf(machineIds);
+        this.capacityHours = capacityHours;
+        this.productIds = productIds;
+        this.productIndex = indexOf(productIds);
+        this.refMachine = refMachine;
+        this.refUnitsPerHour = refUnitsPerHour;
+        this.refDemandUnits = refDemandUnits;
+
+        if (loadHours != null) {
+            this.loadHours = loadHours;
+        } else {
+            this.loadHours = new double[machineIds.length][weekCount];
+            for (int ref = 0; ref < productIds.length; ref++) {
+                addRefLoad(ref, 1.0);
+            }
+        }
+    }
+
+    public String getFacilityId() {
+        return facilityId;
+    }
+
+    public LocalDate getHorizonStart() {
+        return horizonStart;
+    }
+
+    public int getWeekCount() {
+        return weekCount;
+    }
+
+    public LocalDate getWeekStart(int week) {
+        return horizonStart.plusWeeks(week);
+    }
+
+    public int getMachineCount() {
+        return machineIds.length;
+    }
+
+    public String getMachineId(int machine) {
+        return machineIds[machine];
+    }
+
+    public String getMachineName(int machine) {
+        return machineNames[machine];
+    }
+
+    public String getMachineFacilityId(int machine) {
+        return machineFacilityIds[machine];
+    }
+
+    public String getMachineTypeId(int machine) {
+        return machineTypeIds[machine];
+    }
+
+    public String getMachineCalendarId(int machine) {
+        return machineCalendarIds[machine];
+    }
+
+    public String getMachineShiftPatternId(int machine) {
+        return machineShiftPatternIds[machine];
+    }
+
+    /**
+     * Índice de la máquina, o -1 si no está en el plan.
+     */
+    public int machineIndex(String fixedAssetId) {
+        Integer index = machineIndex.get(fixedAssetId);
+        return index != null ? index : -1;
+    }
+
+    public int getRefCount() {
+        return productIds.length;
+    }
+
+    public String getProductId(int ref) {
+        return productIds[ref];
+    }
+
+    /**
+     * Índice de la referencia, o -1 si no está en el plan.
+     */
+    public int refIndex(String productId) {
+        Integer index = productIndex.get(productId);
+        return index != null ? index : -1;
+    }
+
+    public int getRefMachine(int ref) {
+        return refMachine[ref];
+    }
+
+    double getRefUnitsPerHour(int ref) {
+        return refUnitsPerHour[ref];
+    }
+
+    // Filas de las matrices, para reutilizarlas en un recálculo parcial sin copiarlas
+    double[] capacityRow(int machine) {
+        return capacityHours[machine];
+    }
+
+    double[] loadRow(int machine) {
+        return loadHours[machine];
+    }
+
+    double[] refDemandRow(int ref) {
+        return refDemandUnits[ref];
+    }
+
+    public double getCapacityHours(int machine, int week) {
+        return capacityHours[machine][week];
+    }
+
+    public double getLoadHours(int machine, int week) {
+        return loadHours[machine][week];
+    }
+
+    public double getRefDemandUnits(int ref, int week) {
+        return refDemandUnits[ref][week];
+    }
+
+    public double getTotalLoadHours(int machine) {
+        return sum(loadHours[machine]);
+    }
+
+    public double getTotalCapacityHours(int machine) {
+        return sum(capacityHours[machine]);
+    }
+
+    /**
+     * Semanas en las que la carga supera la capacidad.
+     */
+    public int getOverloadedWeekCount(int machine) {
+        int count = 0;
+        double[] load = loadHours[machine];
+        double[] capacity = capacityHours[machine];
+        for (int week = 0; week < weekCount; week++) {
+            if (load[week] > capacity[week]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Semana de mayor carga relativa a la capacidad (la primera si hay empate).
+     */
+    public int getPeakWeek(int machine) {
+        int peak = 0;
+        double peakRatio = -1;
+        double[] load = loadHours[machine];
+        double[] capacity = capacityHours[machine];
+        for (int week = 0; week < weekCount; week++) {
+            double ratio = capacity[week] > 0 ? load[week] / capacity[week] : (load[week] > 0 ? Double.MAX_VALUE : 0);
+            if (ratio > peakRatio) {
+                peakRatio = ratio;
+                peak = week;
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Resumen por máquina para las pantallas.
+     */
+    public List<Map<String, Object>> toMachineRows() {
+        List<Map<String, Object>> rows = new ArrayList<>(machineIds.length);
+        for (int machine = 0; machine < machineIds.length; machine++) {
+            double load = getTotalLoadHours(machine);
+            double capacity = getTotalCapacityHours(machine);
+            int peakWeek = getPeakWeek(machine);
+            Map<String, Object> row = new HashMap<>();
+            row.put("fixedAssetId", machineIds[machine]);
+            row.put("fixedAssetName", machineNames[machine]);
+            row.put("facilityId", machineFacilityIds[machine]);
+            row.put("fixedAssetTypeId", machineTypeIds[machine]);
+            row.put("loadHours", round(load));
+            row.put("capacityHours", round(capacity));
+            row.put("utilizationPct", capacity > 0 ? round(load * 100.0 / capacity) : null);
+            row.put("overloadedWeeks", getOverloadedWeekCount(machine));
+            row.put("peakWeekStart", java.sql.Date.valueOf(getWeekStart(peakWeek)));
+            row.put("peakWeekLoadHours", round(loadHours[machine][peakWeek]));
+            row.put("peakWeekCapacityHours", round(capacityHours[machine][peakWeek]));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Suma (factor 1) o resta (factor -1) la carga de una referencia en su máquina.
+     */
+    void addRefLoad(int ref, double factor) {
+        int machine = refMachine[ref];
+        if (machine < 0 || refUnitsPerHour[ref] <= 0) {
+            return;
+        }
+        double hoursPerUnit = factor / refUnitsPerHour[ref];
+        double[] demand = refDemandUnits[ref];
+        double[] load = loadHours[machine];
+        for (int week = 0; week < weekCount; week++) {
+            load[week] += demand[week] * hoursPerUnit;
+        }
+    }
+
+    private static Map<String, Integer> indexOf(String[] ids) {
+        Map<String, Integer> index = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            index.put(ids[i], i);
+        }
+        return index;
+    }
+
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,335 @@
+package org.apache.ofbiz.planning.weekly;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.common.PlanningExecutors;
+import org.apache.ofbiz.planning.common.PlanningProgress;
+import org.apache.ofbiz.planning.shift.ShiftTimelineEngine;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Cálculo de la planificación semanal carga/capacidad.
+ *
+ * Referencias: productos miembros de los grupos PLANNING_GROUP (de la facility, si se indica).
+ * Máquinas: FixedAsset activos (sin actualEndOfLife) de la facility.
+ * Demanda: Requirement pendientes (REQ_CREATED, REQ_APPROVED) por requiredByDate.
+ * Ruta: PlanningRefMachine, la máquina de menor sequenceNum de la referencia.
+ * Capacidad: turnos del calendario del FixedAsset (o planning.weekly.default.calendarId) con
+ * el patrón de turnos de su facility.
+ *
+ * Cada entidad se lee en una sola consulta y el cálculo se hace sobre arrays indexados.
+ */
+public final class WeeklyPlanEngine {
+
+    public static final String module = WeeklyPlanEngine.class.getName();
+
+    public static final int DEFAULT_WEEK_COUNT = 52;
+
+    /** Fases que build comunica a su PlanningProgress. */
+    public static final int PHASE_COUNT = 5;
+
+    private static final List<String> OPEN_REQUIREMENT_STATUS = UtilMisc.toList("REQ_CREATED", "REQ_APPROVED");
+
+    private WeeklyPlanEngine() {
+    }
+
+    /**
+     * Lunes de la semana de la fecha indicada: inicio del horizonte de planificación.
+     */
+    public static LocalDate weekStartOf(LocalDate date) {
+        return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    /**
+     * Calcula el plan de weekCount semanas desde el lunes de la semana de fromDate.
+     *
+     * @param facilityId facility a planificar, o null para toda la planta
+     */
+    public static WeeklyPlan build(Delegator delegator, String facilityId, LocalDate fromDate, int weekCount)
+            throws GenericEntityException {
+        return build(delegator, facilityId, fromDate, weekCount, PlanningProgress.NONE);
+    }
+
+    /**
+     * Como {@link #build(Delegator, String, LocalDate, int)}, informando de cada fase del
+     * cálculo. Si la ejecución se cancela entre fases se lanza CancellationException.
+     */
+    public static WeeklyPlan build(Delegator delegator, String facilityId, LocalDate fromDate, int weekCount,
+                                   PlanningProgress progress) throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        LocalDate horizonStart = weekStartOf(fromDate);
+
+        // 1. Máquinas
+        progress.phase("Loading machines");
+        List<GenericValue> machines = loadMachines(delegator, facilityId);
+        int machineCount = machines.size();
+        String[] machineIds = new String[machineCount];
+        String[] machineNames = new String[machineCount];
+        String[] machineFacilityIds = new String[machineCount];
+        String[] machineTypeIds = new String[machineCount];
+        String[] machineCalendarIds = new String[machineCount];
+        String[] machineShiftPatternIds = new String[machineCount];
+        Map<String, String> facilityPatterns = new HashMap<>();
+        Map<String, Integer> machineIndex = new HashMap<>(machineCount * 2);
+        String defaultCalendarId = defaultCalendarId();
+        for (int i = 0; i < machineCount; i++) {
+            GenericValue machine = machines.get(i);
+            machineIds[i] = machine.getString("fixedAssetId");
+            machineNames[i] = machine.getString("fixedAssetName");
+            machineFacilityIds[i] = machine.getString("locatedAtFacilityId");
+            machineTypeIds[i] = machine.getString("fixedAssetTypeId");
+            String calendarId = machine.getString("calendarId");
+            machineCalendarIds[i] = UtilValidate.isNotEmpty(calendarId) ? calendarId : defaultCalendarId;
+            String machineFacilityId = machineFacilityIds[i];
+            if (machineFacilityId != null && !facilityPatterns.containsKey(machineFacilityId)) {
+                facilityPatterns.put(machineFacilityId,
+                        ShiftTimelineEngine.resolveShiftPatternId(delegator, null, machineFacilityId));
+            }
+            machineShiftPatternIds[i] = machineFacilityId != null ? facilityPatterns.get(machineFacilityId) : null;
+            machineIndex.put(machineIds[i], i);
+        }
+
+        // 2. Referencias de los grupos de planificación
+        progress.phase("Loading planning references");
+        String[] productIds = loadPlanningRefs(delegator, facilityId);
+        int refCount = productIds.length;
+        Map<String, Integer> refIndex = new HashMap<>(refCount * 2);
+        for (int i = 0; i < refCount; i++) {
+            refIndex.put(productIds[i], i);
+        }
+
+        // 3. Máquina preferente de cada referencia
+        progress.phase("Loading routings");
+        int[] refMachine = new int[refCount];
+        double[] refUnitsPerHour = new double[refCount];
+        Arrays.fill(refMachine, -1);
+        loadRoutings(delegator, null, refIndex, machineIndex, refMachine, refUnitsPerHour);
+
+        // 4. Demanda por referencia y semana
+        progress.phase("Loading demand");
+        double[][] refDemandUnits = new double[refCount][weekCount];
+        loadDemand(delegator, facilityId, null, horizonStart, refIndex, refDemandUnits);
+
+        // 5. Capacidad semanal por máquina
+        progress.phase("Computing capacity");
+        double[][] capacityHours = loadCapacityHours(delegator, machineCalendarIds, machineShiftPatternIds,
+                horizonStart, weekCount);
+
+        WeeklyPlan plan = new WeeklyPlan(facilityId, horizonStart, weekCount,
+                machineIds, machineNames, machineFacilityIds, machineTypeIds,
+                machineCalendarIds, machineShiftPatternIds, capacityHours,
+                productIds, refMachine, refUnitsPerHour, refDemandUnits);
+        Debug.logInfo("Weekly plan built for " + (facilityId != null ? facilityId : "all facilities") + ": "
+                + machineCount + " machines, " + refCount + " refs, " + weekCount + " weeks in "
+                + (System.currentTimeMillis() - startTime) + " ms", module);
+        return plan;
+    }
+
+    /**
+     * Calendario de las máquinas sin calendarId (planning.weekly.default.calendarId), o null.
+     */
+    public static String defaultCalendarId() {
+        String defaultCalendarId = UtilProperties.getPropertyValue("planning", "planning.weekly.default.calendarId");
+        return UtilValidate.isNotEmpty(defaultCalendarId) ? defaultCalendarId : null;
+    }
+
+    /**
+     * Máquina preferente de cada referencia: la de menor sequenceNum que está en el plan y
+     * tiene rendimiento. Solo rellena las referencias con refMachine -1.
+     *
+     * @param productIds solo las rutas de esas referencias, o null para todas
+     */
+    static void loadRoutings(Delegator delegator, Collection<String> productIds, Map<String, Integer> refIndex,
+                             Map<String, Integer> machineIndex, int[] refMachine, double[] refUnitsPerHour)
+            throws GenericEntityException {
+        EntityQuery query = EntityQuery.use(delegator)
+                .select("productId", "fixedAssetId", "unitsPerHour")
+                .from("PlanningRefMachine")
+                .orderBy("productId", "sequenceNum");
+        if (productIds != null) {
+            if (productIds.isEmpty()) {
+                return;
+            }
+            query.where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds));
+        }
+        try (EntityListIterator routings = query.queryIterator()) {
+            GenericValue routing;
+            while ((routing = routings.next()) != null) {
+                Integer ref = refIndex.get(routing.getString("productId"));
+                Integer machine = machineIndex.get(routing.getString("fixedAssetId"));
+                BigDecimal unitsPerHour = routing.getBigDecimal("unitsPerHour");
+                if (ref == null || machine == null || refMachine[ref] >= 0
+                        || unitsPerHour == null || unitsPerHour.signum() <= 0) {
+                    continue;
+                }
+                refMachine[ref] = machine;
+                refUnitsPerHour[ref] = unitsPerHour.doubleValue();
+            }
+        }
+    }
+
+    /**
+     * Suma en refDemandUnits [referencia][semana] las unidades de los Requirement pendientes
+     * del horizonte.
+     *
+     * @param productIds solo la demanda de esas referencias, o null para todas
+     */
+    static void loadDemand(Delegator delegator, String facilityId, Collection<String> productIds, LocalDate horizonStart,
+                           Map<String, Integer> refIndex, double[][] refDemandUnits) throws GenericEntityException {
+        if (refIndex.isEmpty() || (productIds != null && productIds.isEmpty())) {
+            return;
+        }
+        int weekCount = refDemandUnits[0].length;
+        LocalDate horizonEnd = horizonStart.plusWeeks(weekCount);
+        List<EntityCondition> demandConditions = new ArrayList<>();
+        demandConditions.add(EntityCondition.makeCondition("statusId", EntityOperator.IN, OPEN_REQUIREMENT_STATUS));
+        demandConditions.add(EntityCondition.makeCondition("requiredByDate", EntityOperator.GREATER_THAN_EQUAL_TO,
+                Timestamp.valueOf(horizonStart.atStartOfDay())));
+        demandConditions.add(EntityCondition.makeCondition("requiredByDate", EntityOperator.LESS_THAN,
+                Timestamp.valueOf(horizonEnd.atStartOfDay())));
+        if (UtilValidate.isNotEmpty(facilityId)) {
+            demandConditions.add(EntityCondition.makeCondition("facilityId", EntityOperator.EQUALS, facilityId));
+        }
+        if (productIds != null) {
+            demandConditions.add(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds));
+        }
+        try (EntityListIterator requirements = EntityQuery.use(delegator)
+                .select("productId", "requiredByDate", "quantity")
+                .from("Requirement")
+                .where(demandConditions)
+                .queryIterator()) {
+            GenericValue requirement;
+            while ((requirement = requirements.next()) != null) {
+                Integer ref = refIndex.get(requirement.getString("productId"));
+                BigDecimal quantity = requirement.getBigDecimal("quantity");
+                if (ref == null || quantity == null) {
+                    continue;
+                }
+                LocalDate requiredBy = requirement.getTimestamp("requiredByDate").toLocalDateTime().toLocalDate();
+                int week = (int) (ChronoUnit.DAYS.between(horizonStart, requiredBy) / 7);
+                refDemandUnits[ref][week] += quantity.doubleValue();
+            }
+        }
+    }
+
+    private static List<GenericValue> loadMachines(Delegator delegator, String facilityId) throws GenericEntityException {
+        List<EntityCondition> conditions = new ArrayList<>();
+        conditions.add(EntityCondition.makeCondition("actualEndOfLife", EntityOperator.EQUALS, null));
+        if (UtilValidate.isNotEmpty(facilityId)) {
+            conditions.add(EntityCondition.makeCondition("locatedAtFacilityId", EntityOperator.EQUALS, facilityId));
+        }
+        return EntityQuery.use(delegator)
+                .select("fixedAssetId", "fixedAssetName", "fixedAssetTypeId", "locatedAtFacilityId", "calendarId")
+                .from("FixedAsset")
+                .where(conditions)
+                .orderBy("fixedAssetId")
+                .queryList();
+    }
+
+    /**
+     * Productos miembros vigentes de los grupos de planificación, sin repetir.
+     */
+    static String[] loadPlanningRefs(Delegator delegator, String facilityId) throws GenericEntityException {
+        // Un solo JOIN de miembros, grupo y facility: los grupos de la planta pueden ser miles,
+        // demasiados para un IN
+        List<EntityCondition> conditions = new ArrayList<>();
+        conditions.add(EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP"));
+        if (UtilValidate.isNotEmpty(facilityId)) {
+            conditions.add(EntityCondition.makeCondition("facilityId", EntityOperator.EQUALS, facilityId));
+        }
+
+        Map<String, Boolean> refs = new LinkedHashMap<>();
+        try (EntityListIterator members = EntityQuery.use(delegator)
+                .select("productId")
+                .from("PlanningGroupMember")
+                .where(conditions)
+                .filterByDate()
+                .orderBy("productId")
+                .distinct()
+                .queryIterator()) {
+            GenericValue member;
+            while ((member = members.next()) != null) {
+                refs.put(member.getString("productId"), Boolean.TRUE);
+            }
+        }
+        return refs.keySet().toArray(new String[refs.size()]);
+    }
+
+    /**
+     * Horas de capacidad [máquina][semana]. Cada par (calendario, patrón de turnos de la
+     * facility) distinto se calcula una vez, en paralelo; las máquinas sin calendario tienen
+     * capacidad 0.
+     */
+    static double[][] loadCapacityHours(final Delegator delegator, String[] machineCalendarIds,
+                                                 String[] machineShiftPatternIds, final LocalDate horizonStart,
+                                                 int weekCount) throws GenericEntityException {
+        final LocalDate horizonEnd = horizonStart.plusWeeks(weekCount);
+        List<String[]> capacityKeys = new ArrayList<>();
+        Map<String, Integer> capacityIndex = new HashMap<>();
+        int[] machineCapacity = new int[machineCalendarIds.length];
+        for (int machine = 0; machine < machineCalendarIds.length; machine++) {
+            String calendarId = machineCalendarIds[machine];
+            if (calendarId == null) {
+                machineCapacity[machine] = -1;
+                continue;
+            }
+            String shiftPatternId = machineShiftPatternIds[machine];
+            String key = calendarId + "::" + shiftPatternId;
+            Integer index = capacityIndex.get(key);
+            if (index == null) {
+                index = capacityKeys.size();
+                capacityIndex.put(key, index);
+                capacityKeys.add(new String[] {calendarId, shiftPatternId});
+            }
+            machineCapacity[machine] = index;
+        }
+
+        List<Callable<double[]>> tasks = new ArrayList<>(capacityKeys.size());
+        for (final String[] capacityKey : capacityKeys) {
+            tasks.add(() -> {
+                int[] daily = ShiftTimelineEngine.dailyCapacitySeconds(delegator, capacityKey[0], capacityKey[1],
+                        horizonStart, horizonEnd);
+                if (daily == null) {
+                    Debug.logWarning("Calendar " + capacityKey[0] + " not found; machines using it get no capacity", module);
+                    return null;
+                }
+                double[] weekly = new double[weekCount];
+                for (int day = 0; day < daily.length; day++) {
+                    weekly[day / 7] += daily[day] / 3600.0;
+                }
+                return weekly;
+            });
+        }
+        List<double[]> weeklyByKey = PlanningExecutors.invokeAll(tasks);
+
+        double[][] capacityHours = new double[machineCalendarIds.length][];
+        for (int machine = 0; machine < machineCalendarIds.length; machine++) {
+            double[] weekly = machineCapacity[machine] >= 0 ? weeklyByKey.get(machineCapacity[machine]) : null;
+            capacityHours[machine] = weekly != null ? weekly.clone() : new double[weekCount];
+        }
+        return capacityHours;
+    }
+}
@@ -0,0 +1,325 @@
+package org.apache.ofbiz.planning.weekly;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.shift.ShiftTimelineEngine;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Recálculo parcial de un plan semanal ya calculado tras cambios en máquinas, grupos de
+ * planificación o calendarios, sin volver a leer toda la planta.
+ *
+ *  - Máquinas cambiadas: se releen; las que ya no están activas en la facility del plan salen
+ *    y las nuevas entran. Se recalcula la capacidad de las nuevas y de las que cambian de
+ *    calendario o de patrón de turnos.
+ *  - Calendarios cambiados: capacidad de las máquinas que los usan, solo de las semanas de los
+ *    días de excepción cambiados si se indican.
+ *  - Grupos cambiados: se releen las referencias de los grupos de la facility; la demanda solo
+ *    de las referencias nuevas.
+ *  - Se vuelven a enrutar las referencias nuevas, las de máquinas que salen y las que tienen
+ *    ruta en máquinas que entran, y solo se recalcula la carga de las máquinas afectadas.
+ *
+ * El plan original no se modifica: el resultado es un plan nuevo que comparte con él las filas
+ * que no cambian.
+ */
+public final class WeeklyPlanUpdater {
+
+    public static final String module = WeeklyPlanUpdater.class.getName();
+
+    // Máximo de valores en una condición IN
+    private static final int MAX_IN_SIZE = 1000;
+
+    private WeeklyPlanUpdater() {
+    }
+
+    /**
+     * Plan actualizado con los cambios, o el mismo plan si no le afectan.
+     *
+     * @param fixedAssetIds          máquinas cambiadas
+     * @param planningGroupsChanged  si ha cambiado algún grupo de planificación o su facility
+     * @param calendarWeeks          calendarios cambiados con los lunes de las semanas
+     *                               afectadas; conjunto vacío = todo el horizonte
+     */
+    public static WeeklyPlan update(Delegator delegator, WeeklyPlan plan, Collection<String> fixedAssetIds,
+                                    boolean planningGroupsChanged, Map<String, Set<LocalDate>> calendarWeeks)
+            throws GenericEntityException {
+        String facilityId = plan.getFacilityId();
+        LocalDate horizonStart = plan.getHorizonStart();
+        int weekCount = plan.getWeekCount();
+        boolean changed = false;
+
+        // 1. Máquinas: las no cambiadas siguen igual; las cambiadas se releen
+        Map<String, GenericValue> assets = new HashMap<>();
+        List<String> changedIds = new ArrayList<>(fixedAssetIds);
+        for (int from = 0; from < changedIds.size(); from += MAX_IN_SIZE) {
+            for (GenericValue asset : EntityQuery.use(delegator)
+                    .select("fixedAssetId", "fixedAssetName", "fixedAssetTypeId", "locatedAtFacilityId", "calendarId", "actualEndOfLife")
+                    .from("FixedAsset")
+                    .where(EntityCondition.makeCondition("fixedAssetId", EntityOperator.IN,
+                            changedIds.subList(from, Math.min(changedIds.size(), from + MAX_IN_SIZE))))
+                    .queryList()) {
+                assets.put(asset.getString("fixedAssetId"), asset);
+            }
+        }
+        TreeMap<String, Integer> machineOrder = new TreeMap<>();
+        for (int machine = 0; machine < plan.getMachineCount(); machine++) {
+            machineOrder.put(plan.getMachineId(machine), machine);
+        }
+        for (String fixedAssetId : fixedAssetIds) {
+            GenericValue asset = assets.get(fixedAssetId);
+            boolean active = asset != null && asset.get("actualEndOfLife") == null
+                    && (facilityId == null || facilityId.equals(asset.getString("locatedAtFacilityId")));
+            if (active) {
+                machineOrder.put(fixedAssetId, plan.machineIndex(fixedAssetId));
+            } else {
+                changed |= machineOrder.remove(fixedAssetId) != null;
+            }
+        }
+
+        int machineCount = machineOrder.size();
+        String[] machineIds = new String[machineCount];
+        String[] machineNames = new String[machineCount];
+        String[] machineFacilityIds = new String[machineCount];
+        String[] machineTypeIds = new String[machineCount];
+        String[] machineCalendarIds = new String[machineCount];
+        String[] machineShiftPatternIds = new String[machineCount];
+        double[][] capacityHours = new double[machineCount][];
+        int[] oldMachineOf = new int[machineCount];
+        int[] newMachineOf = new int[plan.getMachineCount()];
+        Arrays.fill(newMachineOf, -1);
+        Map<String, Integer> machineIndex = new HashMap<>(machineCount * 2);
+        List<String> addedMachineIds = new ArrayList<>();
+        List<Integer> capacityMachines = new ArrayList<>();
+        Map<LocalDate, List<Integer>> capacityWeeks = new TreeMap<>();
+        Map<String, String> facilityPatterns = new HashMap<>();
+        String defaultCalendarId = WeeklyPlanEngine.defaultCalendarId();
+
+        int machine = 0;
+        for (Map.Entry<String, Integer> entry : machineOrder.entrySet()) {
+            String fixedAssetId = entry.getKey();
+            int oldMachine = entry.getValue();
+            machineIds[machine] = fixedAssetId;
+            machineIndex.put(fixedAssetId, machine);
+            oldMachineOf[machine] = oldMachine;
+            if (oldMachine >= 0) {
+                newMachineOf[oldMachine] = machine;
+                machineNames[machine] = plan.getMachineName(oldMachine);
+                machineFacilityIds[machine] = plan.getMachineFacilityId(oldMachine);
+                machineTypeIds[machine] = plan.getMachineTypeId(oldMachine);
+                machineCalendarIds[machine] = plan.getMachineCalendarId(oldMachine);
+                machineShiftPatternIds[machine] = plan.getMachineShiftPatternId(oldMachine);
+                capacityHours[machine] = plan.capacityRow(oldMachine);
+            } else {
+                addedMachineIds.add(fixedAssetId);
+                changed = true;
+            }
+
+            boolean fullCapacity = oldMachine < 0;
+            GenericValue asset = assets.get(fixedAssetId);
+            if (asset != null) {
+                String calendarId = asset.getString("calendarId");
+                String machineFacilityId = asset.getString("locatedAtFacilityId");
+                if (machineFacilityId != null && !facilityPatterns.containsKey(machineFacilityId)) {
+                    facilityPatterns.put(machineFacilityId,
+                            ShiftTimelineEngine.resolveShiftPatternId(delegator, null, machineFacilityId));
+                }
+                String shiftPatternId = machineFacilityId != null ? facilityPatterns.get(machineFacilityId) : null;
+                calendarId = UtilValidate.isNotEmpty(calendarId) ? calendarId : defaultCalendarId;
+                fullCapacity |= !Objects.equals(calendarId, machineCalendarIds[machine])
+                        || !Objects.equals(shiftPatternId, machineShiftPatternIds[machine]);
+                changed |= !Objects.equals(asset.getString("fixedAssetName"), machineNames[machine])
+                        || !Objects.equals(machineFacilityId, machineFacilityIds[machine])
+                        || !Objects.equals(asset.getString("fixedAssetTypeId"), machineTypeIds[machine]);
+                machineNames[machine] = asset.getString("fixedAssetName");
+                machineFacilityIds[machine] = machineFacilityId;
+                machineTypeIds[machine] = asset.getString("fixedAssetTypeId");
+                machineCalendarIds[machine] = calendarId;
+                machineShiftPatternIds[machine] = shiftPatternId;
+            }
+
+            Set<LocalDate> weeks = machineCalendarIds[machine] != null ? calendarWeeks.get(machineCalendarIds[machine]) : null;
+            if (fullCapacity || (weeks != null && weeks.isEmpty())) {
+                capacityMachines.add(machine);
+            } else if (weeks != null) {
+                for (LocalDate weekStart : weeks) {
+                    long week = ChronoUnit.WEEKS.between(horizonStart, weekStart);
+                    if (week >= 0 && week < weekCount) {
+                        capacityWeeks.computeIfAbsent(weekStart, key -> new ArrayList<>()).add(machine);
+                    }
+                }
+            }
+            machine++;
+        }
+
+        // 2. Capacidad: horizonte completo o solo las semanas cambiadas
+        if (!capacityMachines.isEmpty()) {
+            double[][] rows = WeeklyPlanEngine.loadCapacityHours(delegator, select(machineCalendarIds, capacityMachines),
+                    select(machineShiftPatternIds, capacityMachines), horizonStart, weekCount);
+            for (int i = 0; i < capacityMachines.size(); i++) {
+                capacityHours[capacityMachines.get(i)] = rows[i];
+            }
+            changed = true;
+        }
+        for (Map.Entry<LocalDate, List<Integer>> entry : capacityWeeks.entrySet()) {
+            List<Integer> machines = entry.getValue();
+            int week = (int) ChronoUnit.WEEKS.between(horizonStart, entry.getKey());
+            double[][] rows = WeeklyPlanEngine.loadCapacityHours(delegator, select(machineCalendarIds, machines),
+                    select(machineShiftPatternIds, machines), entry.getKey(), 1);
+            for (int i = 0; i < machines.size(); i++) {
+                int m = machines.get(i);
+                // Fila compartida con el plan original: se copia antes de cambiarla
+                if (oldMachineOf[m] >= 0 && capacityHours[m] == plan.capacityRow(oldMachineOf[m])) {
+                    capacityHours[m] = capacityHours[m].clone();
+                }
+                changed |= capacityHours[m][week] != rows[i][0];
+                capacityHours[m][week] = rows[i][0];
+            }
+        }
+
+        // 3. Referencias: las de los grupos de la facility si ha cambiado algún grupo
+        String[] productIds;
+        if (planningGroupsChanged) {
+            productIds = WeeklyPlanEngine.loadPlanningRefs(delegator, facilityId);
+        } else {
+            productIds = new String[plan.getRefCount()];
+            for (int ref = 0; ref < productIds.length; ref++) {
+                productIds[ref] = plan.getProductId(ref);
+            }
+        }
+        int refCount = productIds.length;
+        Map<String, Integer> refIndex = new HashMap<>(refCount * 2);
+        int[] refMachine = new int[refCount];
+        double[] refUnitsPerHour = new double[refCount];
+        double[][] refDemandUnits = new double[refCount][];
+        boolean[] loadMachines = new boolean[machineCount];
+        Set<String> rerouteIds = new LinkedHashSet<>();
+        List<String> addedRefIds = new ArrayList<>();
+        int keptRefCount = 0;
+        for (int ref = 0; ref < refCount; ref++) {
+            String productId = productIds[ref];
+            refIndex.put(productId, ref);
+            int oldRef = plan.refIndex(productId);
+            if (oldRef < 0) {
+                refDemandUnits[ref] = new double[weekCount];
+                refMachine[ref] = -1;
+                addedRefIds.add(productId);
+                rerouteIds.add(productId);
+                continue;
+            }
+            keptRefCount++;
+            refDemandUnits[ref] = plan.refDemandRow(oldRef);
+            int oldMachine = plan.getRefMachine(oldRef);
+            refMachine[ref] = oldMachine >= 0 ? newMachineOf[oldMachine] : -1;
+            refUnitsPerHour[ref] = plan.getRefUnitsPerHour(oldRef);
+            if (oldMachine >= 0 && refMachine[ref] < 0) {
+                rerouteIds.add(productId);
+            }
+        }
+        // Referencias que salen del plan: su máquina pierde su carga
+        if (keptRefCount < plan.getRefCount()) {
+            changed = true;
+            for (int oldRef = 0; oldRef < plan.getRefCount(); oldRef++) {
+                int oldMachine = plan.getRefMachine(oldRef);
+                if (!refIndex.containsKey(plan.getProductId(oldRef)) && oldMachine >= 0 && newMachineOf[oldMachine] >= 0) {
+                    loadMachines[newMachineOf[oldMachine]] = true;
+                }
+            }
+        }
+        for (int from = 0; from < addedMachineIds.size(); from += MAX_IN_SIZE) {
+            rerouteIds.addAll(EntityQuery.use(delegator)
+                    .select("productId")
+                    .from("PlanningRefMachine")
+                    .where(EntityCondition.makeCondition("fixedAssetId", EntityOperator.IN,
+                            addedMachineIds.subList(from, Math.min(addedMachineIds.size(), from + MAX_IN_SIZE))))
+                    .distinct()
+                    .<String>getFieldList("productId"));
+        }
+        rerouteIds.retainAll(refIndex.keySet());
+
+        // 4. Rutas de las referencias afectadas y demanda de las nuevas
+        if (!rerouteIds.isEmpty()) {
+            for (String productId : rerouteIds) {
+                int ref = refIndex.get(productId);
+                if (refMachine[ref] >= 0) {
+                    loadMachines[refMachine[ref]] = true;
+                }
+                refMachine[ref] = -1;
+            }
+            WeeklyPlanEngine.loadRoutings(delegator, rerouteIds, refIndex, machineIndex, refMachine, refUnitsPerHour);
+            for (String productId : rerouteIds) {
+                int ref = refIndex.get(productId);
+                if (refMachine[ref] >= 0) {
+                    loadMachines[refMachine[ref]] = true;
+                }
+            }
+            changed = true;
+        }
+        WeeklyPlanEngine.loadDemand(delegator, facilityId, addedRefIds, horizonStart, refIndex, refDemandUnits);
+
+        if (!changed) {
+            return plan;
+        }
+
+        // 5. Carga: solo se recalculan las máquinas afectadas y las que entran
+        double[][] loadHours = new double[machineCount][];
+        int loadMachineCount = 0;
+        for (int m = 0; m < machineCount; m++) {
+            if (loadMachines[m] || oldMachineOf[m] < 0) {
+                loadHours[m] = new double[weekCount];
+                loadMachines[m] = true;
+                loadMachineCount++;
+            } else {
+                loadHours[m] = plan.loadRow(oldMachineOf[m]);
+            }
+        }
+        for (int ref = 0; ref < refCount; ref++) {
+            int m = refMachine[ref];
+            if (m < 0 || !loadMachines[m] || refUnitsPerHour[ref] <= 0) {
+                continue;
+            }
+            double hoursPerUnit = 1.0 / refUnitsPerHour[ref];
+            double[] demand = refDemandUnits[ref];
+            double[] load = loadHours[m];
+            for (int week = 0; week < weekCount; week++) {
+                load[week] += demand[week] * hoursPerUnit;
+            }
+        }
+
+        Debug.logInfo("Weekly plan for " + (facilityId != null ? facilityId : "all facilities") + " updated: "
+                + machineCount + " machines (" + addedMachineIds.size() + " added, "
+                + (plan.getMachineCount() - (machineCount - addedMachineIds.size())) + " removed), "
+                + capacityMachines.size() + " capacity rows, " + capacityWeeks.size() + " capacity weeks, "
+                + loadMachineCount + " load rows, " + refCount + " refs (" + addedRefIds.size() + " added, "
+                + (plan.getRefCount() - keptRefCount) + " removed), " + rerouteIds.size() + " re-routed", module);
+        return new WeeklyPlan(facilityId, horizonStart, weekCount,
+                machineIds, machineNames, machineFacilityIds, machineTypeIds,
+                machineCalendarIds, machineShiftPatternIds, capacityHours,
+                productIds, refMachine, refUnitsPerHour, refDemandUnits, loadHours);
+    }
+
+    private static String[] select(String[] values, List<Integer> indexes) {
+        String[] selected = new String[indexes.size()];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = values[indexes.get(i)];
+        }
+        return selected;
+    }
+}
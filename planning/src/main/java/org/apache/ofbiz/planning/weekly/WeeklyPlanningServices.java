@@ -0,0 +1,214 @@
+package org.apache.ofbiz.planning.weekly;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.planning.change.PlanningChangeTracker;
+import org.apache.ofbiz.planning.common.PlanningExecutors;
+import org.apache.ofbiz.planning.common.PlanningMetrics;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+public class WeeklyPlanningServices {
+
+    public static final String module = WeeklyPlanningServices.class.getName();
+
+    /**
+     * Planificación semanal carga/capacidad por máquina.
+     *
+     * IN:
+     *  - facilityId (String, opcional): facility a planificar; vacío = toda la planta
+     *  - fromDate   (java.sql.Date, opcional): el horizonte empieza el lunes de su semana (por defecto hoy)
+     *  - weekCount  (Integer, opcional): semanas del horizonte (por defecto 52)
+     *  - useLivePlan (Boolean, opcional): devolver el plan vigente de la facility si es del mismo
+     *                horizonte; recoge los cambios de máquinas, grupos y calendarios, no los de
+     *                la demanda
+     *
+     * OUT:
+     *  - weeklyPlan     (WeeklyPlan): matrices de carga y capacidad
+     *  - machineRows    (List<Map<String,Object>>): resumen por máquina para la pantalla
+     *  - weekStartDates (List<java.sql.Date>): lunes de cada semana del horizonte
+     */
+    public static Map<String, Object> computeWeeklyPlan(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String facilityId = (String) context.get("facilityId");
+        Date fromDate = (Date) context.get("fromDate");
+        Integer weekCount = (Integer) context.get("weekCount");
+
+        if (UtilValidate.isEmpty(facilityId)) {
+            facilityId = null;
+        }
+        LocalDate from = fromDate != null ? fromDate.toLocalDate() : LocalDate.now();
+        int weeks = weekCount != null ? weekCount : WeeklyPlanEngine.DEFAULT_WEEK_COUNT;
+        if (weeks <= 0 || weeks > 104) {
+            return ServiceUtil.returnError("weekCount must be between 1 and 104: " + weeks);
+        }
+
+        PlanningMetrics.Timer timer = PlanningMetrics.start("computeWeeklyPlan");
+        try {
+            PlanningChangeTracker.LivePlan live = Boolean.TRUE.equals(context.get("useLivePlan"))
+                    ? PlanningChangeTracker.getLivePlan(dctx.getDelegator(), facilityId) : null;
+            WeeklyPlan plan;
+            if (live != null && live.getPlan().getHorizonStart().equals(WeeklyPlanEngine.weekStartOf(from))
+                    && live.getPlan().getWeekCount() == weeks) {
+                plan = live.getPlan();
+            } else {
+                plan = WeeklyPlanEngine.build(dctx.getDelegator(), facilityId, from, weeks);
+                PlanningChangeTracker.publish(dctx.getDelegator(), plan);
+            }
+            timer.rows(plan.getMachineCount());
+
+            List<Date> weekStartDates = new ArrayList<>(weeks);
+            for (int week = 0; week < weeks; week++) {
+                weekStartDates.add(Date.valueOf(plan.getWeekStart(week)));
+            }
+
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("weeklyPlan", plan);
+            result.put("machineRows", plan.toMachineRows());
+            result.put("weekStartDates", weekStartDates);
+            return result;
+        } catch (GenericEntityException e) {
+            timer.error();
+            Debug.logError(e, "Error computing weekly plan: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error computing weekly plan: " + e.getMessage());
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Planificación semanal de varias facilities en paralelo. Los grupos de planificación se
+     * reparten por facility (atributo FACILITY_ID), así que cada facility se calcula de forma
+     * independiente en el pool de ejecuciones de PlanningExecutors, con su propia transacción.
+     * El fallo de una facility no detiene las demás: se informa en su fila.
+     *
+     * IN:
+     *  - facilityIds (List, opcional): facilities a planificar; vacío = todas las que tienen
+     *                grupos de planificación
+     *  - fromDate    (java.sql.Date, opcional): el horizonte empieza el lunes de su semana (por defecto hoy)
+     *  - weekCount   (Integer, opcional): semanas del horizonte (por defecto 52)
+     *
+     * OUT:
+     *  - weeklyPlans   (Map<String,WeeklyPlan>): plan por facility (solo las correctas)
+     *  - facilityRuns  (List<Map<String,Object>>): resumen por facility
+     *  - machineRows   (List<Map<String,Object>>): resumen por máquina de todas las facilities
+     *  - failedCount   (Integer)
+     */
+    public static Map<String, Object> runFacilityPlanning(DispatchContext dctx, Map<String, ? extends Object> context) {
+        final Delegator delegator = dctx.getDelegator();
+        @SuppressWarnings("unchecked")
+        List<String> facilityIds = (List<String>) context.get("facilityIds");
+        Date fromDate = (Date) context.get("fromDate");
+        Integer weekCount = (Integer) context.get("weekCount");
+
+        final LocalDate from = fromDate != null ? fromDate.toLocalDate() : LocalDate.now();
+        final int weeks = weekCount != null ? weekCount : WeeklyPlanEngine.DEFAULT_WEEK_COUNT;
+        if (weeks <= 0 || weeks > 104) {
+            return ServiceUtil.returnError("weekCount must be between 1 and 104: " + weeks);
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            if (UtilValidate.isEmpty(facilityIds)) {
+                facilityIds = EntityQuery.use(delegator)
+                        .select("facilityAttrValue")
+                        .from("PlanningGroupAndFacility")
+                        .where(EntityCondition.makeCondition("productCategoryTypeId", EntityOperator.EQUALS, "PLANNING_GROUP"),
+                               EntityCondition.makeCondition("facilityAttrValue", EntityOperator.NOT_EQUAL, null))
+                        .orderBy("facilityAttrValue")
+                        .distinct()
+                        .getFieldList("facilityAttrValue");
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error loading planning facilities: " + e.getMessage(), module);
+            return ServiceUtil.returnError("Error loading planning facilities: " + e.getMessage());
+        }
+
+        // 1. Una tarea por facility, cada una en su propia transacción
+        List<Callable<WeeklyPlan>> tasks = new ArrayList<>(facilityIds.size());
+        for (final String facilityId : facilityIds) {
+            tasks.add(() -> buildInTransaction(delegator, facilityId, from, weeks));
+        }
+        List<Future<WeeklyPlan>> futures;
+        try {
+            futures = PlanningExecutors.getRunExecutor().invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ServiceUtil.returnError("Planning run interrupted");
+        }
+
+        // 2. Unión de resultados en el orden de las facilities
+        Map<String, WeeklyPlan> weeklyPlans = new HashMap<>();
+        List<Map<String, Object>> facilityRuns = new ArrayList<>(facilityIds.size());
+        List<Map<String, Object>> machineRows = new ArrayList<>();
+        int failedCount = 0;
+        for (int i = 0; i < facilityIds.size(); i++) {
+            String facilityId = facilityIds.get(i);
+            Map<String, Object> run = new HashMap<>();
+            run.put("facilityId", facilityId);
+            try {
+                WeeklyPlan plan = futures.get(i).get();
+                weeklyPlans.put(facilityId, plan);
+                machineRows.addAll(plan.toMachineRows());
+                int overloadedMachines = 0;
+                for (int machine = 0; machine < plan.getMachineCount(); machine++) {
+                    if (plan.getOverloadedWeekCount(machine) > 0) {
+                        overloadedMachines++;
+                    }
+                }
+                run.put("machineCount", plan.getMachineCount());
+                run.put("refCount", plan.getRefCount());
+                run.put("overloadedMachines", overloadedMachines);
+                run.put("statusId", "OK");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                Debug.logError(cause, "Error planning facility " + facilityId + ": " + cause.getMessage(), module);
+                run.put("statusId", "ERROR");
+                run.put("errorMessage", cause.getMessage());
+                failedCount++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ServiceUtil.returnError("Planning run interrupted");
+            }
+            facilityRuns.add(run);
+        }
+        Debug.logInfo("Planning run of " + facilityIds.size() + " facilities finished in "
+                + (System.currentTimeMillis() - startTime) + " ms with " + failedCount + " errors", module);
+
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("weeklyPlans", weeklyPlans);
+        result.put("facilityRuns", facilityRuns);
+        result.put("machineRows", machineRows);
+        result.put("failedCount", failedCount);
+        return result;
+    }
+
+    private static WeeklyPlan buildInTransaction(Delegator delegator, String facilityId, LocalDate from, int weeks)
+            throws GenericEntityException {
+        boolean beganTransaction = TransactionUtil.begin(600);
+        try {
+            WeeklyPlan plan = WeeklyPlanEngine.build(delegator, facilityId, from, weeks);
+            TransactionUtil.commit(beganTransaction);
+            PlanningChangeTracker.publish(delegator, plan);
+            return plan;
+        } catch (GenericEntityException | RuntimeException e) {
+            TransactionUtil.rollback(beganTransaction, "Error planning facility " + facilityId, e);
+            throw e;
+        }
+    }
+}